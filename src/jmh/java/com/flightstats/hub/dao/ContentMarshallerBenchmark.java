@@ -0,0 +1,83 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of marshalling and reading items with each {@link ContentCodec}.
+ * <p>
+ * json payloads are repetitive records, like most channels, random payloads stand in for data which is already compressed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ContentMarshallerBenchmark {
+
+    @Param({"DEFLATE", "DEFLATE_FAST", "NONE", "LZ4"})
+    private String codec;
+
+    @Param({"1024", "16384", "262144"})
+    private int size;
+
+    @Param({"json", "random"})
+    private String payload;
+
+    private byte[] data;
+    private byte[] marshalled;
+    private ContentKey key = new ContentKey();
+
+    @Setup
+    public void setUp() throws IOException {
+        data = payload.equals("json") ? json(size) : random(size);
+        marshalled = ContentMarshaller.toBytes(content());
+    }
+
+    @Benchmark
+    public byte[] toBytes() throws IOException {
+        return ContentMarshaller.toBytes(content());
+    }
+
+    @Benchmark
+    public byte[] toContent() throws IOException {
+        Content content = ContentMarshaller.toContent(marshalled, key);
+        return ByteStreams.toByteArray(content.getStream());
+    }
+
+    private Content content() {
+        return Content.builder()
+                .withContentType("application/json")
+                .withContentKey(key)
+                .withCodec(ContentCodec.valueOf(codec))
+                .withData(data)
+                .build();
+    }
+
+    private static byte[] json(int size) {
+        Random random = new Random(size);
+        StringBuilder builder = new StringBuilder("[");
+        while (builder.length() < size) {
+            builder.append("{\"flightId\":").append(random.nextInt(1000000))
+                    .append(",\"carrier\":\"").append((char) ('A' + random.nextInt(26))).append((char) ('A' + random.nextInt(26)))
+                    .append("\",\"status\":\"").append(random.nextBoolean() ? "scheduled" : "landed")
+                    .append("\",\"departure\":\"2017-07-").append(10 + random.nextInt(20)).append("T12:")
+                    .append(10 + random.nextInt(50)).append(":00.000Z\",\"delayMinutes\":").append(random.nextInt(120))
+                    .append("},");
+        }
+        builder.setLength(size - 1);
+        return builder.append("]").toString().getBytes();
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
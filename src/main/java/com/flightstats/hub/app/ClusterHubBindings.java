@@ -16,6 +16,7 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import org.apache.curator.framework.CuratorFramework;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +37,7 @@ class ClusterHubBindings extends AbstractModule {
         bind(S3Config.class).asEagerSingleton();
         bind(ContentService.class)
                 .to(ClusterContentService.class).asEagerSingleton();
+        bind(LatestKeyRegister.class).asEagerSingleton();
         bind(RemoteSpokeStore.class).asEagerSingleton();
         bind(ContentDao.class)
                 .annotatedWith(Names.named(ContentDao.CACHE))
@@ -61,16 +63,16 @@ class ClusterHubBindings extends AbstractModule {
     @Singleton
     @Provides
     @Named("ChannelConfig")
-    public static Dao<ChannelConfig> buildChannelConfigDao(WatchManager watchManager, DynamoChannelConfigDao dao) {
-        return new CachedLowerCaseDao<>(dao, watchManager, "/channels/cache");
+    public static Dao<ChannelConfig> buildChannelConfigDao(WatchManager watchManager, CuratorFramework curator, DynamoChannelConfigDao dao) {
+        return new CachedLowerCaseDao<>(dao, watchManager, curator, "/channels/cache");
     }
 
     @Inject
     @Singleton
     @Provides
     @Named("Webhook")
-    public static Dao<Webhook> buildWebhookDao(WatchManager watchManager, DynamoWebhookDao dao) {
-        return new CachedDao<>(dao, watchManager, "/webhooks/cache");
+    public static Dao<Webhook> buildWebhookDao(WatchManager watchManager, CuratorFramework curator, DynamoWebhookDao dao) {
+        return new CachedDao<>(dao, watchManager, curator, "/webhooks/cache");
     }
 
     @Inject
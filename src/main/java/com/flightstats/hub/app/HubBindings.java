@@ -12,10 +12,10 @@ import com.flightstats.hub.metrics.MetricsRunner;
 import com.flightstats.hub.metrics.MetricsService;
 import com.flightstats.hub.replication.ReplicationGlobalManager;
 import com.flightstats.hub.rest.*;
-import com.flightstats.hub.spoke.FileSpokeStore;
 import com.flightstats.hub.spoke.GCRunner;
 import com.flightstats.hub.spoke.SpokeClusterRegister;
 import com.flightstats.hub.spoke.SpokeFinalCheck;
+import com.flightstats.hub.spoke.SpokeStore;
 import com.flightstats.hub.time.NtpMonitor;
 import com.flightstats.hub.time.TimeService;
 import com.flightstats.hub.util.HubUtils;
@@ -113,7 +113,9 @@ public class HubBindings extends AbstractModule {
     @Singleton
     @Provides
     public static Cluster buildSpokeCluster(CuratorFramework curator) throws Exception {
-        return new CuratorCluster(curator, "/SpokeCluster", false);
+        CuratorCluster cluster = new CuratorCluster(curator, "/SpokeCluster", false);
+        cluster.trackRings("/SpokeClusterEvents");
+        return cluster;
     }
 
     @Named("SpokeCuratorCluster")
@@ -160,13 +162,14 @@ public class HubBindings extends AbstractModule {
         bind(WebhookValidator.class).asEagerSingleton();
         bind(WebhookManager.class).asEagerSingleton();
         bind(LastContentPath.class).asEagerSingleton();
+        bind(LastContentPathCoalescer.class).asEagerSingleton();
         bind(WatchManager.class).asEagerSingleton();
         bind(MetricsService.class).to(DelegatingMetricsService.class).asEagerSingleton();
         bind(NtpMonitor.class).asEagerSingleton();
         bind(Leaders.class).asEagerSingleton();
         bind(TimeService.class).asEagerSingleton();
         bind(ShutdownManager.class).asEagerSingleton();
-        bind(FileSpokeStore.class).asEagerSingleton();
+        bind(SpokeStore.class).toInstance(SpokeStore.create(HubProperties.getSpokePath()));
         bind(SpokeClusterRegister.class).asEagerSingleton();
         bind(FinalCheck.class).to(SpokeFinalCheck.class).asEagerSingleton();
         bind(InFlightService.class).asEagerSingleton();
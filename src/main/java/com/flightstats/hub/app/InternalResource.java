@@ -5,7 +5,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.flightstats.hub.channel.InternalChannelResource;
 import com.flightstats.hub.cluster.InternalCuratorResource;
 import com.flightstats.hub.cluster.InternalZookeeperResource;
+import com.flightstats.hub.dao.aws.InternalLatestResource;
 import com.flightstats.hub.health.InternalHealthResource;
+import com.flightstats.hub.metrics.InternalMetricsResource;
 import com.flightstats.hub.metrics.InternalStacktraceResource;
 import com.flightstats.hub.metrics.InternalTracesResource;
 import com.flightstats.hub.time.InternalTimeResource;
@@ -45,6 +47,8 @@ public class InternalResource {
         addLink("curator", InternalCuratorResource.DESCRIPTION);
         addLink("deploy", InternalDeployResource.DESCRIPTION);
         addLink("health", InternalHealthResource.DESCRIPTION);
+        addLink("latest", InternalLatestResource.DESCRIPTION);
+        addLink("metrics", InternalMetricsResource.DESCRIPTION);
         addLink("properties", InternalPropertiesResource.DESCRIPTION);
         addLink("shutdown", InternalShutdownResource.DESCRIPTION);
         addLink("stacktrace", InternalStacktraceResource.DESCRIPTION);
@@ -16,6 +16,7 @@ import com.google.inject.Provides;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import org.apache.curator.framework.CuratorFramework;
 
 class SingleHubBindings extends AbstractModule {
 
@@ -35,15 +36,15 @@ class SingleHubBindings extends AbstractModule {
     @Singleton
     @Provides
     @Named("ChannelConfig")
-    public static Dao<ChannelConfig> buildChannelConfigDao(WatchManager watchManager, FileChannelConfigurationDao dao) {
-        return new CachedLowerCaseDao<>(dao, watchManager, "/channels/cache");
+    public static Dao<ChannelConfig> buildChannelConfigDao(WatchManager watchManager, CuratorFramework curator, FileChannelConfigurationDao dao) {
+        return new CachedLowerCaseDao<>(dao, watchManager, curator, "/channels/cache");
     }
 
     @Inject
     @Singleton
     @Provides
     @Named("Webhook")
-    public static Dao<Webhook> buildWebhookDao(WatchManager watchManager, FileWebhookDao dao) {
-        return new CachedDao<>(dao, watchManager, "/webhooks/cache");
+    public static Dao<Webhook> buildWebhookDao(WatchManager watchManager, CuratorFramework curator, FileWebhookDao dao) {
+        return new CachedDao<>(dao, watchManager, curator, "/webhooks/cache");
     }
 }
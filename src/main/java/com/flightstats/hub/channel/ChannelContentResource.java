@@ -6,7 +6,6 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.HubProvider;
 import com.flightstats.hub.dao.ChannelService;
-import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.dao.ItemRequest;
 import com.flightstats.hub.events.ContentOutput;
 import com.flightstats.hub.events.EventsService;
@@ -237,6 +236,7 @@ public class ChannelContentResource {
                             @PathParam("ms") int millis,
                             @PathParam("hash") String hash,
                             @HeaderParam("Accept") String accept,
+                            @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
                             @HeaderParam("X-Item-Length-Required") @DefaultValue("false") boolean itemLengthRequired,
                             @QueryParam("remoteOnly") @DefaultValue("false") boolean remoteOnly
     ) throws Exception {
@@ -273,31 +273,94 @@ public class ChannelContentResource {
             }
         });
 
-        if (content.isLarge()) {
-            builder.header("X-LargeItem", "true");
-        }
-        builder.type(actualContentType)
-                .header(CREATION_DATE, FORMATTER.print(new DateTime(key.getMillis())));
-
-        builder.header("Link", "<" + uriInfo.getRequestUriBuilder().path("previous").build() + ">;rel=\"" + "previous" + "\"");
-        builder.header("Link", "<" + uriInfo.getRequestUriBuilder().path("next").build() + ">;rel=\"" + "next" + "\"");
+        addItemHeaders(builder, content, key, actualContentType);
 
         long itemLength = content.getSize();
         if (itemLength == -1 && itemLengthRequired) {
-            if (content.isLarge()) {
-                itemLength = content.getSize();
-            } else {
-                byte[] bytes = ContentMarshaller.toBytes(content);
-                itemLength = bytes.length;
+            byte[] data = content.getData();
+            if (data != null) {
+                itemLength = data.length;
             }
         }
 
         builder.header("X-Item-Length", itemLength);
+        if (itemLength >= 0 && !isEncoded(acceptEncoding)) {
+            builder.header(HttpHeaders.CONTENT_LENGTH, itemLength);
+        }
 
         metricsService.time(channel, "get", start);
         return builder.build();
     }
 
+    /**
+     * The headers of an item, from its content type and size, without reading its payload.
+     */
+    @Path("/{h}/{m}/{s}/{ms}/{hash}")
+    @HEAD
+    public Response headItem(@PathParam("channel") String channel,
+                             @PathParam("Y") int year,
+                             @PathParam("M") int month,
+                             @PathParam("D") int day,
+                             @PathParam("h") int hour,
+                             @PathParam("m") int minute,
+                             @PathParam("s") int second,
+                             @PathParam("ms") int millis,
+                             @PathParam("hash") String hash,
+                             @QueryParam("remoteOnly") @DefaultValue("false") boolean remoteOnly
+    ) {
+        long start = System.currentTimeMillis();
+        ContentKey key = new ContentKey(year, month, day, hour, minute, second, millis, hash);
+        ItemRequest itemRequest = ItemRequest.builder()
+                .channel(channel)
+                .key(key)
+                .uri(uriInfo.getRequestUri())
+                .remoteOnly(remoteOnly)
+                .build();
+        Optional<Content> optionalResult = channelService.getMetadata(itemRequest);
+        if (!optionalResult.isPresent()) {
+            logger.debug("404 content not found {} {}", channel, key);
+            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        }
+        Content content = optionalResult.get();
+        Response.ResponseBuilder builder = Response.ok();
+        addItemHeaders(builder, content, key, getContentType(content));
+        long itemLength = content.getSize();
+        builder.header("X-Item-Length", itemLength);
+        if (itemLength >= 0) {
+            builder.header(HttpHeaders.CONTENT_LENGTH, itemLength);
+        }
+        metricsService.time(channel, "head", start);
+        return builder.build();
+    }
+
+    /**
+     * The response is compressed by Jersey's EncodingFilter when the client accepts gzip or deflate,
+     * and then its length isn't known before it is written.
+     */
+    static boolean isEncoded(String acceptEncoding) {
+        if (StringUtils.isBlank(acceptEncoding)) {
+            return false;
+        }
+        for (String token : acceptEncoding.split(",")) {
+            String encoding = StringUtils.substringBefore(token, ";").trim().toLowerCase();
+            if (encoding.equals("gzip") || encoding.equals("x-gzip") || encoding.equals("deflate") || encoding.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addItemHeaders(Response.ResponseBuilder builder, Content content, ContentKey key, MediaType contentType) {
+        if (content.isLarge()) {
+            builder.header("X-LargeItem", "true");
+        }
+        builder.type(contentType)
+                .header(CREATION_DATE, FORMATTER.print(new DateTime(key.getMillis())));
+
+        builder.header("Link", "<" + uriInfo.getRequestUriBuilder().path("previous").build() + ">;rel=\"" + "previous" + "\"");
+        builder.header("Link", "<" + uriInfo.getRequestUriBuilder().path("next").build() + ">;rel=\"" + "next" + "\"");
+    }
+
     @Path("/{h}/{m}/{s}/{ms}/{hash}/{direction:[n|p].*}")
     @GET
     public Response getDirection(@PathParam("channel") String channel,
@@ -42,6 +42,7 @@ public class LinkBuilder {
 
         root.put("name", config.getDisplayName());
         root.put("allowZeroBytes", config.isAllowZeroBytes());
+        root.put("codec", config.getCodec());
         root.put("creationDate", TimeUtil.FORMATTER.print(new DateTime(config.getCreationDate())));
         root.put("description", config.getDescription());
         if (config.isGlobal()) {
@@ -1,7 +1,7 @@
 package com.flightstats.hub.channel;
 
 import com.flightstats.hub.dao.ChannelService;
-import com.flightstats.hub.dao.ItemRequest;
+import com.flightstats.hub.dao.ContentPrefetch;
 import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.ChannelContentKey;
@@ -9,7 +9,6 @@ import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
 import com.flightstats.hub.model.StreamResults;
 import com.flightstats.hub.util.TimeUtil;
-import com.google.common.base.Optional;
 import com.google.common.io.ByteStreams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,12 +20,14 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.SortedSet;
 import java.util.function.Consumer;
 
 class MultiPartBulkBuilder {
 
     private final static Logger logger = LoggerFactory.getLogger(MultiPartBulkBuilder.class);
+    private static final ContentPrefetch contentPrefetch = new ContentPrefetch();
 
     private static final byte[] CRLF = "\r\n".getBytes();
     private static final String BOUNDARY = "||||||~~~~~~||||||~~~~~~||||||~~~~~~||||||~~~~~~||||||~~~~~~||||||";
@@ -59,9 +60,9 @@ class MultiPartBulkBuilder {
         Traces traces = ActiveTraces.getLocal();
         return write((BufferedOutputStream output) -> {
             ActiveTraces.setLocal(traces);
-            for (ChannelContentKey key : keys) {
-                writeContent(uriInfo, output, key.getContentKey(), key.getChannel(), channelService);
-            }
+            contentPrefetch.fetch(new ArrayList<>(keys), key -> ZipBulkBuilder.getContent(key, channelService),
+                    (key, content) -> writeContent(content, output,
+                            LinkBuilder.buildChannelUri(key.getChannel(), uriInfo), key.getChannel()));
         }, headerBuilder);
     }
 
@@ -80,19 +81,6 @@ class MultiPartBulkBuilder {
         return builder.build();
     }
 
-    private static void writeContent(UriInfo uriInfo, BufferedOutputStream output, ContentKey key, String channel,
-                                     ChannelService channelService) {
-        ItemRequest itemRequest = ItemRequest.builder()
-                .channel(channel)
-                .key(key)
-                .build();
-        Optional<Content> content = channelService.get(itemRequest);
-        if (content.isPresent()) {
-            Content item = content.get();
-            writeContent(item, output, LinkBuilder.buildChannelUri(channel, uriInfo), channel);
-        }
-    }
-
     private static void writeContent(Content content, OutputStream output, URI channelUri, String name) {
         writeContent(content, output, channelUri, name, true, false);
     }
@@ -122,6 +110,8 @@ class MultiPartBulkBuilder {
         } catch (IOException e) {
             logger.warn("io exception batching to " + name, e);
             throw new RuntimeException(e);
+        } finally {
+            content.close();
         }
     }
 
@@ -221,7 +221,13 @@ public class TagContentResource {
         if (ChannelContentResource.contentTypeIsNotCompatible(accept, actualContentType)) {
             return Response.status(Response.Status.NOT_ACCEPTABLE).build();
         }
-        Response.ResponseBuilder builder = Response.ok((StreamingOutput) output -> ByteStreams.copy(content.getStream(), output));
+        Response.ResponseBuilder builder = Response.ok((StreamingOutput) output -> {
+            try {
+                ByteStreams.copy(content.getStream(), output);
+            } finally {
+                content.close();
+            }
+        });
 
         builder.type(actualContentType)
                 .header(ChannelContentResource.CREATION_DATE, TimeUtil.FORMATTER.print(new DateTime(key.getMillis())));
@@ -2,6 +2,7 @@ package com.flightstats.hub.channel;
 
 import com.flightstats.hub.dao.ChannelService;
 import com.flightstats.hub.dao.ContentMarshaller;
+import com.flightstats.hub.dao.ContentPrefetch;
 import com.flightstats.hub.dao.ItemRequest;
 import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.metrics.Traces;
@@ -17,6 +18,9 @@ import org.slf4j.LoggerFactory;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.function.Consumer;
 import java.util.zip.Deflater;
@@ -26,6 +30,7 @@ import java.util.zip.ZipOutputStream;
 public class ZipBulkBuilder {
 
     private final static Logger logger = LoggerFactory.getLogger(ZipBulkBuilder.class);
+    private static final ContentPrefetch contentPrefetch = new ContentPrefetch();
 
     public static Response build(SortedSet<ContentKey> keys, String channel,
                                  ChannelService channelService, boolean descending, Consumer<Response.ResponseBuilder> headerBuilder) {
@@ -47,9 +52,8 @@ public class ZipBulkBuilder {
         Traces traces = ActiveTraces.getLocal();
         return write((ZipOutputStream output) -> {
             ActiveTraces.setLocal(traces);
-            for (ChannelContentKey key : keys) {
-                writeContent(output, key.getContentKey(), key.getChannel(), channelService);
-            }
+            contentPrefetch.fetch(new ArrayList<>(keys), key -> getContent(key, channelService),
+                    content -> createZipEntry(output, content));
         }, headerBuilder);
     }
 
@@ -69,18 +73,17 @@ public class ZipBulkBuilder {
         return builder.build();
     }
 
-    private static void writeContent(ZipOutputStream output, ContentKey key, String channel,
-                                     ChannelService channelService) {
+    static List<Content> getContent(ChannelContentKey key, ChannelService channelService) {
         ItemRequest itemRequest = ItemRequest.builder()
-                .channel(channel)
-                .key(key)
+                .channel(key.getChannel())
+                .key(key.getContentKey())
                 .build();
         Optional<Content> contentOptional = channelService.get(itemRequest);
         if (contentOptional.isPresent()) {
-            createZipEntry(output, contentOptional.get());
-        } else {
-            logger.warn("missing content for zip {} {}", channel, key);
+            return Collections.singletonList(contentOptional.get());
         }
+        logger.warn("missing content for bulk {} {}", key.getChannel(), key.getContentKey());
+        return Collections.emptyList();
     }
 
     public static void createZipEntry(ZipOutputStream output, Content content) {
@@ -94,6 +97,8 @@ public class ZipBulkBuilder {
         } catch (IOException e) {
             logger.warn("exception zip batching for  " + content.getContentKey().get(), e);
             throw new RuntimeException(e);
+        } finally {
+            content.close();
         }
     }
 
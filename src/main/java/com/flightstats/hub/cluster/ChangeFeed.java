@@ -0,0 +1,155 @@
+package com.flightstats.hub.cluster;
+
+import com.google.common.primitives.Longs;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A versioned feed of changed names in ZooKeeper, so readers can apply the changes since the version they have,
+ * instead of reading everything.
+ * <p>
+ * Each change is a persistent sequential node under {path}/changes, named by its version, holding the changed name.
+ * Only the latest keep changes are kept, and {path}/prunedTo records the last version removed, so a reader
+ * further behind knows it has to read everything.
+ */
+public class ChangeFeed {
+
+    private final static Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+    private static final String PREFIX = "change-";
+
+    private final CuratorFramework curator;
+    private final LongValue prunedTo;
+    private final String changesPath;
+    private final String prunedToPath;
+    private final int keep;
+
+    public ChangeFeed(CuratorFramework curator, String path, int keep) {
+        this.curator = curator;
+        this.prunedTo = new LongValue(curator);
+        this.changesPath = path + "/changes";
+        this.prunedToPath = path + "/prunedTo";
+        this.keep = keep;
+    }
+
+    public void publish(String name) {
+        try {
+            String created = curator.create().creatingParentsIfNeeded()
+                    .withMode(CreateMode.PERSISTENT_SEQUENTIAL)
+                    .forPath(changesPath + "/" + PREFIX, name.getBytes(StandardCharsets.UTF_8));
+            if (parseVersion(created) % keep == 0) {
+                prune();
+            }
+        } catch (Exception e) {
+            logger.warn("unable to publish change " + changesPath + " " + name, e);
+        }
+    }
+
+    /**
+     * @return the changes after version, or null if some were pruned, and the reader has to read everything.
+     */
+    public Changes getChanges(long version) {
+        TreeMap<Long, String> children = getChildren();
+        try {
+            if (version < getPrunedTo()) {
+                return null;
+            }
+            List<String> names = new ArrayList<>();
+            long latest = version;
+            for (Map.Entry<Long, String> entry : children.tailMap(version, false).entrySet()) {
+                names.add(new String(curator.getData().forPath(changesPath + "/" + entry.getValue()), StandardCharsets.UTF_8));
+                latest = entry.getKey();
+            }
+            return new Changes(latest, names);
+        } catch (KeeperException.NoNodeException e) {
+            logger.info("changes were pruned while reading {} {}", changesPath, e.getMessage());
+            return null;
+        } catch (Exception e) {
+            logger.warn("unable to get changes " + changesPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the latest version, for a reader about to read everything.
+     */
+    public long getVersion() {
+        TreeMap<Long, String> children = getChildren();
+        if (children.isEmpty()) {
+            return -1;
+        }
+        return children.lastKey();
+    }
+
+    private void prune() {
+        TreeMap<Long, String> children = getChildren();
+        if (children.size() <= keep) {
+            return;
+        }
+        List<Long> versions = new ArrayList<>(children.keySet()).subList(0, children.size() - keep);
+        prunedTo.initialize(prunedToPath, -1);
+        prunedTo.updateIncrease(versions.get(versions.size() - 1), prunedToPath);
+        for (Long version : versions) {
+            try {
+                curator.delete().forPath(changesPath + "/" + children.get(version));
+            } catch (KeeperException.NoNodeException ignore) {
+                //another writer pruned it
+            } catch (Exception e) {
+                logger.warn("unable to prune " + changesPath + " " + version, e);
+            }
+        }
+        logger.debug("pruned {} to {}", changesPath, versions.get(versions.size() - 1));
+    }
+
+    private TreeMap<Long, String> getChildren() {
+        TreeMap<Long, String> children = new TreeMap<>();
+        try {
+            for (String child : curator.getChildren().forPath(changesPath)) {
+                children.put(parseVersion(child), child);
+            }
+        } catch (KeeperException.NoNodeException ignore) {
+            //nothing has been published
+        } catch (Exception e) {
+            logger.warn("unable to get changes " + changesPath, e);
+        }
+        return children;
+    }
+
+    private long getPrunedTo() throws Exception {
+        try {
+            return Longs.fromByteArray(curator.getData().forPath(prunedToPath));
+        } catch (KeeperException.NoNodeException e) {
+            return -1;
+        }
+    }
+
+    private static long parseVersion(String path) {
+        return Long.parseLong(path.substring(path.lastIndexOf(PREFIX) + PREFIX.length()));
+    }
+
+    public static class Changes {
+        private final long version;
+        private final List<String> names;
+
+        Changes(long version, List<String> names) {
+            this.version = version;
+            this.names = names;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<String> getNames() {
+            return names;
+        }
+    }
+}
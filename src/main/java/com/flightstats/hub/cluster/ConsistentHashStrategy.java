@@ -2,6 +2,7 @@ package com.flightstats.hub.cluster;
 
 import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.util.Hash;
+import com.google.common.collect.Iterables;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 
@@ -12,9 +13,10 @@ public class ConsistentHashStrategy implements RingStrategy {
     private final HashFunction hashFunction = Hashing.farmHashFingerprint64();
     private final int numberOfReplicas = HubProperties.getProperty("consistent.hashing.replicas", 256);
     private final SortedMap<Long, String> circle = new TreeMap<>();
+    private final int owners = RingStrategy.getOwners();
     private List<String> spokeNodes = new ArrayList<>();
 
-    ConsistentHashStrategy(Collection<String> nodes) {
+    public ConsistentHashStrategy(Collection<String> nodes) {
         for (String node : nodes) {
             for (int i = 0; i < numberOfReplicas; i++) {
                 circle.put(Hash.hash(node + i), node);
@@ -25,7 +27,7 @@ public class ConsistentHashStrategy implements RingStrategy {
 
     @Override
     public Set<String> getServers(String channel) {
-        if (spokeNodes.size() <= 3) {
+        if (spokeNodes.size() <= owners) {
             return new HashSet<>(spokeNodes);
         }
 
@@ -37,13 +39,13 @@ public class ConsistentHashStrategy implements RingStrategy {
         Set<String> nodes = new HashSet<>();
         for (String node : startPoint.values()) {
             nodes.add(node);
-            if (nodes.size() >= 3) {
+            if (nodes.size() >= owners) {
                 return nodes;
             }
         }
         for (String node : circle.values()) {
             nodes.add(node);
-            if (nodes.size() >= 3) {
+            if (nodes.size() >= owners) {
                 return nodes;
             }
         }
@@ -55,6 +57,35 @@ public class ConsistentHashStrategy implements RingStrategy {
         return spokeNodes;
     }
 
+    /**
+     * Gives each name one owner, with consistent hashing and bounded loads, so no node owns more than
+     * loadFactor times its share.  Names which would overflow a node go to the next node on the circle.
+     * <p>
+     * Every caller with the same names and nodes gets the same owners.
+     *
+     * @return the owner of each name
+     */
+    public Map<String, String> getBoundedOwners(Collection<String> names, double loadFactor) {
+        Map<String, String> owners = new HashMap<>();
+        if (spokeNodes.isEmpty()) {
+            return owners;
+        }
+        int capacity = (int) Math.ceil(names.size() * loadFactor / spokeNodes.size());
+        Map<String, Integer> loads = new HashMap<>();
+        for (String name : new TreeSet<>(names)) {
+            long hash = Hash.hash(name);
+            for (String node : Iterables.concat(circle.tailMap(hash).values(), circle.values())) {
+                int load = loads.getOrDefault(node, 0);
+                if (load < capacity) {
+                    loads.put(node, load + 1);
+                    owners.put(name, node);
+                    break;
+                }
+            }
+        }
+        return owners;
+    }
+
 
     public boolean equals(Object o) {
         if (o == this) return true;
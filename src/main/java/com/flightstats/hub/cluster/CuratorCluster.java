@@ -28,6 +28,7 @@ public class CuratorCluster implements Cluster {
     private final boolean useName;
     private final PathChildrenCache clusterCache;
     private String fullPath;
+    private volatile Ring ring;
 
     @Inject
     public CuratorCluster(CuratorFramework curator, String clusterPath, boolean useName) throws Exception {
@@ -55,6 +56,18 @@ public class CuratorCluster implements Cluster {
         clusterCache.getListenable().addListener(listener, executor);
     }
 
+    /**
+     * Runs the listener on the executor when a server joins or leaves this cluster.
+     */
+    public void addServersListener(Runnable listener, Executor executor) {
+        addListener((client, event) -> {
+            PathChildrenCacheEvent.Type type = event.getType();
+            if (type.equals(PathChildrenCacheEvent.Type.CHILD_ADDED) || type.equals(PathChildrenCacheEvent.Type.CHILD_REMOVED)) {
+                listener.run();
+            }
+        }, executor);
+    }
+
     public void register() throws UnknownHostException {
         String host = getHost(useName);
         try {
@@ -68,6 +81,22 @@ public class CuratorCluster implements Cluster {
         }
     }
 
+    /**
+     * If spoke.replicationFactor is set, tracks servers joining and leaving this cluster as ClusterEvents at eventsPath,
+     * and each channel is then owned by that many servers, rather than by every server.
+     */
+    public void trackRings(String eventsPath) throws Exception {
+        if (RingStrategy.getReplicationFactor() <= 0) {
+            return;
+        }
+        logger.info("using spoke rings with replication factor {} for {}", RingStrategy.getReplicationFactor(), clusterPath);
+        ring = new CuratorSpokeRings(curator, eventsPath, this);
+    }
+
+    List<ChildData> getCurrentData() {
+        return clusterCache.getCurrentData();
+    }
+
     private String getFullPath() throws UnknownHostException {
         fullPath = clusterPath + "/" + getHost(useName) + RandomStringUtils.randomAlphanumeric(6);
         return fullPath;
@@ -105,17 +134,26 @@ public class CuratorCluster implements Cluster {
 
     @Override
     public Set<String> getServers(String channel) {
-        return getAllServers();
+        if (ring == null) {
+            return getAllServers();
+        }
+        return ring.getServers(channel);
     }
 
     @Override
     public Set<String> getServers(String channel, DateTime pointInTime) {
-        return getAllServers();
+        if (ring == null) {
+            return getAllServers();
+        }
+        return ring.getServers(channel, pointInTime);
     }
 
     @Override
     public Set<String> getServers(String channel, DateTime startTime, DateTime endTime) {
-        return getAllServers();
+        if (ring == null) {
+            return getAllServers();
+        }
+        return ring.getServers(channel, startTime, endTime);
     }
 
     public void delete() {
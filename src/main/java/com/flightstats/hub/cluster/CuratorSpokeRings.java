@@ -0,0 +1,180 @@
+package com.flightstats.hub.cluster;
+
+import com.flightstats.hub.app.HubServices;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.PathChildrenCache;
+import org.apache.curator.framework.recipes.cache.PathChildrenCacheEvent;
+import org.apache.zookeeper.KeeperException;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records each server joining and leaving a {@link CuratorCluster} as a persistent {@link ClusterEvent} in ZooKeeper,
+ * at eventsPath/creationTime|server|ADDED, and keeps the {@link SpokeRings} built from those events.
+ * <p>
+ * Any server may record an event, and the path is the same from every server, so duplicates are ignored.
+ */
+class CuratorSpokeRings implements Ring {
+
+    private final static Logger logger = LoggerFactory.getLogger(CuratorSpokeRings.class);
+    private static final long RECONCILE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final CuratorFramework curator;
+    private final String eventsPath;
+    private final PathChildrenCache eventsCache;
+    private final CuratorCluster cluster;
+    private volatile SpokeRings spokeRings = new SpokeRings();
+
+    CuratorSpokeRings(CuratorFramework curator, String eventsPath, CuratorCluster cluster) throws Exception {
+        this.curator = curator;
+        this.eventsPath = eventsPath;
+        this.cluster = cluster;
+        eventsCache = new PathChildrenCache(curator, eventsPath, false);
+        eventsCache.start(PathChildrenCache.StartMode.BUILD_INITIAL_CACHE);
+        eventsCache.getListenable().addListener((client, event) -> rebuild());
+        cluster.addListener((client, event) -> handle(event), MoreExecutors.directExecutor());
+        reconcile(cluster.getCurrentData());
+        rebuild();
+        HubServices.register(new SpokeRingsService());
+    }
+
+    private void handle(PathChildrenCacheEvent event) {
+        if (event.getType().equals(PathChildrenCacheEvent.Type.CHILD_ADDED)) {
+            record(event.getData(), true);
+        } else if (event.getType().equals(PathChildrenCacheEvent.Type.CHILD_REMOVED)) {
+            record(event.getData(), false);
+        }
+    }
+
+    /**
+     * Records the current servers, and the removal of any server which left while no one was watching.
+     */
+    private void reconcile(Iterable<ChildData> registered) {
+        Set<String> current = new HashSet<>();
+        for (ChildData childData : registered) {
+            record(childData, true);
+            current.add(ClusterEvent.encode(getName(childData), childData.getStat().getCtime(), true));
+        }
+        Set<String> removed = new HashSet<>();
+        Set<ClusterEvent> added = ClusterEvent.set();
+        for (ClusterEvent event : getEvents()) {
+            if (event.isAdded()) {
+                added.add(event);
+            } else {
+                removed.add(ClusterEvent.encode(event.getName(), event.getCreationTime(), true));
+            }
+        }
+        long reconcileTime = System.currentTimeMillis() - RECONCILE_MILLIS;
+        for (ClusterEvent event : added) {
+            String encoded = event.encode();
+            if (event.getModifiedTime() < reconcileTime && !current.contains(encoded) && !removed.contains(encoded)) {
+                logger.info("recording missed removal {}", encoded);
+                create(ClusterEvent.encode(event.getName(), event.getCreationTime(), false));
+            }
+        }
+    }
+
+    private void record(ChildData childData, boolean added) {
+        create(ClusterEvent.encode(getName(childData), childData.getStat().getCtime(), added));
+    }
+
+    private void create(String event) {
+        try {
+            curator.create().creatingParentsIfNeeded().forPath(eventsPath + "/" + event);
+            logger.info("recorded cluster event {}", event);
+        } catch (KeeperException.NodeExistsException e) {
+            logger.debug("cluster event exists {}", event);
+        } catch (Exception e) {
+            logger.warn("unable to record cluster event " + event, e);
+        }
+    }
+
+    private String getName(ChildData childData) {
+        return new String(childData.getData());
+    }
+
+    private Set<ClusterEvent> getEvents() {
+        Set<ClusterEvent> events = ClusterEvent.set();
+        for (ChildData childData : eventsCache.getCurrentData()) {
+            try {
+                events.add(new ClusterEvent(childData.getPath(), childData.getStat().getMtime()));
+            } catch (Exception e) {
+                logger.warn("unable to parse cluster event " + childData.getPath(), e);
+            }
+        }
+        return events;
+    }
+
+    private synchronized void rebuild() {
+        SpokeRings rings = new SpokeRings();
+        rings.process(getEvents());
+        spokeRings = rings;
+    }
+
+    private void deleteOld() {
+        for (ClusterEvent event : spokeRings.generateOld(getEvents())) {
+            try {
+                curator.delete().forPath(event.event());
+                logger.info("deleted old cluster event {}", event.event());
+            } catch (KeeperException.NoNodeException e) {
+                logger.debug("cluster event already deleted {}", event.event());
+            } catch (Exception e) {
+                logger.warn("unable to delete cluster event " + event.event(), e);
+            }
+        }
+    }
+
+    /**
+     * Until events are recorded, or for times before the Spoke TTL, all servers are returned.
+     */
+    private Set<String> orAll(Set<String> servers) {
+        if (servers.isEmpty()) {
+            return cluster.getAllServers();
+        }
+        return servers;
+    }
+
+    @Override
+    public Set<String> getServers(String channel) {
+        return orAll(spokeRings.getServers(channel));
+    }
+
+    @Override
+    public Set<String> getServers(String channel, DateTime pointInTime) {
+        return orAll(spokeRings.getServers(channel, pointInTime));
+    }
+
+    @Override
+    public Set<String> getServers(String channel, DateTime startTime, DateTime endTime) {
+        return orAll(spokeRings.getServers(channel, startTime, endTime));
+    }
+
+    /**
+     * Rings expire with the Spoke TTL, so they are rebuilt even when no events change.
+     */
+    private class SpokeRingsService extends AbstractScheduledService {
+        @Override
+        protected void runOneIteration() throws Exception {
+            try {
+                reconcile(cluster.getCurrentData());
+                rebuild();
+                deleteOld();
+            } catch (Exception e) {
+                logger.warn("unable to update spoke rings", e);
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedRateSchedule(1, 1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -9,6 +9,7 @@ public class EqualRangesStrategy implements RingStrategy {
 
     private List<String> spokeNodes;
     private long rangeSize;
+    private final int owners = RingStrategy.getOwners();
 
     EqualRangesStrategy(Collection<String> nodes) {
         if (nodes.isEmpty()) {
@@ -25,7 +26,7 @@ public class EqualRangesStrategy implements RingStrategy {
 
     @Override
     public Set<String> getServers(String channel) {
-        if (spokeNodes.size() <= 3) {
+        if (spokeNodes.size() <= owners) {
             return new HashSet<>(spokeNodes);
         }
         long hash = Hash.hash(channel);
@@ -35,7 +36,7 @@ public class EqualRangesStrategy implements RingStrategy {
             node = spokeNodes.size() + node - 1;
         }
         Set<String> found = new HashSet<>();
-        int minimum = Math.min(3, spokeNodes.size());
+        int minimum = Math.min(owners, spokeNodes.size());
         while (found.size() < minimum) {
             if (node == spokeNodes.size()) {
                 node = 0;
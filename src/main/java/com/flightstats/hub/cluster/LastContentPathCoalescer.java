@@ -0,0 +1,135 @@
+package com.flightstats.hub.cluster;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.model.ContentPath;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds increases to {@link LastContentPath} values in memory, and writes the highest value of each
+ * to ZooKeeper every app.checkpoint.millis, instead of a read and a write for every increase.
+ * <p>
+ * A crash loses at most app.checkpoint.millis of progress, which is done again.
+ * Callers flush their own values when they stop, such as a webhook losing leadership.
+ */
+@Singleton
+public class LastContentPathCoalescer {
+
+    private final static Logger logger = LoggerFactory.getLogger(LastContentPathCoalescer.class);
+
+    private final int checkpointMillis = HubProperties.getProperty("app.checkpoint.millis", 1000);
+    private final LastContentPath lastContentPath;
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final List<Runnable> beforeFlush = new CopyOnWriteArrayList<>();
+
+    @Inject
+    public LastContentPathCoalescer(LastContentPath lastContentPath) {
+        this.lastContentPath = lastContentPath;
+        if (isEnabled()) {
+            HubServices.register(new CoalescerService());
+        }
+    }
+
+    public boolean isEnabled() {
+        return checkpointMillis > 0;
+    }
+
+    public void updateIncrease(ContentPath nextPath, String name, String basePath) {
+        if (!isEnabled()) {
+            lastContentPath.updateIncrease(nextPath, name, basePath);
+            return;
+        }
+        synchronized (pending) {
+            Pending existing = pending.get(basePath + name);
+            if (existing == null) {
+                pending.put(basePath + name, new Pending(nextPath, name, basePath));
+            } else if (nextPath.compareTo(existing.path) > 0) {
+                existing.path = nextPath;
+            }
+        }
+    }
+
+    /**
+     * @param runnable is run before each scheduled write, for state which must be in ZooKeeper first.
+     *                 The values to write are taken before it runs, so it covers everything they depend on.
+     */
+    public void beforeFlush(Runnable runnable) {
+        beforeFlush.add(runnable);
+    }
+
+    public void flush(String name, String basePath) {
+        Pending found;
+        synchronized (pending) {
+            found = pending.remove(basePath + name);
+        }
+        write(found);
+    }
+
+    public void discard(String name, String basePath) {
+        synchronized (pending) {
+            pending.remove(basePath + name);
+        }
+    }
+
+    public void flush() {
+        List<Pending> toWrite;
+        synchronized (pending) {
+            toWrite = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        beforeFlush.forEach(Runnable::run);
+        toWrite.forEach(this::write);
+        logger.trace("flushed {}", toWrite.size());
+    }
+
+    private void write(Pending found) {
+        if (found != null) {
+            lastContentPath.updateIncrease(found.path, found.name, found.basePath);
+        }
+    }
+
+    private class Pending {
+        private final String name;
+        private final String basePath;
+        private ContentPath path;
+
+        private Pending(ContentPath path, String name, String basePath) {
+            this.path = path;
+            this.name = name;
+            this.basePath = basePath;
+        }
+    }
+
+    private class CoalescerService extends AbstractScheduledService {
+
+        @Override
+        protected void runOneIteration() throws Exception {
+            try {
+                flush();
+            } catch (Exception e) {
+                logger.warn("unable to flush checkpoints", e);
+            }
+        }
+
+        @Override
+        protected void shutDown() throws Exception {
+            flush();
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
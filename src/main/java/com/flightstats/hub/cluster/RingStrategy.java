@@ -1,5 +1,7 @@
 package com.flightstats.hub.cluster;
 
+import com.flightstats.hub.app.HubProperties;
+
 import java.util.List;
 import java.util.Set;
 
@@ -8,4 +10,17 @@ public interface RingStrategy {
     Set<String> getServers(String channel);
 
     List<String> getAllServers();
+
+    /**
+     * spoke.replicationFactor is the number of servers which own each channel.
+     * When it is not set, every server stores every channel, and the rings use 3 owners.
+     */
+    static int getReplicationFactor() {
+        return HubProperties.getProperty("spoke.replicationFactor", 0);
+    }
+
+    static int getOwners() {
+        int replicationFactor = getReplicationFactor();
+        return replicationFactor > 0 ? replicationFactor : 3;
+    }
 }
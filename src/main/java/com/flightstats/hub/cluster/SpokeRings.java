@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
@@ -74,6 +75,9 @@ public class SpokeRings implements Ring, Comparable<SpokeRings> {
 
     @Override
     public Set<String> getServers(String channel) {
+        if (spokeRings.isEmpty()) {
+            return Collections.emptySet();
+        }
         return spokeRings.getLast().getServers(channel);
     }
 
@@ -1,21 +1,37 @@
 package com.flightstats.hub.dao;
 
+import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.cluster.ChangeFeed;
 import com.flightstats.hub.cluster.WatchManager;
 import com.flightstats.hub.cluster.Watcher;
 import com.flightstats.hub.model.NamedType;
-import com.google.common.util.concurrent.AbstractIdleService;
+import com.flightstats.hub.util.Sleeper;
+import com.google.common.util.concurrent.AbstractScheduledService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.api.CuratorEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches every item of the delegate, and keeps the cache current with a {@link ChangeFeed}.
+ * <p>
+ * Each write publishes the changed name, and each hub reads only the changed items, instead of reading them all.
+ * The cache is an immutable snapshot, replaced on each change.  Everything is read again every
+ * dao.reconcileMinutes, or when a hub falls behind the feed.
+ * <p>
+ * The first read is tried dao.loadAttempts times, and the hub fails to start if it can't be made.
+ * Until it is made, the cache is not used for reading every item.
+ */
 public class CachedDao<T extends NamedType> implements Dao<T> {
 
     private final static Logger logger = LoggerFactory.getLogger(CachedDao.class);
@@ -23,36 +39,50 @@ public class CachedDao<T extends NamedType> implements Dao<T> {
     private final Dao<T> delegate;
     private final String path;
     private final WatchManager watchManager;
-    private ConcurrentMap<String, T> cacheMap = new ConcurrentHashMap<>();
+    private final ChangeFeed changeFeed;
+    private final int reconcileMinutes = HubProperties.getProperty("dao.reconcileMinutes", 15);
+    private final int loadAttempts = HubProperties.getProperty("dao.loadAttempts", 10);
+    private volatile Map<String, T> cacheMap = Collections.emptyMap();
+    private volatile boolean loaded;
+    private final Object updateLock = new Object();
+    private long version = -1;
     private ExecutorService executor = Executors.newSingleThreadExecutor(
             new ThreadFactoryBuilder().setNameFormat("cachedDao-%d").build());
 
-    public CachedDao(Dao<T> delegate, WatchManager watchManager, String path) {
+    public CachedDao(Dao<T> delegate, WatchManager watchManager, CuratorFramework curator, String path) {
         this.delegate = delegate;
         this.watchManager = watchManager;
         this.path = path;
+        this.changeFeed = new ChangeFeed(curator, path, HubProperties.getProperty("dao.changes", 1000));
         HubServices.register(new CachedDaoService());
     }
 
+    /**
+     * @return the name used by the delegate and the cache
+     */
+    protected String key(String name) {
+        return name;
+    }
+
     @Override
     public void upsert(T t) {
         delegate.upsert(t);
-        cacheMap.put(t.getName(), t);
-        notifyWatchers();
+        put(t);
+        publish(t.getName());
     }
 
     @Override
     public T get(String name) {
-        T t = delegate.get(name);
+        T t = delegate.get(key(name));
         if (null != t) {
-            cacheMap.put(name, t);
+            put(t);
         }
         return t;
     }
 
     @Override
     public T getCached(String name) {
-        T t = cacheMap.get(name);
+        T t = cacheMap.get(key(name));
         if (t != null) {
             return t;
         }
@@ -61,46 +91,109 @@ public class CachedDao<T extends NamedType> implements Dao<T> {
 
     @Override
     public Collection<T> getAll(boolean useCache) {
-        if (useCache) {
+        if (useCache && loaded) {
             return cacheMap.values();
         }
         return delegate.getAll(false);
     }
 
-    private void updateMap() {
-        logger.trace("updating map {}", cacheMap.keySet());
-        ConcurrentMap<String, T> newMap = new ConcurrentHashMap<>();
-        Iterable<T> items = delegate.getAll(false);
-        for (T named : items) {
-            newMap.put(named.getName(), named);
+    @Override
+    public void delete(String name) {
+        delegate.delete(key(name));
+        remove(key(name));
+        publish(name);
+    }
+
+    private synchronized void put(T t) {
+        Map<String, T> newMap = new HashMap<>(cacheMap);
+        newMap.put(key(t.getName()), t);
+        cacheMap = Collections.unmodifiableMap(newMap);
+    }
+
+    private synchronized void remove(String key) {
+        if (cacheMap.containsKey(key)) {
+            Map<String, T> newMap = new HashMap<>(cacheMap);
+            newMap.remove(key);
+            cacheMap = Collections.unmodifiableMap(newMap);
         }
-        cacheMap = newMap;
-        logger.trace("updated map {}", newMap.keySet());
     }
 
+    private void publish(String name) {
+        changeFeed.publish(key(name));
+        watchManager.notifyWatcher(path);
+    }
+
+    /**
+     * Reads each item changed since the last version.
+     */
     @Override
-    public void delete(String name) {
-        delegate.delete(name);
-        cacheMap.remove(name);
-        notifyWatchers();
+    public void update() {
+        synchronized (updateLock) {
+            ChangeFeed.Changes changes = changeFeed.getChanges(version);
+            if (changes == null) {
+                logger.info("reloading {} after missing changes since {}", path, version);
+                reload();
+                return;
+            }
+            logger.trace("updating {} {}", path, changes.getNames());
+            for (String name : changes.getNames()) {
+                T t = delegate.get(name);
+                if (t == null) {
+                    remove(name);
+                } else {
+                    put(t);
+                }
+            }
+            version = changes.getVersion();
+        }
     }
 
-    private void notifyWatchers() {
-        watchManager.notifyWatcher(path);
+    private void reload() {
+        synchronized (updateLock) {
+            long latest = changeFeed.getVersion();
+            Map<String, T> newMap = new HashMap<>();
+            for (T named : delegate.getAll(false)) {
+                newMap.put(key(named.getName()), named);
+            }
+            synchronized (this) {
+                cacheMap = Collections.unmodifiableMap(newMap);
+            }
+            loaded = true;
+            version = latest;
+            logger.debug("reloaded {} {} at version {}", path, newMap.size(), latest);
+        }
     }
 
     @Override
     public boolean refresh() {
-        updateMap();
+        reload();
         return true;
     }
 
+    /**
+     * Waits longer after each failed attempt, and throws once loadAttempts have failed.
+     */
+    private void load() {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                reload();
+                return;
+            } catch (Exception e) {
+                if (attempt >= loadAttempts) {
+                    throw new RuntimeException("unable to load " + path + " after " + attempt + " attempts", e);
+                }
+                logger.warn("unable to load " + path + ", attempt " + attempt, e);
+                Sleeper.sleep(TimeUnit.SECONDS.toMillis(attempt));
+            }
+        }
+    }
+
     private void startWatcher() {
         CachedDao dao = this;
         watchManager.register(new Watcher() {
             @Override
             public void callback(CuratorEvent event) {
-                executor.submit(dao::updateMap);
+                executor.submit(dao::update);
             }
 
             @Override
@@ -110,16 +203,26 @@ public class CachedDao<T extends NamedType> implements Dao<T> {
         });
     }
 
-    private class CachedDaoService extends AbstractIdleService {
+    private class CachedDaoService extends AbstractScheduledService {
 
         @Override
         protected void startUp() throws Exception {
+            load();
             startWatcher();
         }
 
         @Override
-        protected void shutDown() throws Exception {
-            //do nothing
+        protected void runOneIteration() throws Exception {
+            try {
+                reload();
+            } catch (Exception e) {
+                logger.warn("unable to reload " + path, e);
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(reconcileMinutes, reconcileMinutes, TimeUnit.MINUTES);
         }
     }
 }
@@ -0,0 +1,145 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.ContentKey;
+import com.google.inject.Singleton;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Tells subscribers about the keys written to a channel, on any hub, soon after they are written.
+ * <p>
+ * Subscriptions are only offered once a source of every write has called {@link #complete},
+ * and each covers the keys from its start time on, up to the time the source has heard from every hub.
+ * A subscription which misses keys, because its queue was full or the source missed them, is marked with a gap.
+ */
+@Singleton
+public class ChannelKeyNotifier {
+
+    private final static Logger logger = LoggerFactory.getLogger(ChannelKeyNotifier.class);
+
+    private final boolean enabled = HubProperties.getProperty("webhook.notify", true);
+    private final long marginMillis = HubProperties.getProperty("webhook.notify.marginMillis", 1000);
+    private final long stableMillis = TimeUnit.SECONDS.toMillis(HubProperties.getProperty("app.stable_seconds", 5));
+    private final ConcurrentHashMap<String, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private volatile long completeMillis = Long.MAX_VALUE;
+    private volatile LongSupplier heardMillis = () -> Long.MAX_VALUE;
+
+    /**
+     * Called by a source which notifies each write as it is made, once every key written after fromMillis will be notified.
+     */
+    public void complete(long fromMillis) {
+        complete(fromMillis, () -> Long.MAX_VALUE);
+    }
+
+    /**
+     * Called by the source of writes, once every key written after fromMillis will be notified.
+     *
+     * @param heardMillis the time which the source has received every hub's writes to.
+     */
+    public void complete(long fromMillis, LongSupplier heardMillis) {
+        this.heardMillis = heardMillis;
+        completeMillis = fromMillis;
+    }
+
+    public void notify(String channel, Collection<ContentKey> keys) {
+        Set<Subscription> channelSubscriptions = subscriptions.get(channel.toLowerCase());
+        if (channelSubscriptions == null) {
+            return;
+        }
+        for (Subscription subscription : channelSubscriptions) {
+            for (ContentKey key : keys) {
+                if (!subscription.queue.offer(key)) {
+                    logger.debug("full subscription {}", channel);
+                    subscription.gap = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the source of writes when keys may have been missed.
+     */
+    public void gap() {
+        for (Set<Subscription> channelSubscriptions : subscriptions.values()) {
+            for (Subscription subscription : channelSubscriptions) {
+                subscription.gap = true;
+            }
+        }
+    }
+
+    /**
+     * @return a subscription to the channel's keys, or null if notifications are not available.
+     */
+    public Subscription subscribe(String channel, int capacity) {
+        if (!enabled || completeMillis == Long.MAX_VALUE) {
+            return null;
+        }
+        long startMillis = Math.max(completeMillis, System.currentTimeMillis()) + marginMillis;
+        Subscription subscription = new Subscription(channel.toLowerCase(), new DateTime(startMillis), capacity);
+        subscriptions.computeIfAbsent(subscription.channel, name -> ConcurrentHashMap.newKeySet()).add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.channel, (name, channelSubscriptions) -> {
+            channelSubscriptions.remove(subscription);
+            return channelSubscriptions.isEmpty() ? null : channelSubscriptions;
+        });
+    }
+
+    /**
+     * @return the time which notifications are complete to, given the stable time of the channel.
+     */
+    public DateTime getStable(DateTime stable) {
+        return stable.minus(marginMillis);
+    }
+
+    /**
+     * Writes take up to app.stable_seconds to reach the source, so keys before end are only all notified
+     * once the source has heard from every hub that long after end.
+     *
+     * @return true if every key before end has been notified, unless a subscription has a gap.
+     */
+    public boolean covers(DateTime end) {
+        return end.getMillis() + stableMillis <= heardMillis.getAsLong();
+    }
+
+    public static class Subscription {
+        private final String channel;
+        private final DateTime start;
+        private final BlockingQueue<ContentKey> queue;
+        private volatile boolean gap;
+
+        private Subscription(String channel, DateTime start, int capacity) {
+            this.channel = channel;
+            this.start = start;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * Every key with a time at or after start is notified, unless there is a gap.
+         */
+        public DateTime getStart() {
+            return start;
+        }
+
+        public boolean hasGap() {
+            return gap;
+        }
+
+        public void drainTo(Collection<ContentKey> keys) {
+            queue.drainTo(keys);
+        }
+    }
+}
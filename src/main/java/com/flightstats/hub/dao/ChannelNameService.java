@@ -76,6 +76,11 @@ public class ChannelNameService implements ChannelService {
         return delegate.get(itemRequest.withChannel(getDisplayName(itemRequest.getChannel())));
     }
 
+    @Override
+    public Optional<Content> getMetadata(ItemRequest itemRequest) {
+        return delegate.getMetadata(itemRequest.withChannel(getDisplayName(itemRequest.getChannel())));
+    }
+
     @Override
     public void get(StreamResults streamResults) {
         delegate.get(streamResults.withChannel(getDisplayName(streamResults.getChannel())));
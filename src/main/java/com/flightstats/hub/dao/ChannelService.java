@@ -43,6 +43,17 @@ public interface ChannelService {
 
     Optional<Content> get(ItemRequest itemRequest);
 
+    /**
+     * @return the item's content type and size, without its payload where possible.
+     */
+    default Optional<Content> getMetadata(ItemRequest itemRequest) {
+        Optional<Content> content = get(itemRequest);
+        if (content.isPresent()) {
+            content.get().close();
+        }
+        return content;
+    }
+
     void get(StreamResults streamResults);
 
     ChannelConfig getChannelConfig(String channelName, boolean allowChannelCache);
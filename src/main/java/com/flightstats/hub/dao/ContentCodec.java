@@ -0,0 +1,86 @@
+package com.flightstats.hub.dao;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * How {@link ContentMarshaller} compresses a channel's payloads.
+ * <p>
+ * The deflate codecs and NONE only change the level of the zip, so any zip reader can read them.
+ * LZ4 writes LZ4 blocks into an uncompressed zip entry, and is named in the item's metadata.
+ */
+public enum ContentCodec {
+
+    DEFLATE(Deflater.BEST_COMPRESSION),
+    DEFLATE_FAST(Deflater.BEST_SPEED),
+    NONE(Deflater.NO_COMPRESSION),
+    LZ4(Deflater.NO_COMPRESSION) {
+        @Override
+        OutputStream encode(OutputStream output) {
+            return new LZ4BlockOutputStream(output, LZ4_BLOCK_BYTES, LZ4Factory.fastestInstance().fastCompressor());
+        }
+
+        @Override
+        void finish(OutputStream encoded) throws IOException {
+            ((LZ4BlockOutputStream) encoded).finish();
+        }
+
+        @Override
+        InputStream decode(InputStream input) {
+            return new LZ4BlockInputStream(input, LZ4Factory.fastestInstance().fastDecompressor());
+        }
+    };
+
+    private static final int LZ4_BLOCK_BYTES = 64 * 1024;
+
+    private final int zipLevel;
+
+    ContentCodec(int zipLevel) {
+        this.zipLevel = zipLevel;
+    }
+
+    int getZipLevel() {
+        return zipLevel;
+    }
+
+    OutputStream encode(OutputStream output) {
+        return output;
+    }
+
+    /**
+     * Writes anything buffered by {@link #encode(OutputStream)}, without closing the output.
+     */
+    void finish(OutputStream encoded) throws IOException {
+        encoded.flush();
+    }
+
+    InputStream decode(InputStream input) {
+        return input;
+    }
+
+    /**
+     * @return DEFLATE for a blank name.
+     */
+    public static ContentCodec fromName(String name) {
+        if (StringUtils.isBlank(name)) {
+            return DEFLATE;
+        }
+        return valueOf(StringUtils.upperCase(StringUtils.trim(name)));
+    }
+
+    public static boolean isValid(String name) {
+        try {
+            fromName(name);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+}
@@ -8,11 +8,13 @@ import com.flightstats.hub.exception.ContentTooLargeException;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
 import com.google.common.io.ByteStreams;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.zip.Deflater;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -24,28 +26,125 @@ public class ContentMarshaller {
 
     public static byte[] toBytes(Content content) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ZipOutputStream zipOut = new ZipOutputStream(baos);
-        zipOut.setLevel(Deflater.BEST_COMPRESSION);
+        toStream(content, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Writes the marshalled content to the output, which is left open.
+     * The payload is compressed with the content's {@link ContentCodec}.
+     */
+    public static void toStream(Content content, OutputStream output) throws IOException {
+        ContentCodec codec = content.getCodec();
+        ZipOutputStream zipOut = new ZipOutputStream(new CloseShieldOutputStream(output));
+        zipOut.setLevel(codec.getZipLevel());
         zipOut.putNextEntry(new ZipEntry("meta"));
-        String meta = getMetaData(content);
+        String meta = getMetaData(content, codec);
         zipOut.write(meta.getBytes());
         zipOut.putNextEntry(new ZipEntry("payload"));
-        long bytesCopied = ByteStreams.copy(content.getStream(), zipOut);
+        OutputStream payload = codec.encode(new CloseShieldOutputStream(zipOut));
+        long bytesCopied = ByteStreams.copy(content.getStream(), payload);
+        codec.finish(payload);
         if (bytesCopied > maxBytes) {
             throw new ContentTooLargeException("max payload size is " + maxBytes + " bytes");
         }
         content.setSize(bytesCopied);
         zipOut.setComment("" + bytesCopied);
         zipOut.close();
-        return baos.toByteArray();
     }
 
     public static String getMetaData(Content content) {
+        return getMetaNode(content).toString();
+    }
+
+    /**
+     * Items written with the default codec have no codec in their metadata, the same as items written before codecs.
+     */
+    private static String getMetaData(Content content, ContentCodec codec) {
+        ObjectNode objectNode = getMetaNode(content);
+        if (!codec.equals(ContentCodec.DEFLATE)) {
+            objectNode.put("codec", codec.name());
+        }
+        return objectNode.toString();
+    }
+
+    private static ObjectNode getMetaNode(Content content) {
         ObjectNode objectNode = mapper.createObjectNode();
         if (content.getContentType().isPresent()) {
             objectNode.put("contentType", content.getContentType().get());
         }
-        return objectNode.toString();
+        return objectNode;
+    }
+
+    /**
+     * Reads the zip as a stream, the payload is not read until the Content's stream is.
+     *
+     * @return null if the stream is empty
+     */
+    public static Content toContent(InputStream read, ContentKey key, Long size) throws IOException {
+        ZipInputStream zipStream = new ZipInputStream(read);
+        if (zipStream.getNextEntry() == null) {
+            zipStream.close();
+            return null;
+        }
+        byte[] bytes = ByteStreams.toByteArray(zipStream);
+        Content.Builder builder = Content.builder().withContentKey(key);
+        setMetaData(new String(bytes), builder);
+        zipStream.getNextEntry();
+        return builder.withSize(size).withStream(builder.getCodec().decode(zipStream)).build();
+    }
+
+    /**
+     * @param tail the last bytes of a marshalled item, which contain the zip comment
+     * @return the uncompressed size of the item, or null
+     */
+    public static Long getSize(byte[] tail) {
+        if (tail.length < 31) {
+            return null;
+        }
+        String comment = ZipComment.getZipCommentFromBuffer(tail);
+        try {
+            return comment == null ? null : Long.parseLong(comment);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads an item's metadata without its payload.
+     *
+     * @param head the first bytes of a marshalled item, which contain the meta entry
+     * @param tail the last bytes of a marshalled item, which contain the zip comment
+     * @return the meta entry, with the uncompressed size when it is known, or null if head doesn't hold the meta entry
+     */
+    public static String readMetaData(byte[] head, byte[] tail) {
+        try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(head))) {
+            ZipEntry entry = zipStream.getNextEntry();
+            if (entry == null || !entry.getName().equals("meta")) {
+                return null;
+            }
+            ObjectNode objectNode = (ObjectNode) mapper.readTree(ByteStreams.toByteArray(zipStream));
+            Long size = getSize(tail);
+            if (size != null) {
+                objectNode.put("size", size);
+            }
+            return objectNode.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return an item without a payload, from {@link #readMetaData}
+     */
+    public static Content toMetadata(String metaData, ContentKey key) throws IOException {
+        Content.Builder builder = Content.builder().withContentKey(key);
+        setMetaData(metaData, builder);
+        JsonNode jsonNode = mapper.readTree(metaData);
+        if (jsonNode.has("size")) {
+            builder.withSize(jsonNode.get("size").asLong());
+        }
+        return builder.build();
     }
 
     public static Content toContent(byte[] read, ContentKey key) throws IOException {
@@ -59,7 +158,7 @@ public class ContentMarshaller {
         if (comment != null) {
             builder.withSize(Long.parseLong(comment));
         }
-        return builder.withStream(zipStream).build();
+        return builder.withStream(builder.getCodec().decode(zipStream)).build();
     }
 
     public static void setMetaData(String metaData, Content.Builder builder) throws IOException {
@@ -67,5 +166,8 @@ public class ContentMarshaller {
         if (jsonNode.has("contentType")) {
             builder.withContentType(jsonNode.get("contentType").asText());
         }
+        if (jsonNode.has("codec")) {
+            builder.withCodec(ContentCodec.fromName(jsonNode.get("codec").asText()));
+        }
     }
 }
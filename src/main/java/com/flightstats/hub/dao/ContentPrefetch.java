@@ -0,0 +1,244 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.metrics.ActiveTraces;
+import com.flightstats.hub.metrics.Traces;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.util.RuntimeInterruptedException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Fetches items ahead of the caller, and hands them to the callback in the order they were requested.
+ * <p>
+ * Up to app.prefetchWindow fetches run at once.  Once the first fetch completes, the average size of a fetch is reserved
+ * for each further fetch from a {@link Budget} of app.prefetchMB, which is shared by every read in the process,
+ * so concurrent slow readers together only hold that much in memory.  A reader's next item is always fetched,
+ * even when the budget is spent, so every reader makes progress.
+ * Payloads are read into memory by the fetching thread, except for large items, which are left as streams.
+ */
+public class ContentPrefetch {
+
+    private final static Logger logger = LoggerFactory.getLogger(ContentPrefetch.class);
+
+    private static final int THREADS = HubProperties.getProperty("app.prefetchThreads", 64);
+    private static final int WINDOW = HubProperties.getProperty("app.prefetchWindow", 16);
+    private static final Budget BUDGET = new Budget(HubProperties.getProperty("app.prefetchMB", 32) * 1024L * 1024L);
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactoryBuilder().setNameFormat("ContentPrefetch-%d").setDaemon(true).build());
+
+    private final int window;
+    private final Budget budget;
+    private final ExecutorService executor;
+
+    public ContentPrefetch() {
+        this(WINDOW, BUDGET, executorService);
+    }
+
+    ContentPrefetch(int window, long maxBytes, ExecutorService executor) {
+        this(window, new Budget(maxBytes), executor);
+    }
+
+    ContentPrefetch(int window, Budget budget, ExecutorService executor) {
+        this.window = Math.max(1, window);
+        this.budget = budget;
+        this.executor = executor;
+    }
+
+    /**
+     * @param requests in the order their items are delivered
+     * @param fetcher  is called concurrently, and returns the items for one request, in order
+     * @param callback is called on the calling thread
+     */
+    public <T> void fetch(List<T> requests, Function<T, Collection<Content>> fetcher, Consumer<Content> callback) {
+        fetch(requests, fetcher, (request, content) -> callback.accept(content));
+    }
+
+    /**
+     * As {@link #fetch(List, Function, Consumer)}, with the request of each item passed to the callback.
+     */
+    public <T> void fetch(List<T> requests, Function<T, Collection<Content>> fetcher, BiConsumer<T, Content> callback) {
+        if (requests.size() == 1) {
+            T request = requests.get(0);
+            fetcher.apply(request).forEach(content -> callback.accept(request, content));
+            return;
+        }
+        Traces traces = ActiveTraces.getLocal();
+        Progress progress = new Progress();
+        Deque<Pending<T>> pending = new ArrayDeque<>();
+        Iterator<T> iterator = requests.iterator();
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < window) {
+                    Reservation reservation = pending.isEmpty() ? new Reservation(0) : progress.reserve();
+                    if (reservation == null) {
+                        break;
+                    }
+                    T request = iterator.next();
+                    pending.add(new Pending<>(reservation, executor.submit(() -> {
+                        ActiveTraces.setLocal(traces);
+                        try {
+                            return load(request, fetcher.apply(request), progress, reservation);
+                        } finally {
+                            ActiveTraces.setLocal(null);
+                        }
+                    })));
+                }
+                Pending<T> next = pending.removeFirst();
+                Fetched<T> fetched;
+                try {
+                    fetched = next.future.get();
+                } finally {
+                    next.reservation.release();
+                }
+                for (Content content : fetched.items) {
+                    callback.accept(fetched.request, content);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            for (Pending<T> remaining : pending) {
+                remaining.future.cancel(true);
+                remaining.reservation.release();
+            }
+        }
+    }
+
+    private <T> Fetched<T> load(T request, Collection<Content> items, Progress progress, Reservation reservation) {
+        long bytes = 0;
+        for (Content content : items) {
+            if (!content.isLarge()) {
+                byte[] data = content.getData();
+                if (data != null) {
+                    bytes += data.length;
+                }
+            }
+        }
+        progress.fetched(bytes);
+        reservation.resize(bytes);
+        logger.trace("fetched {} items {} bytes", items.size(), bytes);
+        return new Fetched<>(request, items);
+    }
+
+    /**
+     * Bytes fetched or being fetched, in memory until the reader takes them.
+     */
+    static class Budget {
+        private final long maxBytes;
+        private final AtomicLong used = new AtomicLong();
+
+        Budget(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        boolean tryAcquire(long bytes) {
+            while (true) {
+                long current = used.get();
+                if (current + bytes > maxBytes) {
+                    return false;
+                }
+                if (used.compareAndSet(current, current + bytes)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Unlike {@link #tryAcquire(long)}, this may go over the budget, for a reader's next item.
+         */
+        void add(long bytes) {
+            used.addAndGet(bytes);
+        }
+
+        long getUsed() {
+            return used.get();
+        }
+    }
+
+    /**
+     * The bytes of one fetch held in the {@link Budget}, first the estimate, then the fetched size.
+     */
+    private class Reservation {
+        private long bytes;
+        private boolean released;
+
+        Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        synchronized void resize(long fetched) {
+            if (!released) {
+                budget.add(fetched - bytes);
+                bytes = fetched;
+            }
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                budget.add(-bytes);
+            }
+        }
+    }
+
+    private class Progress {
+        private final AtomicLong fetchedBytes = new AtomicLong();
+        private final AtomicLong fetchedRequests = new AtomicLong();
+
+        void fetched(long bytes) {
+            fetchedBytes.addAndGet(bytes);
+            fetchedRequests.incrementAndGet();
+        }
+
+        /**
+         * @return the average fetch reserved from the budget, or null if it doesn't fit, or no fetch has completed
+         */
+        Reservation reserve() {
+            long requests = fetchedRequests.get();
+            if (requests == 0) {
+                return null;
+            }
+            long average = fetchedBytes.get() / requests;
+            if (budget.tryAcquire(average)) {
+                return new Reservation(average);
+            }
+            return null;
+        }
+    }
+
+    private static class Pending<T> {
+        private final Reservation reservation;
+        private final Future<Fetched<T>> future;
+
+        Pending(Reservation reservation, Future<Fetched<T>> future) {
+            this.reservation = reservation;
+            this.future = future;
+        }
+    }
+
+    private static class Fetched<T> {
+        private final T request;
+        private final Collection<Content> items;
+
+        Fetched(T request, Collection<Content> items) {
+            this.request = request;
+            this.items = items;
+        }
+    }
+}
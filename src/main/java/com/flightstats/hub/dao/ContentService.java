@@ -15,6 +15,17 @@ public interface ContentService {
 
     Optional<Content> get(String channelName, ContentKey key, boolean cached);
 
+    /**
+     * @return the item's content type and size, reading its payload only if there is no other way.
+     */
+    default Optional<Content> getMetadata(String channelName, ContentKey key, boolean cached) {
+        Optional<Content> content = get(channelName, key, cached);
+        if (content.isPresent()) {
+            content.get().close();
+        }
+        return content;
+    }
+
     void get(StreamResults streamResults);
 
     Collection<ContentKey> queryByTime(TimeQuery timeQuery);
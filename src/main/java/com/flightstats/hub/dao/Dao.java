@@ -25,4 +25,10 @@ public interface Dao<T extends NamedType> {
     default boolean refresh() {
         return false;
     }
+
+    /**
+     * Applies the changes made on other hubs to a cached Dao, so getAll(true) is current.
+     */
+    default void update() {
+    }
 }
@@ -4,6 +4,7 @@ import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.InFlightService;
 import com.flightstats.hub.channel.ChannelValidator;
 import com.flightstats.hub.cluster.LastContentPath;
+import com.flightstats.hub.cluster.LastContentPathCoalescer;
 import com.flightstats.hub.dao.aws.MultiPartParser;
 import com.flightstats.hub.exception.*;
 import com.flightstats.hub.metrics.ActiveTraces;
@@ -48,6 +49,8 @@ public class LocalChannelService implements ChannelService {
     @Inject
     private LastContentPath lastContentPath;
     @Inject
+    private LastContentPathCoalescer lastContentPathCoalescer;
+    @Inject
     private InFlightService inFlightService;
     @Inject
     private TimeService timeService;
@@ -115,6 +118,7 @@ public class LocalChannelService implements ChannelService {
             Traces traces = ActiveTraces.getLocal();
             traces.add("ContentService.insert");
             try {
+                content.setCodec(ContentCodec.fromName(channelConfig.getCodec()));
                 content.packageStream();
                 checkZeroBytes(content, channelConfig);
                 traces.add("ContentService.insert marshalled");
@@ -149,6 +153,7 @@ public class LocalChannelService implements ChannelService {
             throw new InvalidRequestException(msg);
         }
         boolean insert = inFlightService.inFlight(() -> {
+            content.setCodec(ContentCodec.fromName(channelConfig.getCodec()));
             content.packageStream();
             checkZeroBytes(content, channelConfig);
             return contentService.historicalInsert(channelName, content);
@@ -173,10 +178,11 @@ public class LocalChannelService implements ChannelService {
         long start = System.currentTimeMillis();
         Collection<ContentKey> contentKeys = inFlightService.inFlight(() -> {
             MultiPartParser multiPartParser = new MultiPartParser(bulkContent);
-            multiPartParser.parse();
+            ContentCodec codec = ContentCodec.fromName(getCachedChannelConfig(channel).getCodec());
+            multiPartParser.stream(content -> content.setCodec(codec));
             return contentService.insert(bulkContent);
         });
-        metricsService.insert(channel, start, Insert.bulk, bulkContent.getItems().size(), bulkContent.getSize());
+        metricsService.insert(channel, start, Insert.bulk, bulkContent.getItemCount(), bulkContent.getSize());
         return contentKeys;
     }
 
@@ -244,6 +250,15 @@ public class LocalChannelService implements ChannelService {
         return contentService.get(itemRequest.getChannel(), itemRequest.getKey(), itemRequest.isRemoteOnly());
     }
 
+    @Override
+    public Optional<Content> getMetadata(ItemRequest itemRequest) {
+        DateTime limitTime = getChannelLimitTime(itemRequest.getChannel()).minusMinutes(15);
+        if (itemRequest.getKey().getTime().isBefore(limitTime)) {
+            return Optional.absent();
+        }
+        return contentService.getMetadata(itemRequest.getChannel(), itemRequest.getKey(), itemRequest.isRemoteOnly());
+    }
+
     @Override
     public ChannelConfig getChannelConfig(String channelName, boolean allowChannelCache) {
         if (allowChannelCache) {
@@ -263,7 +278,7 @@ public class LocalChannelService implements ChannelService {
 
     @Override
     public Collection<ChannelConfig> getChannels() {
-        return getChannels(false);
+        return getChannels(true);
     }
 
     private Collection<ChannelConfig> getChannels(boolean useCache) {
@@ -379,6 +394,7 @@ public class LocalChannelService implements ChannelService {
         channelConfigDao.delete(channelConfig.getDisplayName());
         if (channelConfig.isReplicating()) {
             replicationGlobalManager.notifyWatchers();
+            lastContentPathCoalescer.discard(channelName, REPLICATED_LAST_UPDATED);
             lastContentPath.delete(channelName, REPLICATED_LAST_UPDATED);
         }
 
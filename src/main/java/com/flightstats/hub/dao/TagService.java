@@ -1,26 +1,40 @@
 package com.flightstats.hub.dao;
 
+import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.channel.ChannelEarliestResource;
+import com.flightstats.hub.exception.FailedQueryException;
 import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.*;
+import com.flightstats.hub.util.RuntimeInterruptedException;
+import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 
+/**
+ * Queries a tag by querying its channels concurrently, on a pool sized by the number of cores,
+ * and merging their keys.
+ */
 @Singleton
 public class TagService {
     private final static Logger logger = LoggerFactory.getLogger(TagService.class);
 
+    private static final int THREADS = HubProperties.getProperty("app.tagQueryThreads",
+            Math.max(8, Runtime.getRuntime().availableProcessors() * 4));
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactoryBuilder().setNameFormat("TagService-%d").setDaemon(true).build());
+
+    private final int querySeconds = HubProperties.getProperty("app.tagQuerySeconds", 60);
+
     @Inject
     private ChannelService channelService;
 
@@ -33,74 +47,170 @@ public class TagService {
     }
 
     public SortedSet<ChannelContentKey> queryByTime(TimeQuery timeQuery) {
-        Iterable<ChannelConfig> channels = getChannels(timeQuery.getTagName());
-        SortedSet<ChannelContentKey> orderedKeys = Collections.synchronizedSortedSet(new TreeSet<>());
-        for (ChannelConfig channel : channels) {
-            Collection<ContentKey> contentKeys = channelService.queryByTime(timeQuery.withChannelName(channel.getDisplayName()));
-            for (ContentKey contentKey : contentKeys) {
-                orderedKeys.add(new ChannelContentKey(channel.getDisplayName(), contentKey));
+        DateTime startTime = timeQuery.getStartTime();
+        DateTime endTime = timeQuery.getUnit().equals(TimeUtil.Unit.MONTHS)
+                ? startTime.plusMonths(1) : startTime.plus(timeQuery.getUnit().getDuration());
+        List<ChannelKeys> results = queryChannels(timeQuery.getTagName(), channel -> {
+            if (isBeforeTtl(channel, endTime)) {
+                return null;
+            }
+            return channelService.queryByTime(timeQuery.withChannelName(channel.getDisplayName()));
+        });
+        SortedSet<ChannelContentKey> orderedKeys = new TreeSet<>();
+        for (ChannelKeys result : results) {
+            for (ContentKey contentKey : result.keys) {
+                orderedKeys.add(new ChannelContentKey(result.channel, contentKey));
             }
         }
         return orderedKeys;
     }
 
     public SortedSet<ChannelContentKey> getKeys(DirectionQuery query) {
-        Iterable<ChannelConfig> channels = getChannels(query.getTagName());
-        SortedSet<ChannelContentKey> orderedKeys = Collections.synchronizedSortedSet(new TreeSet<>());
         Traces traces = ActiveTraces.getLocal();
-        for (ChannelConfig channel : channels) {
-            traces.add("query for channel", channel.getDisplayName());
+        List<ChannelKeys> results = queryChannels(query.getTagName(), channel -> {
+            if (!query.isNext() && query.getStartKey() != null
+                    && isBeforeTtl(channel, query.getStartKey().getTime())) {
+                return null;
+            }
             Collection<ContentKey> contentKeys = channelService.query(query.withChannelName(channel.getDisplayName()));
             traces.add("query size for channel", channel.getDisplayName(), contentKeys.size());
-            for (ContentKey contentKey : contentKeys) {
-                orderedKeys.add(new ChannelContentKey(channel.getDisplayName(), contentKey));
-            }
-        }
-
-        Stream<ChannelContentKey> stream = orderedKeys.stream();
-        if (!query.isNext()) {
-            Collection<ChannelContentKey> contentKeys = new TreeSet<>(Collections.reverseOrder());
-            contentKeys.addAll(orderedKeys);
-            stream = contentKeys.stream();
-        }
-
-        return stream
-                .limit(query.getCount())
-                .collect(Collectors.toCollection(TreeSet::new));
+            return contentKeys;
+        });
+        return merge(results, query.getCount(), query.isNext());
     }
 
     public Optional<ChannelContentKey> getLatest(DirectionQuery tagQuery) {
-        Iterable<ChannelConfig> channels = getChannels(tagQuery.getTagName());
-        SortedSet<ChannelContentKey> orderedKeys = Collections.synchronizedSortedSet(new TreeSet<>());
-        for (ChannelConfig channel : channels) {
+        List<ChannelKeys> results = queryChannels(tagQuery.getTagName(), channel -> {
             Optional<ContentKey> contentKey = channelService.getLatest(tagQuery.withChannelName(channel.getDisplayName()));
-            if (contentKey.isPresent()) {
-                orderedKeys.add(new ChannelContentKey(channel.getDisplayName(), contentKey.get()));
-            }
-        }
-        if (orderedKeys.isEmpty()) {
+            return contentKey.isPresent() ? Collections.singletonList(contentKey.get()) : null;
+        });
+        SortedSet<ChannelContentKey> latest = merge(results, 1, false);
+        if (latest.isEmpty()) {
             return Optional.absent();
         } else {
-            return Optional.of(orderedKeys.last());
+            return Optional.of(latest.last());
         }
     }
 
     public SortedSet<ChannelContentKey> getEarliest(DirectionQuery tagQuery) {
-        Iterable<ChannelConfig> channels = getChannels(tagQuery.getTagName());
         Traces traces = ActiveTraces.getLocal();
         traces.add("TagService.getEarliest", tagQuery.getTagName());
-        SortedSet<ChannelContentKey> orderedKeys = Collections.synchronizedSortedSet(new TreeSet<>());
-        for (ChannelConfig channel : channels) {
+        List<ChannelKeys> results = queryChannels(tagQuery.getTagName(), channel -> {
             DirectionQuery query = ChannelEarliestResource.getDirectionQuery(channel.getDisplayName(), tagQuery.getCount(),
                     tagQuery.isStable(), tagQuery.getLocation().name(), tagQuery.getEpoch().name());
-            for (ContentKey contentKey : channelService.query(query)) {
-                orderedKeys.add(new ChannelContentKey(channel.getDisplayName(), contentKey));
-            }
-        }
+            return channelService.query(query);
+        });
+        SortedSet<ChannelContentKey> orderedKeys = merge(results, tagQuery.getCount(), true);
         traces.add("TagService.getEarliest completed", orderedKeys);
         return orderedKeys;
     }
 
+    /**
+     * A channel which is not historical has no items before its ttl.
+     */
+    private boolean isBeforeTtl(ChannelConfig channel, DateTime time) {
+        return !channel.isHistorical() && !channel.getKeepForever() && time.isBefore(channel.getTtlTime());
+    }
+
+    /**
+     * Runs the query for each of the tag's channels on the shared pool, waiting up to app.tagQuerySeconds for all of them.
+     * The query returns null for a channel which can be skipped.
+     */
+    private List<ChannelKeys> queryChannels(String tag, Function<ChannelConfig, Collection<ContentKey>> query) {
+        Traces traces = ActiveTraces.getLocal();
+        List<Future<ChannelKeys>> futures = new ArrayList<>();
+        for (ChannelConfig channel : getChannels(tag)) {
+            futures.add(executorService.submit(() -> {
+                ActiveTraces.setLocal(traces);
+                Collection<ContentKey> keys = query.apply(channel);
+                return keys == null || keys.isEmpty() ? null : new ChannelKeys(channel.getDisplayName(), keys);
+            }));
+        }
+        traces.add("TagService.queryChannels", tag, futures.size());
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(querySeconds);
+        List<ChannelKeys> results = new ArrayList<>();
+        try {
+            for (Future<ChannelKeys> future : futures) {
+                ChannelKeys result = future.get(Math.max(0, end - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeInterruptedException(e);
+        } catch (TimeoutException e) {
+            logger.warn("tag query timed out {}", tag);
+            throw new FailedQueryException("unable to complete query for tag " + tag);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<ChannelKeys> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Merges the channels' keys with a heap, stopping after count keys.
+     *
+     * @return the first count keys in the direction, in ascending order
+     */
+    static SortedSet<ChannelContentKey> merge(List<ChannelKeys> results, int count, boolean ascending) {
+        Comparator<ChannelContentKey> order = ascending ? Comparator.naturalOrder() : Comparator.reverseOrder();
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, results.size()),
+                (first, second) -> order.compare(first.current, second.current));
+        for (ChannelKeys result : results) {
+            List<ContentKey> keys = new ArrayList<>(result.keys);
+            keys.sort(ascending ? Comparator.naturalOrder() : Comparator.reverseOrder());
+            Cursor cursor = new Cursor(result.channel, keys.iterator());
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        SortedSet<ChannelContentKey> merged = new TreeSet<>();
+        while (merged.size() < count && !heap.isEmpty()) {
+            Cursor cursor = heap.poll();
+            merged.add(cursor.current);
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    static class ChannelKeys {
+        private final String channel;
+        private final Collection<ContentKey> keys;
+
+        ChannelKeys(String channel, Collection<ContentKey> keys) {
+            this.channel = channel;
+            this.keys = keys;
+        }
+    }
+
+    private static class Cursor {
+        private final String channel;
+        private final Iterator<ContentKey> keys;
+        private ChannelContentKey current;
+
+        Cursor(String channel, Iterator<ContentKey> keys) {
+            this.channel = channel;
+            this.keys = keys;
+        }
+
+        boolean advance() {
+            if (!keys.hasNext()) {
+                return false;
+            }
+            current = new ChannelContentKey(channel, keys.next());
+            return true;
+        }
+    }
+
     public Optional<Content> getValue(ItemRequest itemRequest) {
         Iterable<ChannelConfig> channels = getChannels(itemRequest.getTag());
         for (ChannelConfig channel : channels) {
@@ -61,6 +61,11 @@ public class ClusterContentService implements ContentService {
     private S3WriteQueue s3WriteQueue;
     @Inject
     private HubUtils hubUtils;
+    @Inject
+    private LatestKeyRegister latestKeyRegister;
+
+    private final int prefetchSpokeItems = HubProperties.getProperty("app.prefetchSpokeItems", 50);
+    private final ContentPrefetch contentPrefetch = new ContentPrefetch();
 
     private static final ExecutorService executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("ClusterContentService-%d").build());
 
@@ -77,6 +82,7 @@ public class ClusterContentService implements ContentService {
             spokeContent = createIndex(content);
         }
         ContentKey key = spokeContentDao.insert(channelName, spokeContent);
+        latestKeyRegister.record(channelName, Collections.singletonList(key));
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         if (channel.isSingle() || channel.isBoth()) {
             Supplier<Void> local = () -> {
@@ -100,6 +106,7 @@ public class ClusterContentService implements ContentService {
     public Collection<ContentKey> insert(BulkContent bulkContent) throws Exception {
         String channelName = bulkContent.getChannel();
         SortedSet<ContentKey> keys = spokeContentDao.insert(bulkContent);
+        latestKeyRegister.record(channelName, keys);
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         if (channel.isSingle() || channel.isBoth()) {
             for (ContentKey key : keys) {
@@ -122,26 +129,56 @@ public class ClusterContentService implements ContentService {
     @Override
     public Optional<Content> get(String channelName, ContentKey key, boolean remoteOnly) {
         logger.trace("fetching {} from channel {} ", key.toString(), channelName);
+        return checkForLargeIndex(channelName, read(channelName, key, remoteOnly, ContentDao::get));
+    }
+
+    /**
+     * Reads only the item's metadata from spoke, single S3 items and S3 batch indexes.  Large items read their index.
+     */
+    @Override
+    public Optional<Content> getMetadata(String channelName, ContentKey key, boolean remoteOnly) {
+        logger.trace("fetching meta {} from channel {} ", key.toString(), channelName);
+        Content content = read(channelName, key, remoteOnly, ContentDao::getMetadata);
+        if (content == null) {
+            return Optional.absent();
+        }
+        if (content.isIndexForLarge()) {
+            Content index = read(channelName, key, remoteOnly, ContentDao::get);
+            if (index == null) {
+                return Optional.absent();
+            }
+            Content largeMeta = fromIndex(index);
+            largeMeta.setContentKey(key);
+            return Optional.of(largeMeta);
+        }
+        return Optional.of(content);
+    }
+
+    private Content read(String channelName, ContentKey key, boolean remoteOnly, ContentReader reader) {
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         if (!remoteOnly && key.getTime().isAfter(getSpokeTtlTime(channelName))) {
-            Content content = spokeContentDao.get(channelName, key);
+            Content content = reader.read(spokeContentDao, channelName, key);
             if (content != null) {
                 logger.trace("returning from spoke {} {}", key.toString(), channelName);
-                return checkForLargeIndex(channelName, content);
+                return content;
             }
         }
         Content content;
         if (channel.isSingle()) {
-            content = s3SingleContentDao.get(channelName, key);
+            content = reader.read(s3SingleContentDao, channelName, key);
         } else if (channel.isBatch()) {
-            content = s3BatchContentDao.get(channelName, key);
+            content = reader.read(s3BatchContentDao, channelName, key);
         } else {
-            content = s3SingleContentDao.get(channelName, key);
+            content = reader.read(s3SingleContentDao, channelName, key);
             if (content == null) {
-                content = s3BatchContentDao.get(channelName, key);
+                content = reader.read(s3BatchContentDao, channelName, key);
             }
         }
-        return checkForLargeIndex(channelName, content);
+        return content;
+    }
+
+    private interface ContentReader {
+        Content read(ContentDao dao, String channelName, ContentKey key);
     }
 
     private Optional<Content> checkForLargeIndex(String channelName, Content content) {
@@ -167,35 +204,86 @@ public class ClusterContentService implements ContentService {
     public void get(StreamResults streamResults) {
         String channelName = streamResults.getChannel();
         Consumer<Content> callback = streamResults.getCallback();
+        boolean descending = streamResults.isDescending();
         List<MinutePath> minutePaths = new ArrayList<>(ContentKeyUtil.convert(streamResults.getKeys()));
-        if (streamResults.isDescending()) {
+        if (descending) {
             Collections.reverse(minutePaths);
         }
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         DateTime spokeTtlTime = getSpokeTtlTime(channelName);
+        List<ContentKey> pending = new ArrayList<>();
         for (MinutePath minutePath : minutePaths) {
             if (minutePath.getTime().isAfter(spokeTtlTime)
                     || channel.isSingle()) {
-                getValues(channelName, streamResults.getCallback(), minutePath, streamResults.isDescending());
+                pending.addAll(getKeys(minutePath, descending));
             } else {
-                if (!s3BatchContentDao.streamMinute(channelName, minutePath, streamResults.isDescending(), callback)) {
-                    getValues(channelName, callback, minutePath, streamResults.isDescending());
+                getValues(channelName, callback, pending, spokeTtlTime);
+                pending.clear();
+                if (!s3BatchContentDao.streamMinute(channelName, minutePath, descending, callback)) {
+                    getValues(channelName, callback, getKeys(minutePath, descending), spokeTtlTime);
                 }
             }
         }
+        getValues(channelName, callback, pending, spokeTtlTime);
     }
 
-    private void getValues(String channelName, Consumer<Content> callback, ContentPathKeys contentPathKeys, boolean descending) {
+    private List<ContentKey> getKeys(ContentPathKeys contentPathKeys, boolean descending) {
         List<ContentKey> keys = new ArrayList<>(contentPathKeys.getKeys());
         if (descending) {
             Collections.reverse(keys);
         }
-        for (ContentKey contentKey : keys) {
-            Optional<Content> contentOptional = get(channelName, contentKey, false);
-            if (contentOptional.isPresent()) {
-                callback.accept(contentOptional.get());
+        return keys;
+    }
+
+    /**
+     * Fetches the keys ahead of the callback with {@link ContentPrefetch}.
+     * Keys still in Spoke are read app.prefetchSpokeItems at a time with one request to a Spoke server.
+     */
+    private void getValues(String channelName, Consumer<Content> callback, List<ContentKey> keys, DateTime spokeTtlTime) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        List<List<ContentKey>> requests = new ArrayList<>();
+        List<ContentKey> spokeKeys = new ArrayList<>();
+        for (ContentKey key : keys) {
+            if (key.getTime().isAfter(spokeTtlTime)) {
+                spokeKeys.add(key);
+                if (spokeKeys.size() >= prefetchSpokeItems) {
+                    requests.add(spokeKeys);
+                    spokeKeys = new ArrayList<>();
+                }
+            } else {
+                if (!spokeKeys.isEmpty()) {
+                    requests.add(spokeKeys);
+                    spokeKeys = new ArrayList<>();
+                }
+                requests.add(Collections.singletonList(key));
+            }
+        }
+        if (!spokeKeys.isEmpty()) {
+            requests.add(spokeKeys);
+        }
+        contentPrefetch.fetch(requests, request -> getValues(channelName, request), callback);
+    }
+
+    private List<Content> getValues(String channelName, List<ContentKey> keys) {
+        Map<ContentKey, Content> spokeContent = Collections.emptyMap();
+        if (keys.size() > 1) {
+            spokeContent = spokeContentDao.get(channelName, keys);
+        }
+        List<Content> values = new ArrayList<>();
+        for (ContentKey key : keys) {
+            Optional<Content> content;
+            if (spokeContent.containsKey(key)) {
+                content = checkForLargeIndex(channelName, spokeContent.get(key));
+            } else {
+                content = get(channelName, key, false);
+            }
+            if (content.isPresent()) {
+                values.add(content.get());
             }
         }
+        return values;
     }
 
     @Override
@@ -205,6 +293,13 @@ public class ClusterContentService implements ContentService {
 
     @Override
     public Collection<ContentKey> queryDirection(DirectionQuery query) {
+        if (!query.isNext() && useLatestRegister(query)) {
+            SortedSet<ContentKey> keys = latestKeyRegister.getPrevious(query.getChannelName(), query.getStartKey(), query.getCount());
+            if (keys != null) {
+                ActiveTraces.getLocal().add("found registered previous", query.getChannelName(), keys.size());
+                return keys;
+            }
+        }
         return handleQuery(query, contentDao -> contentDao.query(query));
     }
 
@@ -272,11 +367,11 @@ public class ClusterContentService implements ContentService {
     @Override
     public Optional<ContentKey> getLatest(DirectionQuery query) {
         if (query.getEpoch().equals(Epoch.IMMUTABLE)) {
-            return getLatestImmutable(query);
+            return getLatestImmutable(query, true);
         } else if (query.getEpoch().equals(Epoch.MUTABLE)) {
             return ContentService.chooseLatest(queryDirection(query), query);
         } else {
-            Optional<ContentKey> latestImmutable = getLatestImmutable(query);
+            Optional<ContentKey> latestImmutable = getLatestImmutable(query, true);
             if (latestImmutable.isPresent()) {
                 return latestImmutable;
             }
@@ -284,7 +379,40 @@ public class ClusterContentService implements ContentService {
         }
     }
 
-    private Optional<ContentKey> getLatestImmutable(DirectionQuery latestQuery) {
+    private boolean useLatestRegister(DirectionQuery query) {
+        if (!latestKeyRegister.isEnabled() || query.getStartKey() == null
+                || !query.getLocation().equals(Location.ALL) || query.getEpoch().equals(Epoch.MUTABLE)) {
+            return false;
+        }
+        return !channelService.getCachedChannelConfig(query.getChannelName()).isHistorical();
+    }
+
+    /**
+     * Answers from the {@link LatestKeyRegister} when it knows the channel,
+     * otherwise asks Spoke, and seeds the register with the answer.
+     */
+    private Optional<ContentKey> getLatestImmutable(DirectionQuery latestQuery, boolean readRegister) {
+        String channel = latestQuery.getChannelName();
+        boolean useRegister = useLatestRegister(latestQuery);
+        if (useRegister && readRegister) {
+            ContentKey registered = latestKeyRegister.getLatest(channel, latestQuery.getStartKey());
+            if (registered != null) {
+                ActiveTraces.getLocal().add("found registered latest", channel, registered);
+                if (registered.equals(ContentKey.NONE)) {
+                    return Optional.absent();
+                }
+                return Optional.of(registered);
+            }
+        }
+        long version = useRegister ? latestKeyRegister.getVersion(channel) : 0;
+        Optional<ContentKey> latest = queryLatestImmutable(latestQuery);
+        if (useRegister) {
+            latestKeyRegister.seed(channel, version, latest, latestQuery.getStartKey());
+        }
+        return latest;
+    }
+
+    private Optional<ContentKey> queryLatestImmutable(DirectionQuery latestQuery) {
         String channel = latestQuery.getChannelName();
         final ChannelConfig cachedChannelConfig = channelService.getCachedChannelConfig(channel);
         DateTime cacheTtlTime = getSpokeTtlTime(channel);
@@ -343,6 +471,7 @@ public class ClusterContentService implements ContentService {
         s3LargePayloadContentDao.delete(channelName);
         lastContentPath.delete(channelName, CHANNEL_LATEST_UPDATED);
         lastContentPath.delete(channelName, S3Verifier.LAST_SINGLE_VERIFIED);
+        latestKeyRegister.invalidate(channelName);
         ChannelConfig channel = channelService.getCachedChannelConfig(channelName);
         if (!channel.isSingle()) {
             new S3Batch(channel, hubUtils).stop();
@@ -353,6 +482,7 @@ public class ClusterContentService implements ContentService {
     public void delete(String channelName, ContentKey contentKey) {
         s3SingleContentDao.delete(channelName, contentKey);
         s3LargePayloadContentDao.delete(channelName, contentKey);
+        latestKeyRegister.invalidate(channelName);
     }
 
     @Override
@@ -360,6 +490,7 @@ public class ClusterContentService implements ContentService {
         s3SingleContentDao.deleteBefore(name, limitKey);
         s3BatchContentDao.deleteBefore(name, limitKey);
         s3LargePayloadContentDao.deleteBefore(name, limitKey);
+        latestKeyRegister.invalidate(name);
     }
 
     @Override
@@ -441,7 +572,7 @@ public class ClusterContentService implements ContentService {
                             .startKey(ContentKey.lastKey(time))
                             .count(1)
                             .build();
-                    Optional<ContentKey> latest = getLatest(latestQuery);
+                    Optional<ContentKey> latest = getLatestImmutable(latestQuery, false);
                     logger.debug("latest updated {} {}", channelConfig.getDisplayName(), latest);
                     traces.log(logger);
                 } catch (Exception e) {
@@ -60,6 +60,9 @@ public class DynamoChannelConfigDao implements Dao<ChannelConfig> {
         if (StringUtils.isNotEmpty(config.getStorage())) {
             item.put("storage", new AttributeValue(config.getStorage()));
         }
+        if (StringUtils.isNotEmpty(config.getCodec())) {
+            item.put("codec", new AttributeValue(config.getCodec()));
+        }
         if (config.isGlobal()) {
             GlobalConfig global = config.getGlobal();
             item.put("master", new AttributeValue(global.getMaster()));
@@ -150,6 +153,9 @@ public class DynamoChannelConfigDao implements Dao<ChannelConfig> {
         if (item.containsKey("storage")) {
             builder.storage(item.get("storage").getS());
         }
+        if (item.containsKey("codec")) {
+            builder.codec(item.get("codec").getS());
+        }
         if (item.containsKey("master")) {
             GlobalConfig global = new GlobalConfig();
             global.setMaster(item.get("master").getS());
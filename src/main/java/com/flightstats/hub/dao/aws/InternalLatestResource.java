@@ -0,0 +1,52 @@
+package com.flightstats.hub.dao.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flightstats.hub.app.HubProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@SuppressWarnings("WeakerAccess")
+@Path("/internal/latest")
+public class InternalLatestResource {
+
+    private final static Logger logger = LoggerFactory.getLogger(InternalLatestResource.class);
+    public static final String DESCRIPTION = "The latest keys of each channel known to this hub, and the keys written by other hubs.";
+    private static final ObjectMapper mapper = HubProvider.getInstance(ObjectMapper.class);
+    private static final LatestKeyRegister latestKeyRegister = HubProvider.getInstance(LatestKeyRegister.class);
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response get() {
+        ObjectNode root = mapper.createObjectNode();
+        root.put("description", DESCRIPTION);
+        root.put("enabled", latestKeyRegister.isEnabled());
+        root.put("channels", latestKeyRegister.size());
+        return Response.ok(root).build();
+    }
+
+    @GET
+    @Path("/{channel}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response get(@PathParam("channel") String channel) {
+        return Response.ok(latestKeyRegister.toJson(channel)).build();
+    }
+
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response put(String body) {
+        try {
+            JsonNode broadcast = mapper.readTree(body);
+            latestKeyRegister.receive(broadcast);
+            return Response.ok().build();
+        } catch (Exception e) {
+            logger.warn("unable to receive latest keys " + body, e);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+    }
+}
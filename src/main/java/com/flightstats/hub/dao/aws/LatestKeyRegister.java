@@ -0,0 +1,533 @@
+package com.flightstats.hub.dao.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flightstats.hub.app.HubHost;
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.cluster.Cluster;
+import com.flightstats.hub.dao.ChannelKeyNotifier;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.rest.RestClient;
+import com.flightstats.hub.util.HubUtils;
+import com.flightstats.hub.util.Sleeper;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.MediaType;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The latest keys of each channel, kept in memory on every hub, so latest queries don't ask every Spoke server.
+ * <p>
+ * Each hub records the keys it writes, and sends them to the other hubs every app.latest.broadcastMillis.
+ * A channel's keys are complete from its lowest key up, so a latest or previous query which falls within
+ * them is answered here.  A channel is cold until a query through Spoke seeds it, and is seeded again once
+ * app.latest.reconcileSeconds have passed.
+ * Deleting from a channel makes it cold on every hub.
+ * <p>
+ * Hubs send an empty broadcast each second when they have nothing else to send, and queries are only answered here
+ * while every other hub in the cluster has been heard from within app.stable_seconds, less the broadcast interval.
+ * A failed broadcast is sent again, and a hub which still misses a broadcast, sees another hub restart, or doesn't hear from another hub for
+ * app.latest.silenceSeconds, drops every channel.
+ * Each hub is sent its broadcasts in order, on its own, so a slow hub doesn't hold up the others.
+ * <p>
+ * The keys are also passed to the {@link ChannelKeyNotifier}, for webhooks.
+ */
+@Singleton
+public class LatestKeyRegister {
+
+    private final static Logger logger = LoggerFactory.getLogger(LatestKeyRegister.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final Client client = RestClient.createClient(5, 5, false, false);
+
+    private final boolean enabled = HubProperties.getProperty("app.latest.register", true);
+    private final int maxKeys = HubProperties.getProperty("app.latest.maxKeys", 1000);
+    private final int stableKeys = HubProperties.getProperty("app.latest.stableKeys", 50);
+    private final int broadcastMillis = HubProperties.getProperty("app.latest.broadcastMillis", 100);
+    private final long reconcileMillis = TimeUnit.SECONDS.toMillis(HubProperties.getProperty("app.latest.reconcileSeconds", 60));
+    private final long silenceMillis = TimeUnit.SECONDS.toMillis(HubProperties.getProperty("app.latest.silenceSeconds", 15));
+    private final int stableSeconds = HubProperties.getProperty("app.stable_seconds", 5);
+    private final int sendAttempts = HubProperties.getProperty("app.latest.sendAttempts", 3);
+    private static final long HEARTBEAT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final int MAX_QUEUED = 100;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Map<String, Long> received = new ConcurrentHashMap<>();
+    private final Map<String, Heard> heard = new ConcurrentHashMap<>();
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    private final String sender = UUID.randomUUID().toString();
+    private final Cluster hubCluster;
+    private final ChannelKeyNotifier channelKeyNotifier;
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("LatestKeyRegister-%d").setDaemon(true).build());
+    private long sequence;
+    private long lastSent;
+    private volatile long readyMillis = Long.MAX_VALUE;
+
+    @Inject
+    public LatestKeyRegister(@Named("HubCluster") Cluster hubCluster, ChannelKeyNotifier channelKeyNotifier) {
+        this.hubCluster = hubCluster;
+        this.channelKeyNotifier = channelKeyNotifier;
+        if (enabled) {
+            HubServices.register(new LatestKeyBroadcast(), HubServices.TYPE.AFTER_HEALTHY_START);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records keys written by this hub, and sends them to the others.
+     */
+    public void record(String channel, Collection<ContentKey> keys) {
+        if (!enabled || keys.isEmpty()) {
+            return;
+        }
+        add(channel, keys, false);
+        channelKeyNotifier.notify(channel, keys);
+        synchronized (pending) {
+            Pending channelPending = pending.computeIfAbsent(channel, name -> new Pending());
+            channelPending.keys.addAll(keys);
+            while (channelPending.keys.size() > maxKeys) {
+                channelPending.keys.pollFirst();
+                channelPending.reset = true;
+            }
+        }
+    }
+
+    /**
+     * Forgets a channel on every hub, after items have been deleted.
+     */
+    public void invalidate(String channel) {
+        if (!enabled) {
+            return;
+        }
+        entries.remove(channel);
+        synchronized (pending) {
+            Pending channelPending = new Pending();
+            channelPending.invalidate = true;
+            pending.put(channel, channelPending);
+        }
+    }
+
+    /**
+     * @return the latest key before limitKey, {@link ContentKey#NONE} if the channel is empty,
+     * or null if it is not known here.
+     */
+    public ContentKey getLatest(String channel, ContentKey limitKey) {
+        Entry entry = entries.get(channel);
+        if (entry == null || !isCurrent()) {
+            return null;
+        }
+        synchronized (entry) {
+            if (!entry.isWarm()) {
+                return null;
+            }
+            return entry.keys.lower(limitKey);
+        }
+    }
+
+    /**
+     * @return up to count keys before startKey, or null if they are not all known here.
+     */
+    public SortedSet<ContentKey> getPrevious(String channel, ContentKey startKey, int count) {
+        Entry entry = entries.get(channel);
+        if (entry == null || !isCurrent()) {
+            return null;
+        }
+        synchronized (entry) {
+            if (!entry.isWarm()) {
+                return null;
+            }
+            SortedSet<ContentKey> previous = new TreeSet<>();
+            for (ContentKey key : entry.keys.headSet(startKey, false).descendingSet()) {
+                if (previous.size() == count) {
+                    return previous;
+                }
+                if (key.equals(ContentKey.NONE)) {
+                    return previous;
+                }
+                previous.add(key);
+            }
+            if (previous.size() == count) {
+                return previous;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Call before querying Spoke for the latest key, and pass the result to {@link #seed}.
+     */
+    public long getVersion(String channel) {
+        return entries.computeIfAbsent(channel, name -> new Entry()).version;
+    }
+
+    /**
+     * Warms a channel with the latest key before limitKey, found by querying Spoke.
+     * The key is ignored if the channel was deleted from since {@link #getVersion},
+     * or if this hub may have missed writes after limitKey.
+     */
+    public void seed(String channel, long version, Optional<ContentKey> latest, ContentKey limitKey) {
+        if (!enabled || limitKey.getMillis() < readyMillis) {
+            return;
+        }
+        ContentKey latestKey = latest.or(ContentKey.NONE);
+        if (latestKey.compareTo(limitKey) >= 0) {
+            return;
+        }
+        Entry entry = entries.get(channel);
+        if (entry == null) {
+            return;
+        }
+        synchronized (entry) {
+            if (entry.version != version) {
+                return;
+            }
+            if (entry.keys.add(latestKey)) {
+                entry.keys.headSet(latestKey).clear();
+            }
+            entry.seededMillis = System.currentTimeMillis();
+        }
+    }
+
+    private void add(String channel, Collection<ContentKey> keys, boolean reset) {
+        Entry entry = entries.computeIfAbsent(channel, name -> new Entry());
+        synchronized (entry) {
+            if (reset) {
+                entry.keys.clear();
+            }
+            entry.keys.addAll(keys);
+            trim(entry.keys);
+        }
+    }
+
+    /**
+     * Keeps the keys newer than stable, and stableKeys at or before it, up to maxKeys.
+     */
+    private void trim(TreeSet<ContentKey> keys) {
+        while (keys.size() > maxKeys) {
+            keys.pollFirst();
+        }
+        if (keys.size() <= stableKeys) {
+            return;
+        }
+        ContentKey stable = ContentKey.lastKey(TimeUtil.now().minusSeconds(stableSeconds + 1));
+        Iterator<ContentKey> iterator = keys.headSet(stable, true).descendingIterator();
+        ContentKey lowest = null;
+        for (int i = 0; i < stableKeys && iterator.hasNext(); i++) {
+            lowest = iterator.next();
+        }
+        if (lowest != null && iterator.hasNext()) {
+            keys.headSet(lowest).clear();
+        }
+    }
+
+    /**
+     * Keys written before now may not have been sent here, so only later queries can seed channels.
+     */
+    void ready() {
+        readyMillis = System.currentTimeMillis() + broadcastMillis + TimeUnit.SECONDS.toMillis(1);
+        channelKeyNotifier.complete(readyMillis, this::getCompleteMillis);
+    }
+
+    private void gap() {
+        entries.clear();
+        channelKeyNotifier.gap();
+        if (readyMillis != Long.MAX_VALUE) {
+            ready();
+        }
+    }
+
+    /**
+     * @return the time which every other hub's keys have been received to, or 0 if a hub hasn't been heard from.
+     */
+    long getCompleteMillis() {
+        long complete = System.currentTimeMillis();
+        for (String server : getPeers()) {
+            Heard from = heard.get(server);
+            if (from == null) {
+                return 0;
+            }
+            complete = Math.min(complete, from.millis);
+        }
+        return complete;
+    }
+
+    private boolean isCurrent() {
+        long stableMillis = TimeUnit.SECONDS.toMillis(stableSeconds);
+        return getCompleteMillis() >= System.currentTimeMillis() - (stableMillis - broadcastMillis);
+    }
+
+    private Set<String> getPeers() {
+        Set<String> servers = new HashSet<>(hubCluster.getAllServers());
+        servers.remove(hubCluster.getHost(true));
+        return servers;
+    }
+
+    /**
+     * Applies a broadcast from another hub.
+     */
+    public void receive(JsonNode broadcast) {
+        String from = broadcast.get("sender").asText();
+        long sequence = broadcast.get("sequence").asLong();
+        String server = broadcast.path("server").asText();
+        Heard previousHeard = heard.get(server);
+        if (previousHeard != null && !previousHeard.sender.equals(from)) {
+            logger.info("{} restarted", server);
+            received.remove(previousHeard.sender);
+            gap();
+        }
+        Long previous = received.get(from);
+        if (previous != null && sequence <= previous) {
+            logger.trace("ignoring resent latest keys from {} {}", from, sequence);
+            return;
+        }
+        received.put(from, sequence);
+        if (previous == null ? sequence > 1 : sequence != previous + 1) {
+            logger.info("missed latest keys from {} {} {}", from, previous, sequence);
+            gap();
+        }
+        Iterator<Map.Entry<String, JsonNode>> channels = broadcast.get("channels").fields();
+        while (channels.hasNext()) {
+            Map.Entry<String, JsonNode> channel = channels.next();
+            JsonNode node = channel.getValue();
+            if (node.path("invalidate").asBoolean()) {
+                entries.remove(channel.getKey());
+            }
+            List<ContentKey> keys = new ArrayList<>();
+            for (JsonNode key : node.path("keys")) {
+                ContentKey.fromUrl(key.asText()).asSet().forEach(keys::add);
+            }
+            if (!keys.isEmpty()) {
+                add(channel.getKey(), keys, node.path("reset").asBoolean());
+                channelKeyNotifier.notify(channel.getKey(), keys);
+            }
+        }
+        if (!server.isEmpty()) {
+            long now = System.currentTimeMillis();
+            heard.put(server, new Heard(from, Math.min(now, broadcast.path("millis").asLong(now))));
+        }
+    }
+
+    /**
+     * Drops every channel if another hub has been silent, as its broadcasts may not be reaching this hub.
+     */
+    void checkSilence() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Heard> entry : heard.entrySet()) {
+            if (now - entry.getValue().millis > silenceMillis) {
+                logger.info("no latest keys from {} since {}", entry.getKey(), entry.getValue().millis);
+                heard.remove(entry.getKey());
+                received.remove(entry.getValue().sender);
+                gap();
+            }
+        }
+    }
+
+    /**
+     * @param heartbeat send an empty broadcast if there is nothing pending
+     * @return the pending keys and invalidations to send, or null if there are none.
+     */
+    ObjectNode drain(boolean heartbeat) {
+        Map<String, Pending> toSend;
+        long current;
+        synchronized (pending) {
+            if (pending.isEmpty() && !heartbeat) {
+                return null;
+            }
+            toSend = new HashMap<>(pending);
+            pending.clear();
+            current = ++sequence;
+        }
+        ObjectNode root = mapper.createObjectNode();
+        root.put("sender", sender);
+        root.put("server", hubCluster.getHost(true));
+        root.put("sequence", current);
+        root.put("millis", System.currentTimeMillis());
+        ObjectNode channels = root.putObject("channels");
+        for (Map.Entry<String, Pending> entry : toSend.entrySet()) {
+            Pending channelPending = entry.getValue();
+            ObjectNode node = channels.putObject(entry.getKey());
+            node.put("invalidate", channelPending.invalidate);
+            node.put("reset", channelPending.reset);
+            ArrayNode keys = node.putArray("keys");
+            for (ContentKey key : channelPending.keys) {
+                keys.add(key.toUrl());
+            }
+        }
+        return root;
+    }
+
+    public ObjectNode toJson(String channel) {
+        ObjectNode root = mapper.createObjectNode();
+        Entry entry = entries.get(channel);
+        if (entry == null) {
+            root.put("warm", false);
+            return root;
+        }
+        synchronized (entry) {
+            root.put("warm", entry.isWarm());
+            ArrayNode keys = root.putArray("keys");
+            for (ContentKey key : entry.keys.descendingSet()) {
+                keys.add(key.toUrl());
+            }
+        }
+        return root;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private void broadcast() {
+        checkSilence();
+        ObjectNode broadcast = drain(System.currentTimeMillis() - lastSent >= HEARTBEAT_MILLIS);
+        if (broadcast == null) {
+            return;
+        }
+        lastSent = System.currentTimeMillis();
+        String body = broadcast.toString();
+        Set<String> servers = getPeers();
+        peers.keySet().retainAll(servers);
+        for (String server : servers) {
+            peers.computeIfAbsent(server, Peer::new).send(body);
+        }
+    }
+
+    /**
+     * @return true if the server accepted the broadcast
+     */
+    boolean send(String server, String body) {
+        ClientResponse response = null;
+        try {
+            response = client.resource(HubHost.getScheme() + server + "/internal/latest")
+                    .type(MediaType.APPLICATION_JSON)
+                    .put(ClientResponse.class, body);
+            if (response.getStatus() == 200) {
+                return true;
+            }
+            logger.info("unable to send latest keys to {} {}", server, response.getStatus());
+        } catch (Exception e) {
+            logger.info("unable to send latest keys to " + server + " " + e.getMessage());
+        } finally {
+            HubUtils.close(response);
+        }
+        return false;
+    }
+
+    private class Entry {
+        private final long version = versions.incrementAndGet();
+        private final TreeSet<ContentKey> keys = new TreeSet<>();
+        private long seededMillis;
+
+        boolean isWarm() {
+            return seededMillis > 0 && System.currentTimeMillis() - seededMillis < reconcileMillis;
+        }
+    }
+
+    private static class Heard {
+        private final String sender;
+        private final long millis;
+
+        private Heard(String sender, long millis) {
+            this.sender = sender;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * Sends broadcasts to one hub in order.  A failed broadcast is sent again, up to app.latest.sendAttempts times,
+     * as the hub ignores a broadcast it has already applied.  If the broadcast still fails, or MAX_QUEUED are waiting,
+     * they are dropped, and the hub sees the gap in the sequence.
+     */
+    private class Peer {
+        private final String server;
+        private final BlockingQueue<String> queue = new LinkedBlockingQueue<>(MAX_QUEUED);
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private Peer(String server) {
+            this.server = server;
+        }
+
+        void send(String body) {
+            if (!queue.offer(body)) {
+                logger.info("dropping {} latest key broadcasts to {}", queue.size(), server);
+                queue.clear();
+                queue.offer(body);
+            }
+            if (sending.compareAndSet(false, true)) {
+                executor.execute(this::sendQueued);
+            }
+        }
+
+        private void sendQueued() {
+            String body;
+            while ((body = queue.poll()) != null) {
+                sendAttempts(body);
+            }
+            sending.set(false);
+            if (!queue.isEmpty() && sending.compareAndSet(false, true)) {
+                executor.execute(this::sendQueued);
+            }
+        }
+
+        private void sendAttempts(String body) {
+            for (int attempt = 1; attempt <= sendAttempts; attempt++) {
+                if (LatestKeyRegister.this.send(server, body)) {
+                    return;
+                }
+                if (attempt < sendAttempts) {
+                    Sleeper.sleepQuietly(broadcastMillis);
+                }
+            }
+            logger.info("dropping latest keys to {} after {} attempts", server, sendAttempts);
+        }
+    }
+
+    private static class Pending {
+        private final TreeSet<ContentKey> keys = new TreeSet<>();
+        private boolean invalidate;
+        private boolean reset;
+    }
+
+    private class LatestKeyBroadcast extends AbstractScheduledService {
+
+        @Override
+        protected void startUp() throws Exception {
+            ready();
+        }
+
+        @Override
+        protected void runOneIteration() throws Exception {
+            try {
+                broadcast();
+            } catch (Exception e) {
+                logger.warn("unable to broadcast latest keys", e);
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(broadcastMillis, broadcastMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
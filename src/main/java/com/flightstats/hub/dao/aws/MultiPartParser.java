@@ -6,92 +6,249 @@ import com.flightstats.hub.exception.InvalidRequestException;
 import com.flightstats.hub.model.BulkContent;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
-import com.flightstats.hub.util.ByteRing;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
+/**
+ * Reads the items of a multipart bulk insert.
+ * <p>
+ * The request is read in blocks, and each block is searched for the "\r\n--boundary" delimiter with Boyer-Moore-Horspool.
+ * An item's payload is read straight from the block as the item's stream, so {@link #stream(Consumer)} can insert
+ * each item as it arrives, while {@link #parse()} reads every item into memory.
+ */
 public class MultiPartParser {
     private final static Logger logger = LoggerFactory.getLogger(MultiPartParser.class);
 
     private static final int maxBytes = HubProperties.getProperty("app.maxPayloadSizeMB", 40) * 1024 * 1024 * 3;
-    private BulkContent bulkContent;
-    private BufferedInputStream stream;
-    private Content.Builder builder;
-    private final ByteArrayOutputStream baos;
+    private static final int BUFFER_BYTES = HubProperties.getProperty("app.multipartBufferBytes", 64 * 1024);
     private static final byte[] CRLF = "\r\n".getBytes();
 
+    private final BulkContent bulkContent;
+    private final InputStream stream;
+    private final byte[] dashBoundary;
+    private final byte[] delimiter;
+    private final int[] skips = new int[256];
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    private long bytesRead;
+    private boolean started;
+    private boolean finished;
+    private PartInputStream part;
+    private ContentKey masterKey;
+    private int index;
+
     public MultiPartParser(BulkContent bulkContent) {
         this.bulkContent = bulkContent;
-        builder = Content.builder();
-        stream = new BufferedInputStream(bulkContent.getStream());
-        baos = new ByteArrayOutputStream();
+        this.stream = bulkContent.getStream();
+        dashBoundary = ("--" + getBoundary()).getBytes();
+        delimiter = new byte[CRLF.length + dashBoundary.length];
+        System.arraycopy(CRLF, 0, delimiter, 0, CRLF.length);
+        System.arraycopy(dashBoundary, 0, delimiter, CRLF.length, dashBoundary.length);
+        Arrays.fill(skips, delimiter.length);
+        for (int i = 0; i < delimiter.length - 1; i++) {
+            skips[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+        }
+        buffer = new byte[Math.max(BUFFER_BYTES, delimiter.length * 4)];
     }
 
+    /**
+     * Reads every item into bulkContent's items.
+     */
     public void parse() throws IOException {
-        parseItems();
+        Content content = next();
+        while (content != null) {
+            content.getData();
+            bulkContent.getItems().add(content);
+            content = next();
+        }
         if (bulkContent.getItems().isEmpty()) {
             throw new InvalidRequestException("multipart has no items");
-        } else if (bulkContent.isNew()) {
-            ContentKey masterKey = new ContentKey();
-            bulkContent.setMasterKey(masterKey);
-            for (int i = 0; i < bulkContent.getItems().size(); i++) {
-                bulkContent.getItems().get(i).setContentKey(ContentKey.bulkKey(masterKey, i));
+        }
+    }
+
+    /**
+     * Reads up to the first item, and leaves the rest to be read as bulkContent's items are inserted.
+     *
+     * @param onItem is called with each item before it is inserted
+     */
+    public void stream(Consumer<Content> onItem) throws IOException {
+        Content first = next();
+        if (first == null) {
+            throw new InvalidRequestException("multipart has no items");
+        }
+        Content[] pending = {first};
+        bulkContent.setItemSource(() -> {
+            Content content = pending[0] == null ? next() : pending[0];
+            pending[0] = null;
+            if (content != null) {
+                onItem.accept(content);
             }
+            return content;
+        });
+    }
+
+    /**
+     * Skips whatever is left of the previous item's stream.
+     *
+     * @return the next item, or null after the last item
+     */
+    Content next() throws IOException {
+        if (!started) {
+            started = true;
+            if (bulkContent.isNew()) {
+                masterKey = new ContentKey();
+                bulkContent.setMasterKey(masterKey);
+            }
+            skipPreamble();
+        } else if (part != null) {
+            part.skipRemaining();
         }
+        while (!finished) {
+            finished = !nextPart();
+            if (finished) {
+                break;
+            }
+            Content.Builder builder = Content.builder().withContentType("text/plain");
+            readHeaders(builder);
+            part = new PartInputStream();
+            if (part.isEmpty() && !builder.getContentKey().isPresent()) {
+                continue;
+            }
+            if (masterKey != null) {
+                builder.withContentKey(ContentKey.bulkKey(masterKey, index));
+            }
+            index++;
+            return builder.withStream(part).build();
+        }
+        return null;
     }
 
-    private void parseItems() throws IOException {
-        String boundary = "--" + getBoundary();
-        byte[] startBoundary = (boundary + "\r\n").getBytes();
-        byte[] endBoundary = (boundary + "--").getBytes();
-        boolean started = false;
-        boolean header = false;
-        ByteRing byteRing = new ByteRing(endBoundary.length);
-        int count = 0;
-        int read = stream.read();
-        while (read != -1) {
-            count++;
-            if (count > maxBytes) {
-                logger.warn("multipart max payload exceeded {}", maxBytes, bulkContent.getChannel());
-                throw new ContentTooLargeException("max payload size is " + maxBytes + " bytes");
+    private void skipPreamble() throws IOException {
+        fill(dashBoundary.length);
+        if (startsWith(dashBoundary)) {
+            position += dashBoundary.length;
+        } else {
+            part = new PartInputStream();
+            part.skipRemaining();
+            part = null;
+        }
+    }
+
+    /**
+     * Reads the rest of the boundary line.
+     *
+     * @return false for the closing boundary, or the end of the request
+     */
+    private boolean nextPart() throws IOException {
+        fill(2);
+        if (limit - position < 2 || (buffer[position] == '-' && buffer[position + 1] == '-')) {
+            return false;
+        }
+        readLine();
+        return true;
+    }
+
+    private void readHeaders(Content.Builder builder) throws IOException {
+        String headerLine = StringUtils.strip(readLine());
+        while (StringUtils.isNotEmpty(headerLine)) {
+            if (StringUtils.startsWithIgnoreCase(headerLine, "content-type:")) {
+                String type = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-type:"));
+                builder.withContentType(type);
+            } else if (StringUtils.startsWithIgnoreCase(headerLine, "content-key:")) {
+                String key = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-key:"));
+                builder.withContentKey(ContentKey.fromFullUrl(key));
             }
-            baos.write((byte) read);
-            byteRing.put((byte) read);
+            headerLine = StringUtils.strip(readLine());
+        }
+    }
 
-            if (byteRing.compare(startBoundary)) {
-                if (!started) {
-                    started = true;
-                    baos.reset();
-                } else {
-                    addItem(startBoundary);
+    private String readLine() throws IOException {
+        int scanned = 0;
+        while (true) {
+            for (int i = position + scanned; i < limit - 1; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    String line = new String(buffer, position, i - position);
+                    position = i + CRLF.length;
+                    return line;
                 }
-                header = true;
-                builder.withContentType("text/plain");
-            } else if (header && byteRing.compare(CRLF)) {
-                String headerLine = StringUtils.strip(baos.toString());
-                baos.reset();
-                if (StringUtils.isEmpty(headerLine)) {
-                    header = false;
-                } else {
-                    if (StringUtils.startsWithIgnoreCase(headerLine, "content-type:")) {
-                        String type = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-type:"));
-                        builder.withContentType(type);
-                    } else if (StringUtils.startsWithIgnoreCase(headerLine, "content-key:")) {
-                        String key = StringUtils.trim(StringUtils.removeStartIgnoreCase(headerLine, "content-key:"));
-                        builder.withContentKey(ContentKey.fromFullUrl(key));
-                    }
+            }
+            if (endOfStream) {
+                throw new InvalidRequestException("multipart ended in a header");
+            }
+            if (position == 0 && limit == buffer.length) {
+                throw new InvalidRequestException("multipart header is too long");
+            }
+            scanned = Math.max(0, limit - 1 - position);
+            fill(limit - position + 1);
+        }
+    }
+
+    private boolean startsWith(byte[] bytes) {
+        if (limit - position < bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer[position + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the index of the first delimiter at or after from, or -1
+     */
+    private int findDelimiter(int from) {
+        int last = delimiter.length - 1;
+        int i = from;
+        while (i + last < limit) {
+            int j = last;
+            while (buffer[i + j] == delimiter[j]) {
+                if (j == 0) {
+                    return i;
                 }
-            } else if (byteRing.compare(endBoundary)) {
-                addItem(endBoundary);
-                break;
+                j--;
+            }
+            i += skips[buffer[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Reads until at least bytes are buffered after position, or the request ends.
+     */
+    private void fill(int bytes) throws IOException {
+        if (limit - position >= bytes || endOfStream) {
+            return;
+        }
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            if (part != null) {
+                part.shift(position);
+            }
+            limit -= position;
+            position = 0;
+        }
+        while (limit < bytes && limit < buffer.length) {
+            int read = stream.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                endOfStream = true;
+                return;
+            }
+            limit += read;
+            bytesRead += read;
+            if (bytesRead > maxBytes) {
+                logger.warn("multipart max payload exceeded {} {}", maxBytes, bulkContent.getChannel());
+                throw new ContentTooLargeException("max payload size is " + maxBytes + " bytes");
             }
-            read = stream.read();
         }
     }
 
@@ -104,17 +261,110 @@ public class MultiPartParser {
 
     }
 
-    private void addItem(byte[] boundary) {
-        byte[] bytes = baos.toByteArray();
-        byte[] data = ArrayUtils.subarray(bytes, 0, bytes.length - boundary.length - CRLF.length);
-        if ((data.length == 0 && builder.getContentKey().isPresent())
-                || data.length > 0) {
-            builder.withData(data);
-            bulkContent.getItems().add(builder.build());
+    /**
+     * The payload of one part, which ends before the next delimiter.
+     */
+    private class PartInputStream extends InputStream {
+        private int dataEnd = position;
+        private boolean ended;
+
+        void shift(int offset) {
+            dataEnd -= offset;
         }
-        builder = Content.builder();
-        baos.reset();
-    }
 
+        boolean isEmpty() throws IOException {
+            return available() == 0;
+        }
 
+        /**
+         * @return the bytes known to be payload, which is 0 only at the end of the part
+         */
+        @Override
+        public int available() throws IOException {
+            if (ended) {
+                return 0;
+            }
+            if (dataEnd > position) {
+                return dataEnd - position;
+            }
+            while (true) {
+                int found = findDelimiter(position);
+                if (found >= 0) {
+                    int suffix = found + delimiter.length;
+                    if (limit - suffix < 2 && !endOfStream) {
+                        if (found > position) {
+                            dataEnd = found;
+                            return dataEnd - position;
+                        }
+                        fill(suffix - position + 2);
+                        continue;
+                    }
+                    if (!isBoundaryEnd(suffix)) {
+                        dataEnd = found + 1;
+                    } else if (found == position) {
+                        position = suffix;
+                        ended = true;
+                        return 0;
+                    } else {
+                        dataEnd = found;
+                    }
+                    return dataEnd - position;
+                }
+                int safe = limit - position - (delimiter.length - 1);
+                if (safe > 0) {
+                    dataEnd = position + safe;
+                    return safe;
+                }
+                if (endOfStream) {
+                    throw new InvalidRequestException("multipart is missing the closing boundary");
+                }
+                fill(limit - position + 1);
+            }
+        }
+
+        /**
+         * A boundary is followed by "--", white space or the end of the line.
+         */
+        private boolean isBoundaryEnd(int suffix) {
+            if (suffix >= limit) {
+                return true;
+            }
+            byte next = buffer[suffix];
+            if (next == '-') {
+                return suffix + 1 >= limit || buffer[suffix + 1] == '-';
+            }
+            return next == '\r' || next == ' ' || next == '\t';
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (available() == 0) {
+                return -1;
+            }
+            return buffer[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int available = available();
+            if (available == 0) {
+                return -1;
+            }
+            int read = Math.min(length, available);
+            System.arraycopy(buffer, position, bytes, offset, read);
+            position += read;
+            return read;
+        }
+
+        void skipRemaining() throws IOException {
+            int available = available();
+            while (available > 0) {
+                position += available;
+                available = available();
+            }
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package com.flightstats.hub.dao.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.metrics.MetricsService;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.ContentPath;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps recently read minutes of {@link S3BatchContentDao}, so reading many items from a minute costs one S3 GET.
+ * <p>
+ * Minutes and indexes are weighed by their size, and the least recently used are evicted past
+ * s3.batch.cacheMB and s3.batch.indexCacheMB.  Entries expire after s3.batch.cacheMinutes,
+ * which limits how long a minute rewritten by another hub may be stale here.
+ * Concurrent misses for the same minute wait for a single load.  Failed loads, including 404s, are not kept.
+ */
+@Singleton
+class S3BatchCache {
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final MetricsService metricsService;
+    private final Cache<String, Minute> minutes;
+    private final Cache<String, Index> indexes;
+
+    @Inject
+    S3BatchCache(MetricsService metricsService) {
+        this(metricsService,
+                HubProperties.getProperty("s3.batch.cacheMB", 256) * 1024L * 1024L,
+                HubProperties.getProperty("s3.batch.indexCacheMB", 16) * 1024L * 1024L,
+                HubProperties.getProperty("s3.batch.cacheMinutes", 10));
+    }
+
+    S3BatchCache(MetricsService metricsService, long maxMinuteBytes, long maxIndexBytes, int expireMinutes) {
+        this.metricsService = metricsService;
+        minutes = CacheBuilder.newBuilder()
+                .maximumWeight(maxMinuteBytes)
+                .weigher((String key, Minute minute) -> minute.bytes)
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .removalListener(notification -> countEviction(notification.getCause(), "type:minute"))
+                .build();
+        indexes = CacheBuilder.newBuilder()
+                .maximumWeight(maxIndexBytes)
+                .weigher((String key, Index index) -> index.bytes)
+                .expireAfterWrite(expireMinutes, TimeUnit.MINUTES)
+                .removalListener(notification -> countEviction(notification.getCause(), "type:index"))
+                .build();
+    }
+
+    /**
+     * @param loader reads the whole minute from S3, any exception it throws is rethrown here.
+     */
+    Map<ContentKey, Item> getMinute(String channel, ContentPath path, Callable<Map<ContentKey, Item>> loader) throws IOException {
+        String key = getKey(channel, path);
+        Minute minute = minutes.getIfPresent(key);
+        if (minute != null) {
+            count("type:minute", "result:hit");
+            return minute.items;
+        }
+        count("type:minute", "result:miss");
+        return get(minutes, key, () -> new Minute(loader.call())).items;
+    }
+
+    /**
+     * @return the cached minute, or null without reading from S3.
+     */
+    Map<ContentKey, Item> getMinuteIfPresent(String channel, ContentPath path) {
+        Minute minute = minutes.getIfPresent(getKey(channel, path));
+        return minute == null ? null : minute.items;
+    }
+
+    /**
+     * @param loader reads the index from S3, returning the parsed index and its size in bytes.
+     */
+    JsonNode getIndex(String channel, ContentPath path, Callable<Index> loader) throws IOException {
+        String key = getKey(channel, path);
+        Index index = indexes.getIfPresent(key);
+        if (index != null) {
+            count("type:index", "result:hit");
+            return index.root;
+        }
+        count("type:index", "result:miss");
+        return get(indexes, key, loader).root;
+    }
+
+    void invalidate(String channel, ContentPath path) {
+        String key = getKey(channel, path);
+        minutes.invalidate(key);
+        indexes.invalidate(key);
+    }
+
+    void invalidate(String channel) {
+        String prefix = channel + "/";
+        minutes.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        indexes.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private <T> T get(Cache<String, T> cache, String key, Callable<T> loader) throws IOException {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void count(String... tags) {
+        metricsService.count("s3.batch.cache", 1, tags);
+    }
+
+    private void countEviction(RemovalCause cause, String type) {
+        if (cause.equals(RemovalCause.SIZE)) {
+            metricsService.count("s3.batch.cache.evicted", 1, type);
+        }
+    }
+
+    private String getKey(String channel, ContentPath path) {
+        return channel + "/" + path.toUrl();
+    }
+
+    /**
+     * The payload and metadata of one item in a batch.  Each get builds a new Content, since a Content's stream
+     * can only be read once.
+     */
+    static class Item {
+        private final byte[] data;
+        private final String contentType;
+
+        Item(byte[] data, String contentType) {
+            this.data = data;
+            this.contentType = contentType;
+        }
+
+        Content toContent(ContentKey key) {
+            return Content.builder()
+                    .withContentKey(key)
+                    .withContentType(contentType)
+                    .withData(data)
+                    .build();
+        }
+    }
+
+    static class Index {
+        private final JsonNode root;
+        private final int bytes;
+
+        Index(JsonNode root, int bytes) {
+            this.root = root;
+            this.bytes = bytes + ENTRY_OVERHEAD;
+        }
+    }
+
+    private static class Minute {
+        private final Map<ContentKey, Item> items;
+        private final int bytes;
+
+        Minute(Map<ContentKey, Item> items) {
+            this.items = Collections.unmodifiableMap(items);
+            long total = ENTRY_OVERHEAD;
+            for (Item item : items.values()) {
+                total += item.data.length + ENTRY_OVERHEAD;
+            }
+            this.bytes = (int) Math.min(Integer.MAX_VALUE, total);
+        }
+    }
+}
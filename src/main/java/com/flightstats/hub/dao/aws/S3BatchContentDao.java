@@ -46,18 +46,22 @@ public class S3BatchContentDao implements ContentDao {
 
     private final boolean useEncrypted = HubProperties.isAppEncrypted();
     private final int s3MaxQueryItems = HubProperties.getProperty("s3.maxQueryItems", 1000);
+    private final long rangeMinBytes = HubProperties.getProperty("s3.batch.rangeMinKB", 1024) * 1024L;
     @Inject
     private AmazonS3 s3Client;
     @Inject
     private S3BucketName s3BucketName;
     @Inject
     private MetricsService metricsService;
+    @Inject
+    private S3BatchCache batchCache;
 
     @java.beans.ConstructorProperties({"s3Client", "s3BucketName", "metricsService"})
     public S3BatchContentDao(AmazonS3 s3Client, S3BucketName s3BucketName, MetricsService metricsService) {
         this.s3Client = s3Client;
         this.s3BucketName = s3BucketName;
         this.metricsService = metricsService;
+        this.batchCache = new S3BatchCache(metricsService);
     }
 
     public S3BatchContentDao() {
@@ -90,29 +94,118 @@ public class S3BatchContentDao implements ContentDao {
         }
     }
 
+    /**
+     * Indexes with ranges hold each item's size and metadata, so only the index is read.
+     */
+    @Override
+    public Content getMetadata(String channelName, ContentKey key) {
+        MinutePath minutePath = new MinutePath(key.getTime());
+        try {
+            JsonNode root = batchCache.getIndex(channelName, minutePath, () -> readIndex(channelName, minutePath));
+            if (root.has("ranges")) {
+                JsonNode range = root.get("ranges").get(key.toUrl());
+                if (range == null) {
+                    return null;
+                }
+                if (range.size() >= 4) {
+                    Content.Builder builder = Content.builder()
+                            .withContentKey(key)
+                            .withSize(range.get(2).asLong());
+                    String meta = range.get(3).asText();
+                    if (StringUtils.isNotEmpty(meta)) {
+                        ContentMarshaller.setMetaData(meta, builder);
+                    }
+                    return builder.build();
+                }
+            }
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                return null;
+            }
+            logger.warn("unable to get index " + channelName + " " + minutePath, e);
+        } catch (IOException e) {
+            logger.warn("unable to read meta " + channelName + " " + key, e);
+        }
+        return ContentDao.super.getMetadata(channelName, key);
+    }
+
     private Content getS3Object(String channel, ContentKey key) throws IOException {
         logger.trace("S3BatchContentDao.getS3Object {} {}", channel, key);
         MinutePath minutePath = new MinutePath(key.getTime());
-        return mapMinute(channel, minutePath).get(key);
+        if (batchCache.getMinuteIfPresent(channel, minutePath) == null) {
+            Content content = getRange(channel, minutePath, key);
+            if (content != null) {
+                return content;
+            }
+        }
+        S3BatchCache.Item item = mapMinute(channel, minutePath).get(key);
+        return item == null ? null : item.toContent(key);
     }
 
-    private Map<ContentKey, Content> mapMinute(String channel, MinutePath minutePath) throws IOException {
-        Map<ContentKey, Content> map = new HashMap<>();
-        try (ZipInputStream zipStream = getZipInputStream(channel, minutePath)) {
-            ZipEntry nextEntry = zipStream.getNextEntry();
-            while (nextEntry != null) {
-                logger.trace("found zip entry {} in {}", nextEntry.getName(), minutePath);
-                ContentKey contentKey = ContentKey.fromUrl(nextEntry.getName()).get();
-                map.put(contentKey, getContent(contentKey, zipStream, nextEntry));
-                nextEntry = zipStream.getNextEntry();
+    /**
+     * Reads just the item's entry from a large batch, using the ranges in the index.
+     * Small batches are read and cached whole instead.
+     *
+     * @return null if the index has no range for the key, or the range is stale
+     */
+    private Content getRange(String channel, MinutePath minutePath, ContentKey key) throws IOException {
+        JsonNode root;
+        try {
+            root = batchCache.getIndex(channel, minutePath, () -> readIndex(channel, minutePath));
+        } catch (AmazonS3Exception e) {
+            return null;
+        }
+        JsonNode range = root.path("ranges").get(key.toUrl());
+        if (range == null || root.path("bytes").asLong() < rangeMinBytes) {
+            return null;
+        }
+        long offset = range.get(0).asLong();
+        long length = range.get(1).asLong();
+        long start = System.currentTimeMillis();
+        GetObjectRequest request = new GetObjectRequest(s3BucketName.getS3BucketName(), getS3BatchItemsKey(channel, minutePath))
+                .withRange(offset, offset + length - 1);
+        try (S3Object object = s3Client.getObject(request)) {
+            ZipInputStream zipStream = new ZipInputStream(new BufferedInputStream(object.getObjectContent()));
+            ZipEntry entry = zipStream.getNextEntry();
+            if (entry == null || !entry.getName().equals(key.toUrl())) {
+                logger.info("stale batch index {} {} {}", channel, minutePath, key);
+                batchCache.invalidate(channel, minutePath);
+                return null;
             }
+            Content content = getContent(key, zipStream, entry);
+            ByteStreams.exhaust(object.getObjectContent());
+            return content;
+        } finally {
+            ActiveTraces.getLocal().add("S3BatchContentDao.getRange completed", key, length);
+            metricsService.time(channel, "s3.get", start, length, "type:batchRange");
+        }
+    }
+
+    private Map<ContentKey, S3BatchCache.Item> mapMinute(String channel, MinutePath minutePath) throws IOException {
+        try {
+            return batchCache.getMinute(channel, minutePath, () -> readMinute(channel, minutePath));
         } catch (AmazonS3Exception e) {
             if (e.getStatusCode() != 404) {
                 logger.warn("AmazonS3Exception : unable to read " + channel + " " + minutePath, e);
             }
+            return Collections.emptyMap();
         } finally {
             ActiveTraces.getLocal().add("S3BatchContentDao.getS3Object completed");
         }
+    }
+
+    private Map<ContentKey, S3BatchCache.Item> readMinute(String channel, MinutePath minutePath) throws IOException {
+        Map<ContentKey, S3BatchCache.Item> map = new HashMap<>();
+        try (ZipInputStream zipStream = getZipInputStream(channel, minutePath)) {
+            ZipEntry nextEntry = zipStream.getNextEntry();
+            while (nextEntry != null) {
+                logger.trace("found zip entry {} in {}", nextEntry.getName(), minutePath);
+                ContentKey contentKey = ContentKey.fromUrl(nextEntry.getName()).get();
+                Content content = getContent(contentKey, zipStream, nextEntry);
+                map.put(contentKey, new S3BatchCache.Item(content.getData(), content.getContentType().orNull()));
+                nextEntry = zipStream.getNextEntry();
+            }
+        }
         return map;
     }
 
@@ -149,11 +242,11 @@ public class S3BatchContentDao implements ContentDao {
     private boolean descending(String channel, MinutePath minutePath, Consumer<Content> callback) {
         boolean found = false;
         try {
-            Map<ContentKey, Content> map = mapMinute(channel, minutePath);
+            Map<ContentKey, S3BatchCache.Item> map = mapMinute(channel, minutePath);
             NavigableSet<ContentKey> descendingSet = new TreeSet<>(map.keySet()).descendingSet();
             for (ContentKey contentKey : descendingSet) {
                 if (minutePath.getKeys().contains(contentKey)) {
-                    callback.accept(map.get(contentKey));
+                    callback.accept(map.get(contentKey).toContent(contentKey));
                     found = true;
                 }
             }
@@ -163,7 +256,21 @@ public class S3BatchContentDao implements ContentDao {
         return found;
     }
 
+    /**
+     * Streams the zip in order, unless the minute is already cached, rather than holding the minute in memory.
+     */
     private boolean ascending(String channel, MinutePath minutePath, Consumer<Content> callback) {
+        Map<ContentKey, S3BatchCache.Item> cached = batchCache.getMinuteIfPresent(channel, minutePath);
+        if (cached != null) {
+            boolean found = false;
+            for (ContentKey contentKey : new TreeSet<>(cached.keySet())) {
+                if (minutePath.getKeys().contains(contentKey)) {
+                    callback.accept(cached.get(contentKey).toContent(contentKey));
+                    found = true;
+                }
+            }
+            return found;
+        }
         Map<String, ContentKey> keyMap = new HashMap<>();
         boolean found = false;
         for (ContentKey key : minutePath.getKeys()) {
@@ -248,10 +355,8 @@ public class S3BatchContentDao implements ContentDao {
     }
 
     private void getKeysForMinute(String channel, MinutePath minutePath, Traces traces, Consumer<JsonNode> itemNodeConsumer) {
-        long start = System.currentTimeMillis();
-        try (S3Object object = s3Client.getObject(s3BucketName.getS3BucketName(), getS3BatchIndexKey(channel, minutePath))) {
-            byte[] bytes = ByteStreams.toByteArray(object.getObjectContent());
-            JsonNode root = mapper.readTree(bytes);
+        try {
+            JsonNode root = batchCache.getIndex(channel, minutePath, () -> readIndex(channel, minutePath));
             JsonNode items = root.get("items");
             for (JsonNode item : items) {
                 itemNodeConsumer.accept(item);
@@ -267,6 +372,14 @@ public class S3BatchContentDao implements ContentDao {
         } catch (IOException e) {
             logger.warn("unable to get index " + channel, minutePath, e);
             traces.add("issue with getting keys", e);
+        }
+    }
+
+    private S3BatchCache.Index readIndex(String channel, MinutePath minutePath) throws IOException {
+        long start = System.currentTimeMillis();
+        try (S3Object object = s3Client.getObject(s3BucketName.getS3BucketName(), getS3BatchIndexKey(channel, minutePath))) {
+            byte[] bytes = ByteStreams.toByteArray(object.getObjectContent());
+            return new S3BatchCache.Index(mapper.readTree(bytes), bytes.length);
         } finally {
             metricsService.time(channel, "s3.get", start, "type:batch");
         }
@@ -354,6 +467,7 @@ public class S3BatchContentDao implements ContentDao {
         try {
             S3Util.delete(channel + BATCH_ITEMS, limitKey, s3BucketName.getS3BucketName(), s3Client);
             S3Util.delete(channel + BATCH_INDEX, limitKey, s3BucketName.getS3BucketName(), s3Client);
+            batchCache.invalidate(channel);
             logger.info("completed deleteBefore of " + channel);
         } catch (Exception e) {
             logger.warn("unable to delete " + channel + " in " + s3BucketName.getS3BucketName(), e);
@@ -387,16 +501,22 @@ public class S3BatchContentDao implements ContentDao {
         try {
             logger.debug("writing {} batch {} keys {} bytes {}", channel, path, keys.size(), bytes.length);
             writeBatchItems(channel, path, bytes);
-            writeBatchIndex(channel, path, keys);
+            writeBatchIndex(channel, path, keys, bytes);
         } catch (Exception e) {
             logger.warn("unable to write batch to S3 " + channel + " " + path, e);
             throw e;
         } finally {
+            batchCache.invalidate(channel, path);
             ActiveTraces.getLocal().add("S3BatchContentDao.writeBatch completed", channel, path);
         }
     }
 
-    private void writeBatchIndex(String channel, ContentPath path, Collection<ContentKey> keys) {
+    /**
+     * The index lists the keys in "items".  It also has the size of the batch in "bytes",
+     * and the [offset, length, size, meta] of each zip entry in "ranges", which older indexes do not have.
+     * Indexes written before size and meta were added have just [offset, length].
+     */
+    private void writeBatchIndex(String channel, ContentPath path, Collection<ContentKey> keys, byte[] batch) {
         String batchIndexKey = getS3BatchIndexKey(channel, path);
         ObjectNode root = mapper.createObjectNode();
         root.put("id", path.toUrl());
@@ -404,6 +524,17 @@ public class S3BatchContentDao implements ContentDao {
         for (ContentKey key : keys) {
             items.add(key.toUrl());
         }
+        try {
+            Map<String, S3BatchRanges.Range> ranges = S3BatchRanges.read(batch);
+            root.put("bytes", batch.length);
+            ObjectNode rangesNode = root.putObject("ranges");
+            ranges.forEach((name, range) -> rangesNode.putArray(name)
+                    .add(range.offset).add(range.length).add(range.size).add(range.meta));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("unable to find ranges for " + channel + " " + path, e);
+            root.remove("bytes");
+            root.remove("ranges");
+        }
         String index = root.toString();
         logger.trace("index is {} {}", batchIndexKey, index);
         byte[] bytes = index.getBytes(StandardCharsets.UTF_8);
@@ -0,0 +1,91 @@
+package com.flightstats.hub.dao.aws;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds where each entry of a batch zip starts and ends, from the zip's central directory.
+ * <p>
+ * A range runs from the entry's local header up to the next entry, so it includes any data descriptor,
+ * and the bytes of a range can be read on their own with a {@link java.util.zip.ZipInputStream}.
+ * The central directory also has each entry's uncompressed size and extra field, which holds the item's metadata.
+ */
+class S3BatchRanges {
+
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_LENGTH = 22;
+    private static final int CENTRAL_LENGTH = 46;
+
+    /**
+     * @return the range of each entry, by entry name, in the order of the zip.
+     */
+    static Map<String, Range> read(byte[] zip) throws IOException {
+        int end = findEnd(zip);
+        long centralOffset = readInt(zip, end + 16);
+        if (centralOffset >= end) {
+            throw new IOException("invalid central directory offset " + centralOffset);
+        }
+        List<String> names = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<String> metas = new ArrayList<>();
+        int position = (int) centralOffset;
+        while (position + CENTRAL_LENGTH <= end && readInt(zip, position) == CENTRAL_SIGNATURE) {
+            int nameLength = readShort(zip, position + 28);
+            int extraLength = readShort(zip, position + 30);
+            int commentLength = readShort(zip, position + 32);
+            names.add(new String(zip, position + CENTRAL_LENGTH, nameLength, StandardCharsets.UTF_8));
+            offsets.add(readInt(zip, position + 42));
+            sizes.add(readInt(zip, position + 24));
+            metas.add(new String(zip, position + CENTRAL_LENGTH + nameLength, extraLength));
+            position += CENTRAL_LENGTH + nameLength + extraLength + commentLength;
+        }
+        Map<String, Range> ranges = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            long offset = offsets.get(i);
+            long next = i + 1 < offsets.size() ? offsets.get(i + 1) : centralOffset;
+            if (next <= offset) {
+                throw new IOException("entries are out of order at " + names.get(i));
+            }
+            ranges.put(names.get(i), new Range(offset, next - offset, sizes.get(i), metas.get(i)));
+        }
+        return ranges;
+    }
+
+    static class Range {
+        final long offset;
+        final long length;
+        final long size;
+        final String meta;
+
+        Range(long offset, long length, long size, String meta) {
+            this.offset = offset;
+            this.length = length;
+            this.size = size;
+            this.meta = meta;
+        }
+    }
+
+    private static int findEnd(byte[] zip) throws IOException {
+        int last = Math.max(0, zip.length - END_LENGTH - 0xFFFF);
+        for (int position = zip.length - END_LENGTH; position >= last; position--) {
+            if (readInt(zip, position) == END_SIGNATURE) {
+                return position;
+            }
+        }
+        throw new IOException("no end of central directory");
+    }
+
+    private static int readShort(byte[] zip, int position) {
+        return (zip[position] & 0xff) | (zip[position + 1] & 0xff) << 8;
+    }
+
+    private static long readInt(byte[] zip, int position) {
+        return (readShort(zip, position) | (long) readShort(zip, position + 2) << 16);
+    }
+}
@@ -87,6 +87,9 @@ public class S3SingleContentDao implements ContentDao {
             String s3Key = getS3ContentKey(channelName, key);
             ObjectMetadata metadata = S3SingleContentDao.createObjectMetadata(content, useEncrypted);
             byte[] bytes = handler.apply(metadata);
+            if (content.getSize() != null && content.getSize() >= 0) {
+                metadata.addUserMetadata("size", String.valueOf(content.getSize()));
+            }
             length = bytes.length;
             logger.trace("insert {} {} {} {}", channelName, key, content.getSize(), length);
             InputStream stream = new ByteArrayInputStream(bytes);
@@ -130,6 +133,38 @@ public class S3SingleContentDao implements ContentDao {
         }
     }
 
+    /**
+     * Items written with their size have it in the object's metadata, so only the metadata is read.
+     */
+    @Override
+    public Content getMetadata(String channelName, ContentKey key) {
+        ActiveTraces.getLocal().add("S3SingleContentDao.readMeta", key);
+        long start = System.currentTimeMillis();
+        try {
+            ObjectMetadata metadata = s3Client.getObjectMetadata(s3BucketName.getS3BucketName(), getS3ContentKey(channelName, key));
+            Map<String, String> userData = metadata.getUserMetadata();
+            if (!userData.containsKey("size")) {
+                return ContentDao.super.getMetadata(channelName, key);
+            }
+            Content.Builder builder = Content.builder()
+                    .withContentKey(key)
+                    .withSize(Long.parseLong(userData.get("size")));
+            String type = userData.get("type");
+            if (type != null && !type.equals("none")) {
+                builder.withContentType(type);
+            }
+            return builder.build();
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != 404) {
+                logger.warn("AmazonS3Exception : unable to read meta " + channelName + " " + key, e);
+            }
+            return null;
+        } finally {
+            metricsService.time(channelName, "s3.head", start, "type:single");
+            ActiveTraces.getLocal().add("S3SingleContentDao.readMeta completed");
+        }
+    }
+
     private Content getS3Object(String channelName, ContentKey key) throws IOException {
         long start = System.currentTimeMillis();
         try (S3Object object = s3Client.getObject(s3BucketName.getS3BucketName(), getS3ContentKey(channelName, key))) {
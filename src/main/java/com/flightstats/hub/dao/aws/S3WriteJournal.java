@@ -0,0 +1,266 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An append only queue of keys on disk, for {@link S3WriteQueue}.
+ * <p>
+ * Keys are appended to numbered segment files, one "millis key" line each, and a new segment is started
+ * every segmentItems keys.  A segment is deleted once it is full and every key in it has been completed.
+ * Segments left by a previous process are read first, so a key is written at least once across restarts.
+ * Appends are written through to the file system, which survives the process but not the machine.
+ */
+class S3WriteJournal {
+
+    private final static Logger logger = LoggerFactory.getLogger(S3WriteJournal.class);
+    private static final String SUFFIX = ".log";
+
+    private final File directory;
+    private final int segmentItems;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment writeSegment;
+    private OutputStream output;
+    private Segment readSegment;
+    private InputStream input;
+    private long outstanding;
+    private boolean closed;
+
+    S3WriteJournal(File directory, int segmentItems) throws IOException {
+        this.directory = directory;
+        this.segmentItems = segmentItems;
+        FileUtils.forceMkdir(directory);
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        long sequence = 0;
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                Segment segment = new Segment(file, Long.parseLong(StringUtils.removeEnd(file.getName(), SUFFIX)));
+                segment.written = countLines(file);
+                segment.full = true;
+                sequence = segment.sequence;
+                if (segment.written == 0) {
+                    FileUtils.deleteQuietly(file);
+                    continue;
+                }
+                segments.add(segment);
+                outstanding += segment.written;
+            }
+        }
+        if (outstanding > 0) {
+            logger.info("recovered {} keys in {} segments from {}", outstanding, segments.size(), directory);
+        }
+        startSegment(sequence + 1);
+    }
+
+    synchronized void append(ChannelContentKey key) throws IOException {
+        if (closed) {
+            throw new IOException("journal is closed " + directory);
+        }
+        if (writeSegment.written >= segmentItems) {
+            writeSegment.full = true;
+            output.close();
+            startSegment(writeSegment.sequence + 1);
+        }
+        output.write((System.currentTimeMillis() + " " + key.toUrl() + "\n").getBytes(StandardCharsets.UTF_8));
+        writeSegment.written++;
+        outstanding++;
+        notifyAll();
+    }
+
+    /**
+     * Waits up to timeoutMillis for at least one key.
+     *
+     * @return up to max keys, in the order they were appended.
+     */
+    synchronized List<Record> read(int max, long timeoutMillis) throws IOException, InterruptedException {
+        List<Record> records = new ArrayList<>();
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (records.isEmpty() && !closed) {
+            readAvailable(records, max);
+            long wait = end - System.currentTimeMillis();
+            if (!records.isEmpty() || wait <= 0) {
+                break;
+            }
+            wait(wait);
+        }
+        return records;
+    }
+
+    private void readAvailable(List<Record> records, int max) throws IOException {
+        while (records.size() < max) {
+            if (readSegment == null) {
+                readSegment = segments.peekFirst();
+            }
+            if (input == null) {
+                input = new BufferedInputStream(new FileInputStream(readSegment.file));
+            }
+            if (readSegment.read < readSegment.written) {
+                String line = readLine();
+                readSegment.read++;
+                Record record = parse(line, readSegment);
+                if (record == null) {
+                    complete(readSegment);
+                } else {
+                    records.add(record);
+                }
+            } else if (readSegment.full) {
+                IOUtils.closeQuietly(input);
+                input = null;
+                Segment finished = readSegment;
+                readSegment = nextSegment(finished);
+                deleteIfDone(finished);
+                if (readSegment == null) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Record parse(String line, Segment segment) {
+        try {
+            String[] split = StringUtils.split(line, " ", 2);
+            return new Record(ChannelContentKey.fromUrl(split[1]), Long.parseLong(split[0]), segment);
+        } catch (Exception e) {
+            logger.warn("skipping unreadable line '{}' in {}", line, segment.file);
+            return null;
+        }
+    }
+
+    /**
+     * Marks a key from {@link #read(int, long)} as written, or given up on.
+     */
+    synchronized void complete(Record record) {
+        complete(record.segment);
+    }
+
+    private void complete(Segment segment) {
+        segment.completed++;
+        outstanding--;
+        deleteIfDone(segment);
+        notifyAll();
+    }
+
+    private void deleteIfDone(Segment segment) {
+        if (segment.full && segment.completed == segment.written && segment != readSegment) {
+            segments.remove(segment);
+            FileUtils.deleteQuietly(segment.file);
+        }
+    }
+
+    private Segment nextSegment(Segment segment) {
+        Iterator<Segment> iterator = segments.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == segment) {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of keys appended and not yet completed.
+     */
+    synchronized long size() {
+        return outstanding;
+    }
+
+    /**
+     * Waits up to timeoutMillis for fewer than size keys to be outstanding.
+     *
+     * @return true if there is space
+     */
+    synchronized boolean awaitSpace(long size, long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (outstanding >= size && !closed) {
+            long wait = end - System.currentTimeMillis();
+            if (wait <= 0) {
+                return false;
+            }
+            wait(wait);
+        }
+        return true;
+    }
+
+    synchronized void close() {
+        closed = true;
+        IOUtils.closeQuietly(output);
+        IOUtils.closeQuietly(input);
+        notifyAll();
+    }
+
+    private void startSegment(long sequence) throws IOException {
+        writeSegment = new Segment(new File(directory, String.format("%020d", sequence) + SUFFIX), sequence);
+        output = new FileOutputStream(writeSegment.file, true);
+        segments.add(writeSegment);
+    }
+
+    private static int countLines(File file) throws IOException {
+        int lines = 0;
+        try (InputStream stream = new BufferedInputStream(new FileInputStream(file))) {
+            int b;
+            while ((b = stream.read()) != -1) {
+                if (b == '\n') {
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    static class Record {
+        private final ChannelContentKey key;
+        private final long millis;
+        private final Segment segment;
+
+        Record(ChannelContentKey key, long millis, Segment segment) {
+            this.key = key;
+            this.millis = millis;
+            this.segment = segment;
+        }
+
+        ChannelContentKey getKey() {
+            return key;
+        }
+
+        /**
+         * @return when the key was appended
+         */
+        long getMillis() {
+            return millis;
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final long sequence;
+        private int written;
+        private int read;
+        private int completed;
+        private boolean full;
+
+        Segment(File file, long sequence) {
+            this.file = file;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.dao.ContentDao;
 import com.flightstats.hub.exception.FailedReadException;
 import com.flightstats.hub.metrics.ActiveTraces;
+import com.flightstats.hub.metrics.MetricsService;
 import com.flightstats.hub.model.ChannelContentKey;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.util.Sleeper;
@@ -19,8 +20,21 @@ import com.google.inject.name.Named;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.*;
 
+/**
+ * Writes single items to S3 behind the insert, from a {@link S3WriteJournal} on disk, so queued keys survive restarts.
+ * <p>
+ * Keys are read from the journal in groups, and each channel's keys are written together in batches of up to
+ * s3.writeQueueBatchItems, with the batches running concurrently.
+ * When s3.writeQueueSize keys are outstanding, {@link #add(ChannelContentKey)} waits up to
+ * s3.writeQueueBlockMillis for space, which slows inserts down instead of dropping keys.
+ * The number of outstanding keys and the age of the oldest key being written are reported as
+ * s3.writeQueue.lag and s3.writeQueue.age.
+ */
 @SuppressWarnings("WeakerAccess")
 @Singleton
 public class S3WriteQueue {
@@ -28,82 +42,167 @@ public class S3WriteQueue {
     private final static Logger logger = LoggerFactory.getLogger(S3WriteQueue.class);
 
     private static final int THREADS = HubProperties.getProperty("s3.writeQueueThreads", 20);
-    private Retryer<Void> retryer = buildRetryer();
-    private BlockingQueue<ChannelContentKey> keys = new LinkedBlockingQueue<>(HubProperties.getProperty("s3.writeQueueSize", 40000));
-    private ExecutorService executorService = Executors.newFixedThreadPool(THREADS,
-            new ThreadFactoryBuilder().setNameFormat("S3WriteQueue-%d").build());
-    @Inject
-    @Named(ContentDao.CACHE)
-    private ContentDao spokeContentDao;
-    @Inject
-    @Named(ContentDao.SINGLE_LONG_TERM)
-    private ContentDao s3SingleContentDao;
+    private static final int MAX_SIZE = HubProperties.getProperty("s3.writeQueueSize", 40000);
+    private static final int BLOCK_MILLIS = HubProperties.getProperty("s3.writeQueueBlockMillis", 1000);
+    private static final int BATCH_ITEMS = HubProperties.getProperty("s3.writeQueueBatchItems", 50);
+    private static final int MAX_IN_FLIGHT = HubProperties.getProperty("s3.writeQueueInFlight", THREADS * BATCH_ITEMS);
+    private static final long REPORT_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private final Retryer<Void> retryer = buildRetryer();
+    private final ExecutorService executorService = Executors.newFixedThreadPool(THREADS,
+            new ThreadFactoryBuilder().setNameFormat("S3WriteQueue-%d").build());
+    private final ExecutorService readerService = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("S3WriteQueueReader-%d").build());
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final Set<S3WriteJournal.Record> writing = ConcurrentHashMap.newKeySet();
+    private final S3WriteJournal journal;
+    private final ContentDao spokeContentDao;
+    private final ContentDao s3SingleContentDao;
+    private final MetricsService metricsService;
+    private volatile boolean running = true;
 
     @Inject
-    private S3WriteQueue() throws InterruptedException {
-        for (int i = 0; i < THREADS; i++) {
-            executorService.submit(() -> {
+    private S3WriteQueue(@Named(ContentDao.CACHE) ContentDao spokeContentDao,
+                         @Named(ContentDao.SINGLE_LONG_TERM) ContentDao s3SingleContentDao,
+                         MetricsService metricsService) throws IOException {
+        this.spokeContentDao = spokeContentDao;
+        this.s3SingleContentDao = s3SingleContentDao;
+        this.metricsService = metricsService;
+        String path = HubProperties.getProperty("s3.writeQueuePath", HubProperties.getSpokePath() + "-s3WriteQueue");
+        journal = new S3WriteJournal(new File(path), HubProperties.getProperty("s3.writeQueueSegmentItems", 10000));
+        readerService.submit(() -> {
+            long lastReport = 0;
+            while (running) {
                 try {
-                    while (true) {
-                        write();
+                    read();
+                    if (System.currentTimeMillis() - lastReport > REPORT_MILLIS) {
+                        report();
+                        lastReport = System.currentTimeMillis();
                     }
-                } catch (Exception e) {
-                    logger.warn("exited thread", e);
+                } catch (InterruptedException e) {
+                    logger.info("reader interrupted");
                     return null;
+                } catch (Exception e) {
+                    logger.warn("unable to read journal", e);
+                    Sleeper.sleepQuietly(1000);
                 }
-            });
+            }
+            return null;
+        });
+    }
+
+    private void read() throws IOException, InterruptedException {
+        inFlight.acquire();
+        int available = 1 + inFlight.drainPermits();
+        List<S3WriteJournal.Record> records = journal.read(available, 1000);
+        inFlight.release(available - records.size());
+        Map<String, List<S3WriteJournal.Record>> channels = new HashMap<>();
+        for (S3WriteJournal.Record record : records) {
+            writing.add(record);
+            List<S3WriteJournal.Record> batch = channels.computeIfAbsent(record.getKey().getChannel(), k -> new ArrayList<>());
+            batch.add(record);
+            if (batch.size() >= BATCH_ITEMS) {
+                submit(batch);
+                channels.remove(record.getKey().getChannel());
+            }
         }
+        channels.values().forEach(this::submit);
     }
 
-    private void write() throws InterruptedException {
+    private void submit(List<S3WriteJournal.Record> batch) {
+        executorService.submit(() -> {
+            for (S3WriteJournal.Record record : batch) {
+                write(record);
+            }
+        });
+    }
+
+    private void write(S3WriteJournal.Record record) {
         try {
-            ChannelContentKey key = keys.poll(5, TimeUnit.SECONDS);
             retryer.call(() -> {
-                writeContent(key);
+                writeContent(record.getKey());
                 return null;
             });
         } catch (Exception e) {
-            logger.warn("unable to call s3", e);
+            logger.warn("unable to call s3 " + record.getKey(), e);
+            metricsService.count("s3.writeQueue.failed", 1);
+        } finally {
+            writing.remove(record);
+            journal.complete(record);
+            inFlight.release();
         }
     }
 
     private void writeContent(ChannelContentKey key) throws Exception {
-        if (key != null) {
-            ActiveTraces.start("S3WriteQueue.writeContent", key);
-            try {
-                logger.trace("writing {}", key.getContentKey());
-                Content content = spokeContentDao.get(key.getChannel(), key.getContentKey());
-                content.packageStream();
-                if (content.getData() == null) {
-                    throw new FailedReadException("unable to read " + key.toString());
-                }
-                s3SingleContentDao.insert(key.getChannel(), content);
-            } finally {
-                ActiveTraces.end();
+        ActiveTraces.start("S3WriteQueue.writeContent", key);
+        try {
+            logger.trace("writing {}", key.getContentKey());
+            Content content = spokeContentDao.get(key.getChannel(), key.getContentKey());
+            content.packageStream();
+            if (content.getData() == null) {
+                throw new FailedReadException("unable to read " + key.toString());
             }
+            s3SingleContentDao.insert(key.getChannel(), content);
+        } finally {
+            ActiveTraces.end();
+        }
+    }
+
+    private void report() {
+        long oldest = System.currentTimeMillis();
+        for (S3WriteJournal.Record record : writing) {
+            oldest = Math.min(oldest, record.getMillis());
         }
+        metricsService.gauge("s3.writeQueue.lag", journal.size());
+        metricsService.gauge("s3.writeQueue.age", System.currentTimeMillis() - oldest);
     }
 
+    /**
+     * Appends the key to the journal, waiting for space when too many keys are outstanding.
+     * A key is only lost if the journal can not be written.
+     */
     public void add(ChannelContentKey key) {
-        boolean value = keys.offer(key);
-        if (!value) {
-            logger.warn("Add to queue failed - out of queue space. key= {}", key);
+        try {
+            if (!journal.awaitSpace(MAX_SIZE, BLOCK_MILLIS)) {
+                logger.info("queue is full, adding {}", key);
+                metricsService.count("s3.writeQueue.full", 1);
+            }
+            journal.append(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            appendQuietly(key);
+        } catch (IOException e) {
+            logger.warn("unable to add to journal " + key, e);
+            metricsService.count("s3.writeQueue.failed", 1);
+        }
+    }
+
+    private void appendQuietly(ChannelContentKey key) {
+        try {
+            journal.append(key);
+        } catch (IOException e) {
+            logger.warn("unable to add to journal " + key, e);
         }
     }
 
+    /**
+     * Waits up to a minute for outstanding keys to be written.  Any left are written after the next start.
+     */
     public void close() {
         int count = 0;
-        while (keys.size() > 0) {
+        while (journal.size() > 0) {
             count++;
-            logger.info("waiting for keys {}", keys.size());
+            logger.info("waiting for keys {}", journal.size());
             if (count >= 60) {
-                logger.warn("waited too long for keys {}", keys.size());
-                return;
+                logger.warn("waited too long for keys {}, leaving them in the journal", journal.size());
+                break;
             }
             Sleeper.sleepQuietly(1000);
         }
+        running = false;
+        readerService.shutdownNow();
         executorService.shutdown();
+        journal.close();
     }
 
     private Retryer<Void> buildRetryer() {
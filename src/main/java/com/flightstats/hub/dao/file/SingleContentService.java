@@ -1,5 +1,6 @@
 package com.flightstats.hub.dao.file;
 
+import com.flightstats.hub.dao.ChannelKeyNotifier;
 import com.flightstats.hub.dao.ContentKeyUtil;
 import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.dao.ContentService;
@@ -10,6 +11,7 @@ import com.flightstats.hub.model.*;
 import com.flightstats.hub.spoke.FileSpokeStore;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
+import com.google.inject.Inject;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,11 +29,15 @@ public class SingleContentService implements ContentService {
     private final static Logger logger = LoggerFactory.getLogger(SingleContentService.class);
 
     private final FileSpokeStore fileSpokeStore;
+    private final ChannelKeyNotifier channelKeyNotifier;
 
-    public SingleContentService() {
+    @Inject
+    public SingleContentService(ChannelKeyNotifier channelKeyNotifier) {
         String contentPath = FileUtil.getContentPath();
         logger.info("using {}", contentPath);
         fileSpokeStore = new FileSpokeStore(contentPath);
+        this.channelKeyNotifier = channelKeyNotifier;
+        channelKeyNotifier.complete(System.currentTimeMillis());
     }
 
     @Override
@@ -42,6 +48,7 @@ public class SingleContentService implements ContentService {
         if (!fileSpokeStore.insert(path, content.getData())) {
             throw new FailedWriteException("unable to write to file system, " + path);
         }
+        channelKeyNotifier.notify(channelName, Collections.singletonList(key));
         return key;
     }
 
@@ -50,11 +57,11 @@ public class SingleContentService implements ContentService {
         bulkContent.withChannel(formatChannel(bulkContent.getChannel()));
         Collection<ContentKey> keys = new ArrayList<>();
         logger.info("inserting {}", bulkContent);
-        for (Content content : bulkContent.getItems()) {
+        bulkContent.forEachItem(content -> {
             logger.info("inserting item key {}", content.getContentKey().get());
             content.packageStream();
             keys.add(insert(bulkContent.getChannel(), content));
-        }
+        });
         return keys;
     }
 
@@ -1,97 +1,101 @@
 package com.flightstats.hub.events;
 
-import com.diffplug.common.base.Errors;
-import com.flightstats.hub.dao.ChannelService;
 import com.flightstats.hub.dao.ItemRequest;
-import com.flightstats.hub.model.ChannelContentKey;
 import com.flightstats.hub.model.Content;
-import com.flightstats.hub.webhook.WebhookService;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.ContentPath;
+import com.flightstats.hub.webhook.ChannelStreams;
+import com.flightstats.hub.webhook.ChannelTails;
+import com.flightstats.hub.webhook.StreamSink;
 import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import org.apache.commons.io.IOUtils;
 import org.eclipse.jetty.io.EofException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
 
+/**
+ * Streams items to server sent events clients with {@link ChannelStreams}.
+ * Items are read through {@link ChannelTails}, so each is read once for all the clients on this hub.
+ * <p>
+ * Event writes block until the client takes them, so each client's writes run one at a time on the events pool,
+ * instead of on the streams' shared pool, and so does closing it.  A client which doesn't take a write is closed
+ * as a slow subscriber.
+ */
 @Singleton
 public class EventsService {
 
     private final static Logger logger = LoggerFactory.getLogger(EventsService.class);
 
     @Inject
-    private ChannelService channelService;
+    private ChannelTails channelTails;
     @Inject
-    private WebhookService webhookService;
+    private ChannelStreams channelStreams;
+    private final ExecutorService writers = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("events-%d").setDaemon(true).build());
 
-    private Map<String, EventWebhook> outputStreamMap = new ConcurrentHashMap<>();
-
-    void getAndSendData(String uri, String id) {
-        logger.trace("got uri {} {}", uri, id);
-        ChannelContentKey key = ChannelContentKey.fromUrl(uri);
-        if (key != null) {
-            ItemRequest itemRequest = ItemRequest.builder()
-                    .channel(key.getChannel())
-                    .key(key.getContentKey())
-                    .build();
-            Optional<Content> optional = channelService.get(itemRequest);
-            if (optional.isPresent()) {
-                Content content = optional.get();
-                sendData(id, Errors.rethrow().wrap(contentOutput -> {
-                    contentOutput.write(content);
-                    logger.trace("sent content {} to {}", id, content.getContentKey());
-                }));
-            }
-        }
+    public void register(ContentOutput contentOutput) {
+        logger.info("registering events {} from {}", contentOutput.getChannel(), contentOutput.getContentKey());
+        channelStreams.subscribe(contentOutput.getChannel(), contentOutput.getContentKey(), true, new EventsSink(contentOutput));
     }
 
-    void checkHealth(String id) {
-        logger.trace("check health {}", id);
-        sendData(id, Errors.rethrow().wrap(contentOutput -> {
-            contentOutput.writeHeartbeat();
-            logger.trace("sent heartbeat to {}", id);
-        }));
-    }
+    private class EventsSink implements StreamSink {
 
-    private void sendData(String id, Consumer<ContentOutput> contentConsumer) {
-        try {
-            EventWebhook eventWebhook = outputStreamMap.get(id);
-            if (eventWebhook == null) {
-                logger.info("unable to find id {}", id);
-                unregister(id);
-            } else {
-                contentConsumer.accept(eventWebhook.getContentOutput());
-            }
-        } catch (Errors.WrappedAsRuntimeException e) {
-            if (e.getCause() instanceof EofException) {
-                logger.info("unable to write, closing " + id);
-            } else {
-                logger.warn("unable to send to " + id, e);
+        private final ContentOutput contentOutput;
+
+        private EventsSink(ContentOutput contentOutput) {
+            this.contentOutput = contentOutput;
+        }
+
+        @Override
+        public void send(ContentPath contentPath, Consumer<Throwable> done) {
+            try {
+                writers.execute(() -> write(contentPath, done));
+            } catch (RejectedExecutionException e) {
+                done.accept(e);
             }
-            unregister(id);
-        } catch (Exception e) {
-            logger.warn("unable to send to " + id, e);
-            unregister(id);
         }
-    }
 
-    public void register(ContentOutput contentOutput) {
-        EventWebhook eventWebhook = new EventWebhook(contentOutput);
-        logger.info("registering events {}", eventWebhook.getGroupName());
-        outputStreamMap.put(eventWebhook.getGroupName(), eventWebhook);
-        eventWebhook.start();
-    }
+        private void write(ContentPath contentPath, Consumer<Throwable> done) {
+            try {
+                if (contentPath instanceof ContentKey) {
+                    ItemRequest itemRequest = ItemRequest.builder()
+                            .channel(contentOutput.getChannel())
+                            .key((ContentKey) contentPath)
+                            .build();
+                    Optional<Content> optional = channelTails.getContent(itemRequest);
+                    if (optional.isPresent()) {
+                        contentOutput.write(optional.get());
+                        logger.trace("sent content {} to {}", contentPath, contentOutput.getChannel());
+                    }
+                } else {
+                    contentOutput.writeHeartbeat();
+                    logger.trace("sent heartbeat to {}", contentOutput.getChannel());
+                }
+                done.accept(null);
+            } catch (EofException e) {
+                logger.info("unable to write, closing events {}", contentOutput.getChannel());
+                done.accept(e);
+            } catch (Exception e) {
+                logger.warn("unable to send to events " + contentOutput.getChannel(), e);
+                done.accept(e);
+            }
+        }
 
-    private void unregister(String id) {
-        logger.info("unregistering events {}", id);
-        EventWebhook remove = outputStreamMap.remove(id);
-        if (null != remove) {
-            remove.stop();
-        } else {
-            webhookService.delete(id);
+        @Override
+        public void close() {
+            try {
+                writers.execute(() -> IOUtils.closeQuietly(contentOutput));
+            } catch (RejectedExecutionException e) {
+                IOUtils.closeQuietly(contentOutput);
+            }
         }
     }
 
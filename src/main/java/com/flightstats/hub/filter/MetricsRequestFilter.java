@@ -15,8 +15,9 @@ import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
 import javax.ws.rs.ext.Provider;
 import java.io.IOException;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 
@@ -31,6 +32,8 @@ public class MetricsRequestFilter implements ContainerRequestFilter, ContainerRe
     private static final ThreadLocal<RequestState> threadLocal = new ThreadLocal<>();
     private static final String CHARACTERS_TO_REMOVE = "[\\[\\]|.*+]";
     private static final String CHARACTERS_TO_REPLACE = "[:\\{\\}]";
+    private static final Map<String, String> cleanTemplates = new ConcurrentHashMap<>();
+    private static final Map<String, Map<String, CallTags>> templateTags = new ConcurrentHashMap<>();
 
     @Override
     public void filter(ContainerRequestContext request, ContainerResponseContext response) {
@@ -54,37 +57,36 @@ public class MetricsRequestFilter implements ContainerRequestFilter, ContainerRe
             ContainerRequestContext request = requestState.getRequest();
             long time = System.currentTimeMillis() - requestState.getStart();
             String endpoint = getRequestTemplate(request);
-
-            Map<String, String> tags = new HashMap<>();
-            tags.put("method", request.getMethod());
-            tags.put("call", tags.get("method") + endpoint);
-
+            CallTags callTags = getCallTags(request.getMethod(), endpoint);
+            String call = callTags.call;
             String channel = RequestUtils.getChannelName(request);
-            if (!isBlank(channel)) {
-                tags.put("channel", channel);
-            }
             String tag = RequestUtils.getTag(request);
-            if (!isBlank(tag)) {
-                tags.put("tag", tag);
-            }
 
             if (isBlank(endpoint)) {
                 logger.trace("no endpoint, path: {}", request.getUriInfo().getPath());
-            } else if (tags.get("call").endsWith("/shutdown")) {
+            } else if (call.endsWith("/shutdown")) {
                 logger.info("call to shutdown, ignoring datadog time {}", time);
-            } else {
-                String[] tagArray = getTagArray(tags);
-                logger.trace("DataDog data sent: {}", Arrays.toString(tagArray));
-                if (metricsService.shouldLog(channel)) {
-                    metricsService.time("request", requestState.getStart(), tagArray);
+            } else if (metricsService.shouldLog(channel)) {
+                String[] tagArray = new String[2 + (isBlank(channel) ? 0 : 1) + (isBlank(tag) ? 0 : 1)];
+                int index = 0;
+                tagArray[index++] = callTags.methodTag;
+                tagArray[index++] = callTags.callTag;
+                if (!isBlank(channel)) {
+                    tagArray[index++] = "channel:" + channel;
+                }
+                if (!isBlank(tag)) {
+                    tagArray[index] = "tag:" + tag;
                 }
+                logger.trace("DataDog data sent: {}", (Object) tagArray);
+                metricsService.time("request", requestState.getStart(), tagArray);
             }
-            logger.trace("request {}, time: {}", tags.get("endpoint"), time);
+            logger.trace("request {}, time: {}", endpoint, time);
             int returnCode = requestState.getResponse().getStatus();
             if (returnCode > 400 && returnCode != 404) {
-                tags.put("errorCode", String.valueOf(returnCode));
-                String[] tagArray = getTagArray(tags, "errorCode", "call", "channel");
-                logger.trace("data sent: {}", Arrays.toString(tagArray));
+                String[] tagArray = isBlank(channel)
+                        ? new String[]{"errorCode:" + returnCode, callTags.callTag}
+                        : new String[]{"errorCode:" + returnCode, callTags.callTag, "channel:" + channel};
+                logger.trace("data sent: {}", (Object) tagArray);
                 metricsService.count("errors", 1, tagArray);
             }
         } catch (Exception e) {
@@ -99,30 +101,54 @@ public class MetricsRequestFilter implements ContainerRequestFilter, ContainerRe
         threadLocal.set(new RequestState(request));
     }
 
-    private static String[] getTagArray(Map<String, String> tags, String... tagsOnly) {
-        return tags.entrySet().stream()
-                .filter(entry -> {
-                    if (tagsOnly != null && tagsOnly.length > 0) {
-                        return Arrays.asList(tagsOnly).contains(entry.getKey());
-                    } else {
-                        return true;
-                    }
-                })
-                .map(entry -> entry.getKey() + ":" + entry.getValue())
-                .toArray(String[]::new);
-    }
-
+    /**
+     * Each template is cleaned once, as there are only as many templates as resource methods.
+     */
     @VisibleForTesting
     static String getRequestTemplate(ContainerRequestContext request) {
         UriRoutingContext uriInfo = (UriRoutingContext) request.getUriInfo();
-        ArrayList<UriTemplate> templateList = new ArrayList<>(uriInfo.getMatchedTemplates());
-        Collections.reverse(templateList);
-        return templateList
-                .stream()
-                .map(UriTemplate::getTemplate)
-                .map(template -> template.replaceAll(CHARACTERS_TO_REMOVE, ""))
-                .map(template -> template.replaceAll(CHARACTERS_TO_REPLACE, "_"))
-                .collect(Collectors.joining(""));
+        List<UriTemplate> templates = uriInfo.getMatchedTemplates();
+        StringBuilder builder = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            String template = templates.get(i).getTemplate();
+            String cleaned = cleanTemplates.get(template);
+            if (cleaned == null) {
+                cleaned = cleanTemplates.computeIfAbsent(template, raw -> raw
+                        .replaceAll(CHARACTERS_TO_REMOVE, "")
+                        .replaceAll(CHARACTERS_TO_REPLACE, "_"));
+            }
+            builder.append(cleaned);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The tags are built once for each method of each template.
+     */
+    @VisibleForTesting
+    static CallTags getCallTags(String method, String endpoint) {
+        Map<String, CallTags> byMethod = templateTags.get(endpoint);
+        if (byMethod == null) {
+            byMethod = templateTags.computeIfAbsent(endpoint, key -> new ConcurrentHashMap<>());
+        }
+        CallTags tags = byMethod.get(method);
+        if (tags == null) {
+            tags = byMethod.computeIfAbsent(method, key -> new CallTags(method, endpoint));
+        }
+        return tags;
+    }
+
+    @VisibleForTesting
+    static class CallTags {
+        final String call;
+        final String methodTag;
+        final String callTag;
+
+        CallTags(String method, String endpoint) {
+            call = method + endpoint;
+            methodTag = "method:" + method;
+            callTag = "call:" + call;
+        }
     }
 
     private class RequestState {
@@ -11,7 +11,15 @@ import java.util.Collection;
 import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Keeps the traces of running requests and tasks, and the recent and slowest ones.
+ * <p>
+ * With traces.sampleRate below 1, only that fraction of requests are traced in full.
+ * The rest record into per thread rings with {@link RingTraces}, and are only kept if they take
+ * at least traces.slowMillis, or ask for a trace.
+ */
 public class ActiveTraces {
 
     private final static Logger logger = LoggerFactory.getLogger(ActiveTraces.class);
@@ -21,9 +29,15 @@ public class ActiveTraces {
     private static final TopSortedSet<Traces> slowest = new TopSortedSet<>(100, Traces::getTime, new DescendingTracesComparator());
     private static final ThreadLocal<Traces> threadLocal = new ThreadLocal<>();
     private static long logSlowTraces = HubProperties.getProperty("logSlowTracesSeconds", 10) * 1000;
+    private static final double sampleRate = HubProperties.getProperty("traces.sampleRate", 1.0);
+    private static final long slowMillis = HubProperties.getProperty("traces.slowMillis", 1000);
 
     public static void start(Object... objects) {
-        start(new Traces(objects));
+        if (sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            start(new Traces(objects));
+        } else {
+            setLocal(new RingTraces(objects));
+        }
     }
 
     private static void start(Traces traces) {
@@ -41,18 +55,29 @@ public class ActiveTraces {
         if (null == traces) {
             logger.trace("no Traces found");
             return false;
+        } else if (traces instanceof RingTraces) {
+            threadLocal.remove();
+            traces.end(status);
+            if (trace || traces.getTime() >= slowMillis) {
+                keep(((RingTraces) traces).toTraces(), trace);
+            }
+            return true;
         } else {
             logger.trace("removing {}", traces.getId());
             activeTraces.remove(traces.getId());
             threadLocal.remove();
             traces.end(status);
-            traces.log(logSlowTraces, trace, logger);
-            recent.put(traces);
-            slowest.add(traces);
+            keep(traces, trace);
             return true;
         }
     }
 
+    private static void keep(Traces traces, boolean trace) {
+        traces.log(logSlowTraces, trace, logger);
+        recent.put(traces);
+        slowest.add(traces);
+    }
+
     public static void setLocal(Traces traces) {
         threadLocal.set(traces);
     }
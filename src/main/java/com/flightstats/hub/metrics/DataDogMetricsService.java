@@ -14,19 +14,21 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.core.MediaType;
 import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 class DataDogMetricsService implements MetricsService {
     private final static Logger logger = LoggerFactory.getLogger(DataDogMetricsService.class);
     private final static StatsDClient statsd = DataDog.statsd;
     private final static ObjectMapper mapper = HubProvider.getInstance(ObjectMapper.class);
+    private final Map<String, String> channelTags = new ConcurrentHashMap<>();
 
     @Override
     public void insert(String channel, long start, Insert type, int items, long bytes) {
         if (shouldLog(channel)) {
-            time(channel, "channel", start, bytes, "type:" + type.toString());
-            count("channel.items", items, "type:" + type.toString(), "channel:" + channel);
+            time(channel, "channel", start, bytes, type.getTag());
+            count("channel.items", items, type.getTag(), getChannelTag(channel));
         }
     }
 
@@ -105,10 +107,23 @@ class DataDogMetricsService implements MetricsService {
         }
     }
 
+    @Override
+    public void retainChannels(Set<String> channels) {
+        channelTags.keySet().removeIf(channel -> !channels.contains(channel.toLowerCase()));
+    }
+
     String[] addChannelTag(String channel, String... tags) {
-        List<String> tagList = Arrays.stream(tags).collect(Collectors.toList());
-        tagList.add("channel:" + channel);
-        return tagList.toArray(new String[tagList.size()]);
+        String[] withChannel = Arrays.copyOf(tags, tags.length + 1);
+        withChannel[tags.length] = getChannelTag(channel);
+        return withChannel;
+    }
+
+    private String getChannelTag(String channel) {
+        String tag = channelTags.get(channel);
+        if (tag == null) {
+            tag = channelTags.computeIfAbsent(channel, name -> "channel:" + name);
+        }
+        return tag;
     }
 
 }
@@ -4,68 +4,102 @@ import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.HubProvider;
 import com.flightstats.hub.app.HubServices;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 @Singleton
 public class DelegatingMetricsService implements MetricsService {
 
     private static final Logger logger = LoggerFactory.getLogger(DelegatingMetricsService.class);
 
-    private List<MetricsService> services = new ArrayList<>();
+    private final MetricsRegistry metricsRegistry;
+    private volatile List<MetricsService> services = new ArrayList<>();
 
-    public DelegatingMetricsService() {
+    @Inject
+    public DelegatingMetricsService(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        if (HubProperties.getProperty("metrics.registry.enable", true)) {
+            services.add(metricsRegistry);
+        }
         HubServices.register(new DelegatingMetricsServiceInitial(), HubServices.TYPE.BEFORE_HEALTH_CHECK);
     }
 
     @Override
     public void insert(String channel, long start, Insert type, int items, long bytes) {
-        services.forEach((service) -> service.insert(channel, start, type, items, bytes));
+        for (MetricsService service : services) {
+            service.insert(channel, start, type, items, bytes);
+        }
     }
 
     @Override
     public void event(String title, String text, String... tags) {
-        services.forEach((service) -> service.event(title, text, tags));
+        for (MetricsService service : services) {
+            service.event(title, text, tags);
+        }
     }
 
     @Override
     public void count(String name, long value, String... tags) {
-        services.forEach((service) -> service.count(name, value, tags));
+        for (MetricsService service : services) {
+            service.count(name, value, tags);
+        }
     }
 
     @Override
     public void gauge(String name, double value, String... tags) {
-        services.forEach((service) -> service.gauge(name, value, tags));
+        for (MetricsService service : services) {
+            service.gauge(name, value, tags);
+        }
     }
 
     @Override
     public void mute() {
-        services.forEach((service) -> service.mute());
+        for (MetricsService service : services) {
+            service.mute();
+        }
     }
 
     @Override
     public void time(String name, long start, String... tags) {
-        services.forEach((service) -> service.time(name, start, tags));
+        for (MetricsService service : services) {
+            service.time(name, start, tags);
+        }
     }
 
     @Override
     public void time(String channel, String name, long start, String... tags) {
-        services.forEach((service) -> service.time(channel, name, start, tags));
+        for (MetricsService service : services) {
+            service.time(channel, name, start, tags);
+        }
     }
 
     @Override
     public void time(String channel, String name, long start, long bytes, String... tags) {
-        services.forEach((service) -> service.time(channel, name, start, bytes, tags));
+        for (MetricsService service : services) {
+            service.time(channel, name, start, bytes, tags);
+        }
+    }
+
+    @Override
+    public void retainChannels(Set<String> channels) {
+        for (MetricsService service : services) {
+            service.retainChannels(channels);
+        }
     }
 
     private class DelegatingMetricsServiceInitial extends AbstractIdleService {
         @Override
         protected void startUp() throws Exception {
             List<MetricsService> newServices = new ArrayList<>();
+            if (HubProperties.getProperty("metrics.registry.enable", true)) {
+                newServices.add(metricsRegistry);
+            }
             if (HubProperties.getProperty("hosted_graphite.enable", false)) {
                 logger.info("starting hosted graphite");
                 newServices.add(HubProvider.getInstance(HostedGraphiteMetricsService.class));
@@ -0,0 +1,96 @@
+package com.flightstats.hub.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of non negative values, with buckets in the style of HdrHistogram.
+ * <p>
+ * Values below 128 have their own bucket.  Larger values are grouped by their highest bit,
+ * and each group is split into 64 buckets, so a percentile is within 1/64th of the recorded value.
+ * A group's buckets are only allocated once a value falls in it.
+ */
+class Histogram {
+
+    private static final int SUB_BUCKETS = 128;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+    private final AtomicReferenceArray<AtomicLongArray> magnitudes = new AtomicReferenceArray<>(MAGNITUDES);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        int magnitude = 0;
+        int index = (int) value;
+        if (value >= SUB_BUCKETS) {
+            magnitude = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            index = (int) (value >>> magnitude) - HALF;
+        }
+        getBuckets(magnitude).incrementAndGet(index);
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    private AtomicLongArray getBuckets(int magnitude) {
+        AtomicLongArray buckets = magnitudes.get(magnitude);
+        if (buckets == null) {
+            magnitudes.compareAndSet(magnitude, null, new AtomicLongArray(magnitude == 0 ? SUB_BUCKETS : HALF));
+            buckets = magnitudes.get(magnitude);
+        }
+        return buckets;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the highest value in the bucket holding the percentile, or 0 if there are no values
+     */
+    long getValueAtPercentile(double percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(percentile, 100) / 100));
+        long seen = 0;
+        for (int magnitude = 0; magnitude < MAGNITUDES; magnitude++) {
+            AtomicLongArray buckets = magnitudes.get(magnitude);
+            if (buckets == null) {
+                continue;
+            }
+            for (int index = 0; index < buckets.length(); index++) {
+                seen += buckets.get(index);
+                if (seen >= target) {
+                    return Math.min(getMax(), highestValue(magnitude, index));
+                }
+            }
+        }
+        return getMax();
+    }
+
+    private static long highestValue(int magnitude, int index) {
+        if (magnitude == 0) {
+            return index;
+        }
+        return ((long) (index + HALF + 1) << magnitude) - 1;
+    }
+}
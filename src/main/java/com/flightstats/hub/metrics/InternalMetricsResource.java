@@ -0,0 +1,24 @@
+package com.flightstats.hub.metrics;
+
+import com.flightstats.hub.app.HubProvider;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+@SuppressWarnings("WeakerAccess")
+@Path("/internal/metrics")
+public class InternalMetricsResource {
+
+    public static final String DESCRIPTION = "Counts, gauges and request time percentiles of this hub, in the Prometheus text format";
+    private static final MetricsRegistry metricsRegistry = HubProvider.getInstance(MetricsRegistry.class);
+
+    @GET
+    @Produces("text/plain; version=0.0.4")
+    public Response getMetrics() {
+        StringBuilder output = new StringBuilder();
+        metricsRegistry.write(output);
+        return Response.ok(output.toString()).build();
+    }
+}
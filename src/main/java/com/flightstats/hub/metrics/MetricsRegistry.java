@@ -0,0 +1,311 @@
+package com.flightstats.hub.metrics;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.inject.Singleton;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps metrics in process, for /internal/metrics.
+ * <p>
+ * Counts are kept in LongAdders, and times in a {@link Histogram}, for each name, channel and set of tags.
+ * Every metrics.registry.flushSeconds the histograms are swapped for new ones, so percentiles cover
+ * the last complete interval, while counts and sums are totals since the start.
+ * A metric is looked up with a key which is reused by each thread, so recording only allocates for a new metric.
+ * Metrics for deleted channels are dropped by {@link #retainChannels(Set)}.
+ */
+@Singleton
+public class MetricsRegistry implements MetricsService {
+
+    private static final int FLUSH_SECONDS = HubProperties.getProperty("metrics.registry.flushSeconds", 60);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String CHANNEL_TAG = "channel:";
+
+    private final Interner<String> interner = Interners.newWeakInterner();
+    private final ConcurrentHashMap<Key, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, Timer> timers = new ConcurrentHashMap<>();
+    private final ThreadLocal<Key> probes = ThreadLocal.withInitial(Key::new);
+
+    public MetricsRegistry() {
+        HubServices.register(new MetricsRegistryFlush());
+    }
+
+    @Override
+    public void insert(String channel, long start, Insert type, int items, long bytes) {
+        if (shouldLog(channel)) {
+            time(channel, "channel", start, bytes, type.getTag());
+            getCounter(probe("channel.items", channel, type.getTag())).add(items);
+        }
+    }
+
+    @Override
+    public void event(String title, String text, String... tags) {
+        //events are not kept
+    }
+
+    @Override
+    public void count(String name, long value, String... tags) {
+        getCounter(probe(name, null, tags)).add(value);
+    }
+
+    @Override
+    public void gauge(String name, double value, String... tags) {
+        Key probe = probe(name, null, tags);
+        Gauge gauge = gauges.get(probe);
+        if (gauge == null) {
+            gauge = gauges.computeIfAbsent(intern(probe), key -> new Gauge());
+        }
+        gauge.value = value;
+    }
+
+    @Override
+    public void time(String name, long start, String... tags) {
+        getTimer(probe(name, null, tags)).record(System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void time(String channel, String name, long start, String... tags) {
+        if (shouldLog(channel)) {
+            getTimer(probe(name, channel, tags)).record(System.currentTimeMillis() - start);
+        }
+    }
+
+    @Override
+    public void time(String channel, String name, long start, long bytes, String... tags) {
+        if (shouldLog(channel)) {
+            time(channel, name, start, tags);
+            getCounter(probe(name + ".bytes", channel, tags)).add(bytes);
+        }
+    }
+
+    @Override
+    public void mute() {
+        //nothing to mute
+    }
+
+    @Override
+    public void retainChannels(Set<String> channels) {
+        counters.keySet().removeIf(key -> !key.isRetained(channels));
+        gauges.keySet().removeIf(key -> !key.isRetained(channels));
+        timers.keySet().removeIf(key -> !key.isRetained(channels));
+    }
+
+    private Key probe(String name, String channel, String... tags) {
+        Key probe = probes.get();
+        probe.set(name, channel, tags);
+        return probe;
+    }
+
+    private Counter getCounter(Key probe) {
+        Counter counter = counters.get(probe);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(intern(probe), key -> new Counter());
+        }
+        return counter;
+    }
+
+    private Timer getTimer(Key probe) {
+        Timer timer = timers.get(probe);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(intern(probe), key -> new Timer());
+        }
+        return timer;
+    }
+
+    private Key intern(Key probe) {
+        String[] tags = new String[probe.tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            tags[i] = interner.intern(probe.tags[i]);
+        }
+        Key key = new Key();
+        key.set(interner.intern(probe.name), probe.channel == null ? null : interner.intern(probe.channel), tags);
+        return key;
+    }
+
+    void flush() {
+        for (Timer timer : timers.values()) {
+            timer.flush();
+        }
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     */
+    public void write(StringBuilder output) {
+        for (Map.Entry<String, List<Map.Entry<Key, Counter>>> entry : byName(counters).entrySet()) {
+            String name = metricName(entry.getKey());
+            output.append("# TYPE ").append(name).append(" counter\n");
+            for (Map.Entry<Key, Counter> metric : entry.getValue()) {
+                output.append(name).append(labels(metric.getKey(), null)).append(' ')
+                        .append(metric.getValue().sum()).append('\n');
+            }
+        }
+        for (Map.Entry<String, List<Map.Entry<Key, Gauge>>> entry : byName(gauges).entrySet()) {
+            String name = metricName(entry.getKey());
+            output.append("# TYPE ").append(name).append(" gauge\n");
+            for (Map.Entry<Key, Gauge> metric : entry.getValue()) {
+                output.append(name).append(labels(metric.getKey(), null)).append(' ')
+                        .append(metric.getValue().value).append('\n');
+            }
+        }
+        for (Map.Entry<String, List<Map.Entry<Key, Timer>>> entry : byName(timers).entrySet()) {
+            String name = metricName(entry.getKey());
+            output.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<Key, Timer> metric : entry.getValue()) {
+                Timer timer = metric.getValue();
+                Histogram histogram = timer.getPercentileHistogram();
+                for (double percentile : PERCENTILES) {
+                    output.append(name).append(labels(metric.getKey(), String.valueOf(percentile / 100))).append(' ')
+                            .append(histogram.getValueAtPercentile(percentile)).append('\n');
+                }
+                String labels = labels(metric.getKey(), null);
+                output.append(name).append("_sum").append(labels).append(' ').append(timer.sum.sum()).append('\n');
+                output.append(name).append("_count").append(labels).append(' ').append(timer.count.sum()).append('\n');
+            }
+        }
+    }
+
+    private static <T> SortedMap<String, List<Map.Entry<Key, T>>> byName(Map<Key, T> metrics) {
+        SortedMap<String, List<Map.Entry<Key, T>>> byName = new TreeMap<>();
+        for (Map.Entry<Key, T> entry : metrics.entrySet()) {
+            byName.computeIfAbsent(entry.getKey().name, name -> new ArrayList<>()).add(entry);
+        }
+        return byName;
+    }
+
+    static String metricName(String name) {
+        return "hub_" + name.replaceAll("[^a-zA-Z0-9_]", "_");
+    }
+
+    private static String labels(Key key, String quantile) {
+        List<String> labels = new ArrayList<>();
+        if (key.channel != null) {
+            labels.add(label("channel", key.channel));
+        }
+        for (String tag : key.tags) {
+            int colon = tag.indexOf(':');
+            if (colon > 0) {
+                labels.add(label(tag.substring(0, colon), tag.substring(colon + 1)));
+            } else {
+                labels.add(label("tag", tag));
+            }
+        }
+        if (quantile != null) {
+            labels.add(label("quantile", quantile));
+        }
+        if (labels.isEmpty()) {
+            return "";
+        }
+        return "{" + String.join(",", labels) + "}";
+    }
+
+    private static String label(String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return name.replaceAll("[^a-zA-Z0-9_]", "_") + "=\"" + escaped + "\"";
+    }
+
+    /**
+     * The name, channel and tags of a metric.  Tags are compared in the order they are given.
+     */
+    private static class Key {
+        private String name;
+        private String channel;
+        private String[] tags;
+        private int hash;
+
+        void set(String name, String channel, String[] tags) {
+            this.name = name;
+            this.channel = channel;
+            this.tags = tags == null ? new String[0] : tags;
+            hash = 31 * (31 * name.hashCode() + Objects.hashCode(channel)) + Arrays.hashCode(this.tags);
+        }
+
+        /**
+         * @return false if the channel, or a channel tag, is not in channels
+         */
+        boolean isRetained(Set<String> channels) {
+            if (channel != null && !channels.contains(channel.toLowerCase())) {
+                return false;
+            }
+            for (String tag : tags) {
+                if (tag.startsWith(CHANNEL_TAG) && !channels.contains(tag.substring(CHANNEL_TAG.length()).toLowerCase())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && name.equals(other.name)
+                    && Objects.equals(channel, other.channel) && Arrays.equals(tags, other.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Counter {
+        private final LongAdder adder = new LongAdder();
+
+        void add(long value) {
+            adder.add(value);
+        }
+
+        long sum() {
+            return adder.sum();
+        }
+    }
+
+    private static class Gauge {
+        private volatile double value;
+    }
+
+    private static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private volatile Histogram current = new Histogram();
+        private volatile Histogram last;
+
+        void record(long millis) {
+            current.record(millis);
+            count.increment();
+            sum.add(Math.max(0, millis));
+        }
+
+        void flush() {
+            last = current;
+            current = new Histogram();
+        }
+
+        Histogram getPercentileHistogram() {
+            Histogram histogram = last;
+            return histogram == null ? current : histogram;
+        }
+    }
+
+    private class MetricsRegistryFlush extends AbstractScheduledService {
+        @Override
+        protected void runOneIteration() throws Exception {
+            flush();
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(FLUSH_SECONDS, FLUSH_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.flightstats.hub.metrics;
 
 import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.model.ChannelConfig;
 import com.flightstats.hub.util.Commander;
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.google.inject.Inject;
@@ -12,7 +14,9 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 @Singleton
@@ -20,10 +24,12 @@ public class MetricsRunner {
     private final static Logger logger = LoggerFactory.getLogger(MetricsRunner.class);
     private final int seconds;
     private final MetricsService metricsService;
+    private final ChannelService channelService;
 
     @Inject
-    public MetricsRunner(MetricsService metricsService) {
+    public MetricsRunner(MetricsService metricsService, ChannelService channelService) {
         this.metricsService = metricsService;
+        this.channelService = channelService;
         this.seconds = HubProperties.getProperty("metrics.seconds", 30);
         HubServices.register(new MetricsRunnerService());
     }
@@ -62,6 +68,22 @@ public class MetricsRunner {
             logger.info("open files {}", openFiles);
             metricsService.count("openFiles", openFiles);
         }
+        retainChannels();
+    }
+
+    /**
+     * Metrics are kept per channel, so drop them once a channel is deleted, on this hub or any other.
+     */
+    private void retainChannels() {
+        try {
+            Set<String> channels = new HashSet<>();
+            for (ChannelConfig channel : channelService.getChannels()) {
+                channels.add(channel.getDisplayName().toLowerCase());
+            }
+            metricsService.retainChannels(channels);
+        } catch (Exception e) {
+            logger.warn("unable to retain channel metrics", e);
+        }
     }
 
 
@@ -1,5 +1,6 @@
 package com.flightstats.hub.metrics;
 
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 public interface MetricsService {
@@ -7,7 +8,13 @@ public interface MetricsService {
     enum Insert {
         single,
         historical,
-        bulk
+        bulk;
+
+        private final String tag = "type:" + name();
+
+        public String getTag() {
+            return tag;
+        }
     }
 
     void insert(String channel, long start, Insert type, int items, long bytes);
@@ -35,6 +42,13 @@ public interface MetricsService {
         }
     }
 
+    /**
+     * Drops anything kept for channels which are not in channels, compared ignoring case.
+     */
+    default void retainChannels(Set<String> channels) {
+        //nothing kept per channel
+    }
+
     default boolean shouldLog(String channel) {
         return !channel.toLowerCase().startsWith("test_");
     }
@@ -0,0 +1,111 @@
+package com.flightstats.hub.metrics;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flightstats.hub.model.SingleTrace;
+import com.flightstats.hub.model.Trace;
+import org.slf4j.Logger;
+
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The traces of a request which was not sampled, which records into each thread's {@link TraceRing}.
+ * Adding a trace with up to four strings, numbers or keys allocates nothing.
+ * If the request is kept, {@link #toTraces()} copies its events into a full {@link Traces}.
+ */
+class RingTraces extends Traces {
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private final long sequenceId = sequence.incrementAndGet();
+
+    RingTraces(Object... objects) {
+        super(System.currentTimeMillis(), "ring");
+        add(objects);
+    }
+
+    @Override
+    public void add(Trace trace) {
+        TraceRing.get().record(sequenceId, 1, trace, null, null, null);
+    }
+
+    @Override
+    public void add(Object... objects) {
+        TraceRing.get().record(sequenceId, TraceRing.ALL, objects, null, null, null);
+    }
+
+    @Override
+    public void add(Object first) {
+        TraceRing.get().record(sequenceId, 1, first, null, null, null);
+    }
+
+    @Override
+    public void add(Object first, Object second) {
+        TraceRing.get().record(sequenceId, 2, first, second, null, null);
+    }
+
+    @Override
+    public void add(Object first, Object second, Object third) {
+        TraceRing.get().record(sequenceId, 3, first, second, third, null);
+    }
+
+    @Override
+    public void add(Object first, Object second, Object third, Object fourth) {
+        TraceRing.get().record(sequenceId, 4, first, second, third, fourth);
+    }
+
+    @Override
+    public void add(String string, SortedSet sortedSet) {
+        if (sortedSet.isEmpty()) {
+            add(string, "empty set");
+        } else {
+            add(string, sortedSet.size(), sortedSet.first(), sortedSet.last());
+        }
+    }
+
+    @Override
+    public String getId() {
+        return "ring-" + sequenceId;
+    }
+
+    /**
+     * @return a copy of the events still in the rings
+     */
+    Traces toTraces() {
+        Traces traces = null;
+        for (SingleTrace trace : TraceRing.collect(sequenceId)) {
+            if (traces == null) {
+                traces = new Traces(trace.getObjects());
+            } else {
+                traces.add(trace);
+            }
+        }
+        if (traces == null) {
+            traces = new Traces("events were overwritten", getId());
+        }
+        traces.setStart(getStart());
+        traces.setEnd(getStart() + getTime());
+        return traces;
+    }
+
+    @Override
+    public void log(long slowLogThresholdMillis, boolean trace, Logger logger) {
+        toTraces().log(slowLogThresholdMillis, trace, logger);
+    }
+
+    @Override
+    public void log(Logger logger) {
+        toTraces().log(logger);
+    }
+
+    @Override
+    public void output(ObjectNode root) {
+        toTraces().output(root);
+    }
+
+    @Override
+    void outputTraces(Consumer<String> consumer) {
+        toTraces().outputTraces(consumer);
+    }
+}
@@ -0,0 +1,156 @@
+package com.flightstats.hub.metrics;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.SingleTrace;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A preallocated ring of trace events for each thread, used by {@link RingTraces}.
+ * <p>
+ * Each event is the id of its traces, a time and up to four values, stored in arrays, so recording strings,
+ * numbers and keys allocates nothing.  Other objects are stored as their toString, so the ring holds no live references.
+ * Only the owning thread writes to a ring.  Each slot's version is its event's order, which the writer sets to
+ * {@link #WRITING} before changing the slot and publishes after it.  A reader checks the version before and after
+ * copying an event, and skips events which were overwritten while it read them.
+ * Events are only read when a trace is kept, and old events are lost once a thread writes traces.ringSize more.
+ */
+class TraceRing {
+
+    private static final int SIZE = HubProperties.getProperty("traces.ringSize", 1024);
+    private static final int ARGS = 4;
+    private static final long WRITING = -1;
+    static final int ALL = -1;
+
+    private static final Map<Thread, TraceRing> rings = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final ThreadLocal<TraceRing> threadLocal = ThreadLocal.withInitial(() -> {
+        TraceRing ring = new TraceRing(SIZE);
+        rings.put(Thread.currentThread(), ring);
+        return ring;
+    });
+
+    private final AtomicLongArray versions;
+    private final AtomicLongArray ids;
+    private final AtomicLongArray times;
+    private final AtomicReferenceArray<Object> args;
+    private final AtomicIntegerArray counts;
+    private long written;
+
+    TraceRing(int size) {
+        versions = new AtomicLongArray(size);
+        ids = new AtomicLongArray(size);
+        times = new AtomicLongArray(size);
+        args = new AtomicReferenceArray<>(size * ARGS);
+        counts = new AtomicIntegerArray(size);
+    }
+
+    static TraceRing get() {
+        return threadLocal.get();
+    }
+
+    /**
+     * The stores are ordered, so a reader which sees any of them also sees the version set to {@link #WRITING}.
+     *
+     * @param count of the objects, or {@link #ALL} when first is the array of objects
+     */
+    void record(long id, int count, Object first, Object second, Object third, Object fourth) {
+        int slot = (int) (written % versions.length());
+        long version = written++;
+        versions.lazySet(slot, WRITING);
+        ids.lazySet(slot, id);
+        times.lazySet(slot, System.currentTimeMillis());
+        int offset = slot * ARGS;
+        if (count == ALL) {
+            args.lazySet(offset, values((Object[]) first));
+        } else {
+            args.lazySet(offset, value(first));
+        }
+        args.lazySet(offset + 1, value(second));
+        args.lazySet(offset + 2, value(third));
+        args.lazySet(offset + 3, value(fourth));
+        counts.lazySet(slot, count);
+        versions.lazySet(slot, version);
+    }
+
+    /**
+     * @return the object if it is immutable, otherwise its toString
+     */
+    private static Object value(Object object) {
+        if (object == null || object instanceof String || object instanceof Number || object instanceof Boolean
+                || object instanceof Character || object instanceof Enum || object instanceof ContentKey) {
+            return object;
+        }
+        return String.valueOf(object);
+    }
+
+    private static Object[] values(Object[] objects) {
+        Object[] values = new Object[objects.length];
+        for (int i = 0; i < objects.length; i++) {
+            values[i] = value(objects[i]);
+        }
+        return values;
+    }
+
+    private void collect(long id, List<Event> events) {
+        for (int slot = 0; slot < versions.length(); slot++) {
+            long version = versions.get(slot);
+            if (version == WRITING || ids.get(slot) != id) {
+                continue;
+            }
+            try {
+                long time = times.get(slot);
+                int count = counts.get(slot);
+                int offset = slot * ARGS;
+                Object[] objects;
+                if (count == ALL) {
+                    objects = (Object[]) args.get(offset);
+                } else {
+                    objects = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        objects[i] = args.get(offset + i);
+                    }
+                }
+                if (versions.get(slot) == version) {
+                    events.add(new Event(time, version, objects));
+                }
+            } catch (RuntimeException e) {
+                //the event was overwritten while it was read
+            }
+        }
+    }
+    /**
+     * @return the events of a traces from every thread's ring, in the order they happened
+     */
+    static List<SingleTrace> collect(long id) {
+        List<Event> events = new ArrayList<>();
+        List<TraceRing> copy;
+        synchronized (rings) {
+            copy = new ArrayList<>(rings.values());
+        }
+        for (TraceRing ring : copy) {
+            ring.collect(id, events);
+        }
+        events.sort(Comparator.comparingLong((Event event) -> event.time).thenComparingLong(event -> event.order));
+        List<SingleTrace> traces = new ArrayList<>(events.size());
+        for (Event event : events) {
+            traces.add(SingleTrace.at(event.time, event.objects));
+        }
+        return traces;
+    }
+
+    private static class Event {
+        private final long time;
+        private final long order;
+        private final Object[] objects;
+
+        Event(long time, long order, Object[] objects) {
+            this.time = time;
+            this.order = order;
+            this.objects = objects;
+        }
+    }
+}
@@ -17,14 +17,27 @@ public class Traces {
     private static final int LIMIT = HubProperties.getProperty("traces.limit", 50);
     private long start = System.currentTimeMillis();
     private long end;
-    private final String id = UUID.randomUUID().toString();
-    private final List<Trace> traces = Collections.synchronizedList(new ArrayList<>());
-    private final ObjectRing<Trace> lastTraces = new ObjectRing<>(LIMIT);
+    private final String id;
+    private final List<Trace> traces;
+    private final ObjectRing<Trace> lastTraces;
 
     public Traces(Object... objects) {
+        id = UUID.randomUUID().toString();
+        traces = Collections.synchronizedList(new ArrayList<>());
+        lastTraces = new ObjectRing<>(LIMIT);
         add(objects);
     }
 
+    /**
+     * For subclasses which keep their traces somewhere else.
+     */
+    Traces(long start, String id) {
+        this.start = start;
+        this.id = id;
+        traces = null;
+        lastTraces = null;
+    }
+
     public void end(int status) {
         end = System.currentTimeMillis();
         add("response", status);
@@ -54,6 +67,25 @@ public class Traces {
         add(new SingleTrace(objects));
     }
 
+    /*
+     * The fixed arity versions let subclasses record a trace without the varargs array.
+     */
+    public void add(Object first) {
+        add(new SingleTrace(first));
+    }
+
+    public void add(Object first, Object second) {
+        add(new SingleTrace(first, second));
+    }
+
+    public void add(Object first, Object second, Object third) {
+        add(new SingleTrace(first, second, third));
+    }
+
+    public void add(Object first, Object second, Object third, Object fourth) {
+        add(new SingleTrace(first, second, third, fourth));
+    }
+
     public void add(String string, SortedSet sortedSet) {
         if (sortedSet.isEmpty()) {
             add(string, "empty set");
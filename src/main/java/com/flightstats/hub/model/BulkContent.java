@@ -1,5 +1,6 @@
 package com.flightstats.hub.model;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
@@ -13,6 +14,10 @@ public class BulkContent {
     private final String channel;
     private final List<Content> items = new ArrayList<>();
     private ContentKey masterKey;
+    private ItemSource itemSource;
+    private boolean streamed;
+    private int streamedCount;
+    private long streamedBytes;
 
     @java.beans.ConstructorProperties({"isNew", "stream", "contentType", "channel", "masterKey"})
     BulkContent(boolean isNew, InputStream stream, String contentType, String channel, ContentKey masterKey) {
@@ -32,6 +37,9 @@ public class BulkContent {
     }
 
     public long getSize() {
+        if (streamed) {
+            return streamedBytes;
+        }
         long bytes = 0;
         for (Content item : items) {
             bytes += item.getSize();
@@ -60,6 +68,43 @@ public class BulkContent {
         return this.items;
     }
 
+    /**
+     * Items from the source are read as they are inserted, instead of being held in {@link #getItems()}.
+     */
+    public void setItemSource(ItemSource itemSource) {
+        this.itemSource = itemSource;
+    }
+
+    /**
+     * Calls the consumer with each item, from the item source if there is one, otherwise from {@link #getItems()}.
+     * An item source can only be read once.
+     */
+    public void forEachItem(ItemConsumer consumer) throws Exception {
+        if (itemSource == null) {
+            if (streamed) {
+                throw new IllegalStateException("streamed items have already been read " + channel);
+            }
+            for (Content item : items) {
+                consumer.accept(item);
+            }
+            return;
+        }
+        ItemSource source = itemSource;
+        itemSource = null;
+        streamed = true;
+        Content item = source.next();
+        while (item != null) {
+            consumer.accept(item);
+            streamedCount++;
+            streamedBytes += item.getSize();
+            item = source.next();
+        }
+    }
+
+    public int getItemCount() {
+        return streamed ? streamedCount : items.size();
+    }
+
     public ContentKey getMasterKey() {
         return this.masterKey;
     }
@@ -68,6 +113,19 @@ public class BulkContent {
         return this.channel == channel ? this : new BulkContent(this.isNew, this.stream, this.contentType, channel, this.masterKey);
     }
 
+    @FunctionalInterface
+    public interface ItemSource {
+        /**
+         * @return the next item, or null after the last item
+         */
+        Content next() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ItemConsumer {
+        void accept(Content item) throws Exception;
+    }
+
     public static class BulkContentBuilder {
         private boolean isNew;
         private InputStream stream;
@@ -23,6 +23,7 @@ public class ChannelConfig implements Serializable, NamedType {
     public static final String SINGLE = "SINGLE";
     public static final String BATCH = "BATCH";
     public static final String BOTH = "BOTH";
+    public static final String DEFLATE = "DEFLATE";
 
     private static final long serialVersionUID = 1L;
 
@@ -47,10 +48,11 @@ public class ChannelConfig implements Serializable, NamedType {
     private boolean protect;
     private DateTime mutableTime;
     private boolean allowZeroBytes;
+    private String codec;
 
     private ChannelConfig(String name, String owner, Date creationDate, long ttlDays, long maxItems, boolean keepForever, String description,
                           Set<String> tags, String replicationSource, String storage, GlobalConfig global,
-                          boolean protect, DateTime mutableTime, boolean allowZeroBytes, String displayName) {
+                          boolean protect, DateTime mutableTime, boolean allowZeroBytes, String displayName, String codec) {
         this.name = StringUtils.trim(name);
         this.displayName = StringUtils.defaultIfBlank(StringUtils.trim(displayName), this.name);
         this.owner = StringUtils.trim(owner);
@@ -75,6 +77,12 @@ public class ChannelConfig implements Serializable, NamedType {
             this.storage = StringUtils.upperCase(storage);
         }
 
+        if (isBlank(codec)) {
+            this.codec = DEFLATE;
+        } else {
+            this.codec = StringUtils.upperCase(codec);
+        }
+
         if (global != null) {
             this.global = global.cleanup();
         } else {
@@ -137,6 +145,7 @@ public class ChannelConfig implements Serializable, NamedType {
             builder.mutableTime(HubDateTimeTypeAdapter.deserialize(rootNode.get("mutableTime").asText()));
         }
         if (rootNode.has("allowZeroBytes")) builder.allowZeroBytes(rootNode.get("allowZeroBytes").asBoolean());
+        if (rootNode.has("codec")) builder.codec(getString(rootNode.get("codec")));
         return builder.build();
     }
 
@@ -275,6 +284,13 @@ public class ChannelConfig implements Serializable, NamedType {
         return displayName;
     }
 
+    /**
+     * @return the name of the {@link com.flightstats.hub.dao.ContentCodec} for the channel's payloads
+     */
+    public String getCodec() {
+        return codec;
+    }
+
     public String getLowerCaseName() {
         return getDisplayName().toLowerCase();
     }
@@ -319,6 +335,9 @@ public class ChannelConfig implements Serializable, NamedType {
         if (this$mutableTime == null ? other$mutableTime != null : !this$mutableTime.equals(other$mutableTime))
             return false;
         if (this.isAllowZeroBytes() != other.isAllowZeroBytes()) return false;
+        final Object this$codec = this.getCodec();
+        final Object other$codec = other.getCodec();
+        if (this$codec == null ? other$codec != null : !this$codec.equals(other$codec)) return false;
         return true;
     }
 
@@ -351,11 +370,13 @@ public class ChannelConfig implements Serializable, NamedType {
         final Object $mutableTime = this.getMutableTime();
         result = result * PRIME + ($mutableTime == null ? 43 : $mutableTime.hashCode());
         result = result * PRIME + (this.isAllowZeroBytes() ? 79 : 97);
+        final Object $codec = this.getCodec();
+        result = result * PRIME + ($codec == null ? 43 : $codec.hashCode());
         return result;
     }
 
     public String toString() {
-        return "com.flightstats.hub.model.ChannelConfig(name=" + this.getName() + ", owner=" + this.getOwner() + ", creationDate=" + this.getCreationDate() + ", ttlDays=" + this.getTtlDays() + ", maxItems=" + this.getMaxItems() + ", description=" + this.getDescription() + ", tags=" + this.getTags() + ", replicationSource=" + this.getReplicationSource() + ", storage=" + this.getStorage() + ", global=" + this.getGlobal() + ", protect=" + this.isProtect() + ", mutableTime=" + this.getMutableTime() + ", allowZeroBytes=" + this.isAllowZeroBytes() + ")";
+        return "com.flightstats.hub.model.ChannelConfig(name=" + this.getName() + ", owner=" + this.getOwner() + ", creationDate=" + this.getCreationDate() + ", ttlDays=" + this.getTtlDays() + ", maxItems=" + this.getMaxItems() + ", description=" + this.getDescription() + ", tags=" + this.getTags() + ", replicationSource=" + this.getReplicationSource() + ", storage=" + this.getStorage() + ", global=" + this.getGlobal() + ", protect=" + this.isProtect() + ", mutableTime=" + this.getMutableTime() + ", allowZeroBytes=" + this.isAllowZeroBytes() + ", codec=" + this.getCodec() + ")";
     }
 
     public ChannelConfigBuilder toBuilder() {
@@ -379,6 +400,7 @@ public class ChannelConfig implements Serializable, NamedType {
         private GlobalConfig global;
         private DateTime mutableTime;
         private String displayName;
+        private String codec = "";
 
         ChannelConfigBuilder() {
         }
@@ -399,6 +421,7 @@ public class ChannelConfig implements Serializable, NamedType {
             global(config.getGlobal());
             mutableTime(config.getMutableTime());
             displayName(config.getDisplayName());
+            codec(config.getCodec());
         }
 
         public ChannelConfigBuilder tags(List<String> tagList) {
@@ -483,8 +506,13 @@ public class ChannelConfig implements Serializable, NamedType {
             return this;
         }
 
+        public ChannelConfigBuilder codec(String codec) {
+            this.codec = codec;
+            return this;
+        }
+
         public ChannelConfig build() {
-            return new ChannelConfig(name, owner, creationDate, ttlDays, maxItems, keepForever, description, tags, replicationSource, storage, global, protect, mutableTime, allowZeroBytes, displayName);
+            return new ChannelConfig(name, owner, creationDate, ttlDays, maxItems, keepForever, description, tags, replicationSource, storage, global, protect, mutableTime, allowZeroBytes, displayName, codec);
         }
 
     }
@@ -1,6 +1,7 @@
 package com.flightstats.hub.model;
 
 import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.metrics.ActiveTraces;
 import com.google.common.base.Optional;
@@ -29,6 +30,7 @@ public class Content implements Serializable {
     private transient boolean isLarge;
     private transient int threads;
     private transient boolean isHistorical;
+    private transient ContentCodec codec;
     private boolean forceWrite;
     private boolean replicated;
 
@@ -41,6 +43,7 @@ public class Content implements Serializable {
         forceWrite = builder.forceWrite;
         isLarge = builder.large;
         size = builder.size;
+        codec = builder.codec;
     }
 
     public static Builder builder() {
@@ -111,10 +114,25 @@ public class Content implements Serializable {
         }
     }
 
+    /**
+     * Writes the item as {@link #packageStream()} would, without keeping the marshalled bytes.
+     */
+    public void packageStream(OutputStream output) throws IOException {
+        if (isLarge || contentLength >= HubProperties.getLargePayload()) {
+            isLarge = true;
+            output.write(getData());
+        } else {
+            ContentMarshaller.toStream(this, output);
+            close();
+            stream = null;
+        }
+    }
+
     public byte[] getData() {
         if (data == null && stream != null) {
             try {
                 data = ByteStreams.toByteArray(stream);
+                close();
                 stream = null;
             } catch (EOFException e) {
                 logger.info("file ended early {}", contentKey);
@@ -188,6 +206,17 @@ public class Content implements Serializable {
         this.size = size;
     }
 
+    public ContentCodec getCodec() {
+        return codec == null ? ContentCodec.DEFLATE : codec;
+    }
+
+    /**
+     * The codec used the next time the content is packaged.
+     */
+    public void setCodec(ContentCodec codec) {
+        this.codec = codec;
+    }
+
     public static class Builder {
         private Optional<String> contentType = Optional.absent();
         private long contentLength = 0;
@@ -197,6 +226,7 @@ public class Content implements Serializable {
         private int threads;
         private boolean forceWrite;
         private boolean large;
+        private ContentCodec codec = ContentCodec.DEFLATE;
 
         public Builder withContentType(String contentType) {
             this.contentType = Optional.fromNullable(contentType);
@@ -247,6 +277,15 @@ public class Content implements Serializable {
             return this;
         }
 
+        public Builder withCodec(ContentCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        public ContentCodec getCodec() {
+            return this.codec;
+        }
+
         public Optional<String> getContentType() {
             return this.contentType;
         }
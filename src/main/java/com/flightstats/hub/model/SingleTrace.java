@@ -6,12 +6,24 @@ import java.util.Arrays;
 
 public class SingleTrace implements Trace {
     private final Object[] objects;
-    private final long time = System.currentTimeMillis();
+    private final long time;
 
     public SingleTrace(Object... objects) {
+        this(System.currentTimeMillis(), objects);
+    }
+
+    private SingleTrace(long time, Object[] objects) {
+        this.time = time;
         this.objects = objects;
     }
 
+    /**
+     * @return a trace of something which happened at time
+     */
+    public static SingleTrace at(long time, Object[] objects) {
+        return new SingleTrace(time, objects);
+    }
+
     @Override
     public String toString() {
         return new DateTime(time) + " " + Arrays.toString(objects);
@@ -3,7 +3,7 @@ package com.flightstats.hub.replication;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.flightstats.hub.app.HubProvider;
-import com.flightstats.hub.cluster.LastContentPath;
+import com.flightstats.hub.cluster.LastContentPathCoalescer;
 import com.flightstats.hub.dao.LocalChannelService;
 import com.flightstats.hub.metrics.ActiveTraces;
 import com.flightstats.hub.model.*;
@@ -26,7 +26,7 @@ public class InternalReplicationResource {
 
     private static final ObjectMapper mapper = HubProvider.getInstance(ObjectMapper.class);
     private static final LocalChannelService localChannelService = HubProvider.getInstance(LocalChannelService.class);
-    private static final LastContentPath lastReplicated = HubProvider.getInstance(LastContentPath.class);
+    private static final LastContentPathCoalescer lastReplicated = HubProvider.getInstance(LastContentPathCoalescer.class);
     private static final HubUtils hubUtils = HubProvider.getInstance(HubUtils.class);
 
     @POST
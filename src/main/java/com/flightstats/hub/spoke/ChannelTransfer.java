@@ -0,0 +1,26 @@
+package com.flightstats.hub.spoke;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copies stored items with FileChannel.transferTo, which avoids staging the payload in a heap byte[].
+ */
+class ChannelTransfer {
+
+    static void transferTo(FileChannel channel, long position, long count, OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long end = position + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new EOFException("unable to transfer at " + position + " of " + end);
+            }
+            position += transferred;
+        }
+    }
+}
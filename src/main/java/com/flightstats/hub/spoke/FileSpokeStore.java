@@ -15,13 +15,16 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.NotFoundException;
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.Collection;
 
 /**
  * Direct interactions with the file system
  */
-public class FileSpokeStore {
+public class FileSpokeStore implements SpokeStore {
 
     private final static Logger logger = LoggerFactory.getLogger(FileSpokeStore.class);
     private final String storagePath;
@@ -42,10 +45,7 @@ public class FileSpokeStore {
         }
     }
 
-    public boolean insert(String path, byte[] payload) {
-        return insert(path, new ByteArrayInputStream(payload));
-    }
-
+    @Override
     public boolean insert(String path, InputStream input) {
         File file = spokeFilePathPart(path);
         logger.trace("insert {} {} {}", file, file.getParentFile().mkdirs(), file.canExecute());
@@ -60,12 +60,7 @@ public class FileSpokeStore {
         }
     }
 
-    public byte[] read(String path) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        read(path, baos);
-        return baos.toByteArray();
-    }
-
+    @Override
     public void read(String path, OutputStream output) {
         File file = spokeFilePathPart(path);
         logger.trace("reading {}", file);
@@ -76,30 +71,71 @@ public class FileSpokeStore {
             logger.warn("incomplete file {}", path);
             throw new NotFoundException("incomplete file " + path);
         }
-        try (FileInputStream input = new FileInputStream(file)) {
-            ByteStreams.copy(input, output);
-        } catch (FileNotFoundException e) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChannelTransfer.transferTo(channel, 0, channel.size(), output);
+        } catch (NoSuchFileException e) {
             logger.debug("file not found {}", path);
         } catch (IOException e) {
             logger.info("unable to read from " + path, e);
         }
     }
 
-    public String readKeysInBucket(String path) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        keysInBucket(path, baos);
-        return baos.toString();
+    @Override
+    public long getWriteTime(String minutePath) {
+        return new File(storagePath + minutePath).lastModified();
+    }
+
+    @Override
+    public boolean exists(String path) {
+        File file = spokeFilePathPart(path);
+        return file.exists() && file.canExecute();
+    }
+
+    @Override
+    public byte[] readTail(String path, int length) {
+        File file = spokeFilePathPart(path);
+        if (!file.exists() || !file.canExecute()) {
+            return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            byte[] tail = new byte[(int) Math.min(length, randomAccessFile.length())];
+            randomAccessFile.seek(randomAccessFile.length() - tail.length);
+            randomAccessFile.readFully(tail);
+            return tail;
+        } catch (IOException e) {
+            logger.info("unable to read tail from " + path, e);
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] readHead(String path, int length) {
+        File file = spokeFilePathPart(path);
+        if (!file.exists() || !file.canExecute()) {
+            return null;
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            byte[] head = new byte[(int) Math.min(length, randomAccessFile.length())];
+            randomAccessFile.readFully(head);
+            return head;
+        } catch (IOException e) {
+            logger.info("unable to read head from " + path, e);
+            return null;
+        }
     }
 
-    void readKeysInBucket(String path, OutputStream output) {
+    @Override
+    public void readKeysInBucket(String path, OutputStream output) {
         keysInBucket(path, output);
     }
 
+    @Override
     public boolean delete(String path) throws Exception {
         FileUtils.deleteDirectory(new File(storagePath + path));
         return true;
     }
 
+    @Override
     public boolean deleteFile(String path) throws Exception {
         return FileUtils.deleteQuietly(spokeFilePathPart(path));
     }
@@ -150,7 +186,7 @@ public class FileSpokeStore {
         }
         try {
             Collection<File> files;
-            if (resolution.equals("second")) {
+            if ("second".equals(resolution)) {
                 // filter all files in the minute folder that start with seconds
                 FileFilter fileFilter = new WildcardFileFilter(SpokePathUtil.second(key) + "*");
                 files = Arrays.asList(directory.listFiles(fileFilter));
@@ -181,6 +217,7 @@ public class FileSpokeStore {
         return Arrays.asList(split);
     }
 
+    @Override
     public String getLatest(String channel, String limitPath) {
         logger.trace("latest {} {}", channel, limitPath);
         ContentKey limitKey = ContentKey.fromUrl(limitPath).get();
@@ -219,9 +256,7 @@ public class FileSpokeStore {
         return getLatest(channel, limitPath, previous);
     }
 
-    /**
-     * This may return more than the request count, as this does not do any sorting.
-     */
+    @Override
     public void getNext(String channel, String startKey, int count, OutputStream output) throws IOException {
         DateTime now = TimeUtil.now();
         String channelPath = storagePath + channel + "/";
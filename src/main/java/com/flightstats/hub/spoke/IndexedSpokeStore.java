@@ -0,0 +1,208 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.base.Optional;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.NavigableMap;
+
+/**
+ * Answers time, next and latest queries from a {@link SpokeKeyIndex}, instead of listing the delegate's directories.
+ * Reads and writes of payloads go to the delegate.
+ */
+public class IndexedSpokeStore implements SpokeStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(IndexedSpokeStore.class);
+
+    private final SpokeStore delegate;
+    private final SpokeKeyIndex index;
+
+    public IndexedSpokeStore(SpokeStore delegate) {
+        this.delegate = delegate;
+        index = new SpokeKeyIndex(delegate::readKeysInBucket, delegate::getWriteTime);
+    }
+
+    @Override
+    public boolean insert(String path, InputStream input) {
+        if (!delegate.insert(path, input)) {
+            return false;
+        }
+        Optional<ContentKey> key = toKey(path);
+        if (key.isPresent()) {
+            index.add(channel(path), key.get());
+        }
+        return true;
+    }
+
+    @Override
+    public void read(String path, OutputStream output) {
+        delegate.read(path, output);
+    }
+
+    @Override
+    public long getWriteTime(String minutePath) {
+        return delegate.getWriteTime(minutePath);
+    }
+
+    @Override
+    public boolean exists(String path) {
+        return delegate.exists(path);
+    }
+
+    @Override
+    public byte[] readTail(String path, int length) {
+        return delegate.readTail(path, length);
+    }
+
+    @Override
+    public byte[] readHead(String path, int length) {
+        return delegate.readHead(path, length);
+    }
+
+    @Override
+    public void readKeysInBucket(String path, OutputStream output) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length > 7) {
+            delegate.readKeysInBucket(path, output);
+            return;
+        }
+        try {
+            String channel = split[0];
+            NavigableMap<Long, SpokeKeyIndex.MinuteKeys> minutes = index.getMinutes(channel);
+            if (split.length > 1) {
+                DateTime start = bucketStart(split);
+                DateTime end = bucketEnd(start, split.length);
+                minutes = minutes.subMap(SpokeKeyIndex.minute(start.getMillis()), true, end.getMillis(), false);
+                for (SpokeKeyIndex.MinuteKeys minuteKeys : minutes.values()) {
+                    for (ContentKey key : minuteKeys.getKeys()) {
+                        if (!key.getTime().isBefore(start) && key.getTime().isBefore(end)) {
+                            writeKey(output, channel, key);
+                        }
+                    }
+                }
+            } else {
+                for (SpokeKeyIndex.MinuteKeys minuteKeys : minutes.values()) {
+                    for (ContentKey key : minuteKeys.getKeys()) {
+                        writeKey(output, channel, key);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.info("error with " + path, e);
+        }
+    }
+
+    @Override
+    public String getLatest(String channel, String limitPath) {
+        logger.trace("latest {} {}", channel, limitPath);
+        ContentKey limitKey = ContentKey.fromUrl(limitPath).get();
+        DateTime ttlTime = TimeUtil.now().minusMinutes(HubProperties.getSpokeTtlMinutes());
+        long lowest = Math.min(ttlTime.hourOfDay().roundFloorCopy().getMillis(),
+                limitKey.getTime().hourOfDay().roundFloorCopy().getMillis());
+        NavigableMap<Long, SpokeKeyIndex.MinuteKeys> minutes = index.getMinutes(channel)
+                .subMap(lowest, true, SpokeKeyIndex.minute(limitKey.getMillis()), true);
+        for (SpokeKeyIndex.MinuteKeys minuteKeys : minutes.descendingMap().values()) {
+            ContentKey[] keys = minuteKeys.getKeys();
+            for (int i = keys.length - 1; i >= 0; i--) {
+                if (keys[i].compareTo(limitKey) < 0) {
+                    return channel + "/" + keys[i].toUrl();
+                }
+            }
+        }
+        logger.debug("no latest found for {} {} ", channel, limitPath);
+        return null;
+    }
+
+    @Override
+    public void getNext(String channel, String startKey, int count, OutputStream output) throws IOException {
+        ContentKey start = ContentKey.fromUrl(startKey).get();
+        logger.trace("next {} {}", channel, startKey);
+        NavigableMap<Long, SpokeKeyIndex.MinuteKeys> minutes = index.getMinutes(channel)
+                .subMap(SpokeKeyIndex.minute(start.getMillis()), true, TimeUtil.now().getMillis(), true);
+        int found = 0;
+        for (SpokeKeyIndex.MinuteKeys minuteKeys : minutes.values()) {
+            for (ContentKey key : minuteKeys.getKeys()) {
+                if (key.compareTo(start) > 0) {
+                    writeKey(output, channel, key);
+                    found++;
+                    if (found >= count) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(String path) throws Exception {
+        try {
+            return delegate.delete(path);
+        } finally {
+            index.remove(channel(path));
+        }
+    }
+
+    @Override
+    public boolean deleteFile(String path) throws Exception {
+        Optional<ContentKey> key = toKey(path);
+        if (key.isPresent()) {
+            index.remove(channel(path), key.get());
+        }
+        return delegate.deleteFile(path);
+    }
+
+    @Override
+    public void enforceTtl(String channel, boolean live, DateTime ttlTime) {
+        if (live) {
+            index.expireBefore(channel, ttlTime);
+        } else {
+            index.expireWrittenBefore(channel, ttlTime);
+        }
+    }
+
+    private static String channel(String path) {
+        return StringUtils.split(path, "/")[0];
+    }
+
+    private static Optional<ContentKey> toKey(String path) {
+        return ContentKey.fromUrl(StringUtils.substringAfter(StringUtils.removeStart(path, "/"), "/"));
+    }
+
+    private static DateTime bucketStart(String[] split) {
+        int[] fields = new int[]{0, 1, 1, 0, 0, 0};
+        for (int i = 1; i < split.length; i++) {
+            fields[i - 1] = Integer.parseInt(split[i]);
+        }
+        return new DateTime(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], DateTimeZone.UTC);
+    }
+
+    private static DateTime bucketEnd(DateTime start, int length) {
+        switch (length) {
+            case 2:
+                return start.plusYears(1);
+            case 3:
+                return start.plusMonths(1);
+            case 4:
+                return start.plusDays(1);
+            case 5:
+                return start.plusHours(1);
+            case 6:
+                return start.plusMinutes(1);
+            default:
+                return start.plusSeconds(1);
+        }
+    }
+
+    private static void writeKey(OutputStream output, String channel, ContentKey key) throws IOException {
+        output.write((channel + "/" + key.toUrl() + ",").getBytes());
+    }
+}
@@ -13,15 +13,14 @@ import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
 import com.flightstats.hub.rest.RestClient;
-import com.flightstats.hub.util.HubUtils;
 import com.flightstats.hub.util.TimeUtil;
 import com.google.common.base.Optional;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
 import com.google.inject.name.Named;
 import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -29,34 +28,33 @@ import org.slf4j.LoggerFactory;
 
 import java.net.ConnectException;
 import java.net.UnknownHostException;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.SortedSet;
-import java.util.TreeSet;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 @SuppressWarnings({"Convert2streamapi", "Convert2Lambda"})
 public class RemoteSpokeStore {
 
     private final static Logger logger = LoggerFactory.getLogger(RemoteSpokeStore.class);
 
-    private final static Client write_client = RestClient.createClient(1, 5, true, false);
     private final static Client query_client = RestClient.createClient(5, 15, true, true);
+    private static final int WRITE_SECONDS = 5;
+    private static final int QUERY_SECONDS = 15;
+    private static final int DELETE_SECONDS = 60;
+    private static final int BULK_SECONDS = 30;
 
     private final CuratorCluster cluster;
     private final MetricsService metricsService;
-    private final ExecutorService executorService;
+    private final SpokeHttpClient httpClient;
     private final int stableSeconds = HubProperties.getProperty("app.stable_seconds", 5);
+    private final boolean streamReads = HubProperties.getProperty("spoke.read.stream", false);
 
     @Inject
     public RemoteSpokeStore(@Named("SpokeCuratorCluster") CuratorCluster cluster, MetricsService metricsService) {
         this.cluster = cluster;
         this.metricsService = metricsService;
-        executorService = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("RemoteSpokeStore-%d").build());
+        httpClient = new SpokeHttpClient(metricsService);
     }
 
     void testOne(Collection<String> server) throws InterruptedException {
@@ -121,58 +119,111 @@ public class RemoteSpokeStore {
     }
 
     public boolean insert(String path, byte[] payload, String spokeApi, String channel) throws InterruptedException {
-        return insert(path, payload, cluster.getServers(), ActiveTraces.getLocal(), spokeApi, channel);
+        return insert(path, payload, cluster.getServers(channel), ActiveTraces.getLocal(), spokeApi, channel);
     }
 
     private boolean insert(String path, byte[] payload, Collection<String> servers, Traces traces,
                            String spokeApi, String channel) throws InterruptedException {
-        int quorum = getQuorum(servers.size());
-        CountDownLatch quorumLatch = new CountDownLatch(quorum);
-        AtomicBoolean firstComplete = new AtomicBoolean();
+        QuorumWrite write = new QuorumWrite(path, servers.size(), traces, channel);
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    setThread(path);
-                    String uri = HubHost.getScheme() + server + "/internal/spoke/" + spokeApi + "/" + path;
-                    traces.add(uri);
-                    ClientResponse response = null;
-                    try {
-                        response = write_client.resource(uri).put(ClientResponse.class, payload);
-                        traces.add(server, response.getEntity(String.class));
-                        if (response.getStatus() == 201) {
-                            if (firstComplete.compareAndSet(false, true)) {
-                                metricsService.time(channel, "heisenberg", traces.getStart());
-                            }
-                            quorumLatch.countDown();
-                            logger.trace("server {} path {} response {}", server, path, response);
-                        } else {
-                            logger.info("write failed: server {} path {} response {}", server, path, response);
-                        }
-                    } catch (Exception e) {
-                        traces.add(server, e.getMessage());
-                        logger.warn("write failed: " + server + " " + path, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                    }
+            String spokePath = "/internal/spoke/" + spokeApi + "/" + path;
+            traces.add(server, spokePath);
+            httpClient.put(server, spokePath, payload, WRITE_SECONDS).whenComplete(write.handle(server));
+        }
+        return write.await();
+    }
 
-                }
-            });
+    /**
+     * Streams a batch to each server, as the writer produces it.
+     */
+    public boolean insertBulk(String channel, BulkProducer producer) throws Exception {
+        Collection<String> servers = cluster.getServers(channel);
+        Traces traces = ActiveTraces.getLocal();
+        String spokePath = "/internal/spoke/bulkKey/" + channel;
+        QuorumWrite write = new QuorumWrite(channel, servers.size(), traces, channel);
+        SpokeFanOutStream output = new SpokeFanOutStream(httpClient, servers, spokePath, BULK_SECONDS);
+        output.getResponses().forEach((server, response) -> {
+            traces.add(server, spokePath);
+            response.whenComplete(write.handle(server));
+        });
+        try {
+            SpokeBulkFormat.Writer writer = new SpokeBulkFormat.Writer(output);
+            producer.write(writer);
+            writer.finish();
+        } catch (Exception e) {
+            output.abort();
+            throw e;
         }
-        quorumLatch.await(stableSeconds, TimeUnit.SECONDS);
-        metricsService.time(channel, "consistent", traces.getStart());
-        return quorumLatch.getCount() != quorum;
+        return write.await();
+    }
+
+    @FunctionalInterface
+    interface BulkProducer {
+        void write(SpokeBulkFormat.Writer writer) throws Exception;
     }
 
-    private void setThread(String name) {
-        Thread thread = Thread.currentThread();
-        thread.setName(thread.getName() + "|" + name);
+    /**
+     * Completes when a quorum of servers succeed, or all servers respond.
+     */
+    private class QuorumWrite {
+        private final String path;
+        private final int servers;
+        private final int quorum;
+        private final Traces traces;
+        private final String channel;
+        private final AtomicInteger successes = new AtomicInteger();
+        private final AtomicInteger completed = new AtomicInteger();
+        private final CompletableFuture<Void> quorumFuture = new CompletableFuture<>();
+
+        QuorumWrite(String path, int servers, Traces traces, String channel) {
+            this.path = path;
+            this.servers = servers;
+            this.quorum = getQuorum(servers);
+            this.traces = traces;
+            this.channel = channel;
+        }
+
+        BiConsumer<SpokeHttpClient.SpokeResponse, Throwable> handle(String server) {
+            return (response, e) -> {
+                if (e != null) {
+                    traces.add(server, e.getMessage());
+                    logger.warn("write failed: " + server + " " + path, e);
+                } else if (response.getStatus() == 201) {
+                    traces.add(server, response.getContentAsString());
+                    if (successes.incrementAndGet() == 1) {
+                        metricsService.time(channel, "heisenberg", traces.getStart());
+                    }
+                    logger.trace("server {} path {} response {}", server, path, response);
+                } else {
+                    traces.add(server, response.getContentAsString());
+                    logger.info("write failed: server {} path {} response {}", server, path, response);
+                }
+                if (successes.get() >= quorum || completed.incrementAndGet() == servers) {
+                    quorumFuture.complete(null);
+                }
+            };
+        }
+
+        boolean await() throws InterruptedException {
+            RemoteSpokeStore.this.await(quorumFuture, stableSeconds);
+            metricsService.time(channel, "consistent", traces.getStart());
+            return successes.get() > 0;
+        }
     }
 
-    private void resetThread() {
-        Thread thread = Thread.currentThread();
-        thread.setName(StringUtils.substringBefore(thread.getName(), "|"));
+    /**
+     * @return false if the future did not complete in time.
+     */
+    private boolean await(CompletableFuture<?> future, int seconds) throws InterruptedException {
+        try {
+            future.get(seconds, TimeUnit.SECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            logger.warn("unexpected exception", e);
+            return false;
+        }
     }
 
     static int getQuorum(int size) {
@@ -180,165 +231,206 @@ public class RemoteSpokeStore {
     }
 
     public Content get(String path, ContentKey key) {
-        Collection<String> servers = cluster.getRandomServers();
+        Collection<String> servers = cluster.randomize(cluster.getServers(StringUtils.substringBefore(path, "/"), key.getTime()));
         for (String server : servers) {
-            ClientResponse response = null;
+            SpokeHttpClient.SpokeStreamResponse response = null;
             try {
-                setThread(path);
-                response = query_client.resource(HubHost.getScheme() + server + "/internal/spoke/payload/" + path)
-                        .get(ClientResponse.class);
+                response = httpClient.getStream(server, "/internal/spoke/payload/" + path, QUERY_SECONDS);
                 logger.trace("server {} path {} response {}", server, path, response);
-                if (response.getStatus() == 200) {
-                    byte[] entity = response.getEntity(byte[].class);
+                if (response.getStatus() == 200 && streamReads) {
+                    Content content = ContentMarshaller.toContent(response.getStream(), key, getItemLength(response));
+                    if (content != null) {
+                        //the content now owns the connection, and closes it when the stream is read
+                        response = null;
+                        return content;
+                    }
+                } else if (response.getStatus() == 200) {
+                    byte[] entity = ByteStreams.toByteArray(response.getStream());
                     if (entity.length > 0) {
                         return ContentMarshaller.toContent(entity, key);
                     }
                 }
             } catch (JsonMappingException e) {
                 logger.info("JsonMappingException for " + path);
-            } catch (ClientHandlerException e) {
-                if (e.getCause() != null && e.getCause() instanceof ConnectException) {
-                    logger.warn("connection exception " + server);
-                } else {
-                    logger.warn("unable to get content " + server + " " + path, e);
-                }
             } catch (Exception e) {
-                logger.warn("unable to get content " + path, e);
+                logConnectionFailure(server, path, e);
             } finally {
-                HubUtils.close(response);
-                resetThread();
+                IOUtils.closeQuietly(response);
             }
         }
         return null;
     }
 
-    QueryResult readTimeBucket(String channel, String timePath) throws InterruptedException {
-        return getKeys("/internal/spoke/time/" + channel + "/" + timePath);
+    /**
+     * @return the item's content type and size, without its payload, or null if no server has the item.
+     */
+    Content getMetadata(String path, ContentKey key) {
+        Collection<String> servers = cluster.randomize(cluster.getServers(StringUtils.substringBefore(path, "/"), key.getTime()));
+        for (String server : servers) {
+            try {
+                SpokeHttpClient.SpokeResponse response = httpClient.get(server, "/internal/spoke/meta/" + path, QUERY_SECONDS).get();
+                logger.trace("server {} path {} response {}", server, path, response);
+                if (response.getStatus() == 200) {
+                    return ContentMarshaller.toMetadata(response.getContentAsString(), key);
+                }
+            } catch (ExecutionException e) {
+                logConnectionFailure(server, path, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                logger.warn("unable to get meta " + server + " " + path, e);
+            }
+        }
+        return null;
     }
 
-    SortedSet<ContentKey> getNext(String channel, int count, String startKey) throws InterruptedException {
-        return getKeys("/internal/spoke/next/" + channel + "/" + count + "/" + startKey).getContentKeys();
+    /**
+     * Reads many items of a channel from one server with /internal/spoke/payloads, trying the next server on failure.
+     * Items the server does not have are left out, so callers can fall back to {@link #get(String, ContentKey)}.
+     */
+    Map<ContentKey, Content> getMany(String channel, Collection<ContentKey> keys) {
+        Map<ContentKey, Content> found = new HashMap<>();
+        if (keys.isEmpty()) {
+            return found;
+        }
+        SortedSet<ContentKey> sorted = new TreeSet<>(keys);
+        Collection<String> servers = cluster.randomize(cluster.getServers(channel,
+                sorted.first().getTime(), sorted.last().getTime()));
+        String body = StringUtils.join(sorted.stream().map(ContentKey::toUrl).iterator(), "\n");
+        for (String server : servers) {
+            SpokeHttpClient.SpokeStreamResponse response = null;
+            try {
+                response = httpClient.postStream(server, "/internal/spoke/payloads/" + channel, body, QUERY_SECONDS);
+                logger.trace("server {} channel {} response {}", server, channel, response);
+                if (response.getStatus() == 200) {
+                    SpokeBulkFormat.Reader reader = new SpokeBulkFormat.Reader(response.getStream());
+                    String keyUrl = reader.nextKey();
+                    while (keyUrl != null) {
+                        Optional<ContentKey> key = ContentKey.fromUrl(keyUrl);
+                        byte[] bytes = ByteStreams.toByteArray(reader.getItemStream());
+                        if (key.isPresent() && bytes.length > 0) {
+                            found.put(key.get(), ContentMarshaller.toContent(bytes, key.get()));
+                        }
+                        keyUrl = reader.nextKey();
+                    }
+                    return found;
+                }
+            } catch (Exception e) {
+                logConnectionFailure(server, channel, e);
+            } finally {
+                IOUtils.closeQuietly(response);
+            }
+            found.clear();
+        }
+        return found;
+    }
+
+    private Long getItemLength(SpokeHttpClient.SpokeStreamResponse response) {
+        String itemLength = response.getHeader(SpokeInternalResource.ITEM_LENGTH);
+        if (itemLength == null) {
+            return null;
+        }
+        return Long.parseLong(itemLength);
+    }
+
+    QueryResult readTimeBucket(String channel, DateTime startTime, TimeUtil.Unit unit) throws InterruptedException {
+        DateTime endTime = unit.equals(TimeUtil.Unit.MONTHS) ? startTime.plusMonths(1) : startTime.plus(unit.getDuration());
+        return getKeys("/internal/spoke/time/" + channel + "/" + unit.format(startTime),
+                cluster.getServers(channel, startTime, endTime));
     }
 
-    private QueryResult getKeys(final String path) throws InterruptedException {
+    SortedSet<ContentKey> getNext(String channel, int count, ContentKey startKey) throws InterruptedException {
+        return getKeys("/internal/spoke/next/" + channel + "/" + count + "/" + startKey.toUrl(),
+                cluster.getServers(channel, startKey.getTime(), TimeUtil.now())).getContentKeys();
+    }
+
+    private QueryResult getKeys(final String path, Collection<String> servers) throws InterruptedException {
         Traces traces = ActiveTraces.getLocal();
-        Collection<String> servers = cluster.getServers();
-        CountDownLatch countDownLatch = new CountDownLatch(servers.size());
         QueryResult queryResult = new QueryResult(servers.size());
+        List<CompletableFuture<?>> futures = new ArrayList<>();
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ClientResponse response = null;
-                    try {
-                        setThread(path);
-                        traces.add("spoke calling", server, path);
-                        response = query_client.resource(HubHost.getScheme() + server + path).get(ClientResponse.class);
-                        traces.add("spoke server response", server, response);
-                        if (response.getStatus() == 200) {
-                            SortedSet<ContentKey> keySet = new TreeSet<>();
-                            String keysString = response.getEntity(String.class);
-                            ContentKeyUtil.convertKeyStrings(keysString, keySet);
-                            traces.add(server, keySet);
-                            queryResult.addKeys(keySet);
-                        }
-                    } catch (ClientHandlerException e) {
-                        if (e.getCause() != null && e.getCause() instanceof ConnectException) {
-                            logger.warn("connection exception " + server);
-                        } else {
-                            logger.warn("unable to get content " + path, e);
-                        }
-                        traces.add("ClientHandlerException", e.getMessage(), server);
-                    } catch (Exception e) {
-                        logger.warn("unable to handle " + server + " " + path, e);
-                        traces.add("unable to handle ", server, path, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                        countDownLatch.countDown();
-                    }
+            traces.add("spoke calling", server, path);
+            futures.add(httpClient.get(server, path, QUERY_SECONDS).whenComplete((response, e) -> {
+                if (e != null) {
+                    logConnectionFailure(server, path, e);
+                    traces.add("unable to handle ", server, path, e.getMessage());
+                    return;
                 }
-            });
+                traces.add("spoke server response", server, response);
+                if (response.getStatus() == 200) {
+                    SortedSet<ContentKey> keySet = new TreeSet<>();
+                    ContentKeyUtil.convertKeyStrings(response.getContentAsString(), keySet);
+                    traces.add(server, keySet);
+                    queryResult.addKeys(keySet);
+                }
+            }));
         }
-        countDownLatch.await(20, TimeUnit.SECONDS);
+        await(allOf(futures), 20);
         return queryResult;
     }
 
     public Optional<ContentKey> getLatest(String channel, String path, Traces traces) throws InterruptedException {
-        Collection<String> servers = cluster.getServers();
-        CountDownLatch countDownLatch = new CountDownLatch(servers.size());
+        Collection<String> servers = getAllSpokeServers(channel);
         SortedSet<ContentKey> orderedKeys = Collections.synchronizedSortedSet(new TreeSet<>());
+        List<CompletableFuture<?>> futures = new ArrayList<>();
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ClientResponse response = null;
-                    try {
-                        setThread(path);
-                        traces.add("spoke calling", server, channel);
-                        response = query_client.resource(HubHost.getScheme() + server + "/internal/spoke/latest/" + path)
-                                .get(ClientResponse.class);
-                        traces.add("spoke server response", server, response);
-                        if (response.getStatus() == 200) {
-                            String key = response.getEntity(String.class);
-                            if (StringUtils.isNotEmpty(key)) {
-                                orderedKeys.add(ContentKeyUtil.convertKey(key).get());
-                            }
-                            traces.add(server, key);
-                        }
-                    } catch (ClientHandlerException e) {
-                        if (e.getCause() != null && e.getCause() instanceof ConnectException) {
-                            logger.warn("connection exception " + server);
-                        } else {
-                            logger.warn("unable to get content " + path, e);
-                        }
-                        traces.add("ClientHandlerException", e.getMessage(), server);
-                    } catch (Exception e) {
-                        logger.warn("unable to handle " + server + " " + channel, e);
-                        traces.add("unable to handle ", server, channel, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                        countDownLatch.countDown();
+            traces.add("spoke calling", server, channel);
+            futures.add(httpClient.get(server, "/internal/spoke/latest/" + path, QUERY_SECONDS).whenComplete((response, e) -> {
+                if (e != null) {
+                    logConnectionFailure(server, path, e);
+                    traces.add("unable to handle ", server, channel, e.getMessage());
+                    return;
+                }
+                traces.add("spoke server response", server, response);
+                if (response.getStatus() == 200) {
+                    String key = response.getContentAsString();
+                    if (StringUtils.isNotEmpty(key)) {
+                        orderedKeys.add(ContentKeyUtil.convertKey(key).get());
                     }
+                    traces.add(server, key);
                 }
-            });
+            }));
         }
-        countDownLatch.await(5, TimeUnit.SECONDS);
-        if (orderedKeys.isEmpty()) {
-            return Optional.absent();
+        await(allOf(futures), 5);
+        synchronized (orderedKeys) {
+            if (orderedKeys.isEmpty()) {
+                return Optional.absent();
+            }
+            return Optional.of(orderedKeys.last());
         }
-        return Optional.of(orderedKeys.last());
     }
 
     public boolean delete(String path) throws Exception {
-        Collection<String> servers = cluster.getServers();
-        int quorum = servers.size();
-        CountDownLatch countDownLatch = new CountDownLatch(quorum);
+        Collection<String> servers = getAllSpokeServers(path);
+        AtomicInteger deleted = new AtomicInteger();
+        List<CompletableFuture<?>> futures = new ArrayList<>();
         for (final String server : servers) {
-            executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    ClientResponse response = null;
-                    try {
-                        setThread(path);
-                        response = query_client.resource(HubHost.getScheme() + server + "/internal/spoke/payload/" + path)
-                                .delete(ClientResponse.class);
-                        if (response.getStatus() < 400) {
-                            countDownLatch.countDown();
-                        }
-                        logger.trace("server {} path {} response {}", server, path, response);
-                    } catch (Exception e) {
-                        logger.warn("unable to delete " + path, e);
-                    } finally {
-                        HubUtils.close(response);
-                        resetThread();
-                    }
+            futures.add(httpClient.delete(server, "/internal/spoke/payload/" + path, DELETE_SECONDS).whenComplete((response, e) -> {
+                if (e != null) {
+                    logger.warn("unable to delete " + path + " " + server, e);
+                    return;
                 }
-            });
+                if (response.getStatus() < 400) {
+                    deleted.incrementAndGet();
+                }
+                logger.trace("server {} path {} response {}", server, path, response);
+            }));
         }
+        await(allOf(futures), DELETE_SECONDS);
+        return deleted.get() == servers.size();
+    }
+
+    private static CompletableFuture<Void> allOf(List<CompletableFuture<?>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
 
-        return countDownLatch.await(60, TimeUnit.SECONDS);
+    private void logConnectionFailure(String server, String path, Throwable e) {
+        if (e instanceof ConnectException) {
+            logger.warn("connection exception " + server);
+        } else {
+            logger.warn("unable to get content " + server + " " + path, e);
+        }
     }
 
     private Collection<String> getAllSpokeServers(String channel) {
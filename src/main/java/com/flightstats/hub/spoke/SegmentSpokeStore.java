@@ -0,0 +1,320 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.Striped;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.NotFoundException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Stores all of a channel's items for a minute in one {@link SpokeSegment}, at "channel/yyyy/MM/dd/HH/mm".
+ * <p>
+ * Since the segment file takes the place of the minute folder, {@link SpokeTtlEnforcer} drops whole segments.
+ * <p>
+ * An item is received into a temporary file in spoke.segment.tmpPath first, and only appended to its segment
+ * under the segment's lock once it is complete, so a slow writer doesn't hold up the rest of the minute.
+ */
+public class SegmentSpokeStore implements SpokeStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(SegmentSpokeStore.class);
+
+    private final String storagePath;
+    private final File tmpPath = new File(HubProperties.getProperty("spoke.segment.tmpPath", System.getProperty("java.io.tmpdir")));
+    private final Striped<Lock> locks = Striped.lock(HubProperties.getProperty("spoke.segment.locks", 1024));
+    private final Cache<String, SpokeSegment> segments = CacheBuilder.newBuilder()
+            .maximumSize(HubProperties.getProperty("spoke.segment.cacheSize", 10 * 1000))
+            .expireAfterAccess(HubProperties.getSpokeTtlMinutes(), TimeUnit.MINUTES)
+            .build();
+
+    public SegmentSpokeStore(String storagePath) {
+        this.storagePath = StringUtils.appendIfMissing(new File(storagePath).getPath(), "/");
+        logger.info("starting with storage path " + this.storagePath);
+        String path = "hub-startup/" + new ContentKey().toUrl();
+        byte[] payload = ("" + System.currentTimeMillis()).getBytes();
+        if (!insert(path, payload) || !Arrays.equals(payload, read(path))) {
+            throw new RuntimeException("unable to create startup segment");
+        }
+    }
+
+    @Override
+    public boolean insert(String path, InputStream input) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            logger.warn("unable to insert invalid path {}", path);
+            return false;
+        }
+        String segmentPath = segmentPath(split);
+        File received = null;
+        try {
+            tmpPath.mkdirs();
+            received = File.createTempFile("spoke", ".tmp", tmpPath);
+            Files.copy(input, received.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Lock lock = locks.get(segmentPath);
+            lock.lock();
+            try (InputStream receivedInput = new FileInputStream(received)) {
+                getSegment(segmentPath).append(itemName(split), receivedInput);
+            } finally {
+                lock.unlock();
+            }
+            logger.trace("inserted {}", path);
+            return true;
+        } catch (Exception e) {
+            logger.info("unable to write to " + path, e);
+            return false;
+        } finally {
+            FileUtils.deleteQuietly(received);
+        }
+    }
+
+    @Override
+    public void read(String path, OutputStream output) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            throw new NotFoundException("not found " + path);
+        }
+        try {
+            SpokeSegment segment = getExistingSegment(segmentPath(split));
+            if (segment == null || !segment.read(itemName(split), output)) {
+                throw new NotFoundException("not found " + path);
+            }
+        } catch (IOException e) {
+            logger.info("unable to read from " + path, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public long getWriteTime(String minutePath) {
+        return new File(storagePath + minutePath).lastModified();
+    }
+
+    @Override
+    public boolean exists(String path) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            return false;
+        }
+        SpokeSegment segment = getExistingSegment(segmentPath(split));
+        return segment != null && segment.contains(itemName(split));
+    }
+
+    @Override
+    public byte[] readTail(String path, int length) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            return null;
+        }
+        try {
+            SpokeSegment segment = getExistingSegment(segmentPath(split));
+            return segment == null ? null : segment.readTail(itemName(split), length);
+        } catch (IOException e) {
+            logger.info("unable to read tail from " + path, e);
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] readHead(String path, int length) {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            return null;
+        }
+        try {
+            SpokeSegment segment = getExistingSegment(segmentPath(split));
+            return segment == null ? null : segment.readHead(itemName(split), length);
+        } catch (IOException e) {
+            logger.info("unable to read head from " + path, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void readKeysInBucket(String path, OutputStream output) {
+        String[] split = StringUtils.split(path, "/");
+        try {
+            if (split.length >= 7) {
+                String segmentPath = segmentPath(split);
+                SpokeSegment segment = getExistingSegment(segmentPath);
+                if (segment != null) {
+                    for (String name : segment.getNames()) {
+                        if (name.startsWith(split[6])) {
+                            writeKey(output, spokeKey(segmentPath, name));
+                        }
+                    }
+                }
+            } else if (split.length == 6) {
+                writeKeys(output, segmentPath(split));
+            } else {
+                File directory = new File(storagePath + StringUtils.join(split, "/"));
+                if (!directory.isDirectory()) {
+                    return;
+                }
+                for (File file : FileUtils.listFiles(directory, null, true)) {
+                    writeKeys(output, file.getPath().substring(storagePath.length()));
+                }
+            }
+        } catch (Exception e) {
+            logger.info("error with " + path, e);
+        }
+    }
+
+    private void writeKeys(OutputStream output, String segmentPath) throws IOException {
+        SpokeSegment segment = getExistingSegment(segmentPath);
+        if (segment != null) {
+            for (String name : segment.getNames()) {
+                writeKey(output, spokeKey(segmentPath, name));
+            }
+        }
+    }
+
+    @Override
+    public String getLatest(String channel, String limitPath) {
+        logger.trace("latest {} {}", channel, limitPath);
+        DateTime hourToSearch = ContentKey.fromUrl(limitPath).get().getTime();
+        DateTime ttlTime = TimeUtil.now().minusMinutes(HubProperties.getSpokeTtlMinutes());
+        while (true) {
+            String hoursPath = TimeUtil.hours(hourToSearch);
+            String[] minutes = new File(storagePath + channel + "/" + hoursPath).list();
+            if (minutes == null) {
+                minutes = new String[0];
+            }
+            Arrays.sort(minutes);
+            for (int i = minutes.length - 1; i >= 0; i--) {
+                String segmentPath = channel + "/" + hoursPath + "/" + minutes[i];
+                SpokeSegment segment = getExistingSegment(segmentPath);
+                if (segment == null) {
+                    continue;
+                }
+                for (String name : segment.getNamesDescending()) {
+                    String spokeKey = spokeKey(hoursPath + "/" + minutes[i], name);
+                    if (spokeKey.compareTo(limitPath) < 0) {
+                        return channel + "/" + spokeKey;
+                    }
+                }
+            }
+            hourToSearch = hourToSearch.minusHours(1).withMinuteOfHour(59).withSecondOfMinute(59).withMillisOfSecond(999);
+            if (hourToSearch.isBefore(ttlTime)) {
+                logger.debug("no latest found for {} {} ", channel, limitPath);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void getNext(String channel, String startKey, int count, OutputStream output) throws IOException {
+        DateTime now = TimeUtil.now();
+        logger.trace("next {} {} {}", channel, startKey, now);
+        ContentKey start = ContentKey.fromUrl(startKey).get();
+        int found = 0;
+        MinutePath minutePath = new MinutePath(start.getTime());
+        boolean firstMinute = true;
+        do {
+            String minuteUrl = minutePath.toUrl();
+            SpokeSegment segment = getExistingSegment(channel + "/" + minuteUrl);
+            if (segment != null) {
+                for (String name : segment.getNames()) {
+                    String spokeKey = spokeKey(minuteUrl, name);
+                    if (!firstMinute || ContentKey.fromUrl(spokeKey).get().compareTo(start) > 0) {
+                        found++;
+                        writeKey(output, channel + "/" + spokeKey);
+                    }
+                }
+            }
+            minutePath = new MinutePath(minutePath.getTime().plusMinutes(1));
+            firstMinute = false;
+        } while (found < count && minutePath.getTime().isBefore(now));
+    }
+
+    @Override
+    public boolean delete(String path) throws Exception {
+        FileUtils.deleteDirectory(new File(storagePath + path));
+        String prefix = StringUtils.appendIfMissing(path, "/");
+        segments.asMap().keySet().removeIf(segmentPath -> segmentPath.startsWith(prefix));
+        return true;
+    }
+
+    @Override
+    public boolean deleteFile(String path) throws Exception {
+        String[] split = StringUtils.split(path, "/");
+        if (split.length != 9) {
+            return false;
+        }
+        String segmentPath = segmentPath(split);
+        Lock lock = locks.get(segmentPath);
+        lock.lock();
+        try {
+            SpokeSegment segment = getExistingSegment(segmentPath);
+            return segment != null && segment.remove(itemName(split));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SpokeSegment getExistingSegment(String segmentPath) {
+        if (!new File(storagePath + segmentPath).isFile()) {
+            return null;
+        }
+        try {
+            return getSegment(segmentPath);
+        } catch (IOException e) {
+            logger.warn("unable to load segment " + segmentPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Segments are loaded under their lock, so a scan never sees a partial append.
+     */
+    private SpokeSegment getSegment(String segmentPath) throws IOException {
+        Lock lock = locks.get(segmentPath);
+        lock.lock();
+        try {
+            SpokeSegment segment = segments.getIfPresent(segmentPath);
+            if (segment == null || !segment.isCurrent()) {
+                segment = SpokeSegment.load(new File(storagePath + segmentPath));
+                segments.put(segmentPath, segment);
+            }
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String segmentPath(String[] split) {
+        return split[0] + "/" + split[1] + "/" + split[2] + "/" + split[3] + "/" + split[4] + "/" + split[5];
+    }
+
+    private static String itemName(String[] split) {
+        return split[6] + split[7] + split[8];
+    }
+
+    //the inverse of itemName, "24015NV2cl5" becomes "24/015/NV2cl5"
+    private static String spokeKey(String minutePath, String name) {
+        return minutePath + "/" + name.substring(0, 2) + "/" + name.substring(2, 5) + "/" + name.substring(5);
+    }
+
+    private static void writeKey(OutputStream output, String key) throws IOException {
+        output.write(key.getBytes());
+        output.write(",".getBytes());
+    }
+}
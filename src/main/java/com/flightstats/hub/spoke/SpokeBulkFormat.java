@@ -0,0 +1,244 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The wire format of /internal/spoke/bulkKey, which lets a batch be written and read one item at a time.
+ * <pre>
+ * header: int magic, byte version
+ * item:   byte 'I', short key length, key, chunks
+ * chunk:  int length, bytes - a zero length chunk ends the item
+ * end:    byte 'E', int item count
+ * </pre>
+ * The Writer packs frames into buffers of spoke.bulk.bufferBytes, and hands each buffer to the output once,
+ * so an output may keep a buffer without copying it.
+ */
+class SpokeBulkFormat {
+
+    static final int MAGIC = 0x53424b46;
+    static final byte VERSION = 1;
+    private static final byte ITEM = 'I';
+    private static final byte END = 'E';
+    private static final int BUFFER_BYTES = HubProperties.getProperty("spoke.bulk.bufferBytes", 64 * 1024);
+
+    /**
+     * @param input must support mark, and is reset to where it started.
+     * @return true if the input starts with this format, false for the older ObjectOutputStream format.
+     */
+    static boolean isFramed(InputStream input) throws IOException {
+        input.mark(4);
+        try {
+            return new DataInputStream(input).readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            input.reset();
+        }
+    }
+
+    @FunctionalInterface
+    interface ItemWriter {
+        void write(OutputStream output) throws IOException;
+    }
+
+    static class Writer {
+        private final OutputStream output;
+        private final ItemOutputStream itemOutput = new ItemOutputStream();
+        private byte[] buffer;
+        private int position;
+        private int chunkStart = -1;
+        private int items;
+
+        Writer(OutputStream output) throws IOException {
+            this.output = output;
+            buffer = new byte[BUFFER_BYTES];
+            putInt(MAGIC);
+            buffer[position++] = VERSION;
+        }
+
+        void write(String key, ItemWriter itemWriter) throws IOException {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            ensure(3 + keyBytes.length);
+            buffer[position++] = ITEM;
+            buffer[position++] = (byte) (keyBytes.length >>> 8);
+            buffer[position++] = (byte) keyBytes.length;
+            System.arraycopy(keyBytes, 0, buffer, position, keyBytes.length);
+            position += keyBytes.length;
+            startChunk();
+            itemWriter.write(itemOutput);
+            if (endChunk() > 0) {
+                startChunk();
+                endChunk();
+            }
+            items++;
+        }
+
+        private void startChunk() throws IOException {
+            ensure(5);
+            chunkStart = position;
+            position += 4;
+        }
+
+        /**
+         * @return the length of the chunk
+         */
+        private int endChunk() {
+            int length = position - chunkStart - 4;
+            int end = position;
+            position = chunkStart;
+            putInt(length);
+            position = end;
+            chunkStart = -1;
+            return length;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (position + bytes > buffer.length) {
+                flushBuffer();
+            }
+        }
+
+        private void flushBuffer() throws IOException {
+            if (position > 0) {
+                output.write(buffer, 0, position);
+                buffer = new byte[buffer.length];
+                position = 0;
+            }
+        }
+
+        private void putInt(int value) {
+            buffer[position++] = (byte) (value >>> 24);
+            buffer[position++] = (byte) (value >>> 16);
+            buffer[position++] = (byte) (value >>> 8);
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * Ends the batch and closes the output.  An output which is not finished is an incomplete batch.
+         */
+        void finish() throws IOException {
+            ensure(5);
+            buffer[position++] = END;
+            putInt(items);
+            flushBuffer();
+            output.close();
+        }
+
+        private class ItemOutputStream extends OutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                while (length > 0) {
+                    int copied = Math.min(length, buffer.length - position);
+                    System.arraycopy(bytes, offset, buffer, position, copied);
+                    position += copied;
+                    offset += copied;
+                    length -= copied;
+                    if (position == buffer.length) {
+                        endChunk();
+                        flushBuffer();
+                        startChunk();
+                    }
+                }
+            }
+        }
+    }
+
+    static class Reader {
+        private final DataInputStream input;
+        private ItemInputStream item;
+        private int items;
+
+        Reader(InputStream input) throws IOException {
+            this.input = new DataInputStream(input);
+            int magic = this.input.readInt();
+            if (magic != MAGIC) {
+                throw new IOException("unexpected bulk format " + Integer.toHexString(magic));
+            }
+            byte version = this.input.readByte();
+            if (version != VERSION) {
+                throw new IOException("unsupported bulk version " + version);
+            }
+        }
+
+        /**
+         * Skips any unread part of the previous item.
+         *
+         * @return the key of the next item, or null after the last item.
+         */
+        String nextKey() throws IOException {
+            if (item != null) {
+                item.skipRemaining();
+            }
+            byte type = input.readByte();
+            if (type == END) {
+                int expected = input.readInt();
+                if (expected != items) {
+                    throw new IOException("expected " + expected + " items, read " + items);
+                }
+                item = null;
+                return null;
+            }
+            if (type != ITEM) {
+                throw new IOException("unexpected frame type " + type);
+            }
+            byte[] key = new byte[input.readUnsignedShort()];
+            input.readFully(key);
+            items++;
+            item = new ItemInputStream();
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the payload of the item from {@link #nextKey()}, which ends with the item.
+         */
+        InputStream getItemStream() {
+            return item;
+        }
+
+        private class ItemInputStream extends InputStream {
+            private int remaining;
+            private boolean ended;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                while (remaining == 0) {
+                    if (ended) {
+                        return -1;
+                    }
+                    remaining = input.readInt();
+                    ended = remaining == 0;
+                }
+                int read = input.read(bytes, offset, Math.min(length, remaining));
+                if (read == -1) {
+                    throw new EOFException("bulk item ended early");
+                }
+                remaining -= read;
+                return read;
+            }
+
+            void skipRemaining() throws IOException {
+                byte[] skip = new byte[8192];
+                while (read(skip, 0, skip.length) != -1) {
+                    //skip
+                }
+            }
+        }
+    }
+}
@@ -17,8 +17,6 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectOutputStream;
 import java.util.*;
 
 /**
@@ -51,25 +49,16 @@ public class SpokeContentDao implements ContentDao {
         String channelName = bulkContent.getChannel();
         try {
             SortedSet<ContentKey> keys = new TreeSet<>();
-            List<Content> items = bulkContent.getItems();
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream stream = new ObjectOutputStream(baos);
-            stream.writeInt(items.size());
-            logger.debug("writing {} items to master {}", items.size(), bulkContent.getMasterKey());
-            for (Content content : items) {
-                content.packageStream();
-                String itemKey = content.getContentKey().get().toUrl();
-                stream.writeInt(itemKey.length());
-                stream.write(itemKey.getBytes());
-                stream.writeInt(content.getData().length);
-                stream.write(content.getData());
-                keys.add(content.getContentKey().get());
-            }
-            stream.flush();
-            traces.add("SpokeContentDao.writeBulk marshalled");
-
-            logger.trace("writing items {} to channel {}", items.size(), channelName);
-            if (!spokeStore.insert(channelName, baos.toByteArray(), "bulkKey", channelName)) {
+            logger.debug("writing items to master {}", bulkContent.getMasterKey());
+            boolean inserted = spokeStore.insertBulk(channelName, writer -> {
+                bulkContent.forEachItem(content -> {
+                    ContentKey key = content.getContentKey().get();
+                    writer.write(key.toUrl(), content::packageStream);
+                    keys.add(key);
+                });
+                traces.add("SpokeContentDao.writeBulk marshalled");
+            });
+            if (!inserted) {
                 throw new FailedWriteException("unable to write bulk to spoke " + channelName);
             }
             traces.add("SpokeContentDao.writeBulk completed", keys);
@@ -103,6 +92,35 @@ public class SpokeContentDao implements ContentDao {
         }
     }
 
+    @Override
+    public Content getMetadata(String channelName, ContentKey key) {
+        String path = getPath(channelName, key);
+        Traces traces = ActiveTraces.getLocal();
+        traces.add("SpokeContentDao.readMeta");
+        try {
+            return spokeStore.getMetadata(path, key);
+        } catch (Exception e) {
+            logger.warn("unable to get meta: " + path, e);
+            return null;
+        } finally {
+            traces.add("SpokeContentDao.readMeta completed");
+        }
+    }
+
+    @Override
+    public Map<ContentKey, Content> get(String channelName, Collection<ContentKey> keys) {
+        Traces traces = ActiveTraces.getLocal();
+        traces.add("SpokeContentDao.readMany", keys.size());
+        try {
+            return spokeStore.getMany(channelName, keys);
+        } catch (Exception e) {
+            logger.warn("unable to get data: " + channelName, e);
+            return Collections.emptyMap();
+        } finally {
+            traces.add("SpokeContentDao.readMany completed");
+        }
+    }
+
     @Override
     public Optional<ContentKey> getLatest(String channel, ContentKey limitKey, Traces traces) {
         String path = getPath(channel, limitKey);
@@ -143,11 +161,10 @@ public class SpokeContentDao implements ContentDao {
 
     private SortedSet<ContentKey> queryByTimeKeys(TimeQuery query) {
         try {
-            String timePath = query.getUnit().format(query.getStartTime());
-            QueryResult queryResult = spokeStore.readTimeBucket(query.getChannelName(), timePath);
+            QueryResult queryResult = spokeStore.readTimeBucket(query.getChannelName(), query.getStartTime(), query.getUnit());
             ActiveTraces.getLocal().add("spoke query result", queryResult);
             if (!queryResult.hadSuccess()) {
-                QueryResult retryResult = spokeStore.readTimeBucket(query.getChannelName(), timePath);
+                QueryResult retryResult = spokeStore.readTimeBucket(query.getChannelName(), query.getStartTime(), query.getUnit());
                 ActiveTraces.getLocal().add("spoke query retryResult", retryResult);
                 if (!retryResult.hadSuccess()) {
                     ActiveTraces.getLocal().log(logger);
@@ -183,7 +200,7 @@ public class SpokeContentDao implements ContentDao {
         SortedSet<ContentKey> contentKeys = Collections.emptySortedSet();
         if (query.isNext()) {
             try {
-                contentKeys = spokeStore.getNext(query.getChannelName(), query.getCount(), query.getStartKey().toUrl());
+                contentKeys = spokeStore.getNext(query.getChannelName(), query.getCount(), query.getStartKey());
             } catch (InterruptedException e) {
                 logger.warn("what happened? " + query, e);
             }
@@ -0,0 +1,123 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the same body in a PUT to each server.
+ * <p>
+ * Buffers are shared by every server and kept until they are sent, so a buffer must not be reused after it is written,
+ * as with {@link SpokeBulkFormat.Writer}.
+ * Each server may have up to spoke.bulk.maxQueuedBuffers unsent buffers, after which writes wait for that server.
+ * A server which fails, or stays full for the timeout, is dropped and the others continue.
+ */
+class SpokeFanOutStream extends OutputStream {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpokeFanOutStream.class);
+    private static final int MAX_QUEUED = HubProperties.getProperty("spoke.bulk.maxQueuedBuffers", 16);
+
+    private final String path;
+    private final long timeoutMillis;
+    private final Map<String, ServerBody> bodies = new LinkedHashMap<>();
+
+    SpokeFanOutStream(SpokeHttpClient httpClient, Collection<String> servers, String path, long timeoutSeconds) {
+        this.path = path;
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        for (String server : servers) {
+            ServerBody body = new ServerBody();
+            body.response = httpClient.put(server, path, body.content, timeoutSeconds);
+            bodies.put(server, body);
+        }
+    }
+
+    Map<String, CompletableFuture<SpokeHttpClient.SpokeResponse>> getResponses() {
+        Map<String, CompletableFuture<SpokeHttpClient.SpokeResponse>> responses = new LinkedHashMap<>();
+        bodies.forEach((server, body) -> responses.put(server, body.response));
+        return responses;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        boolean written = false;
+        for (Map.Entry<String, ServerBody> entry : bodies.entrySet()) {
+            ServerBody body = entry.getValue();
+            if (body.response.isDone()) {
+                continue;
+            }
+            if (!body.acquire(timeoutMillis)) {
+                logger.info("dropping slow server {} {}", entry.getKey(), path);
+                body.response.cancel(true);
+                continue;
+            }
+            body.content.offer(buffer.duplicate(), body);
+            written = true;
+        }
+        if (!written) {
+            throw new IOException("no servers are accepting " + path);
+        }
+    }
+
+    /**
+     * Ends the body of each request.
+     */
+    @Override
+    public void close() {
+        for (ServerBody body : bodies.values()) {
+            body.content.close();
+        }
+    }
+
+    /**
+     * Cancels each request, so the servers see an incomplete body.
+     */
+    void abort() {
+        for (ServerBody body : bodies.values()) {
+            body.response.cancel(true);
+        }
+    }
+
+    private static class ServerBody implements Callback {
+        private final DeferredContentProvider content = new DeferredContentProvider();
+        private final Semaphore queued = new Semaphore(MAX_QUEUED);
+        private CompletableFuture<SpokeHttpClient.SpokeResponse> response;
+
+        boolean acquire(long timeoutMillis) throws InterruptedIOException {
+            try {
+                return queued.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+
+        @Override
+        public void succeeded() {
+            queued.release();
+        }
+
+        @Override
+        public void failed(Throwable x) {
+            queued.release();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubHost;
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.metrics.MetricsService;
+import com.google.common.util.concurrent.AbstractIdleService;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.ContentProvider;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non blocking calls to the /internal/spoke api of other servers.
+ * <p>
+ * Each server gets a bounded pool of connections and a bounded queue of waiting requests,
+ * and responses are handled on a small shared thread pool, rather than with a thread per call.
+ * Streamed reads block the caller only until the headers arrive, then the caller reads the body as it comes in.
+ */
+class SpokeHttpClient {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpokeHttpClient.class);
+
+    private final HttpClient httpClient;
+    private final MetricsService metricsService;
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+    private final int maxResponseBytes = HubProperties.getProperty("spoke.client.maxResponseBytes", 64 * 1024 * 1024);
+
+    SpokeHttpClient(MetricsService metricsService) {
+        this.metricsService = metricsService;
+        QueuedThreadPool threadPool = new QueuedThreadPool(HubProperties.getProperty("spoke.client.threads", 64));
+        threadPool.setName("SpokeHttpClient");
+        httpClient = new HttpClient(new SslContextFactory(true));
+        httpClient.setExecutor(threadPool);
+        httpClient.setMaxConnectionsPerDestination(HubProperties.getProperty("spoke.client.maxConnections", 64));
+        httpClient.setMaxRequestsQueuedPerDestination(HubProperties.getProperty("spoke.client.maxQueued", 1024));
+        httpClient.setConnectTimeout(TimeUnit.SECONDS.toMillis(5));
+        httpClient.setFollowRedirects(false);
+        try {
+            httpClient.start();
+        } catch (Exception e) {
+            throw new RuntimeException("unable to start spoke http client", e);
+        }
+        HubServices.register(new SpokeHttpClientService(), HubServices.TYPE.BEFORE_HEALTH_CHECK, HubServices.TYPE.STOP);
+    }
+
+    CompletableFuture<SpokeResponse> put(String server, String path, byte[] payload, long timeoutSeconds) {
+        return put(server, path, new BytesContentProvider(payload), timeoutSeconds);
+    }
+
+    /**
+     * The content may be a {@link org.eclipse.jetty.client.util.DeferredContentProvider}, to write the body as it is produced.
+     */
+    CompletableFuture<SpokeResponse> put(String server, String path, ContentProvider content, long timeoutSeconds) {
+        Request request = newRequest(server, path, HttpMethod.PUT, timeoutSeconds)
+                .content(content, "application/octet-stream");
+        return send(server, request);
+    }
+
+    CompletableFuture<SpokeResponse> get(String server, String path, long timeoutSeconds) {
+        return send(server, newRequest(server, path, HttpMethod.GET, timeoutSeconds));
+    }
+
+    CompletableFuture<SpokeResponse> delete(String server, String path, long timeoutSeconds) {
+        return send(server, newRequest(server, path, HttpMethod.DELETE, timeoutSeconds));
+    }
+
+    /**
+     * Returns once the response headers arrive, so the caller can read the body as it streams in.
+     * The timeout applies to each wait for data, rather than the whole exchange.
+     * The caller must close the response.
+     */
+    SpokeStreamResponse getStream(String server, String path, long timeoutSeconds) throws Exception {
+        return stream(server, newStreamRequest(server, path, HttpMethod.GET, timeoutSeconds), timeoutSeconds);
+    }
+
+    SpokeStreamResponse postStream(String server, String path, String body, long timeoutSeconds) throws Exception {
+        Request request = newStreamRequest(server, path, HttpMethod.POST, timeoutSeconds)
+                .content(new StringContentProvider(body), "text/plain");
+        return stream(server, request, timeoutSeconds);
+    }
+
+    private Request newStreamRequest(String server, String path, HttpMethod method, long timeoutSeconds) {
+        return httpClient.newRequest(HubHost.getScheme() + server + path)
+                .method(method)
+                .idleTimeout(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private Request newRequest(String server, String path, HttpMethod method, long timeoutSeconds) {
+        return httpClient.newRequest(HubHost.getScheme() + server + path)
+                .method(method)
+                .timeout(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private SpokeStreamResponse stream(String server, Request request, long timeoutSeconds) throws Exception {
+        AtomicInteger count = started(server);
+        InputStreamResponseListener listener = new InputStreamResponseListener() {
+            @Override
+            public void onComplete(Result result) {
+                super.onComplete(result);
+                finished(server, count);
+            }
+        };
+        request.send(listener);
+        try {
+            Response response = listener.get(timeoutSeconds, TimeUnit.SECONDS);
+            return new SpokeStreamResponse(response.getStatus(), response.getHeaders(), listener.getInputStream());
+        } catch (ExecutionException e) {
+            request.abort(e.getCause());
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (Exception e) {
+            request.abort(e);
+            throw e;
+        }
+    }
+
+    private AtomicInteger started(String server) {
+        AtomicInteger count = inFlight.computeIfAbsent(server, key -> new AtomicInteger());
+        metricsService.gauge("spoke.client.inFlight", count.incrementAndGet(), "server:" + server);
+        return count;
+    }
+
+    private void finished(String server, AtomicInteger count) {
+        metricsService.gauge("spoke.client.inFlight", count.decrementAndGet(), "server:" + server);
+    }
+
+    /**
+     * Cancelling the returned future aborts the request.
+     */
+    private CompletableFuture<SpokeResponse> send(String server, Request request) {
+        CompletableFuture<SpokeResponse> future = new CompletableFuture<>();
+        future.whenComplete((response, e) -> {
+            if (e instanceof CancellationException) {
+                request.abort(e);
+            }
+        });
+        AtomicInteger count = started(server);
+        request.send(new BufferingResponseListener(maxResponseBytes) {
+            @Override
+            public void onComplete(Result result) {
+                finished(server, count);
+                if (result.isFailed()) {
+                    logger.trace("failed {} {}", request.getURI(), result.getFailure().getMessage());
+                    future.completeExceptionally(result.getFailure());
+                } else {
+                    future.complete(new SpokeResponse(result.getResponse().getStatus(), getContent()));
+                }
+            }
+        });
+        return future;
+    }
+
+    static class SpokeResponse {
+        private final int status;
+        private final byte[] content;
+
+        SpokeResponse(int status, byte[] content) {
+            this.status = status;
+            this.content = content;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        String getContentAsString() {
+            return new String(content);
+        }
+
+        @Override
+        public String toString() {
+            return "SpokeResponse{status=" + status + ", bytes=" + content.length + '}';
+        }
+    }
+
+    static class SpokeStreamResponse implements Closeable {
+        private final int status;
+        private final HttpFields headers;
+        private final InputStream stream;
+
+        SpokeStreamResponse(int status, HttpFields headers, InputStream stream) {
+            this.status = status;
+            this.headers = headers;
+            this.stream = stream;
+        }
+
+        int getStatus() {
+            return status;
+        }
+
+        String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        InputStream getStream() {
+            return stream;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+        @Override
+        public String toString() {
+            return "SpokeStreamResponse{status=" + status + '}';
+        }
+    }
+
+    private class SpokeHttpClientService extends AbstractIdleService {
+        @Override
+        protected void startUp() throws Exception {
+            //started in the constructor, so it is available to the spoke health check
+        }
+
+        @Override
+        protected void shutDown() throws Exception {
+            httpClient.stop();
+        }
+    }
+}
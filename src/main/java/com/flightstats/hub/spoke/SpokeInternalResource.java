@@ -2,6 +2,7 @@ package com.flightstats.hub.spoke;
 
 
 import com.flightstats.hub.app.HubProvider;
+import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.model.SingleTrace;
 import com.google.common.io.ByteStreams;
 import org.joda.time.DateTime;
@@ -10,18 +11,24 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 @SuppressWarnings("WeakerAccess")
 @Path("/internal/spoke")
 public class SpokeInternalResource {
 
     private final static Logger logger = LoggerFactory.getLogger(SpokeInternalResource.class);
-    private static final FileSpokeStore spokeStore = HubProvider.getInstance(FileSpokeStore.class);
+    static final String ITEM_LENGTH = "X-Item-Length";
+    private static final int ZIP_TAIL_BYTES = 64;
+    private static final int ZIP_HEAD_BYTES = 1024;
+    private static final SpokeStore spokeStore = HubProvider.getInstance(SpokeStore.class);
     private static final RemoteSpokeStore remoteSpokeStore = HubProvider.getInstance(RemoteSpokeStore.class);
     @Context
     private UriInfo uriInfo;
@@ -30,13 +37,23 @@ public class SpokeInternalResource {
     @GET
     public Response getPayload(@PathParam("path") String path) {
         try {
-            Response.ResponseBuilder builder = Response.ok((StreamingOutput) os -> {
-                try (OutputStream output = new BufferedOutputStream(os)) {
+            byte[] tail = spokeStore.readTail(path, ZIP_TAIL_BYTES);
+            if (tail == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            Response.ResponseBuilder builder = Response.ok((StreamingOutput) output -> {
+                try {
                     spokeStore.read(path, output);
                 } catch (NotFoundException e) {
                     logger.debug("not found {}", e.getMessage());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
                 }
             });
+            Long size = ContentMarshaller.getSize(tail);
+            if (size != null) {
+                builder.header(ITEM_LENGTH, size);
+            }
             return builder.build();
         } catch (Exception e) {
             logger.warn("unable to get " + path, e);
@@ -44,6 +61,58 @@ public class SpokeInternalResource {
         }
     }
 
+    /**
+     * Reads an item's content type and size from the start and end of the item, without reading its payload.
+     */
+    @Path("/meta/{path:.+}")
+    @GET
+    public Response getMeta(@PathParam("path") String path) {
+        try {
+            byte[] head = spokeStore.readHead(path, ZIP_HEAD_BYTES);
+            byte[] tail = spokeStore.readTail(path, ZIP_TAIL_BYTES);
+            if (head == null || tail == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            String metaData = ContentMarshaller.readMetaData(head, tail);
+            if (metaData == null) {
+                return Response.status(Response.Status.NOT_FOUND).build();
+            }
+            return Response.ok(metaData, MediaType.APPLICATION_JSON).build();
+        } catch (Exception e) {
+            logger.warn("unable to get meta " + path, e);
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * Reads the items for a list of keys, one key url per line, in the {@link SpokeBulkFormat}.
+     * Keys which are not found are left out of the response.
+     */
+    @Path("/payloads/{channel}")
+    @POST
+    public Response getPayloads(@PathParam("channel") String channel, String keys) {
+        List<String> found = new ArrayList<>();
+        for (String key : keys.split("\n")) {
+            key = key.trim();
+            if (!key.isEmpty() && spokeStore.exists(channel + "/" + key)) {
+                found.add(key);
+            }
+        }
+        return Response.ok((StreamingOutput) output -> {
+            SpokeBulkFormat.Writer writer = new SpokeBulkFormat.Writer(output);
+            for (String key : found) {
+                writer.write(key, itemOutput -> {
+                    try {
+                        spokeStore.read(channel + "/" + key, itemOutput);
+                    } catch (NotFoundException e) {
+                        logger.debug("not found {}", e.getMessage());
+                    }
+                });
+            }
+            writer.finish();
+        }).build();
+    }
+
     @Path("/payload/{path:.+}")
     @PUT
     public Response putPayload(@PathParam("path") String path, InputStream input) {
@@ -72,21 +141,17 @@ public class SpokeInternalResource {
     @Path("/bulkKey/{channel}")
     @PUT
     public Response putBulk(@PathParam("channel") String channel, InputStream input) {
+        long start = System.currentTimeMillis();
         try {
-            long start = System.currentTimeMillis();
-            ObjectInputStream stream = new ObjectInputStream(input);
-            int items = stream.readInt();
-            for (int i = 0; i < items; i++) {
-                String keyPath = new String(readByesFully(stream));
-                byte[] data = readByesFully(stream);
-                String itemPath = channel + "/" + keyPath;
-                if (!spokeStore.insert(itemPath, new ByteArrayInputStream(data))) {
-                    logger.warn("what happened?!?! {}", channel);
-                    return Response
-                            .status(Response.Status.INTERNAL_SERVER_ERROR)
-                            .entity(new SingleTrace("failed", start).toString())
-                            .build();
-                }
+            BufferedInputStream buffered = new BufferedInputStream(input);
+            boolean inserted = SpokeBulkFormat.isFramed(buffered)
+                    ? insertFramed(channel, buffered) : insertSerialized(channel, buffered);
+            if (!inserted) {
+                logger.warn("what happened?!?! {}", channel);
+                return Response
+                        .status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(new SingleTrace("failed", start).toString())
+                        .build();
             }
             long end = System.currentTimeMillis();
             if ((end - start) > 4000) {
@@ -102,6 +167,55 @@ public class SpokeInternalResource {
         }
     }
 
+    /**
+     * Writes each item as it arrives.  If the batch is incomplete, the items started are deleted,
+     * including any partly written item.
+     */
+    private boolean insertFramed(String channel, InputStream input) throws Exception {
+        List<String> started = new ArrayList<>();
+        try {
+            SpokeBulkFormat.Reader reader = new SpokeBulkFormat.Reader(input);
+            String keyPath = reader.nextKey();
+            while (keyPath != null) {
+                String itemPath = channel + "/" + keyPath;
+                started.add(itemPath);
+                if (!spokeStore.insert(itemPath, reader.getItemStream())) {
+                    deleteAll(started);
+                    return false;
+                }
+                keyPath = reader.nextKey();
+            }
+            return true;
+        } catch (Exception e) {
+            deleteAll(started);
+            throw e;
+        }
+    }
+
+    private void deleteAll(List<String> paths) throws Exception {
+        logger.info("deleting {} items from an incomplete batch", paths.size());
+        for (String path : paths) {
+            spokeStore.deleteFile(path);
+        }
+    }
+
+    /**
+     * The ObjectOutputStream format written by older servers.
+     */
+    private boolean insertSerialized(String channel, InputStream input) throws IOException {
+        ObjectInputStream stream = new ObjectInputStream(input);
+        int items = stream.readInt();
+        for (int i = 0; i < items; i++) {
+            String keyPath = new String(readByesFully(stream));
+            byte[] data = readByesFully(stream);
+            String itemPath = channel + "/" + keyPath;
+            if (!spokeStore.insert(itemPath, new ByteArrayInputStream(data))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private byte[] readByesFully(ObjectInputStream stream) throws IOException {
         int size = stream.readInt();
         byte[] data = new byte[size];
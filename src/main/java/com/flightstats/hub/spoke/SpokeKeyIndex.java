@@ -0,0 +1,223 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import com.google.common.base.Optional;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * The sorted keys of each channel, grouped by minute.
+ * Each minute keeps its keys in parallel long[] millis and String[] hash arrays, rather than as ContentKeys.
+ * <p>
+ * A channel is loaded with the keys from disk the first time it is queried,
+ * and merged with any inserts which arrived before then.  Loaded minutes take their last write time from disk,
+ * so channels which expire by write time drop them along with their files.
+ */
+class SpokeKeyIndex {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpokeKeyIndex.class);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<String, ChannelKeys> channels = new ConcurrentHashMap<>();
+    private final Function<String, String> channelLoader;
+    private final ToLongFunction<String> writeTimeLoader;
+
+    /**
+     * @param channelLoader   returns all of a channel's keys on disk, in the spoke format "channel/yyyy/MM/dd/HH/mm/ss/SSS/hash,"
+     * @param writeTimeLoader returns the last write time on disk of a minute, "channel/yyyy/MM/dd/HH/mm"
+     */
+    SpokeKeyIndex(Function<String, String> channelLoader, ToLongFunction<String> writeTimeLoader) {
+        this.channelLoader = channelLoader;
+        this.writeTimeLoader = writeTimeLoader;
+    }
+
+    void add(String channel, ContentKey key) {
+        getChannel(channel).add(key.getMillis(), key.getHash(), System.currentTimeMillis());
+    }
+
+    void remove(String channel, ContentKey key) {
+        getChannel(channel).remove(key.getMillis(), key.getHash());
+    }
+
+    /**
+     * Forgets a channel, it will be reloaded from disk if it is queried again.
+     */
+    void remove(String channel) {
+        channels.remove(channel);
+    }
+
+    /**
+     * Removes all minutes which start at or before the time.
+     */
+    void expireBefore(String channel, DateTime time) {
+        ChannelKeys channelKeys = channels.get(channel);
+        if (channelKeys != null) {
+            channelKeys.minutes.headMap(minute(time.getMillis()), true).clear();
+        }
+    }
+
+    /**
+     * Removes all minutes which were last written at or before the time.
+     */
+    void expireWrittenBefore(String channel, DateTime time) {
+        ChannelKeys channelKeys = channels.get(channel);
+        if (channelKeys != null) {
+            channelKeys.minutes.values().removeIf(minuteKeys -> minuteKeys.lastWrite() <= time.getMillis());
+        }
+    }
+
+    /**
+     * @return the channel's minutes, by the start time of the minute.
+     */
+    NavigableMap<Long, MinuteKeys> getMinutes(String channel) {
+        ChannelKeys channelKeys = getChannel(channel);
+        channelKeys.load(channel);
+        return channelKeys.minutes;
+    }
+
+    private ChannelKeys getChannel(String channel) {
+        return channels.computeIfAbsent(channel, name -> new ChannelKeys());
+    }
+
+    static long minute(long millis) {
+        return millis - Math.floorMod(millis, MINUTE);
+    }
+
+    private class ChannelKeys {
+        private final ConcurrentSkipListMap<Long, MinuteKeys> minutes = new ConcurrentSkipListMap<>();
+        private volatile boolean loaded;
+
+        void add(long millis, String hash, long writeTime) {
+            minutes.computeIfAbsent(minute(millis), minute -> new MinuteKeys()).add(millis, hash, writeTime);
+        }
+
+        void remove(long millis, String hash) {
+            MinuteKeys minuteKeys = minutes.get(minute(millis));
+            if (minuteKeys != null) {
+                minuteKeys.remove(millis, hash);
+            }
+        }
+
+        void load(String channel) {
+            if (loaded) {
+                return;
+            }
+            synchronized (this) {
+                if (loaded) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                int count = 0;
+                Map<Long, Long> writeTimes = new HashMap<>();
+                for (String path : StringUtils.split(channelLoader.apply(channel), ",")) {
+                    Optional<ContentKey> key = ContentKey.fromUrl(StringUtils.substringAfter(path, "/"));
+                    if (key.isPresent()) {
+                        long writeTime = writeTimes.computeIfAbsent(minute(key.get().getMillis()),
+                                minute -> writeTimeLoader.applyAsLong(channel + "/" + new MinutePath(key.get().getTime()).toUrl()));
+                        add(key.get().getMillis(), key.get().getHash(), writeTime);
+                        count++;
+                    }
+                }
+                loaded = true;
+                logger.info("loaded {} keys for {} in {} ms", count, channel, System.currentTimeMillis() - start);
+            }
+        }
+    }
+
+    /**
+     * The keys in one minute, sorted by millis then hash, matching {@link ContentKey#compareTo}.
+     * Keys usually arrive in order, so an add is typically an append.
+     */
+    static class MinuteKeys {
+        private long[] millis = new long[4];
+        private String[] hashes = new String[4];
+        private int size;
+        private long lastWrite;
+
+        synchronized void add(long keyMillis, String hash, long writeTime) {
+            lastWrite = Math.max(lastWrite, writeTime);
+            int index = search(keyMillis, hash);
+            if (index >= 0) {
+                return;
+            }
+            index = -(index + 1);
+            if (size == millis.length) {
+                millis = Arrays.copyOf(millis, size * 2);
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            System.arraycopy(millis, index, millis, index + 1, size - index);
+            System.arraycopy(hashes, index, hashes, index + 1, size - index);
+            millis[index] = keyMillis;
+            hashes[index] = hash;
+            size++;
+        }
+
+        synchronized void remove(long keyMillis, String hash) {
+            int index = search(keyMillis, hash);
+            if (index < 0) {
+                return;
+            }
+            System.arraycopy(millis, index + 1, millis, index, size - index - 1);
+            System.arraycopy(hashes, index + 1, hashes, index, size - index - 1);
+            size--;
+            hashes[size] = null;
+        }
+
+        synchronized long lastWrite() {
+            return lastWrite;
+        }
+
+        /**
+         * @return a sorted copy of the keys.
+         */
+        synchronized ContentKey[] getKeys() {
+            ContentKey[] keys = new ContentKey[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = new ContentKey(new DateTime(millis[i], DateTimeZone.UTC), hashes[i]);
+            }
+            return keys;
+        }
+
+        private int search(long keyMillis, String hash) {
+            if (size == 0 || compare(size - 1, keyMillis, hash) < 0) {
+                return -(size + 1);
+            }
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int diff = compare(mid, keyMillis, hash);
+                if (diff < 0) {
+                    low = mid + 1;
+                } else if (diff > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private int compare(int index, long keyMillis, String hash) {
+            int diff = Long.compare(millis[index], keyMillis);
+            if (diff == 0) {
+                diff = hashes[index].compareTo(hash);
+            }
+            return diff;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.flightstats.hub.spoke;
+
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * One minute of items for a channel, stored in a single append only file.
+ * <p>
+ * The file starts with a magic number, followed by records of:
+ * type (byte), name length (short), name, payload length (int), payload, crc32 of name and payload (int).
+ * The crc32 is written last and acts as the commit record, anything after the last valid record is ignored,
+ * and is truncated by the next append.
+ * <p>
+ * The index of names to payload offsets is kept in memory, and is rebuilt by scanning the file.
+ */
+class SpokeSegment {
+
+    private final static Logger logger = LoggerFactory.getLogger(SpokeSegment.class);
+
+    private static final int MAGIC = 0x53504b31;
+    private static final byte ITEM = 1;
+    private static final byte TOMBSTONE = 2;
+
+    private final File file;
+    private final TreeMap<String, Entry> index = new TreeMap<>();
+    private long validLength;
+    private Object fileKey;
+
+    private SpokeSegment(File file) {
+        this.file = file;
+    }
+
+    static SpokeSegment load(File file) throws IOException {
+        SpokeSegment segment = new SpokeSegment(file);
+        segment.scan();
+        return segment;
+    }
+
+    /**
+     * @return false if the file has been removed or replaced since it was indexed.
+     */
+    synchronized boolean isCurrent() {
+        if (!file.exists()) {
+            return validLength == 0;
+        }
+        return Objects.equals(fileKey, readFileKey()) && file.length() >= validLength;
+    }
+
+    synchronized List<String> getNames() {
+        return new ArrayList<>(index.keySet());
+    }
+
+    synchronized List<String> getNamesDescending() {
+        return new ArrayList<>(index.descendingKeySet());
+    }
+
+    synchronized void append(String name, InputStream input) throws IOException {
+        Entry entry = write(ITEM, name, input);
+        index.put(name, entry);
+    }
+
+    synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    synchronized boolean remove(String name) throws IOException {
+        if (!index.containsKey(name)) {
+            return false;
+        }
+        write(TOMBSTONE, name, new ByteArrayInputStream(new byte[0]));
+        index.remove(name);
+        return true;
+    }
+
+    /**
+     * @return false if the item is not in this segment.
+     */
+    boolean read(String name, OutputStream output) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(name);
+        }
+        if (entry == null) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ChannelTransfer.transferTo(channel, entry.offset, entry.length, output);
+        }
+        return true;
+    }
+
+    /**
+     * @return null if the item is not in this segment.
+     */
+    byte[] readTail(String name, int length) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+        byte[] tail = new byte[Math.min(length, entry.length)];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            randomAccessFile.seek(entry.offset + entry.length - tail.length);
+            randomAccessFile.readFully(tail);
+        }
+        return tail;
+    }
+
+    /**
+     * @return null if the item is not in this segment.
+     */
+    byte[] readHead(String name, int length) throws IOException {
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+        byte[] head = new byte[Math.min(length, entry.length)];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            randomAccessFile.seek(entry.offset);
+            randomAccessFile.readFully(head);
+        }
+        return head;
+    }
+
+    private Entry write(byte type, String name, InputStream input) throws IOException {
+        file.getParentFile().mkdirs();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() != validLength) {
+                logger.info("truncating segment {} from {} to {}", file, channel.size(), validLength);
+                channel.truncate(validLength);
+            }
+            if (validLength == 0) {
+                channel.write(intBuffer(MAGIC), 0);
+                validLength = 4;
+                fileKey = readFileKey();
+            }
+            channel.position(validLength);
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            CRC32 crc = new CRC32();
+            crc.update(nameBytes);
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            output.writeByte(type);
+            output.writeShort(nameBytes.length);
+            output.write(nameBytes);
+            long lengthOffset = validLength + 3 + nameBytes.length;
+            output.writeInt(0);
+            long length = ByteStreams.copy(input, new CheckedOutputStream(output, crc));
+            output.flush();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("payload too large for segment " + length);
+            }
+            long payloadOffset = lengthOffset + 4;
+            channel.write(intBuffer((int) length), lengthOffset);
+            channel.write(intBuffer((int) crc.getValue()), payloadOffset + length);
+            validLength = payloadOffset + length + 4;
+            return new Entry(payloadOffset, (int) length);
+        }
+    }
+
+    private void scan() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        fileKey = readFileKey();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int magic = input.readInt();
+            if (magic != MAGIC) {
+                throw new IOException("unexpected segment format " + file);
+            }
+            long offset = 4;
+            validLength = offset;
+            byte[] buffer = new byte[8 * 1024];
+            while (true) {
+                byte type = input.readByte();
+                byte[] nameBytes = new byte[input.readUnsignedShort()];
+                input.readFully(nameBytes);
+                int length = input.readInt();
+                CRC32 crc = new CRC32();
+                crc.update(nameBytes);
+                int remaining = length;
+                while (remaining > 0) {
+                    int read = input.read(buffer, 0, Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new EOFException();
+                    }
+                    crc.update(buffer, 0, read);
+                    remaining -= read;
+                }
+                if (input.readInt() != (int) crc.getValue()) {
+                    logger.info("incomplete record in segment {} at {}", file, offset);
+                    return;
+                }
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                long payloadOffset = offset + 3 + nameBytes.length + 4;
+                if (type == ITEM) {
+                    index.put(name, new Entry(payloadOffset, length));
+                } else if (type == TOMBSTONE) {
+                    index.remove(name);
+                }
+                offset = payloadOffset + length + 4;
+                validLength = offset;
+            }
+        } catch (EOFException e) {
+            logger.trace("end of segment {} {}", file, validLength);
+        }
+    }
+
+    private Object readFileKey() {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer intBuffer(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(0, value);
+        return buffer;
+    }
+
+    private static class Entry {
+        private final long offset;
+        private final int length;
+
+        private Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.app.HubProperties;
+import org.joda.time.DateTime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The local storage engine behind the /internal/spoke api.
+ * <p>
+ * Paths are the spoke url format, "channel/yyyy/MM/dd/HH/mm/ss/SSS/hash" for items,
+ * and "channel/yyyy/..." for time buckets.
+ */
+public interface SpokeStore {
+
+    boolean insert(String path, InputStream input);
+
+    default boolean insert(String path, byte[] payload) {
+        return insert(path, new ByteArrayInputStream(payload));
+    }
+
+    void read(String path, OutputStream output);
+
+    default byte[] read(String path) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        read(path, baos);
+        return baos.toByteArray();
+    }
+
+    /**
+     * @return true if the item has been completely written.
+     */
+    boolean exists(String path);
+
+    /**
+     * @return up to the last length bytes of an item, or null if the item does not exist.
+     */
+    byte[] readTail(String path, int length);
+
+    /**
+     * @return up to the first length bytes of an item, or null if the item does not exist.
+     */
+    byte[] readHead(String path, int length);
+
+    void readKeysInBucket(String path, OutputStream output);
+
+    default String readKeysInBucket(String path) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        readKeysInBucket(path, baos);
+        return baos.toString();
+    }
+
+    String getLatest(String channel, String limitPath);
+
+    /**
+     * @param minutePath "channel/yyyy/MM/dd/HH/mm"
+     * @return the last time an item was written to the minute, or 0 if it doesn't exist.
+     */
+    long getWriteTime(String minutePath);
+
+    /**
+     * This may return more than the request count, as this does not do any sorting.
+     */
+    void getNext(String channel, String startKey, int count, OutputStream output) throws IOException;
+
+    boolean delete(String path) throws Exception;
+
+    boolean deleteFile(String path) throws Exception;
+
+    /**
+     * Called by {@link SpokeTtlEnforcer} after it removes a channel's expired items from disk.
+     * Live channels expire by item time, other channels by the time items were written.
+     */
+    default void enforceTtl(String channel, boolean live, DateTime ttlTime) {
+    }
+
+    /**
+     * spoke.store=file writes one file per item, spoke.store=segment appends items to one file per minute.
+     * spoke.index=true keeps the keys in memory for time, next and latest queries, and defaults to false.
+     */
+    static SpokeStore create(String storagePath) {
+        String type = HubProperties.getProperty("spoke.store", "file");
+        SpokeStore spokeStore;
+        switch (type) {
+            case "file":
+                spokeStore = new FileSpokeStore(storagePath);
+                break;
+            case "segment":
+                spokeStore = new SegmentSpokeStore(storagePath);
+                break;
+            default:
+                throw new RuntimeException("unsupported spoke.store " + type);
+        }
+        if (HubProperties.getProperty("spoke.index", false)) {
+            return new IndexedSpokeStore(spokeStore);
+        }
+        return spokeStore;
+    }
+}
@@ -24,6 +24,8 @@ public class SpokeTtlEnforcer {
     private final int ttlMinutes = HubProperties.getSpokeTtlMinutes() + 1;
     @Inject
     private ChannelService channelService;
+    @Inject
+    private SpokeStore spokeStore;
 
     @Inject
     public SpokeTtlEnforcer() {
@@ -41,8 +43,10 @@ public class SpokeTtlEnforcer {
                     Commander.run(new String[]{"rm", "-rf", channelPath + "/" + TimeUtil.minutes(ttlDateTime.minusMinutes(i))}, 1);
                     Commander.run(new String[]{"rm", "-rf", channelPath + "/" + TimeUtil.hours(ttlDateTime.minusHours(i + 1))}, 5);
                 }
+                spokeStore.enforceTtl(channel.getDisplayName(), true, ttlDateTime);
             } else {
                 Commander.run(new String[]{"find", channelPath, "-mmin", "+" + ttlMinutes, "-delete"}, 1);
+                spokeStore.enforceTtl(channel.getDisplayName(), false, TimeUtil.now().minusMinutes(ttlMinutes));
             }
         };
     }
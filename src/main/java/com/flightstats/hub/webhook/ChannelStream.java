@@ -0,0 +1,113 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.model.ChannelConfig;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import com.flightstats.hub.model.TimeQuery;
+import com.flightstats.hub.util.TimeUtil;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * The subscribers on this hub to one channel.
+ * <p>
+ * Recent seconds come from the channel's {@link ChannelTail}, and each second is resolved once for all the
+ * subscribers which are caught up, so following a channel costs the same for one subscriber or thousands.
+ */
+class ChannelStream {
+
+    private final static Logger logger = LoggerFactory.getLogger(ChannelStream.class);
+
+    private final String channel;
+    private final ChannelService channelService;
+    private final ChannelTail channelTail;
+    private final Set<StreamSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private ScheduledFuture<?> future;
+
+    ChannelStream(String channel, ChannelService channelService, ChannelTail channelTail) {
+        this.channel = channel;
+        this.channelService = channelService;
+        this.channelTail = channelTail;
+    }
+
+    void add(StreamSubscription subscription) {
+        subscriptions.add(subscription);
+    }
+
+    /**
+     * @return true when no subscribers are left
+     */
+    boolean remove(StreamSubscription subscription) {
+        subscriptions.remove(subscription);
+        return subscriptions.isEmpty();
+    }
+
+    Collection<StreamSubscription> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    ChannelTail getChannelTail() {
+        return channelTail;
+    }
+
+    void setFuture(ScheduledFuture<?> future) {
+        this.future = future;
+    }
+
+    void cancel() {
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    /**
+     * Advances every subscriber up to the channel's stable time.
+     */
+    void advance() {
+        try {
+            ChannelConfig channelConfig = channelService.getCachedChannelConfig(channel);
+            if (channelConfig == null) {
+                logger.info("channel {} is missing, closing subscribers", channel);
+                getSubscriptions().forEach(StreamSubscription::close);
+                return;
+            }
+            DateTime stable;
+            if (channelConfig.isLive()) {
+                stable = channelTail.getStable(TimeUtil.stable());
+            } else {
+                stable = channelService.getLastUpdated(channel, MinutePath.NONE).getTime();
+            }
+            Map<DateTime, Collection<ContentKey>> seconds = new HashMap<>();
+            for (StreamSubscription subscription : subscriptions) {
+                try {
+                    subscription.advance(stable, timeQuery -> query(timeQuery, channelConfig.isLive(), seconds));
+                } catch (Exception e) {
+                    logger.warn("unable to advance subscriber of " + channel, e);
+                    subscription.close();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("unable to advance " + channel, e);
+        }
+    }
+
+    private Collection<ContentKey> query(TimeQuery timeQuery, boolean live, Map<DateTime, Collection<ContentKey>> seconds) {
+        if (live && timeQuery.getUnit().equals(TimeUtil.Unit.SECONDS)) {
+            return seconds.computeIfAbsent(timeQuery.getStartTime(), start -> {
+                Collection<ContentKey> keys = channelTail.getSecond(start);
+                return keys == null ? channelService.queryByTime(timeQuery) : keys;
+            });
+        }
+        return channelService.queryByTime(timeQuery);
+    }
+}
@@ -0,0 +1,109 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.exception.NoSuchChannelException;
+import com.flightstats.hub.model.ContentPath;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams channels to subscribers connected to this hub, such as websockets and events, without a webhook for each.
+ * <p>
+ * Each channel with subscribers has one {@link ChannelStream}, which is advanced every stream.pollMillis.
+ * Sends are handed to a shared pool of stream.threads, and each subscriber buffers up to stream.buffer keys.
+ * A subscriber which doesn't take a send for stream.slowSeconds is closed.
+ */
+@Singleton
+public class ChannelStreams {
+
+    private final static Logger logger = LoggerFactory.getLogger(ChannelStreams.class);
+
+    private final int capacity = HubProperties.getProperty("stream.buffer", 1000);
+    private final long slowMillis = TimeUnit.SECONDS.toMillis(HubProperties.getProperty("stream.slowSeconds", 60));
+    private final int pollMillis = HubProperties.getProperty("stream.pollMillis", 250);
+    private final ChannelService channelService;
+    private final ChannelTails channelTails;
+    private final Map<String, ChannelStream> streams = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            HubProperties.getProperty("stream.channelThreads", 4),
+            new ThreadFactoryBuilder().setNameFormat("ChannelStreams-%d").setDaemon(true).build());
+    private final ExecutorService sender = Executors.newFixedThreadPool(
+            HubProperties.getProperty("stream.threads", 64),
+            new ThreadFactoryBuilder().setNameFormat("ChannelStreams-send-%d").setDaemon(true).build());
+
+    @Inject
+    public ChannelStreams(ChannelService channelService, ChannelTails channelTails) {
+        this.channelService = channelService;
+        this.channelTails = channelTails;
+        HubServices.register(new ChannelStreamsService(), HubServices.TYPE.BEFORE_HEALTH_CHECK, HubServices.TYPE.STOP);
+    }
+
+    /**
+     * @param startingPath items after this are sent
+     * @param heartbeat    if true, a MinutePath is sent as each minute passes
+     */
+    public StreamSubscription subscribe(String channel, ContentPath startingPath, boolean heartbeat, StreamSink sink) {
+        if (!channelService.channelExists(channel)) {
+            throw new NoSuchChannelException(channel);
+        }
+        StreamSubscription subscription = new StreamSubscription(channel, startingPath, heartbeat, sink, sender,
+                capacity, slowMillis, this::unsubscribe);
+        synchronized (streams) {
+            ChannelStream stream = streams.computeIfAbsent(channel.toLowerCase(), name -> {
+                ChannelStream created = new ChannelStream(channel, channelService, channelTails.acquire(channel));
+                created.setFuture(scheduler.scheduleWithFixedDelay(created::advance, 0, pollMillis, TimeUnit.MILLISECONDS));
+                return created;
+            });
+            stream.add(subscription);
+        }
+        logger.info("subscribed to {} from {}", channel, startingPath);
+        return subscription;
+    }
+
+    private void unsubscribe(StreamSubscription subscription) {
+        String name = subscription.getChannel().toLowerCase();
+        synchronized (streams) {
+            ChannelStream stream = streams.get(name);
+            if (stream != null && stream.remove(subscription)) {
+                streams.remove(name);
+                stream.cancel();
+                channelTails.release(stream.getChannelTail());
+            }
+        }
+    }
+
+    private class ChannelStreamsService extends AbstractIdleService {
+        @Override
+        protected void startUp() throws Exception {
+            //streams start with their first subscriber
+        }
+
+        @Override
+        protected void shutDown() throws Exception {
+            List<StreamSubscription> subscriptions = new ArrayList<>();
+            synchronized (streams) {
+                streams.values().forEach(stream -> subscriptions.addAll(stream.getSubscriptions()));
+            }
+            logger.info("closing {} subscribers", subscriptions.size());
+            subscriptions.forEach(StreamSubscription::close);
+            scheduler.shutdownNow();
+            sender.shutdown();
+            sender.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
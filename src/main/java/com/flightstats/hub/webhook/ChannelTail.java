@@ -0,0 +1,94 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The recent seconds of one channel, shared by the webhooks on this hub which are caught up.
+ * <p>
+ * Seconds are resolved once and in order, from notified keys when they cover the second, or else with one query,
+ * and the last windowSeconds are kept for webhooks a little behind.
+ */
+class ChannelTail {
+
+    private final String channel;
+    private final NotifiedKeys notifiedKeys;
+    private final Function<DateTime, Collection<ContentKey>> query;
+    private final int windowSeconds;
+    private final TreeMap<DateTime, SortedSet<ContentKey>> seconds = new TreeMap<>();
+    private DateTime head;
+    private int references;
+
+    ChannelTail(String channel, NotifiedKeys notifiedKeys, Function<DateTime, Collection<ContentKey>> query, int windowSeconds) {
+        this.channel = channel;
+        this.notifiedKeys = notifiedKeys;
+        this.query = query;
+        this.windowSeconds = windowSeconds;
+    }
+
+    String getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return the time which seconds can be resolved to, no later than stable.
+     */
+    DateTime getStable(DateTime stable) {
+        return notifiedKeys.getStable(stable);
+    }
+
+    /**
+     * @param time within a second which ends no later than {@link #getStable}
+     * @return the keys in the second, or null if it is before the window, and the webhook should query it.
+     */
+    synchronized SortedSet<ContentKey> getSecond(DateTime time) {
+        DateTime start = TimeUtil.Unit.SECONDS.round(time);
+        if (head == null || start.isAfter(head.plusSeconds(windowSeconds))) {
+            head = start;
+        }
+        if (start.isBefore(head)) {
+            SortedSet<ContentKey> keys = seconds.get(start);
+            return keys == null ? null : new TreeSet<>(keys);
+        }
+        while (!head.isAfter(start)) {
+            seconds.put(head, resolve(head));
+            head = head.plusSeconds(1);
+        }
+        while (seconds.size() > windowSeconds) {
+            seconds.pollFirstEntry();
+        }
+        return new TreeSet<>(seconds.get(start));
+    }
+
+    private SortedSet<ContentKey> resolve(DateTime second) {
+        SortedSet<ContentKey> keys = notifiedKeys.get(second, second.plusSeconds(1));
+        if (keys == null) {
+            keys = new TreeSet<>(query.apply(second));
+        }
+        return keys;
+    }
+
+    synchronized void acquire() {
+        references++;
+    }
+
+    /**
+     * @return true when no webhooks are left
+     */
+    synchronized boolean release() {
+        references--;
+        if (references == 0) {
+            notifiedKeys.close();
+            seconds.clear();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,102 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.dao.ChannelKeyNotifier;
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.dao.ItemRequest;
+import com.flightstats.hub.metrics.ActiveTraces;
+import com.flightstats.hub.model.*;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link ChannelTail} for each channel with webhooks or streams on this hub, so the cost of following a channel
+ * doesn't grow with the number of webhooks or subscribers on it.
+ * <p>
+ * Recently read items are shared too, so events sessions on this hub read each item once.
+ */
+@Singleton
+public class ChannelTails {
+
+    private final static Logger logger = LoggerFactory.getLogger(ChannelTails.class);
+
+    private final int windowSeconds = HubProperties.getProperty("webhook.tail.seconds", 60);
+    private final ChannelService channelService;
+    private final ChannelKeyNotifier channelKeyNotifier;
+    private final Map<String, ChannelTail> tails = new HashMap<>();
+    private final Cache<ChannelContentKey, Optional<Content>> contents = CacheBuilder.newBuilder()
+            .maximumWeight(HubProperties.getProperty("webhook.tail.contentMB", 32) * 1024L * 1024L)
+            .weigher((ChannelContentKey key, Optional<Content> content) -> content.isPresent() ? Math.max(1, content.get().getSize().intValue()) : 1)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
+    @Inject
+    public ChannelTails(ChannelService channelService, ChannelKeyNotifier channelKeyNotifier) {
+        this.channelService = channelService;
+        this.channelKeyNotifier = channelKeyNotifier;
+    }
+
+    ChannelTail acquire(String channel) {
+        synchronized (tails) {
+            ChannelTail tail = tails.computeIfAbsent(channel.toLowerCase(), name -> new ChannelTail(channel,
+                    new NotifiedKeys(channelKeyNotifier, channel), time -> query(channel, time), windowSeconds));
+            tail.acquire();
+            return tail;
+        }
+    }
+
+    void release(ChannelTail tail) {
+        synchronized (tails) {
+            if (tail.release()) {
+                tails.remove(tail.getChannel().toLowerCase());
+            }
+        }
+    }
+
+    private Collection<ContentKey> query(String channel, DateTime time) {
+        TimeQuery timeQuery = TimeQuery.builder()
+                .channelName(channel)
+                .startTime(time)
+                .unit(TimeUtil.Unit.SECONDS)
+                .stable(true)
+                .epoch(Epoch.IMMUTABLE)
+                .build();
+        ActiveTraces.getLocal().add("ChannelTail.query", channel, time);
+        return channelService.queryByTime(timeQuery);
+    }
+
+    /**
+     * Reads an item once for every caller within a minute.
+     */
+    public Optional<Content> getContent(ItemRequest itemRequest) {
+        ChannelContentKey key = new ChannelContentKey(itemRequest.getChannel(), itemRequest.getKey());
+        try {
+            return contents.get(key, () -> {
+                Optional<Content> content = channelService.get(itemRequest);
+                if (content.isPresent()) {
+                    content.get().getData();
+                }
+                return content;
+            });
+        } catch (ExecutionException e) {
+            logger.warn("unable to get " + key, e.getCause());
+            return Optional.absent();
+        } catch (UncheckedExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.dao.ChannelKeyNotifier;
+import com.flightstats.hub.model.ContentKey;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * The keys written to a webhook's channel, pushed by the {@link ChannelKeyNotifier},
+ * so a time query they cover is answered without asking Spoke.
+ * <p>
+ * Keys are held until the time query covering them.  Queries before the subscription's start, or after the time
+ * the notifier has heard from every hub to, fall back to Spoke.
+ * After a gap, or a key arriving for a time already answered, the subscription starts again.
+ */
+class NotifiedKeys implements AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(NotifiedKeys.class);
+    private static final int CAPACITY = HubProperties.getProperty("webhook.notify.capacity", 10 * 1000);
+
+    private final ChannelKeyNotifier notifier;
+    private final String channel;
+    private final TreeSet<ContentKey> keys = new TreeSet<>();
+    private ChannelKeyNotifier.Subscription subscription;
+    private DateTime answered;
+    private boolean closed;
+
+    NotifiedKeys(ChannelKeyNotifier notifier, String channel) {
+        this.notifier = notifier;
+        this.channel = channel;
+        subscription = notifier.subscribe(channel, CAPACITY);
+    }
+
+    /**
+     * @return the time which keys are complete to, no later than stable.
+     */
+    synchronized DateTime getStable(DateTime stable) {
+        if (subscription == null) {
+            return stable;
+        }
+        return notifier.getStable(stable);
+    }
+
+    /**
+     * @param end must be no later than {@link #getStable}
+     * @return the keys from start up to end, or null if they must be queried.
+     */
+    synchronized SortedSet<ContentKey> get(DateTime start, DateTime end) {
+        if (closed) {
+            return null;
+        }
+        if (subscription == null) {
+            subscription = notifier.subscribe(channel, CAPACITY);
+            return null;
+        }
+        subscription.drainTo(keys);
+        if (answered != null && !keys.isEmpty() && keys.first().getTime().isBefore(answered)) {
+            logger.warn("late key {} for {}, answered to {}", keys.first(), channel, answered);
+            restart();
+            return null;
+        }
+        if (subscription.hasGap() || keys.size() >= CAPACITY) {
+            logger.info("restarting notifications for {} after a gap", channel);
+            restart();
+            return null;
+        }
+        SortedSet<ContentKey> earlier = keys.headSet(ContentKey.lastKey(end.minusMillis(1)), true);
+        if (start.isBefore(subscription.getStart()) || !notifier.covers(end)) {
+            earlier.clear();
+            return null;
+        }
+        SortedSet<ContentKey> found = new TreeSet<>(earlier.tailSet(new ContentKey(start, "")));
+        earlier.clear();
+        answered = end;
+        return found;
+    }
+
+    private void restart() {
+        notifier.unsubscribe(subscription);
+        keys.clear();
+        answered = null;
+        subscription = notifier.subscribe(channel, CAPACITY);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (subscription != null) {
+            notifier.unsubscribe(subscription);
+            subscription = null;
+        }
+    }
+}
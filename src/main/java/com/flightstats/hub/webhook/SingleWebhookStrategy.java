@@ -29,18 +29,22 @@ class SingleWebhookStrategy implements WebhookStrategy {
     private final Webhook webhook;
     private final LastContentPath lastContentPath;
     private final ChannelService channelService;
+    private final ChannelTails channelTails;
     private AtomicBoolean shouldExit = new AtomicBoolean(false);
     private AtomicBoolean error = new AtomicBoolean(false);
     private BlockingQueue<ContentPath> queue;
     private String channel;
     private QueryGenerator queryGenerator;
     private ExecutorService executorService;
+    private ChannelTail channelTail;
 
 
-    SingleWebhookStrategy(Webhook webhook, LastContentPath lastContentPath, ChannelService channelService) {
+    SingleWebhookStrategy(Webhook webhook, LastContentPath lastContentPath, ChannelService channelService,
+                          ChannelTails channelTails) {
         this.webhook = webhook;
         this.lastContentPath = lastContentPath;
         this.channelService = channelService;
+        this.channelTails = channelTails;
         this.queue = new ArrayBlockingQueue<>(webhook.getParallelCalls() * 2);
     }
 
@@ -94,6 +98,7 @@ class SingleWebhookStrategy implements WebhookStrategy {
     public void start(Webhook webhook, ContentPath startingPath) {
         channel = webhook.getChannelName();
         queryGenerator = new QueryGenerator(startingPath.getTime(), channel);
+        channelTail = channelTails.acquire(channel);
         ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("single-webhook-" + webhook.getName() + "-%s").build();
         executorService = Executors.newSingleThreadExecutor(factory);
         executorService.submit(new Runnable() {
@@ -127,10 +132,12 @@ class SingleWebhookStrategy implements WebhookStrategy {
                     DateTime latestStableInChannel = TimeUtil.stable();
                     if (!channelConfig.isLive()) {
                         latestStableInChannel = channelService.getLastUpdated(channel, MinutePath.NONE).getTime();
+                    } else {
+                        latestStableInChannel = channelTail.getStable(latestStableInChannel);
                     }
                     TimeQuery timeQuery = queryGenerator.getQuery(latestStableInChannel);
                     if (timeQuery != null) {
-                        addKeys(channelService.queryByTime(timeQuery));
+                        addKeys(queryKeys(timeQuery));
                         if (webhook.isHeartbeat() && queryGenerator.getLastQueryTime().getSecondOfMinute() == 0) {
                             MinutePath minutePath = new MinutePath(queryGenerator.getLastQueryTime().minusMinutes(1));
                             logger.debug("sending heartbeat {}", minutePath);
@@ -144,6 +151,20 @@ class SingleWebhookStrategy implements WebhookStrategy {
                 }
             }
 
+            /**
+             * Recent seconds come from the channel's tail, shared with the other webhooks on the channel.
+             */
+            private Collection<ContentKey> queryKeys(TimeQuery timeQuery) {
+                if (channelConfig.isLive() && timeQuery.getUnit().equals(TimeUtil.Unit.SECONDS)) {
+                    Collection<ContentKey> keys = channelTail.getSecond(timeQuery.getStartTime());
+                    if (keys != null) {
+                        ActiveTraces.getLocal().add("channel tail keys", keys);
+                        return keys;
+                    }
+                }
+                return channelService.queryByTime(timeQuery);
+            }
+
             private void addKeys(Collection<ContentKey> keys) throws InterruptedException {
                 logger.debug("channel {} keys {}", channel, keys);
                 if (logger.isTraceEnabled()) {
@@ -169,5 +190,9 @@ class SingleWebhookStrategy implements WebhookStrategy {
     @Override
     public void close() {
         WebhookStrategy.close(shouldExit, executorService, queue);
+        if (channelTail != null) {
+            channelTails.release(channelTail);
+            channelTail = null;
+        }
     }
 }
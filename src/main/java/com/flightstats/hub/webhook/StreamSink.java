@@ -0,0 +1,23 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.model.ContentPath;
+
+import java.util.function.Consumer;
+
+/**
+ * A subscriber connected to this hub, such as a websocket or an events stream, which {@link ChannelStreams} sends to.
+ */
+public interface StreamSink {
+
+    /**
+     * Sends a ContentKey, or a MinutePath heartbeat, and calls done once it is sent, with null or the failure.
+     * The next send waits for done.
+     * This is called from a pool shared by every subscriber on the hub, so it must not block on the client.
+     */
+    void send(ContentPath contentPath, Consumer<Throwable> done);
+
+    /**
+     * Called once, from the thread closing the subscription, so it must not block on the client either.
+     */
+    void close();
+}
@@ -0,0 +1,164 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.ContentPath;
+import com.flightstats.hub.model.MinutePath;
+import com.flightstats.hub.model.TimeQuery;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * One subscriber to a {@link ChannelStream}, which steps through the channel from its starting point,
+ * with a {@link QueryGenerator}, like a webhook.
+ * <p>
+ * Keys wait in a buffer, and are sent in order, one at a time.  The channel is only queried while the buffer
+ * has room, so a subscriber which falls behind catches up with larger queries, and one which doesn't take a send
+ * for slowMillis is closed, so it can reconnect from the last item it received.
+ */
+public class StreamSubscription {
+
+    private final static Logger logger = LoggerFactory.getLogger(StreamSubscription.class);
+
+    private final String channel;
+    private final StreamSink sink;
+    private final boolean heartbeat;
+    private final QueryGenerator queryGenerator;
+    private final Executor executor;
+    private final int capacity;
+    private final long slowMillis;
+    private final Consumer<StreamSubscription> onClose;
+    private final Queue<ContentPath> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean sending = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile long lastProgress = System.currentTimeMillis();
+    private ContentPath lastAdded;
+
+    StreamSubscription(String channel, ContentPath startingPath, boolean heartbeat, StreamSink sink, Executor executor,
+                       int capacity, long slowMillis, Consumer<StreamSubscription> onClose) {
+        this.channel = channel;
+        this.sink = sink;
+        this.heartbeat = heartbeat;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.slowMillis = slowMillis;
+        this.onClose = onClose;
+        this.lastAdded = startingPath;
+        this.queryGenerator = new QueryGenerator(startingPath.getTime(), channel);
+    }
+
+    String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Queries the channel up to stable, while the buffer has room.  Only called by the channel's stream.
+     */
+    void advance(DateTime stable, Function<TimeQuery, Collection<ContentKey>> query) {
+        if (isSlow()) {
+            logger.info("closing slow subscriber to {} with {} waiting", channel, size.get());
+            close();
+            return;
+        }
+        while (!closed.get() && size.get() < capacity) {
+            TimeQuery timeQuery = queryGenerator.getQuery(stable);
+            if (timeQuery == null) {
+                break;
+            }
+            for (ContentKey key : query.apply(timeQuery)) {
+                add(key);
+            }
+            if (heartbeat && queryGenerator.getLastQueryTime().getSecondOfMinute() == 0) {
+                add(new MinutePath(queryGenerator.getLastQueryTime().minusMinutes(1)));
+            }
+        }
+        drain();
+    }
+
+    private void add(ContentPath contentPath) {
+        if (contentPath.compareTo(lastAdded) > 0) {
+            buffer.add(contentPath);
+            size.incrementAndGet();
+            lastAdded = contentPath;
+        }
+    }
+
+    private boolean isSlow() {
+        return size.get() > 0 && System.currentTimeMillis() - lastProgress > slowMillis;
+    }
+
+    private void drain() {
+        if (!closed.get() && !buffer.isEmpty() && sending.compareAndSet(false, true)) {
+            lastProgress = System.currentTimeMillis();
+            execute(this::sendNext);
+        }
+    }
+
+    private void sendNext() {
+        ContentPath contentPath = buffer.poll();
+        if (contentPath == null || closed.get()) {
+            sending.set(false);
+            drain();
+            return;
+        }
+        size.decrementAndGet();
+        try {
+            sink.send(contentPath, failure -> {
+                if (failure == null) {
+                    lastProgress = System.currentTimeMillis();
+                    execute(this::sendNext);
+                } else {
+                    logger.info("unable to send to subscriber of {} {}", channel, failure.getMessage());
+                    close();
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("unable to send to subscriber of " + channel, e);
+            close();
+        }
+    }
+
+    private void execute(Runnable runnable) {
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            logger.debug("streams are stopped {}", channel);
+            sending.set(false);
+        }
+    }
+
+    /**
+     * Stops sending, and closes the sink on this thread, as the send pool may be busy with the slow sink.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.accept(this);
+            buffer.clear();
+            size.set(0);
+            closeSink();
+        }
+    }
+
+    private void closeSink() {
+        try {
+            sink.close();
+        } catch (Exception e) {
+            logger.info("unable to close subscriber of " + channel, e);
+        }
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+}
@@ -35,11 +35,13 @@ class TimedWebhookStrategy implements WebhookStrategy {
     private final Webhook webhook;
     private final LastContentPath lastContentPath;
     private final ChannelService channelService;
+    private final ChannelTails channelTails;
     private AtomicBoolean shouldExit = new AtomicBoolean(false);
     private AtomicBoolean error = new AtomicBoolean(false);
     private BlockingQueue<ContentPathKeys> queue;
     private String channel;
     private ScheduledExecutorService executorService;
+    private ChannelTail channelTail;
 
     // time unit specific functions
     private TimeUtil.Unit unit;
@@ -52,11 +54,13 @@ class TimedWebhookStrategy implements WebhookStrategy {
     private Function<DateTime, DateTime> getNextTime;
     private Duration duration;
 
-    TimedWebhookStrategy(Webhook webhook, LastContentPath lastContentPath, ChannelService channelService) {
+    TimedWebhookStrategy(Webhook webhook, LastContentPath lastContentPath, ChannelService channelService,
+                         ChannelTails channelTails) {
         this.webhook = webhook;
         this.channel = webhook.getChannelName();
         this.lastContentPath = lastContentPath;
         this.channelService = channelService;
+        this.channelTails = channelTails;
         this.queue = new ArrayBlockingQueue<>(webhook.getParallelCalls() * 2);
         if (webhook.isSecond()) {
             secondConfig();
@@ -145,6 +149,7 @@ class TimedWebhookStrategy implements WebhookStrategy {
     public void start(Webhook webhook, ContentPath startingPath) {
         ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat(webhook.getBatch() + "-webhook-" + webhook.getName() + "-%s").build();
         executorService = Executors.newSingleThreadScheduledExecutor(factory);
+        channelTail = channelTails.acquire(channel);
         logger.info("starting {} with starting path {}", webhook, startingPath);
         executorService.scheduleAtFixedRate(new Runnable() {
 
@@ -171,7 +176,7 @@ class TimedWebhookStrategy implements WebhookStrategy {
                 if (lastAdded instanceof ContentKey) {
                     nextTime = lastAdded.getTime();
                 }
-                DateTime stable = TimeUtil.stable().minus(duration);
+                DateTime stable = channelTail.getStable(TimeUtil.stable()).minus(duration);
                 if (!channelConfig.isLive()) {
                     ContentPath contentPath = channelService.getLastUpdated(channel, getNone.get());
                     DateTime replicatedStable = getReplicatingStable.apply(contentPath);
@@ -184,7 +189,7 @@ class TimedWebhookStrategy implements WebhookStrategy {
                 while (nextTime.isBefore(stable)) {
                     try {
                         ActiveTraces.start("TimedWebhookStrategy.doWork", webhook);
-                        Collection<ContentKey> keys = queryKeys(nextTime)
+                        Collection<ContentKey> keys = getKeys(nextTime)
                                 .stream()
                                 .filter(key -> key.compareTo(lastAdded) > 0)
                                 .collect(Collectors.toCollection(ArrayList::new));
@@ -201,6 +206,19 @@ class TimedWebhookStrategy implements WebhookStrategy {
                 }
             }
 
+            /**
+             * Recent seconds come from the channel's tail, shared with the other webhooks on the channel.
+             */
+            private Collection<ContentKey> getKeys(DateTime time) {
+                if (channelConfig.isLive() && unit.equals(TimeUtil.Unit.SECONDS)) {
+                    Collection<ContentKey> keys = channelTail.getSecond(time);
+                    if (keys != null) {
+                        return keys;
+                    }
+                }
+                return queryKeys(time);
+            }
+
         }, getOffsetSeconds.get(), period, TimeUnit.SECONDS);
     }
 
@@ -258,5 +276,9 @@ class TimedWebhookStrategy implements WebhookStrategy {
     @Override
     public void close() throws Exception {
         WebhookStrategy.close(shouldExit, executorService, queue);
+        if (channelTail != null) {
+            channelTails.release(channelTail);
+            channelTail = null;
+        }
     }
 }
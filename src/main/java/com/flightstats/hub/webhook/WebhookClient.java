@@ -0,0 +1,112 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.app.HubServices;
+import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non blocking webhook calls, shared by every webhook on this hub.
+ * <p>
+ * Each callback host gets a pool of keep alive connections and a queue of waiting calls, which is served in order,
+ * so webhooks calling the same host share its connections.  Responses are handled on a small shared thread pool,
+ * and retries wait on a timer, rather than with a thread per call.  Errors are written to ZooKeeper on a thread of
+ * their own, so a slow write doesn't hold up the responses.
+ */
+@Singleton
+class WebhookClient {
+
+    private final static Logger logger = LoggerFactory.getLogger(WebhookClient.class);
+    private static final int MAX_QUEUED_ERRORS = 1000;
+
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService timer = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder().setNameFormat("WebhookClient-timer-%d").setDaemon(true).build());
+    private final ExecutorService errors = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(MAX_QUEUED_ERRORS),
+            new ThreadFactoryBuilder().setNameFormat("WebhookClient-errors-%d").setDaemon(true).build(),
+            (runnable, executor) -> logger.info("dropping webhook error, {} waiting", executor.getQueue().size()));
+
+    @Inject
+    WebhookClient() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(HubProperties.getProperty("webhook.client.threads", 64));
+        threadPool.setName("WebhookClient");
+        httpClient = new HttpClient(new SslContextFactory(true));
+        httpClient.setExecutor(threadPool);
+        httpClient.setMaxConnectionsPerDestination(HubProperties.getProperty("webhook.client.maxConnections", 100));
+        httpClient.setMaxRequestsQueuedPerDestination(HubProperties.getProperty("webhook.client.maxQueued", 10 * 1000));
+        httpClient.setIdleTimeout(TimeUnit.SECONDS.toMillis(HubProperties.getProperty("webhook.client.idleSeconds", 60)));
+        httpClient.setConnectTimeout(TimeUnit.SECONDS.toMillis(60));
+        httpClient.setFollowRedirects(true);
+        try {
+            httpClient.start();
+        } catch (Exception e) {
+            throw new RuntimeException("unable to start webhook client", e);
+        }
+        HubServices.register(new WebhookClientService(), HubServices.TYPE.BEFORE_HEALTH_CHECK, HubServices.TYPE.STOP);
+    }
+
+    /**
+     * @return the response status, or an exception if the call didn't complete within timeoutSeconds.
+     */
+    CompletableFuture<Integer> post(String url, String entity, int timeoutSeconds) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        Request request = httpClient.newRequest(url)
+                .method(HttpMethod.POST)
+                .content(new StringContentProvider(entity), "application/json")
+                .timeout(timeoutSeconds, TimeUnit.SECONDS);
+        request.send(result -> {
+            if (result.isFailed()) {
+                logger.trace("failed {} {}", url, result.getFailure().getMessage());
+                future.completeExceptionally(result.getFailure());
+            } else {
+                future.complete(result.getResponse().getStatus());
+            }
+        });
+        return future;
+    }
+
+    ScheduledFuture<?> schedule(Runnable runnable, long delayMillis) {
+        return timer.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records an error off the response threads.  The error is dropped if MAX_QUEUED_ERRORS are waiting.
+     */
+    void recordError(Runnable record) {
+        errors.execute(record);
+    }
+
+    private class WebhookClientService extends AbstractIdleService {
+        @Override
+        protected void startUp() throws Exception {
+            //started in the constructor
+        }
+
+        @Override
+        protected void shutDown() throws Exception {
+            timer.shutdownNow();
+            errors.shutdown();
+            httpClient.stop();
+        }
+    }
+}
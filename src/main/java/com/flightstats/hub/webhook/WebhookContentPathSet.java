@@ -1,27 +1,109 @@
 package com.flightstats.hub.webhook;
 
+import com.flightstats.hub.cluster.LastContentPathCoalescer;
 import com.flightstats.hub.model.ContentPath;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * The in flight items of each webhook.  With a {@link LastContentPathCoalescer}, adds and removes are held in memory
+ * and written before each checkpoint, so an item which completes between checkpoints is never written.
+ */
+@Singleton
 class WebhookContentPathSet {
     private final static Logger logger = LoggerFactory.getLogger(WebhookContentPathSet.class);
 
     private final CuratorFramework curator;
+    private final boolean coalesce;
+    /**
+     * true for an add which isn't in ZooKeeper yet, false for a remove of one which is.
+     */
+    private final Map<String, Map<ContentPath, Boolean>> pending = new HashMap<>();
+    private final Object flushLock = new Object();
 
     @Inject
-    public WebhookContentPathSet(CuratorFramework curator) {
+    public WebhookContentPathSet(CuratorFramework curator, LastContentPathCoalescer coalescer) {
         this.curator = curator;
+        this.coalesce = coalescer.isEnabled();
+        coalescer.beforeFlush(this::flush);
     }
 
     public void add(String webhookName, ContentPath key) {
+        if (coalesce) {
+            synchronized (pending) {
+                Map<ContentPath, Boolean> changes = pending.computeIfAbsent(webhookName, name -> new HashMap<>());
+                Boolean existing = changes.get(key);
+                if (existing == null) {
+                    changes.put(key, true);
+                } else if (!existing) {
+                    changes.remove(key);
+                }
+            }
+        } else {
+            createNode(webhookName, key);
+        }
+    }
+
+    public void remove(String webhookName, ContentPath key) {
+        if (coalesce) {
+            synchronized (pending) {
+                Map<ContentPath, Boolean> changes = pending.computeIfAbsent(webhookName, name -> new HashMap<>());
+                Boolean existing = changes.get(key);
+                if (existing == null) {
+                    changes.put(key, false);
+                } else if (existing) {
+                    changes.remove(key);
+                }
+            }
+        } else {
+            deleteNode(webhookName, key);
+        }
+    }
+
+    /**
+     * Writes the pending adds and removes of every webhook.
+     */
+    void flush() {
+        List<String> names;
+        synchronized (pending) {
+            names = new ArrayList<>(pending.keySet());
+        }
+        names.forEach(this::flush);
+    }
+
+    /**
+     * Writes the pending adds and removes of one webhook, such as when it loses leadership.
+     */
+    void flush(String webhookName) {
+        synchronized (flushLock) {
+            Map<ContentPath, Boolean> changes;
+            synchronized (pending) {
+                changes = pending.remove(webhookName);
+            }
+            if (changes != null) {
+                changes.forEach((key, add) -> {
+                    if (add) {
+                        createNode(webhookName, key);
+                    } else {
+                        deleteNode(webhookName, key);
+                    }
+                });
+            }
+        }
+    }
+
+    private void createNode(String webhookName, ContentPath key) {
         String path = getPath(webhookName, key);
         try {
             curator.create().creatingParentsIfNeeded().forPath(path);
@@ -32,7 +114,7 @@ class WebhookContentPathSet {
         }
     }
 
-    public void remove(String webhookName, ContentPath key) {
+    private void deleteNode(String webhookName, ContentPath key) {
         String path = getPath(webhookName, key);
         try {
             curator.delete().forPath(path);
@@ -54,6 +136,16 @@ class WebhookContentPathSet {
         } catch (Exception e) {
             logger.warn("unable to get set " + path, e);
         }
+        synchronized (pending) {
+            Map<ContentPath, Boolean> changes = pending.getOrDefault(webhookName, new HashMap<>());
+            changes.forEach((key, add) -> {
+                if (add) {
+                    keys.add(key);
+                } else {
+                    keys.remove(key);
+                }
+            });
+        }
         return keys;
     }
 
@@ -66,6 +158,9 @@ class WebhookContentPathSet {
     }
 
     public void delete(String webhookName) {
+        synchronized (pending) {
+            pending.remove(webhookName);
+        }
         String path = getPath(webhookName);
         try {
             curator.delete().deletingChildrenIfNeeded().forPath(path);
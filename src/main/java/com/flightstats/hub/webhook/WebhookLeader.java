@@ -1,8 +1,8 @@
 package com.flightstats.hub.webhook;
 
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.flightstats.hub.cluster.CuratorLeader;
 import com.flightstats.hub.cluster.LastContentPath;
+import com.flightstats.hub.cluster.LastContentPathCoalescer;
 import com.flightstats.hub.cluster.Leader;
 import com.flightstats.hub.cluster.Leadership;
 import com.flightstats.hub.dao.ChannelService;
@@ -12,16 +12,11 @@ import com.flightstats.hub.metrics.Traces;
 import com.flightstats.hub.model.ChannelConfig;
 import com.flightstats.hub.model.ContentPath;
 import com.flightstats.hub.model.RecurringTrace;
-import com.flightstats.hub.rest.RestClient;
 import com.flightstats.hub.util.RuntimeInterruptedException;
 import com.flightstats.hub.util.Sleeper;
 import com.flightstats.hub.util.TimeUtil;
-import com.github.rholder.retry.RetryException;
-import com.github.rholder.retry.Retryer;
 import com.google.common.base.Optional;
 import com.google.inject.Inject;
-import com.sun.jersey.api.client.Client;
-import com.sun.jersey.api.client.ClientResponse;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.KeeperException;
@@ -29,7 +24,6 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.ws.rs.core.MediaType;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -55,17 +49,21 @@ class WebhookLeader implements Leader {
     @Inject
     private LastContentPath lastContentPath;
     @Inject
+    private LastContentPathCoalescer checkpoints;
+    @Inject
     private WebhookContentPathSet webhookInProcess;
     @Inject
     private WebhookError webhookError;
+    @Inject
+    private ChannelTails channelTails;
+    @Inject
+    private WebhookClient webhookClient;
 
     private Webhook webhook;
     private CuratorLeader curatorLeader;
-    private ExecutorService executorService;
     private Semaphore semaphore;
     private Leadership leadership;
-    private Retryer<ClientResponse> retryer;
-    private Client client;
+    private final Set<Delivery> deliveries = ConcurrentHashMap.newKeySet();
 
     private WebhookStrategy webhookStrategy;
     private AtomicReference<ContentPath> lastUpdated = new AtomicReference<>();
@@ -103,14 +101,10 @@ class WebhookLeader implements Leader {
         }
         this.webhook = foundWebhook.get();
         logger.info("taking leadership {} {}", webhook, leadership.hasLeadership());
-        client = RestClient.createClient(60, webhook.getCallbackTimeoutSeconds(), true, false);
-        executorService = Executors.newCachedThreadPool();
-        semaphore = new Semaphore(webhook.getParallelCalls());
-        retryer = WebhookRetryer.buildRetryer(webhook, webhookError, leadership);
-        webhookStrategy = WebhookStrategy.getStrategy(webhook, lastContentPath, channelService);
+        webhookStrategy = WebhookStrategy.getStrategy(webhook, lastContentPath, channelService, channelTails);
         try {
             ContentPath lastCompletedPath = webhookStrategy.getStartingPath();
-            lastUpdated.set(lastCompletedPath);
+            startDeliveries(lastCompletedPath);
             logger.info("last completed at {} {}", lastCompletedPath, webhook.getName());
             if (leadership.hasLeadership()) {
                 sendInProcess(lastCompletedPath);
@@ -131,11 +125,12 @@ class WebhookLeader implements Leader {
             if (deleteOnExit.get()) {
                 delete();
             }
-            stopExecutor();
+            stopDeliveries();
+            if (!deleteOnExit.get()) {
+                flushCheckpoints();
+            }
             logger.info("stopped last completed at {} {}", webhookStrategy.getLastCompleted(), webhook.getName());
             webhookStrategy = null;
-            executorService = null;
-            client = null;
         }
     }
 
@@ -166,37 +161,38 @@ class WebhookLeader implements Leader {
     private void send(ContentPath contentPath) throws InterruptedException {
         semaphore.acquire();
         logger.trace("sending {} to {}", contentPath, webhook.getName());
-        String parentName = Thread.currentThread().getName();
-        executorService.submit(new Callable<Object>() {
-            @Override
-            public Object call() throws Exception {
-                String workerName = Thread.currentThread().getName();
-                Thread.currentThread().setName(workerName + "|" + parentName);
-                ActiveTraces.start("WebhookLeader.send", webhook, contentPath);
-                webhookInProcess.add(webhook.getName(), contentPath);
-                try {
-                    metricsService.time("webhook.delta", contentPath.getTime().getMillis(), "name:" + webhook.getName());
-                    makeTimedCall(contentPath, webhookStrategy.createResponse(contentPath));
-                    completeCall(contentPath);
-                    logger.trace("completed {} call to {} ", contentPath, webhook.getName());
-                } catch (RetryException e) {
-                    logger.info("exception sending {} to {} {} ", contentPath, webhook.getName(), e.getMessage());
-                } catch (ExecutionException e) {
-                    Throwable cause = e.getCause();
-                    if (cause instanceof ItemExpiredException) {
-                        logger.info("stopped trying {} to {} {} ", contentPath, webhook.getName(), cause.getMessage());
-                        completeCall(contentPath);
-                    }
-                } catch (Exception e) {
-                    logger.warn("exception sending " + contentPath + " to " + webhook.getName(), e);
-                } finally {
-                    semaphore.release();
-                    ActiveTraces.end();
-                    Thread.currentThread().setName(workerName);
-                }
-                return null;
-            }
-        });
+        ActiveTraces.start("WebhookLeader.send", webhook, contentPath);
+        String entity;
+        try {
+            webhookInProcess.add(webhook.getName(), contentPath);
+            metricsService.time("webhook.delta", contentPath.getTime().getMillis(), "name:" + webhook.getName());
+            entity = webhookStrategy.createResponse(contentPath).toString();
+        } catch (Exception e) {
+            logger.warn("exception sending " + contentPath + " to " + webhook.getName(), e);
+            semaphore.release();
+            ActiveTraces.end();
+            return;
+        }
+        deliver(contentPath, entity, ActiveTraces.getLocal());
+        ActiveTraces.setLocal(null);
+    }
+
+    /**
+     * Deliveries are limited to the webhook's parallelCalls, and last completed increases from lastCompletedPath.
+     */
+    void startDeliveries(ContentPath lastCompletedPath) {
+        semaphore = new Semaphore(webhook.getParallelCalls());
+        lastUpdated.set(lastCompletedPath);
+    }
+
+    /**
+     * Makes the first call for an item, holding one of the permits taken by the caller.
+     */
+    Delivery deliver(ContentPath contentPath, String entity, Traces traces) {
+        Delivery delivery = new Delivery(contentPath, entity, traces);
+        deliveries.add(delivery);
+        delivery.attempt();
+        return delivery;
     }
 
     private boolean increaseLastUpdated(ContentPath newPath) {
@@ -215,51 +211,136 @@ class WebhookLeader implements Leader {
     private void completeCall(ContentPath contentPath) {
         if (increaseLastUpdated(contentPath)) {
             if (!deleteOnExit.get()) {
-                lastContentPath.updateIncrease(contentPath, webhook.getName(), WEBHOOK_LAST_COMPLETED);
+                checkpoints.updateIncrease(contentPath, webhook.getName(), WEBHOOK_LAST_COMPLETED);
             }
         }
         webhookInProcess.remove(webhook.getName(), contentPath);
     }
 
-    private void makeTimedCall(ContentPath contentPath, ObjectNode body) throws Exception {
-        metricsService.time("webhook", webhook.getName(),
-                () -> {
-                    makeCall(contentPath, body);
-                    return null;
-                });
+    /**
+     * The in flight items are written before last completed, so an item in flight is never behind it unrecorded.
+     */
+    private void flushCheckpoints() {
+        webhookInProcess.flush(webhook.getName());
+        checkpoints.flush(webhook.getName(), WEBHOOK_LAST_COMPLETED);
     }
 
-    private void makeCall(ContentPath contentPath, ObjectNode body) throws ExecutionException, RetryException {
-        Traces traces = ActiveTraces.getLocal();
-        traces.add("WebhookLeader.makeCall start");
-        RecurringTrace recurringTrace = new RecurringTrace("WebhookLeader.makeCall start");
-        traces.add(recurringTrace);
-        retryer.call(() -> getClientResponse(contentPath, body, traces, recurringTrace));
-    }
+    /**
+     * The calls for one item, which run on the {@link WebhookClient}'s threads.
+     * A delivery holds one of the webhook's parallelCalls permits until it finishes.
+     */
+    class Delivery {
+        private final ContentPath contentPath;
+        private final String entity;
+        private final Traces traces;
+        private final RecurringTrace recurringTrace = new RecurringTrace("WebhookLeader.makeCall start");
+        private final long start = System.currentTimeMillis();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile ScheduledFuture<?> retry;
+        private int attempts;
 
-    private ClientResponse getClientResponse(ContentPath contentPath, ObjectNode body, Traces traces, RecurringTrace recurringTrace) {
-        try {
+        private Delivery(ContentPath contentPath, String entity, Traces traces) {
+            this.contentPath = contentPath;
+            this.entity = entity;
+            this.traces = traces;
+            traces.add("WebhookLeader.makeCall start");
+            traces.add(recurringTrace);
+        }
+
+        private void attempt() {
             ActiveTraces.setLocal(traces);
-            ChannelConfig channelConfig = channelService.getCachedChannelConfig(channelName);
-            checkExpiration(contentPath, channelConfig, webhook);
+            retry = null;
+            attempts++;
+            try {
+                ChannelConfig channelConfig = channelService.getCachedChannelConfig(channelName);
+                checkExpiration(contentPath, channelConfig, webhook);
+            } catch (ItemExpiredException e) {
+                logger.info("stopped trying {} to {} {} ", contentPath, webhook.getName(), e.getMessage());
+                finish(true);
+                return;
+            } catch (Exception e) {
+                logger.warn("exception sending " + contentPath + " to " + webhook.getName(), e);
+                finish(false);
+                return;
+            }
             if (!leadership.hasLeadership()) {
                 logger.debug("not leader {} {} {}", webhook.getCallbackUrl(), webhook.getName(), contentPath);
-                return null;
+                finish(false);
+                return;
             }
-            String entity = body.toString();
             logger.debug("calling {} {} {}", webhook.getCallbackUrl(), contentPath, entity);
-            ClientResponse clientResponse = client.resource(webhook.getCallbackUrl())
-                    .type(MediaType.APPLICATION_JSON_TYPE)
-                    .post(ClientResponse.class, entity);
-            if (clientResponse.getStatus() < 400) {
-                recurringTrace.update("WebhookLeader.makeCall completed", clientResponse);
+            webhookClient.post(webhook.getCallbackUrl(), entity, webhook.getCallbackTimeoutSeconds())
+                    .whenComplete(this::called);
+        }
+
+        private void called(Integer status, Throwable throwable) {
+            ActiveTraces.setLocal(traces);
+            if (throwable == null && status < 400) {
+                recurringTrace.update("WebhookLeader.makeCall completed", status);
+                logger.trace("completed {} call to {} ", contentPath, webhook.getName());
+                finish(true);
+                return;
+            }
+            String error;
+            if (throwable == null) {
+                error = new DateTime() + " " + contentPath + " POST "
+                        + webhook.getCallbackUrl() + " returned a response status of " + status;
+                WebhookRetryer.failed(webhook, status);
             } else {
-                webhookError.add(webhook.getName(), new DateTime() + " " + contentPath + " " + clientResponse);
+                error = new DateTime() + " " + contentPath + " " + throwable.getMessage();
+                WebhookRetryer.failed(webhook, throwable);
+            }
+            String name = webhook.getName();
+            webhookClient.recordError(() -> webhookError.add(name, error));
+            if (WebhookRetryer.shouldRetry(webhook, leadership)) {
+                retry = webhookClient.schedule(this::attempt, WebhookRetryer.getWaitMillis(webhook, attempts));
+                ActiveTraces.setLocal(null);
+            } else {
+                logger.info("stopped trying {} to {} after {} attempts", contentPath, webhook.getName(), attempts);
+                finish(false);
+            }
+        }
+
+        /**
+         * A waiting retry is cancelled, so the webhook can stop without waiting for it.
+         */
+        void cancelRetry() {
+            ScheduledFuture<?> found = retry;
+            if (found != null && found.cancel(false)) {
+                finish(false);
+            }
+        }
+
+        int getAttempts() {
+            return attempts;
+        }
+
+        boolean isWaiting() {
+            return retry != null;
+        }
+
+        boolean isFinished() {
+            return finished.get();
+        }
+
+        private void finish(boolean completed) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            deliveries.remove(this);
+            String tag = "name:" + webhook.getName();
+            try {
+                if (completed) {
+                    completeCall(contentPath);
+                }
+                metricsService.time("webhook", start, tag);
+                metricsService.gauge("webhook.inFlight", deliveries.size(), tag);
+                metricsService.gauge("webhook.lag", System.currentTimeMillis() - lastUpdated.get().getTime().getMillis(), tag);
+            } finally {
+                semaphore.release();
+                ActiveTraces.setLocal(traces);
+                ActiveTraces.end();
             }
-            return clientResponse;
-        } catch (Exception e) {
-            webhookError.add(webhook.getName(), new DateTime() + " " + contentPath + " " + e.getMessage());
-            throw e;
         }
     }
 
@@ -280,21 +361,29 @@ class WebhookLeader implements Leader {
         logger.info("exiting webhook " + name + " deleting " + delete);
         deleteOnExit.set(delete);
         closeStrategy();
-        stopExecutor();
+        stopDeliveries();
         curatorLeader.close();
         logger.info("exited webhook " + name + " deleting " + delete);
     }
 
-    private void stopExecutor() {
-        if (executorService == null) {
+    /**
+     * Cancels waiting retries, and waits for calls in progress.
+     */
+    private void stopDeliveries() {
+        if (semaphore == null) {
             return;
         }
         String name = webhook.getName();
         try {
-            executorService.shutdown();
-            logger.debug("awating termination " + name);
-            executorService.awaitTermination(webhook.getCallbackTimeoutSeconds() + 10, TimeUnit.SECONDS);
-            logger.debug("stopped Executor " + name);
+            deliveries.forEach(Delivery::cancelRetry);
+            logger.debug("awaiting deliveries " + name);
+            int permits = webhook.getParallelCalls();
+            if (semaphore.tryAcquire(permits, webhook.getCallbackTimeoutSeconds() + 10, TimeUnit.SECONDS)) {
+                semaphore.release(permits);
+                logger.debug("stopped deliveries " + name);
+            } else {
+                logger.warn("deliveries still in progress " + name);
+            }
         } catch (InterruptedException e) {
             logger.warn("unable to stop?" + name, e);
         }
@@ -318,6 +407,7 @@ class WebhookLeader implements Leader {
         String name = webhook.getName();
         logger.info("deleting " + name);
         webhookInProcess.delete(name);
+        checkpoints.discard(name, WEBHOOK_LAST_COMPLETED);
         lastContentPath.delete(name, WEBHOOK_LAST_COMPLETED);
         webhookError.delete(name);
         logger.info("deleted " + name);
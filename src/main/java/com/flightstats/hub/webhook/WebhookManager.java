@@ -1,13 +1,16 @@
 package com.flightstats.hub.webhook;
 
+import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.app.HubServices;
+import com.flightstats.hub.cluster.ConsistentHashStrategy;
+import com.flightstats.hub.cluster.CuratorCluster;
 import com.flightstats.hub.cluster.LastContentPath;
 import com.flightstats.hub.cluster.WatchManager;
 import com.flightstats.hub.cluster.Watcher;
 import com.flightstats.hub.dao.Dao;
 import com.flightstats.hub.util.RuntimeInterruptedException;
 import com.flightstats.hub.util.Sleeper;
-import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.AbstractScheduledService;
 import com.google.inject.Inject;
 import com.google.inject.Provider;
 import com.google.inject.name.Named;
@@ -23,6 +26,18 @@ import java.util.concurrent.TimeUnit;
 
 import static com.flightstats.hub.app.HubServices.register;
 
+/**
+ * Runs the webhooks on this hub.
+ * <p>
+ * With webhook.assignment=leaders, every hub starts every webhook, and a leader election for each picks the hub which runs it.
+ * With webhook.assignment=hash, the webhooks are divided between the live hubs with {@link ConsistentHashStrategy#getBoundedOwners},
+ * and each hub only starts the ones it owns.  The leader election for an owned webhook remains, so when hubs join or leave,
+ * the new owner takes over once the old owner has let go.
+ * <p>
+ * The webhooks come from the cached webhook Dao, which each hub keeps current from the changed webhooks only.
+ * When a webhook changes, each hub brings the cache up to date, and compares it to the webhooks it runs.
+ * The comparison is also made every webhook.reconcileMinutes.
+ */
 public class WebhookManager {
 
     private final static Logger logger = LoggerFactory.getLogger(WebhookManager.class);
@@ -34,23 +49,29 @@ public class WebhookManager {
     private final Provider<WebhookLeader> leaderProvider;
     private LastContentPath lastContentPath;
     private final Map<String, WebhookLeader> activeWebhooks = new HashMap<>();
+    private final CuratorCluster hubCluster;
+    private final boolean assigned = HubProperties.getProperty("webhook.assignment", "leaders").equals("hash");
+    private final double loadFactor = HubProperties.getProperty("webhook.assignment.loadFactor", 1.25);
+    private final int reconcileMinutes = HubProperties.getProperty("webhook.reconcileMinutes", 15);
 
     @Inject
     public WebhookManager(WatchManager watchManager, @Named("Webhook") Dao<Webhook> webhookDao,
-                          Provider<WebhookLeader> leaderProvider, LastContentPath lastContentPath) {
+                          Provider<WebhookLeader> leaderProvider, LastContentPath lastContentPath,
+                          @Named("HubCuratorCluster") CuratorCluster hubCluster) {
         this.watchManager = watchManager;
         this.webhookDao = webhookDao;
         this.leaderProvider = leaderProvider;
         this.lastContentPath = lastContentPath;
-        register(new WebhookIdleService(), HubServices.TYPE.AFTER_HEALTHY_START, HubServices.TYPE.PRE_STOP);
+        this.hubCluster = hubCluster;
+        register(new WebhookManagerService(), HubServices.TYPE.AFTER_HEALTHY_START, HubServices.TYPE.PRE_STOP);
     }
 
-    private void start() {
+    void start() {
         logger.info("starting");
         watchManager.register(new Watcher() {
             @Override
             public void callback(CuratorEvent event) {
-                manageWebhooks();
+                update();
             }
 
             @Override
@@ -59,16 +80,30 @@ public class WebhookManager {
             }
 
         });
+        if (assigned) {
+            hubCluster.addServersListener(this::manageWebhooks, Executors.newSingleThreadExecutor());
+        }
+        update();
+    }
+
+    private synchronized void update() {
+        webhookDao.update();
         manageWebhooks();
     }
 
     private synchronized void manageWebhooks() {
+        Collection<Webhook> webhooks = webhookDao.getAll(true);
         Set<String> webhooksToStop = new HashSet<>(activeWebhooks.keySet());
-        Iterable<Webhook> webhooks = webhookDao.getAll(false);
+        Set<String> webhooksToHandOff = new HashSet<>();
+        Set<String> owned = getOwned(webhooks);
         for (Webhook webhook : webhooks) {
             webhooksToStop.remove(webhook.getName());
             WebhookLeader activeLeader = activeWebhooks.get(webhook.getName());
-            if (activeLeader == null) {
+            if (!owned.contains(webhook.getName())) {
+                if (activeLeader != null) {
+                    webhooksToHandOff.add(webhook.getName());
+                }
+            } else if (activeLeader == null) {
                 start(webhook);
             } else if (activeLeader.getWebhook().isChanged(webhook)) {
                 logger.info("changed webhook {}", webhook);
@@ -80,6 +115,33 @@ public class WebhookManager {
             }
         }
         stop(webhooksToStop, true);
+        if (!webhooksToHandOff.isEmpty()) {
+            logger.info("handing off webhooks {}", webhooksToHandOff);
+            stop(webhooksToHandOff, false);
+        }
+    }
+
+    private Set<String> getOwned(Collection<Webhook> webhooks) {
+        Set<String> names = new HashSet<>();
+        webhooks.forEach(webhook -> names.add(webhook.getName()));
+        if (!assigned) {
+            return names;
+        }
+        Set<String> servers = hubCluster.getAllServers();
+        String server = hubCluster.getHost(true);
+        if (!servers.contains(server)) {
+            logger.info("{} is not in the hub cluster {}, not running webhooks", server, servers);
+            return Collections.emptySet();
+        }
+        Map<String, String> owners = new ConsistentHashStrategy(servers).getBoundedOwners(names, loadFactor);
+        Set<String> owned = new HashSet<>();
+        owners.forEach((name, owner) -> {
+            if (owner.equals(server)) {
+                owned.add(name);
+            }
+        });
+        logger.info("{} owns {} of {} webhooks", server, owned.size(), names.size());
+        return owned;
     }
 
     private void stop(Set<String> webhooksToStop, final boolean delete) {
@@ -138,6 +200,10 @@ public class WebhookManager {
     public void getStatus(Webhook webhook, WebhookStatus.WebhookStatusBuilder statusBuilder) {
         statusBuilder.lastCompleted(lastContentPath.get(webhook.getName(), WebhookStrategy.createContentPath(webhook), WebhookLeader.WEBHOOK_LAST_COMPLETED));
         WebhookLeader webhookLeader = activeWebhooks.get(webhook.getName());
+        if (webhookLeader == null && assigned) {
+            webhookLeader = leaderProvider.get();
+            webhookLeader.setWebhook(webhook);
+        }
         if (webhookLeader != null) {
             statusBuilder.errors(webhookLeader.getErrors());
             statusBuilder.inFlight(webhookLeader.getInFlight(webhook));
@@ -147,13 +213,27 @@ public class WebhookManager {
         }
     }
 
-    private class WebhookIdleService extends AbstractIdleService {
+    private class WebhookManagerService extends AbstractScheduledService {
 
         @Override
         protected void startUp() throws Exception {
             start();
         }
 
+        @Override
+        protected void runOneIteration() throws Exception {
+            try {
+                update();
+            } catch (Exception e) {
+                logger.warn("unable to update webhooks", e);
+            }
+        }
+
+        @Override
+        protected Scheduler scheduler() {
+            return Scheduler.newFixedDelaySchedule(reconcileMinutes, reconcileMinutes, TimeUnit.MINUTES);
+        }
+
         @Override
         protected void shutDown() throws Exception {
             stop(new HashSet<>(activeWebhooks.keySet()), false);
@@ -2,68 +2,42 @@ package com.flightstats.hub.webhook;
 
 import com.flightstats.hub.cluster.Leadership;
 import com.flightstats.hub.metrics.DataDog;
-import com.github.rholder.retry.Retryer;
-import com.github.rholder.retry.RetryerBuilder;
-import com.github.rholder.retry.WaitStrategies;
-import com.google.common.base.Predicate;
-import com.sun.jersey.api.client.ClientHandlerException;
-import com.sun.jersey.api.client.ClientResponse;
 import com.timgroup.statsd.StatsDClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nullable;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Failed webhook calls are retried with exponential waits, up to the webhook's maxWaitMinutes,
+ * until they succeed, or the webhook is paused or loses leadership.
+ */
 class WebhookRetryer {
 
     private final static Logger logger = LoggerFactory.getLogger(WebhookRetryer.class);
     private final static StatsDClient statsd = DataDog.statsd;
+    private static final long MULTIPLIER_MILLIS = 1000;
 
-    static Retryer<ClientResponse> buildRetryer(Webhook webhook, WebhookError webhookError, final Leadership leadership) {
+    static boolean shouldRetry(Webhook webhook, Leadership leadership) {
+        return leadership.hasLeadership() && !webhook.isPaused();
+    }
+
+    /**
+     * @param attempt the number of failed attempts, starting at 1
+     */
+    static long getWaitMillis(Webhook webhook, int attempt) {
+        long maxMillis = TimeUnit.MINUTES.toMillis(webhook.getMaxWaitMinutes());
+        return Math.min(Math.round(MULTIPLIER_MILLIS * Math.pow(2, Math.min(attempt, 32))), maxMillis);
+    }
 
-        return RetryerBuilder.<ClientResponse>newBuilder()
-                .retryIfException(throwable -> {
-                    if (throwable != null) {
-                        if (throwable.getClass().isAssignableFrom(ClientHandlerException.class)) {
-                            logger.info("got ClientHandlerException trying to call client back " + throwable.getMessage());
-                        } else {
-                            logger.info("got throwable trying to call client back ", throwable);
-                        }
-                        if (throwable instanceof ItemExpiredException) {
-                            return false;
-                        }
-                    }
-                    emitErrorToDataDog(webhook.getName(), 500);
-                    return throwable != null;
-                })
-                .retryIfResult(new Predicate<ClientResponse>() {
-                    @Override
-                    public boolean apply(@Nullable ClientResponse response) {
-                        if (response == null) return true;
-                        try {
-                            boolean failure = response.getStatus() >= 400;
-                            if (failure) {
-                                emitErrorToDataDog(webhook.getName(), response.getStatus());
-                                logger.info("unable to send to " + response);
-                            }
-                            return failure;
-                        } finally {
-                            close(response);
-                        }
-                    }
+    static void failed(Webhook webhook, int status) {
+        logger.info("unable to send to {} status {}", webhook.getCallbackUrl(), status);
+        emitErrorToDataDog(webhook.getName(), status);
+    }
 
-                    private void close(ClientResponse response) {
-                        try {
-                            response.close();
-                        } catch (ClientHandlerException e) {
-                            logger.info("exception closing response", e);
-                        }
-                    }
-                })
-                .withWaitStrategy(WaitStrategies.exponentialWait(1000, webhook.getMaxWaitMinutes(), TimeUnit.MINUTES))
-                .withStopStrategy(failedAttempt -> !leadership.hasLeadership() || webhook.isPaused())
-                .build();
+    static void failed(Webhook webhook, Throwable throwable) {
+        logger.info("got exception trying to call client back {} {}", webhook.getCallbackUrl(), throwable.getMessage());
+        emitErrorToDataDog(webhook.getName(), 500);
     }
 
     private static void emitErrorToDataDog(String name, int status) {
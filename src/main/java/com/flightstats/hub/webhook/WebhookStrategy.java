@@ -38,11 +38,12 @@ interface WebhookStrategy extends AutoCloseable {
         return new ContentKey(TimeUtil.now(), "initial");
     }
 
-    static WebhookStrategy getStrategy(Webhook webhook, LastContentPath lastContentPath, ChannelService channelService) {
+    static WebhookStrategy getStrategy(Webhook webhook, LastContentPath lastContentPath, ChannelService channelService,
+                                       ChannelTails channelTails) {
         if (webhook.isMinute() || webhook.isSecond()) {
-            return new TimedWebhookStrategy(webhook, lastContentPath, channelService);
+            return new TimedWebhookStrategy(webhook, lastContentPath, channelService, channelTails);
         }
-        return new SingleWebhookStrategy(webhook, lastContentPath, channelService);
+        return new SingleWebhookStrategy(webhook, lastContentPath, channelService, channelTails);
     }
 
     static void close(AtomicBoolean shouldExit, ExecutorService executorService, BlockingQueue queue) {
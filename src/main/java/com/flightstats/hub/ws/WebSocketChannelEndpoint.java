@@ -20,7 +20,7 @@ public class WebSocketChannelEndpoint {
 
     @OnOpen
     public void onOpen(Session session, @PathParam("channel") String channel) throws IOException {
-        webSocketService.createCallback(session, channel);
+        webSocketService.subscribe(session, channel);
     }
 
     @OnError
@@ -27,7 +27,7 @@ public class WebSocketDayEndpoint {
                        @PathParam("D") int day
     ) throws IOException {
         ContentKey startingKey = new ContentKey(year, month, day, 0, 0, 0, 0);
-        webSocketService.createCallback(session, channel, startingKey);
+        webSocketService.subscribe(session, channel, startingKey);
     }
 
     @OnError
@@ -32,7 +32,7 @@ public class WebSocketHashEndpoint {
                        @PathParam("hash") String hash
     ) throws IOException {
         ContentKey startingKey = new ContentKey(year, month, day, hour, minute, second, millis, hash);
-        webSocketService.createCallback(session, channel, startingKey);
+        webSocketService.subscribe(session, channel, startingKey);
     }
 
     @OnError
@@ -28,7 +28,7 @@ public class WebSocketHourEndpoint {
                        @PathParam("h") int hour
     ) throws IOException {
         ContentKey startingKey = new ContentKey(year, month, day, hour, 0, 0, 0);
-        webSocketService.createCallback(session, channel, startingKey);
+        webSocketService.subscribe(session, channel, startingKey);
     }
 
     @OnError
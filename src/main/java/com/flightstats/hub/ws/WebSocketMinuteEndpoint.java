@@ -29,7 +29,7 @@ public class WebSocketMinuteEndpoint {
                        @PathParam("m") int minute
     ) throws IOException {
         ContentKey startingKey = new ContentKey(year, month, day, hour, minute, 0, 0);
-        webSocketService.createCallback(session, channel, startingKey);
+        webSocketService.subscribe(session, channel, startingKey);
     }
 
     @OnError
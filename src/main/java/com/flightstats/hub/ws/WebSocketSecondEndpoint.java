@@ -30,7 +30,7 @@ public class WebSocketSecondEndpoint {
                        @PathParam("s") int second
     ) throws IOException {
         ContentKey startingKey = new ContentKey(year, month, day, hour, minute, second, 0);
-        webSocketService.createCallback(session, channel, startingKey);
+        webSocketService.subscribe(session, channel, startingKey);
     }
 
     @OnError
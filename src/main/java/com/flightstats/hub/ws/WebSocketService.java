@@ -3,10 +3,11 @@ package com.flightstats.hub.ws;
 import com.flightstats.hub.app.HubHost;
 import com.flightstats.hub.app.HubProvider;
 import com.flightstats.hub.model.ContentKey;
-import com.flightstats.hub.webhook.Webhook;
-import com.flightstats.hub.webhook.WebhookService;
+import com.flightstats.hub.model.ContentPath;
+import com.flightstats.hub.webhook.ChannelStreams;
+import com.flightstats.hub.webhook.StreamSink;
+import com.flightstats.hub.webhook.StreamSubscription;
 import org.apache.commons.lang3.RandomStringUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,19 +15,22 @@ import javax.websocket.Session;
 import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
 import java.net.URI;
-import java.net.UnknownHostException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+/**
+ * Streams item uris to websocket sessions with {@link ChannelStreams}, using async sends.
+ */
 class WebSocketService {
 
     private final static Logger logger = LoggerFactory.getLogger(WebSocketService.class);
     private static WebSocketService instance;
-    private final WebhookService webhookService;
-    private final Map<String, Session> sessionMap = new HashMap<>();
+    private final ChannelStreams channelStreams;
+    private final Map<String, StreamSubscription> subscriptions = new ConcurrentHashMap<>();
 
     private WebSocketService() {
-        webhookService = HubProvider.getInstance(WebhookService.class);
+        channelStreams = HubProvider.getInstance(ChannelStreams.class);
     }
 
     public static synchronized WebSocketService getInstance() {
@@ -36,23 +40,16 @@ class WebSocketService {
         return instance;
     }
 
-    void createCallback(Session session, String channel) throws UnknownHostException {
-        createCallback(session, channel, new ContentKey());
+    void subscribe(Session session, String channel) {
+        subscribe(session, channel, new ContentKey());
     }
 
-    void createCallback(Session session, String channel, ContentKey startingKey) throws UnknownHostException {
+    void subscribe(Session session, String channel, ContentKey startingKey) {
         String id = setId(session, channel);
         URI uri = session.getRequestURI();
-        logger.info("creating callback {} {} {}", channel, id, uri);
-        sessionMap.put(id, session);
-        Webhook webhook = Webhook.builder()
-                .channelUrl(getChannelUrl(uri))
-                .callbackUrl(getCallbackUrl(id))
-                .parallelCalls(1)
-                .name(id)
-                .startingKey(startingKey)
-                .build();
-        webhookService.upsert(webhook);
+        logger.info("subscribing {} {} {}", channel, id, uri);
+        SessionSink sink = new SessionSink(session, getChannelUrl(uri));
+        subscriptions.put(id, channelStreams.subscribe(channel, startingKey, false, sink));
     }
 
     private String getChannelUrl(URI uri) {
@@ -64,10 +61,6 @@ class WebSocketService {
         return channelUrl.toString();
     }
 
-    private String getCallbackUrl(String id) throws UnknownHostException {
-        return HubHost.getLocalHttpIpUri() + "/internal/ws/" + id;
-    }
-
     private String setId(Session session, String channel) {
         Map<String, Object> userProperties = session.getUserProperties();
         String id = "WS_" + channel + "_" + System.currentTimeMillis() + "_" + RandomStringUtils.randomAlphanumeric(6);
@@ -80,35 +73,41 @@ class WebSocketService {
         return (String) userProperties.get("id");
     }
 
-    public void call(String id, String uri) {
-        Session session = sessionMap.get(id);
-        if (session == null) {
-            logger.info("attempting to send to missing session {} {}", id, uri);
-            close(id);
+    public void close(Session session) {
+        String id = getId(session);
+        if (id == null) {
             return;
         }
-        try {
-            session.getBasicRemote().sendText(uri);
-        } catch (IOException e) {
-            logger.warn("unable to send to session " + id + " uri " + uri + " " + e.getMessage());
-            close(id);
-        } catch (Exception e) {
-            logger.warn("unable to send to session " + id + " uri " + uri, e);
-            close(id);
+        StreamSubscription subscription = subscriptions.remove(id);
+        if (subscription != null) {
+            logger.info("closing ws subscription {}", id);
+            subscription.close();
         }
     }
 
-    public void close(Session session) {
-        close(getId(session));
-    }
+    private static class SessionSink implements StreamSink {
+
+        private final Session session;
+        private final String channelUrl;
+
+        private SessionSink(Session session, String channelUrl) {
+            this.session = session;
+            this.channelUrl = channelUrl;
+        }
+
+        @Override
+        public void send(ContentPath contentPath, Consumer<Throwable> done) {
+            session.getAsyncRemote().sendText(channelUrl + "/" + contentPath.toUrl(),
+                    result -> done.accept(result.isOK() ? null : result.getException()));
+        }
 
-    private void close(String id) {
-        try {
-            logger.info("deleting ws group {}", id);
-            webhookService.delete(id);
-            sessionMap.remove(id);
-        } catch (Exception e) {
-            logger.info("unable to close ws group " + id, e);
+        @Override
+        public void close() {
+            try {
+                session.close();
+            } catch (IOException e) {
+                logger.info("unable to close session " + e.getMessage());
+            }
         }
     }
 }
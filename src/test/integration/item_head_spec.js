@@ -0,0 +1,95 @@
+require('./integration_config');
+var request = require('request');
+
+describe(__filename, function () {
+
+    /**
+     * POST a single item, then verify HEAD, GET and the internal spoke meta
+     * all report the item's length without an extra read
+     */
+
+    var channelName = utils.randomChannelName();
+    var channelEndpoint = channelUrl + '/' + channelName;
+    var itemHeaders = {'Content-Type': 'text/plain'};
+    var itemContent = 'this string has normal letters, and unicode characters like "\u03B1"';
+    var bytes = new Buffer(itemContent, 'utf-8').length;
+    var itemURL;
+
+    utils.createChannel(channelName, null, 'item head');
+
+    it('posts a single item', function (done) {
+        utils.postItemQwithPayload(channelEndpoint, itemHeaders, itemContent)
+            .then(function (result) {
+                expect(function () {
+                    var json = JSON.parse(result.body);
+                    itemURL = json._links.self.href;
+                }).not.toThrow();
+                done();
+            });
+    });
+
+    it('HEADs the item', function (done) {
+        request.head({url: itemURL}, function (err, response, body) {
+            expect(err).toBeNull();
+            expect(response.statusCode).toBe(200);
+            expect(response.headers['content-type']).toBe('text/plain');
+            expect(response.headers['x-item-length']).toBe(bytes.toString());
+            expect(response.headers['content-length']).toBe(bytes.toString());
+            expect(body).toBe('');
+            done();
+        });
+    });
+
+    it('HEADs a missing item', function (done) {
+        request.head({url: itemURL + 'missing'}, function (err, response) {
+            expect(err).toBeNull();
+            expect(response.statusCode).toBe(404);
+            done();
+        });
+    });
+
+    it('GETs the item with a Content-Length', function (done) {
+        utils.getItem(itemURL, function (headers, body) {
+            expect(headers['x-item-length']).toBe(bytes.toString());
+            expect(headers['content-length']).toBe(bytes.toString());
+            expect(body.toString()).toEqual(itemContent);
+            done();
+        });
+    });
+
+    it('GETs the item gzipped without a Content-Length', function (done) {
+        request.get({url: itemURL, headers: {'Accept-Encoding': 'gzip'}, gzip: true},
+            function (err, response, body) {
+                expect(err).toBeNull();
+                expect(response.statusCode).toBe(200);
+                expect(response.headers['content-encoding']).toBe('gzip');
+                expect(response.headers['x-item-length']).toBe(bytes.toString());
+                expect(response.headers['content-length']).toBeUndefined();
+                expect(body).toEqual(itemContent);
+                done();
+            });
+    });
+
+    it('reads the spoke meta', function (done) {
+        var path = itemURL.substring(channelUrl.length + 1);
+        request.get({url: hubUrlBase + '/internal/spoke/meta/' + path, json: true},
+            function (err, response, body) {
+                expect(err).toBeNull();
+                expect(response.statusCode).toBe(200);
+                expect(body.contentType).toBe('text/plain');
+                expect(body.size).toBe(bytes);
+                done();
+            });
+    });
+
+    it('reads the spoke meta of a missing item', function (done) {
+        var path = itemURL.substring(channelUrl.length + 1);
+        request.get({url: hubUrlBase + '/internal/spoke/meta/' + path + 'missing'},
+            function (err, response) {
+                expect(err).toBeNull();
+                expect(response.statusCode).toBe(404);
+                done();
+            });
+    });
+
+});
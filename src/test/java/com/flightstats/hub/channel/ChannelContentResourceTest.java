@@ -7,6 +7,7 @@ import org.junit.Test;
 import javax.ws.rs.core.MediaType;
 
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ChannelContentResourceTest {
 
@@ -27,4 +28,13 @@ public class ChannelContentResourceTest {
         assertFalse(ChannelContentResource.contentTypeIsNotCompatible(accept, MediaType.WILDCARD_TYPE));
     }
 
+    @Test
+    public void testIsEncoded() {
+        assertFalse(ChannelContentResource.isEncoded(null));
+        assertFalse(ChannelContentResource.isEncoded("identity"));
+        assertTrue(ChannelContentResource.isEncoded("gzip"));
+        assertTrue(ChannelContentResource.isEncoded("br, deflate;q=0.5"));
+        assertTrue(ChannelContentResource.isEncoded("*"));
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.flightstats.hub.cluster;
+
+import com.flightstats.hub.test.Integration;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ChangeFeedTest {
+
+    private static CuratorFramework curator;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        curator = Integration.startZooKeeper();
+    }
+
+    @Test
+    public void testChanges() {
+        ChangeFeed feed = new ChangeFeed(curator, "/ChangeFeedTest/testChanges", 10);
+        assertEquals(-1, feed.getVersion());
+        feed.publish("one");
+        feed.publish("two");
+        ChangeFeed.Changes changes = feed.getChanges(-1);
+        assertEquals(Arrays.asList("one", "two"), changes.getNames());
+        assertEquals(feed.getVersion(), changes.getVersion());
+        feed.publish("one");
+        ChangeFeed.Changes next = feed.getChanges(changes.getVersion());
+        assertEquals(Collections.singletonList("one"), next.getNames());
+        assertEquals(0, feed.getChanges(next.getVersion()).getNames().size());
+    }
+
+    @Test
+    public void testPruned() {
+        ChangeFeed feed = new ChangeFeed(curator, "/ChangeFeedTest/testPruned", 3);
+        feed.publish("zero");
+        long start = feed.getVersion();
+        for (int i = 0; i < 10; i++) {
+            feed.publish("name" + i);
+        }
+        assertNull(feed.getChanges(start));
+        long version = feed.getVersion();
+        feed.publish("last");
+        assertEquals(Collections.singletonList("last"), feed.getChanges(version).getNames());
+    }
+}
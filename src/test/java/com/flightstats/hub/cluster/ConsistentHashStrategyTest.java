@@ -57,6 +57,21 @@ public class ConsistentHashStrategyTest {
         checkNodes("A", "A", "B", "D");
     }
 
+    @Test
+    public void testReplicationFactor() {
+        HubProperties.setProperty("spoke.replicationFactor", "2");
+        try {
+            strategy = new ConsistentHashStrategy(getNodes(5));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(2, strategy.getServers(RandomStringUtils.randomAlphanumeric(12)).size());
+            }
+            strategy = new ConsistentHashStrategy(getNodes(2));
+            assertEquals(2, strategy.getServers("A").size());
+        } finally {
+            HubProperties.setProperty("spoke.replicationFactor", "0");
+        }
+    }
+
     private void checkNodes(String channel, String... expected) {
         List<String> nodesFound = new ArrayList<>(strategy.getServers(channel));
         List<String> expectedList = Arrays.asList(expected);
@@ -107,4 +122,34 @@ public class ConsistentHashStrategyTest {
             assertEquals(expected, count, expected * 0.1);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBoundedOwners() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("webhook" + i);
+        }
+        ConsistentHashStrategy strategy = new ConsistentHashStrategy(getNodes(4));
+        Map<String, String> owners = strategy.getBoundedOwners(names, 1.1);
+        assertEquals(1000, owners.size());
+        Map<String, Integer> loads = new HashMap<>();
+        owners.values().forEach(node -> loads.merge(node, 1, Integer::sum));
+        assertEquals(4, loads.size());
+        loads.values().forEach(load -> assertTrue(load <= 275));
+
+        List<String> reversed = new ArrayList<>(names);
+        Collections.reverse(reversed);
+        List<String> reversedNodes = getNodes(4);
+        Collections.reverse(reversedNodes);
+        assertEquals(owners, new ConsistentHashStrategy(reversedNodes).getBoundedOwners(reversed, 1.1));
+
+        Map<String, String> added = new ConsistentHashStrategy(getNodes(5)).getBoundedOwners(names, 1.1);
+        int moved = 0;
+        for (String name : names) {
+            if (!owners.get(name).equals(added.get(name))) {
+                moved++;
+            }
+        }
+        assertTrue("moved " + moved, moved < 500);
+    }
+}
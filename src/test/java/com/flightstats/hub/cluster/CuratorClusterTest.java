@@ -1,7 +1,9 @@
 package com.flightstats.hub.cluster;
 
+import com.flightstats.hub.app.HubProperties;
 import com.flightstats.hub.test.Integration;
 import com.flightstats.hub.util.Sleeper;
+import com.flightstats.hub.util.TimeUtil;
 import org.apache.curator.framework.CuratorFramework;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -9,9 +11,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class CuratorClusterTest {
 
@@ -46,4 +52,39 @@ public class CuratorClusterTest {
         assertEquals(0, servers.size());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testTrackRings() throws Exception {
+        HubProperties.setProperty("spoke.replicationFactor", "1");
+        try {
+            CuratorCluster cluster = new CuratorCluster(curator, "/SpokeRingsCluster", false);
+            cluster.trackRings("/SpokeRingsClusterEvents");
+            assertEquals(0, cluster.getServers("testTrackRings").size());
+            cluster.register();
+            waitFor(() -> events().size() == 1 && cluster.getServers("testTrackRings").size() == 1);
+            List<String> events = events();
+            assertTrue(events.get(0).endsWith("|ADDED"));
+            assertEquals(cluster.getAllServers(), cluster.getServers("testTrackRings"));
+            assertEquals(cluster.getAllServers(), cluster.getServers("testTrackRings", TimeUtil.now().minusMinutes(1), TimeUtil.now()));
+            cluster.delete();
+            waitFor(() -> events().size() == 2);
+        } finally {
+            HubProperties.setProperty("spoke.replicationFactor", "0");
+        }
+    }
+
+    private List<String> events() throws Exception {
+        return curator.getChildren().forPath("/SpokeRingsClusterEvents");
+    }
+
+    /**
+     * Polls the condition until it is true, failing after 10 seconds.
+     */
+    private void waitFor(Callable<Boolean> condition) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.call()) {
+            assertTrue("timed out waiting for the rings", System.currentTimeMillis() < deadline);
+            Sleeper.sleep(50);
+        }
+    }
+
+}
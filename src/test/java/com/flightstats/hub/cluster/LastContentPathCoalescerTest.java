@@ -0,0 +1,76 @@
+package com.flightstats.hub.cluster;
+
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.test.Integration;
+import org.apache.curator.framework.CuratorFramework;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class LastContentPathCoalescerTest {
+
+    private static final String BASE_PATH = "/GroupLastCompleted/";
+    private static CuratorFramework curator;
+    private LastContentPath lastContentPath;
+    private LastContentPathCoalescer coalescer;
+    private final DateTime start = new DateTime(2016, 3, 4, 5, 6, DateTimeZone.UTC);
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        curator = Integration.startZooKeeper();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        lastContentPath = new LastContentPath(curator);
+        coalescer = new LastContentPathCoalescer(lastContentPath);
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        String name = "testCoalescerFlush";
+        ContentKey initial = new ContentKey(start, "A");
+        lastContentPath.initialize(name, initial, BASE_PATH);
+        ContentKey second = new ContentKey(start.plusMillis(2), "C");
+        coalescer.updateIncrease(new ContentKey(start.plusMillis(1), "B"), name, BASE_PATH);
+        coalescer.updateIncrease(second, name, BASE_PATH);
+        coalescer.updateIncrease(new ContentKey(start.minusMillis(1), "Z"), name, BASE_PATH);
+        assertEquals(initial, lastContentPath.get(name, new ContentKey(), BASE_PATH));
+
+        AtomicInteger before = new AtomicInteger();
+        ContentKey third = new ContentKey(start.plusMillis(3), "D");
+        coalescer.beforeFlush(() -> {
+            before.incrementAndGet();
+            coalescer.updateIncrease(third, name, BASE_PATH);
+        });
+        coalescer.flush();
+        assertEquals(1, before.get());
+        assertEquals(second, lastContentPath.get(name, new ContentKey(), BASE_PATH));
+        coalescer.flush();
+        assertEquals(third, lastContentPath.get(name, new ContentKey(), BASE_PATH));
+    }
+
+    @Test
+    public void testFlushOne() throws Exception {
+        String name = "testCoalescerFlushOne";
+        String other = "testCoalescerFlushOther";
+        ContentKey initial = new ContentKey(start, "A");
+        lastContentPath.initialize(name, initial, BASE_PATH);
+        lastContentPath.initialize(other, initial, BASE_PATH);
+        ContentKey next = new ContentKey(start.plusSeconds(1), "B");
+        coalescer.updateIncrease(next, name, BASE_PATH);
+        coalescer.updateIncrease(next, other, BASE_PATH);
+        coalescer.flush(name, BASE_PATH);
+        assertEquals(next, lastContentPath.get(name, new ContentKey(), BASE_PATH));
+        assertEquals(initial, lastContentPath.get(other, new ContentKey(), BASE_PATH));
+        coalescer.discard(other, BASE_PATH);
+        coalescer.flush();
+        assertEquals(initial, lastContentPath.get(other, new ContentKey(), BASE_PATH));
+    }
+}
@@ -0,0 +1,99 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.cluster.WatchManager;
+import com.flightstats.hub.model.ChannelConfig;
+import com.flightstats.hub.test.Integration;
+import org.apache.curator.framework.CuratorFramework;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+public class CachedDaoTest {
+
+    private static CuratorFramework curator;
+    private static WatchManager watchManager;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        curator = Integration.startZooKeeper();
+        watchManager = new WatchManager(curator);
+    }
+
+    @Test
+    public void testChangesFromOtherHub() {
+        MapDao delegate = new MapDao();
+        String path = "/CachedDaoTest/testChangesFromOtherHub";
+        CachedDao<ChannelConfig> local = new CachedLowerCaseDao<>(delegate, watchManager, curator, path);
+        CachedDao<ChannelConfig> other = new CachedLowerCaseDao<>(delegate, watchManager, curator, path);
+        other.refresh();
+
+        local.upsert(ChannelConfig.builder().name("One").build());
+        local.upsert(ChannelConfig.builder().name("two").build());
+        assertEquals(0, other.getAll(true).size());
+        delegate.reads = 0;
+        delegate.scans = 0;
+        other.update();
+        assertEquals(2, other.getAll(true).size());
+        assertEquals(2, delegate.reads);
+        assertEquals(0, delegate.scans);
+
+        local.delete("ONE");
+        other.update();
+        assertEquals(1, other.getAll(true).size());
+        assertNotNull(other.getCached("Two"));
+
+        local.upsert(ChannelConfig.builder().name("two").displayName("Second").build());
+        assertEquals("Second", local.getCached("two").getDisplayName());
+        other.update();
+        assertEquals("Second", other.getCached("two").getDisplayName());
+    }
+
+    @Test
+    public void testUnloaded() {
+        MapDao delegate = new MapDao();
+        delegate.upsert(ChannelConfig.builder().name("one").build());
+        CachedDao<ChannelConfig> cached = new CachedLowerCaseDao<>(delegate, watchManager, curator, "/CachedDaoTest/testUnloaded");
+        assertNotNull(cached.getCached("one"));
+        delegate.upsert(ChannelConfig.builder().name("two").build());
+        assertEquals(2, cached.getAll(true).size());
+        assertEquals(1, delegate.scans);
+
+        cached.refresh();
+        assertEquals(2, cached.getAll(true).size());
+        assertEquals(2, delegate.scans);
+    }
+
+    private static class MapDao implements Dao<ChannelConfig> {
+        private final Map<String, ChannelConfig> map = new ConcurrentHashMap<>();
+        private int reads;
+        private int scans;
+
+        @Override
+        public void upsert(ChannelConfig channelConfig) {
+            map.put(channelConfig.getName().toLowerCase(), channelConfig);
+        }
+
+        @Override
+        public ChannelConfig get(String name) {
+            reads++;
+            return map.get(name);
+        }
+
+        @Override
+        public Collection<ChannelConfig> getAll(boolean useCache) {
+            scans++;
+            return new ArrayList<>(map.values());
+        }
+
+        @Override
+        public void delete(String name) {
+            map.remove(name);
+        }
+    }
+}
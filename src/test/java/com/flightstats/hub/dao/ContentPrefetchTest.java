@@ -0,0 +1,138 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ContentPrefetchTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        List<Integer> requests = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            requests.add(i);
+        }
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> delivered = new ArrayList<>();
+        new ContentPrefetch(4, 1024 * 1024, executor).fetch(requests, request -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep((50 - request) % 7);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            return Collections.singletonList(create(request, 10));
+        }, content -> delivered.add(content.getData().length == 10 ? delivered.size() : -1));
+        assertEquals(requests, delivered);
+        assertTrue(maxRunning.get() <= 4);
+    }
+
+    @Test
+    public void testRequestPassedToCallback() throws Exception {
+        List<String> requests = new ArrayList<>();
+        requests.add("a");
+        requests.add("b");
+        requests.add("c");
+        List<String> delivered = new ArrayList<>();
+        new ContentPrefetch(2, 1024, executor).fetch(requests,
+                request -> "b".equals(request) ? Collections.emptyList() : Collections.singletonList(create(1, 1)),
+                (request, content) -> delivered.add(request));
+        assertEquals(2, delivered.size());
+        assertEquals("a", delivered.get(0));
+        assertEquals("c", delivered.get(1));
+    }
+
+    @Test
+    public void testBytesLimitWindow() throws Exception {
+        List<Integer> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(i);
+        }
+        AtomicInteger fetched = new AtomicInteger();
+        List<Integer> ahead = new ArrayList<>();
+        new ContentPrefetch(10, 100, executor).fetch(requests, request -> {
+            fetched.incrementAndGet();
+            return Collections.singletonList(create(request, 100));
+        }, content -> ahead.add(fetched.get() - ahead.size()));
+        assertEquals(20, ahead.size());
+        for (Integer count : ahead) {
+            assertTrue("fetched ahead " + count, count <= 2);
+        }
+    }
+
+    @Test
+    public void testSharedBudget() throws Exception {
+        List<Integer> requests = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            requests.add(i);
+        }
+        ContentPrefetch.Budget budget = new ContentPrefetch.Budget(1000);
+        budget.add(1000);
+        AtomicInteger fetched = new AtomicInteger();
+        List<Integer> ahead = new ArrayList<>();
+        new ContentPrefetch(10, budget, executor).fetch(requests, request -> {
+            fetched.incrementAndGet();
+            return Collections.singletonList(create(request, 10));
+        }, content -> ahead.add(fetched.get() - ahead.size()));
+        assertEquals(20, ahead.size());
+        for (Integer count : ahead) {
+            assertEquals(1, count.intValue());
+        }
+        assertEquals(1000, budget.getUsed());
+        budget.add(-1000);
+
+        new ContentPrefetch(10, budget, executor).fetch(requests,
+                request -> Collections.singletonList(create(request, 10)), content -> assertTrue(budget.getUsed() <= 1000));
+        assertEquals(0, budget.getUsed());
+    }
+
+    @Test
+    public void testException() throws Exception {
+        List<Integer> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            requests.add(i);
+        }
+        List<Integer> delivered = new ArrayList<>();
+        ContentPrefetch.Budget budget = new ContentPrefetch.Budget(1024);
+        try {
+            new ContentPrefetch(3, budget, executor).fetch(requests, request -> {
+                if (request == 5) {
+                    throw new IllegalStateException("failed " + request);
+                }
+                return Collections.singletonList(create(request, 1));
+            }, content -> delivered.add(delivered.size()));
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+            assertEquals("failed 5", e.getMessage());
+        }
+        assertEquals(5, delivered.size());
+        assertEquals(0, budget.getUsed());
+    }
+
+    private Content create(int index, int size) {
+        return Content.builder()
+                .withContentKey(new ContentKey())
+                .withStream(new ByteArrayInputStream(new byte[size]))
+                .build();
+    }
+}
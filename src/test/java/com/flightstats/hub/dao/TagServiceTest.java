@@ -0,0 +1,61 @@
+package com.flightstats.hub.dao;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.model.ContentKey;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+
+public class TagServiceTest {
+
+    private final DateTime start = new DateTime(2016, 1, 1, 0, 0);
+
+    @Test
+    public void testMergeNext() {
+        List<TagService.ChannelKeys> results = new ArrayList<>();
+        results.add(keys("a", 1, 4, 7, 10));
+        results.add(keys("b", 2, 3, 11));
+        results.add(keys("c", 5));
+        SortedSet<ChannelContentKey> merged = TagService.merge(results, 5, true);
+        assertEquals(Arrays.asList("a1", "b2", "b3", "a4", "c5"), names(merged));
+    }
+
+    @Test
+    public void testMergePrevious() {
+        List<TagService.ChannelKeys> results = new ArrayList<>();
+        results.add(keys("a", 1, 4, 7, 10));
+        results.add(keys("b", 2, 3, 11));
+        results.add(keys("c", 5));
+        SortedSet<ChannelContentKey> merged = TagService.merge(results, 3, false);
+        assertEquals(Arrays.asList("a7", "a10", "b11"), names(merged));
+    }
+
+    @Test
+    public void testMergeFewerThanCount() {
+        List<TagService.ChannelKeys> results = new ArrayList<>();
+        results.add(keys("a", 3));
+        results.add(keys("b", 1));
+        assertEquals(Arrays.asList("b1", "a3"), names(TagService.merge(results, 10, true)));
+        assertEquals(0, TagService.merge(new ArrayList<>(), 10, true).size());
+    }
+
+    private TagService.ChannelKeys keys(String channel, int... seconds) {
+        List<ContentKey> keys = new ArrayList<>();
+        for (int second : seconds) {
+            keys.add(new ContentKey(start.plusSeconds(second), "hash"));
+        }
+        Collections.shuffle(keys);
+        return new TagService.ChannelKeys(channel, keys);
+    }
+
+    private List<String> names(SortedSet<ChannelContentKey> keys) {
+        List<String> names = new ArrayList<>();
+        for (ChannelContentKey key : keys) {
+            names.add(key.getChannel() + (key.getContentKey().getMillis() - start.getMillis()) / 1000);
+        }
+        return names;
+    }
+}
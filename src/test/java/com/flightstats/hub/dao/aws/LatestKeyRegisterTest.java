@@ -0,0 +1,157 @@
+package com.flightstats.hub.dao.aws;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.flightstats.hub.cluster.Cluster;
+import com.flightstats.hub.dao.ChannelKeyNotifier;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.base.Optional;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LatestKeyRegisterTest {
+
+    private final DateTime start = TimeUtil.now().minusMinutes(5);
+    private final ContentKey limit = ContentKey.lastKey(TimeUtil.now().plusMinutes(1));
+    private LatestKeyRegister register;
+
+    @Before
+    public void setUp() throws Exception {
+        register = new LatestKeyRegister(cluster("local"), new ChannelKeyNotifier());
+        register.ready();
+    }
+
+    @Test
+    public void testColdUntilSeeded() {
+        register.record("A", Collections.singletonList(key(10)));
+        assertNull(register.getLatest("A", limit));
+        long version = register.getVersion("A");
+        register.seed("A", version, Optional.of(key(5)), limit);
+        assertEquals(key(10), register.getLatest("A", limit));
+        assertEquals(key(5), register.getLatest("A", key(10)));
+        register.record("A", Arrays.asList(key(11), key(12)));
+        assertEquals(key(12), register.getLatest("A", limit));
+    }
+
+    @Test
+    public void testEmptyChannel() {
+        register.seed("A", register.getVersion("A"), Optional.absent(), limit);
+        assertEquals(ContentKey.NONE, register.getLatest("A", limit));
+        assertEquals(0, register.getPrevious("A", limit, 10).size());
+    }
+
+    @Test
+    public void testInvalidateIgnoresSeed() {
+        long version = register.getVersion("A");
+        register.invalidate("A");
+        register.seed("A", version, Optional.of(key(5)), limit);
+        assertNull(register.getLatest("A", limit));
+        register.seed("A", register.getVersion("A"), Optional.of(key(5)), limit);
+        assertEquals(key(5), register.getLatest("A", limit));
+    }
+
+    @Test
+    public void testPrevious() {
+        register.seed("A", register.getVersion("A"), Optional.of(key(5)), limit);
+        register.record("A", Arrays.asList(key(6), key(7), key(8)));
+        assertEquals(Arrays.asList(key(6), key(7)), Arrays.asList(register.getPrevious("A", key(8), 2).toArray()));
+        assertEquals(4, register.getPrevious("A", limit, 4).size());
+        assertNull(register.getPrevious("A", limit, 5));
+    }
+
+    @Test
+    public void testBroadcast() {
+        register.record("A", Arrays.asList(key(6), key(7)));
+        register.invalidate("B");
+        ObjectNode first = register.drain(false);
+        assertNull(register.drain(false));
+        ObjectNode heartbeat = register.drain(true);
+        assertEquals(0, heartbeat.get("channels").size());
+        register.record("A", Collections.singletonList(key(8)));
+        ObjectNode second = register.drain(false);
+
+        LatestKeyRegister other = new LatestKeyRegister(cluster("other"), new ChannelKeyNotifier());
+        other.ready();
+        other.receive(first);
+        other.receive(heartbeat);
+        other.seed("A", other.getVersion("A"), Optional.of(key(5)), limit);
+        other.receive(second);
+        assertEquals(key(8), other.getLatest("A", limit));
+        assertEquals(3, other.getPrevious("A", limit, 3).size());
+    }
+
+    @Test
+    public void testMissedBroadcast() {
+        register.record("A", Collections.singletonList(key(6)));
+        register.drain(false);
+        register.record("A", Collections.singletonList(key(7)));
+        ObjectNode second = register.drain(false);
+
+        LatestKeyRegister other = new LatestKeyRegister(cluster("other"), new ChannelKeyNotifier());
+        other.seed("A", other.getVersion("A"), Optional.of(key(5)), limit);
+        other.ready();
+        other.seed("A", other.getVersion("A"), Optional.of(key(5)), limit);
+        assertEquals(key(5), other.getLatest("A", limit));
+        other.receive(second);
+        assertNull(other.getLatest("A", limit));
+    }
+
+    @Test
+    public void testResentBroadcast() {
+        register.record("A", Collections.singletonList(key(6)));
+        ObjectNode first = register.drain(false);
+        register.record("A", Collections.singletonList(key(7)));
+        ObjectNode second = register.drain(false);
+
+        LatestKeyRegister other = new LatestKeyRegister(cluster("other"), new ChannelKeyNotifier());
+        other.ready();
+        other.receive(first);
+        other.seed("A", other.getVersion("A"), Optional.of(key(5)), limit);
+        other.receive(first);
+        assertEquals(key(6), other.getLatest("A", limit));
+        other.receive(second);
+        other.receive(second);
+        assertEquals(key(7), other.getLatest("A", limit));
+    }
+
+    @Test
+    public void testUnheardServer() {
+        Cluster cluster = cluster("local");
+        when(cluster.getAllServers()).thenReturn(new HashSet<>(Arrays.asList("local", "peer")));
+        LatestKeyRegister local = new LatestKeyRegister(cluster, new ChannelKeyNotifier());
+        local.ready();
+        local.seed("A", local.getVersion("A"), Optional.of(key(5)), limit);
+        assertNull(local.getLatest("A", limit));
+        assertEquals(0, local.getCompleteMillis());
+
+        LatestKeyRegister peer = new LatestKeyRegister(cluster("peer"), new ChannelKeyNotifier());
+        local.receive(peer.drain(true));
+        local.seed("A", local.getVersion("A"), Optional.of(key(5)), limit);
+        assertEquals(key(5), local.getLatest("A", limit));
+        assertTrue(local.getCompleteMillis() > 0);
+
+        LatestKeyRegister restarted = new LatestKeyRegister(cluster("peer"), new ChannelKeyNotifier());
+        local.receive(restarted.drain(true));
+        assertNull(local.getLatest("A", limit));
+    }
+
+    private Cluster cluster(String host) {
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.getHost(true)).thenReturn(host);
+        when(cluster.getAllServers()).thenReturn(Collections.singleton(host));
+        return cluster;
+    }
+
+    private ContentKey key(int seconds) {
+        return new ContentKey(start.plusSeconds(seconds), "hash");
+    }
+}
@@ -1,14 +1,20 @@
 package com.flightstats.hub.dao.aws;
 
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.exception.InvalidRequestException;
 import com.flightstats.hub.model.BulkContent;
 import com.flightstats.hub.model.Content;
+import com.google.common.io.ByteStreams;
 import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -186,4 +192,84 @@ public class MultiPartParserTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testLargeItems() throws Exception {
+        Random random = new Random(1);
+        List<byte[]> payloads = new ArrayList<>();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < 5; i++) {
+            byte[] payload = new byte[100 * 1024 + i * 7919];
+            random.nextBytes(payload);
+            byte[] partial = "\r\n--boundar".getBytes();
+            System.arraycopy(partial, 0, payload, 1000 + i, partial.length);
+            byte[] longer = "\r\n--boundaryX".getBytes();
+            System.arraycopy(longer, 0, payload, 5000 + i, longer.length);
+            payloads.add(payload);
+            data.write(("--boundary\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes());
+            data.write(payload);
+            data.write("\r\n".getBytes());
+        }
+        data.write("--boundary--\r\n".getBytes());
+
+        BulkContent bulkContent = BulkContent.builder()
+                .stream(new SlowInputStream(data.toByteArray()))
+                .contentType("multipart/mixed; boundary=boundary")
+                .isNew(true)
+                .build();
+        new MultiPartParser(bulkContent).stream(content -> content.setCodec(ContentCodec.LZ4));
+        List<Content> items = new ArrayList<>();
+        bulkContent.forEachItem(item -> {
+            assertEquals(ContentCodec.LZ4, item.getCodec());
+            assertArrayEquals(payloads.get(items.size()), ByteStreams.toByteArray(item.getStream()));
+            items.add(item);
+        });
+        assertEquals(5, items.size());
+        assertEquals(5, bulkContent.getItemCount());
+        assertTrue(StringUtils.endsWith(items.get(4).getContentKey().get().getHash(), "000004"));
+    }
+
+    @Test
+    public void testUnreadItemsAreSkipped() throws IOException {
+        String data = "--boundary\r\n" +
+                "\r\n" +
+                "first\r\n" +
+                "--boundary\r\n" +
+                "\r\n" +
+                "second\r\n" +
+                "--boundary--";
+        BulkContent bulkContent = BulkContent.builder()
+                .stream(new ByteArrayInputStream(data.getBytes()))
+                .contentType("multipart/mixed; boundary=boundary")
+                .build();
+        MultiPartParser parser = new MultiPartParser(bulkContent);
+        assertNotNull(parser.next());
+        assertEquals("second", new String(parser.next().getData()));
+        assertNull(parser.next());
+    }
+
+    @Test(expected = InvalidRequestException.class)
+    public void testMissingClosingBoundary() throws IOException {
+        String data = "--boundary\r\n" +
+                "\r\n" +
+                "There is some message here.";
+        BulkContent bulkContent = BulkContent.builder()
+                .stream(new ByteArrayInputStream(data.getBytes()))
+                .contentType("multipart/mixed; boundary=boundary")
+                .build();
+        new MultiPartParser(bulkContent).parse();
+    }
+
+    /**
+     * Returns a few bytes at a time, like a network stream.
+     */
+    private static class SlowInputStream extends ByteArrayInputStream {
+        SlowInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) {
+            return super.read(bytes, offset, Math.min(length, 1 + count % 3001));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.flightstats.hub.dao.aws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flightstats.hub.metrics.NoOpMetricsService;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class S3BatchCacheTest {
+
+    private final MinutePath minutePath = new MinutePath(new DateTime(2016, 1, 1, 12, 1));
+    private final ContentKey key = new ContentKey(minutePath.getTime().plusSeconds(1), "A");
+
+    @Test
+    public void testMinuteHit() throws Exception {
+        S3BatchCache cache = new S3BatchCache(new NoOpMetricsService(), 1024 * 1024, 1024 * 1024, 10);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<Map<ContentKey, S3BatchCache.Item>> loader = () -> {
+            loads.incrementAndGet();
+            return minute(100);
+        };
+        for (int i = 0; i < 3; i++) {
+            Content content = cache.getMinute("channel", minutePath, loader).get(key).toContent(key);
+            assertEquals(100, content.getData().length);
+            assertEquals("text/plain", content.getContentType().get());
+        }
+        assertEquals(1, loads.get());
+        assertNotNull(cache.getMinuteIfPresent("channel", minutePath));
+        assertNull(cache.getMinuteIfPresent("other", minutePath));
+
+        cache.invalidate("channel", minutePath);
+        assertNull(cache.getMinuteIfPresent("channel", minutePath));
+        cache.getMinute("channel", minutePath, loader);
+        assertEquals(2, loads.get());
+        cache.invalidate("channel");
+        assertNull(cache.getMinuteIfPresent("channel", minutePath));
+    }
+
+    @Test
+    public void testSingleLoad() throws Exception {
+        S3BatchCache cache = new S3BatchCache(new NoOpMetricsService(), 1024 * 1024, 1024 * 1024, 10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Callable<Map<ContentKey, S3BatchCache.Item>> loader = () -> {
+            loads.incrementAndGet();
+            release.await();
+            return minute(100);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> cache.getMinute("channel", minutePath, loader));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testWeightEviction() throws Exception {
+        S3BatchCache cache = new S3BatchCache(new NoOpMetricsService(), 64 * 1024, 1024, 10);
+        for (int i = 0; i < 10; i++) {
+            MinutePath path = new MinutePath(minutePath.getTime().plusMinutes(i));
+            cache.getMinute("channel", path, () -> minute(12 * 1024));
+        }
+        int cached = 0;
+        for (int i = 0; i < 10; i++) {
+            if (cache.getMinuteIfPresent("channel", new MinutePath(minutePath.getTime().plusMinutes(i))) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= 5);
+        assertNotNull(cache.getMinuteIfPresent("channel", new MinutePath(minutePath.getTime().plusMinutes(9))));
+    }
+
+    @Test
+    public void testFailuresAreNotKept() throws Exception {
+        S3BatchCache cache = new S3BatchCache(new NoOpMetricsService(), 1024 * 1024, 1024 * 1024, 10);
+        try {
+            cache.getIndex("channel", minutePath, () -> {
+                throw new IOException("missing");
+            });
+            fail("expected IOException");
+        } catch (IOException e) {
+            assertEquals("missing", e.getMessage());
+        }
+        String json = "{\"id\":\"" + minutePath.toUrl() + "\",\"items\":[\"" + key.toUrl() + "\"]}";
+        S3BatchCache.Index index = new S3BatchCache.Index(new ObjectMapper().readTree(json), json.length());
+        assertEquals(1, cache.getIndex("channel", minutePath, () -> index).get("items").size());
+        assertEquals(1, cache.getIndex("channel", minutePath, () -> {
+            throw new IOException("not called");
+        }).get("items").size());
+    }
+
+    private Map<ContentKey, S3BatchCache.Item> minute(int bytes) {
+        Map<ContentKey, S3BatchCache.Item> map = new HashMap<>();
+        map.put(key, new S3BatchCache.Item(new byte[bytes], "text/plain"));
+        return map;
+    }
+}
@@ -0,0 +1,59 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.channel.ZipBulkBuilder;
+import com.flightstats.hub.dao.ContentDaoUtil;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class S3BatchRangesTest {
+
+    @Test
+    public void testRanges() throws Exception {
+        List<ContentKey> keys = new ArrayList<>();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream output = new ZipOutputStream(baos);
+        for (int i = 0; i < 5; i++) {
+            ContentKey key = new ContentKey();
+            keys.add(key);
+            ZipBulkBuilder.createZipEntry(output, ContentDaoUtil.createContent(key));
+        }
+        output.close();
+        byte[] zip = baos.toByteArray();
+
+        Map<String, S3BatchRanges.Range> ranges = S3BatchRanges.read(zip);
+        assertEquals(5, ranges.size());
+        for (ContentKey key : keys) {
+            S3BatchRanges.Range range = ranges.get(key.toUrl());
+            byte[] entryBytes = new byte[(int) range.length];
+            System.arraycopy(zip, (int) range.offset, entryBytes, 0, entryBytes.length);
+            ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(entryBytes));
+            ZipEntry entry = zipStream.getNextEntry();
+            assertEquals(key.toUrl(), entry.getName());
+            Content expected = ContentDaoUtil.createContent(key);
+            assertArrayEquals(expected.getData(), ByteStreams.toByteArray(zipStream));
+            assertEquals("{\"contentType\":\"" + expected.getContentType().get() + "\"}", new String(entry.getExtra()));
+            assertEquals(expected.getData().length, range.size);
+            assertEquals(new String(entry.getExtra()), range.meta);
+            assertNull(zipStream.getNextEntry());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotZip() throws Exception {
+        S3BatchRanges.read(new byte[100]);
+    }
+}
@@ -0,0 +1,116 @@
+package com.flightstats.hub.dao.aws;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.flightstats.hub.channel.ZipBulkBuilder;
+import com.flightstats.hub.dao.ContentDaoUtil;
+import com.flightstats.hub.metrics.NoOpMetricsService;
+import com.flightstats.hub.model.Content;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class S3ContentMetadataTest {
+
+    private final AmazonS3 s3Client = mock(AmazonS3.class);
+    private final S3BucketName bucketName = new S3BucketName("local", "hub-v2");
+
+    @Test
+    public void testSingleSize() throws Exception {
+        S3SingleContentDao dao = S3SingleContentDao.builder()
+                .s3Client(s3Client)
+                .s3BucketName(bucketName)
+                .metricsService(new NoOpMetricsService())
+                .build();
+        Content content = ContentDaoUtil.createContent();
+        long size = content.getData().length;
+        content.packageStream();
+        ContentKey key = dao.insert("testSingleSize", content);
+
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(put.capture());
+        ObjectMetadata metadata = put.getValue().getMetadata();
+        assertEquals(String.valueOf(size), metadata.getUserMetadata().get("size"));
+
+        when(s3Client.getObjectMetadata(anyString(), anyString())).thenReturn(metadata);
+        Content read = dao.getMetadata("testSingleSize", key);
+        assertEquals(size, read.getSize().longValue());
+        assertEquals("stuff", read.getContentType().get());
+        verify(s3Client, never()).getObject(anyString(), anyString());
+    }
+
+    @Test
+    public void testSingleWithoutSize() throws Exception {
+        S3SingleContentDao dao = S3SingleContentDao.builder()
+                .s3Client(s3Client)
+                .s3BucketName(bucketName)
+                .metricsService(new NoOpMetricsService())
+                .build();
+        Content content = ContentDaoUtil.createContent();
+        long size = content.getData().length;
+        content.packageStream();
+        byte[] bytes = content.getData();
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.addUserMetadata("compressed", "true");
+        metadata.addUserMetadata("type", "stuff");
+        when(s3Client.getObjectMetadata(anyString(), anyString())).thenReturn(metadata);
+        S3Object object = new S3Object();
+        object.setObjectMetadata(metadata);
+        object.setObjectContent(new ByteArrayInputStream(bytes));
+        when(s3Client.getObject(anyString(), anyString())).thenReturn(object);
+
+        Content read = dao.getMetadata("testSingleWithoutSize", content.getContentKey().get());
+        assertEquals(size, read.getSize().longValue());
+        verify(s3Client).getObject(anyString(), anyString());
+    }
+
+    @Test
+    public void testBatchSize() throws Exception {
+        S3BatchContentDao dao = S3BatchContentDao.builder()
+                .s3Client(s3Client)
+                .s3BucketName(bucketName)
+                .metricsService(new NoOpMetricsService())
+                .build();
+        ContentKey first = new ContentKey();
+        ContentKey second = new ContentKey(first.getTime(), "B");
+        List<ContentKey> keys = new ArrayList<>();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream output = new ZipOutputStream(baos);
+        for (ContentKey key : new ContentKey[]{first, second}) {
+            keys.add(key);
+            ZipBulkBuilder.createZipEntry(output, ContentDaoUtil.createContent(key));
+        }
+        output.close();
+        MinutePath minutePath = new MinutePath(first.getTime());
+        dao.writeBatch("testBatchSize", minutePath, keys, baos.toByteArray());
+
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client, times(2)).putObject(put.capture());
+        byte[] index = ByteStreams.toByteArray(put.getAllValues().get(1).getInputStream());
+        S3Object object = new S3Object();
+        object.setObjectContent(new ByteArrayInputStream(index));
+        when(s3Client.getObject(anyString(), anyString())).thenReturn(object);
+
+        Content read = dao.getMetadata("testBatchSize", second);
+        assertEquals(ContentDaoUtil.createContent(second).getData().length, read.getSize().longValue());
+        assertEquals("stuff", read.getContentType().get());
+        assertNull(dao.getMetadata("testBatchSize", new ContentKey(first.getTime(), "C")));
+        verify(s3Client, times(1)).getObject(anyString(), anyString());
+        verify(s3Client, never()).getObject(any());
+    }
+}
@@ -0,0 +1,102 @@
+package com.flightstats.hub.dao.aws;
+
+import com.flightstats.hub.model.ChannelContentKey;
+import com.flightstats.hub.model.ContentKey;
+import com.google.common.io.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class S3WriteJournalTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Test
+    public void testReadInOrder() throws Exception {
+        S3WriteJournal journal = new S3WriteJournal(directory, 3);
+        List<ChannelContentKey> keys = append(journal, 10);
+        assertEquals(10, journal.size());
+
+        List<S3WriteJournal.Record> records = new ArrayList<>();
+        records.addAll(journal.read(4, 10));
+        records.addAll(journal.read(100, 10));
+        assertEquals(10, records.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(keys.get(i), records.get(i).getKey());
+        }
+        assertTrue(journal.read(10, 10).isEmpty());
+        assertEquals(4, directory.listFiles().length);
+
+        for (S3WriteJournal.Record record : records) {
+            journal.complete(record);
+        }
+        assertEquals(0, journal.size());
+        assertEquals(1, directory.listFiles().length);
+        journal.close();
+    }
+
+    @Test
+    public void testRecovery() throws Exception {
+        S3WriteJournal journal = new S3WriteJournal(directory, 3);
+        List<ChannelContentKey> keys = append(journal, 7);
+        List<S3WriteJournal.Record> records = journal.read(4, 10);
+        for (S3WriteJournal.Record record : records) {
+            journal.complete(record);
+        }
+        journal.close();
+        File last = directory.listFiles()[directory.listFiles().length - 1];
+        try (FileOutputStream output = new FileOutputStream(last, true)) {
+            output.write("123 channel/partial".getBytes());
+        }
+
+        S3WriteJournal recovered = new S3WriteJournal(directory, 3);
+        assertEquals(4, recovered.size());
+        List<S3WriteJournal.Record> remaining = recovered.read(100, 10);
+        assertEquals(4, remaining.size());
+        assertEquals(keys.get(3), remaining.get(0).getKey());
+        assertEquals(keys.get(6), remaining.get(3).getKey());
+        ChannelContentKey added = new ChannelContentKey("other", new ContentKey());
+        recovered.append(added);
+        assertEquals(added, recovered.read(100, 10).get(0).getKey());
+        recovered.close();
+    }
+
+    @Test
+    public void testAwaitSpace() throws Exception {
+        S3WriteJournal journal = new S3WriteJournal(directory, 100);
+        append(journal, 2);
+        assertTrue(journal.awaitSpace(3, 10));
+        assertFalse(journal.awaitSpace(2, 10));
+        journal.complete(journal.read(1, 10).get(0));
+        assertTrue(journal.awaitSpace(2, 10));
+        journal.close();
+    }
+
+    private List<ChannelContentKey> append(S3WriteJournal journal, int count) throws Exception {
+        List<ChannelContentKey> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ChannelContentKey key = new ChannelContentKey("channel" + (i % 2), new ContentKey());
+            journal.append(key);
+            keys.add(key);
+        }
+        return keys;
+    }
+}
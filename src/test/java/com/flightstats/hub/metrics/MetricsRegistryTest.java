@@ -0,0 +1,65 @@
+package com.flightstats.hub.metrics;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testPrometheusText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.count("s3.writeQueue.full", 2, "type:single");
+        registry.count("s3.writeQueue.full", 3, "type:single");
+        registry.gauge("s3.writeQueue.lag", 7);
+        long start = System.currentTimeMillis();
+        registry.time("channelName", "channel", start, 100, "type:bulk");
+        registry.insert("channelName", start, MetricsService.Insert.single, 4, 10);
+        registry.time("test_channel", "channel", start, "type:bulk");
+        StringBuilder output = new StringBuilder();
+        registry.write(output);
+        String text = output.toString();
+        assertTrue(text, text.contains("# TYPE hub_s3_writeQueue_full counter\nhub_s3_writeQueue_full{type=\"single\"} 5\n"));
+        assertTrue(text, text.contains("hub_s3_writeQueue_lag 7.0\n"));
+        assertTrue(text, text.contains("hub_channel_bytes{channel=\"channelName\",type=\"bulk\"} 100\n"));
+        assertTrue(text, text.contains("hub_channel_items{channel=\"channelName\",type=\"single\"} 4\n"));
+        assertTrue(text, text.contains("# TYPE hub_channel summary\n"));
+        assertTrue(text, text.contains("hub_channel{channel=\"channelName\",type=\"bulk\",quantile=\"0.99\"} "));
+        assertTrue(text, text.contains("hub_channel_count{channel=\"channelName\",type=\"bulk\"} 1\n"));
+        assertTrue(text, !text.contains("test_channel"));
+    }
+
+    @Test
+    public void testFlush() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.time("request", System.currentTimeMillis() - 5000, "call:GET/channel");
+        registry.flush();
+        registry.time("request", System.currentTimeMillis(), "call:GET/channel");
+        StringBuilder output = new StringBuilder();
+        registry.write(output);
+        String text = output.toString();
+        assertTrue(text, text.contains("hub_request{call=\"GET/channel\",quantile=\"0.5\"} 50"));
+        assertTrue(text, text.contains("hub_request_count{call=\"GET/channel\"} 2\n"));
+    }
+
+    @Test
+    public void testRetainChannels() {
+        MetricsRegistry registry = new MetricsRegistry();
+        long start = System.currentTimeMillis();
+        registry.insert("Kept", start, MetricsService.Insert.single, 1, 10);
+        registry.insert("deleted", start, MetricsService.Insert.single, 1, 10);
+        registry.time("request", start, "call:GET/channel", "channel:deleted");
+        registry.time("request", start, "call:GET/channel", "channel:kept");
+        registry.count("openFiles", 5);
+        registry.retainChannels(Collections.singleton("kept"));
+        StringBuilder output = new StringBuilder();
+        registry.write(output);
+        String text = output.toString();
+        assertTrue(text, !text.contains("deleted"));
+        assertTrue(text, text.contains("hub_channel_items{channel=\"Kept\",type=\"single\"} 1\n"));
+        assertTrue(text, text.contains("hub_request_count{call=\"GET/channel\",channel=\"kept\"} 1\n"));
+        assertTrue(text, text.contains("hub_openFiles 5\n"));
+    }
+}
@@ -0,0 +1,103 @@
+package com.flightstats.hub.metrics;
+
+import com.flightstats.hub.model.SingleTrace;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RingTracesTest {
+
+    @Test
+    public void testToTraces() throws Exception {
+        RingTraces traces = new RingTraces("start", "GET", "ip");
+        traces.add("one");
+        Thread thread = new Thread(() -> {
+            traces.add("two", 2);
+            traces.add("three", 3, 3.0);
+        });
+        thread.start();
+        thread.join();
+        traces.add("four", 1, 2, 3);
+        traces.add("five", 1, 2, 3, 4);
+        TreeSet<String> set = new TreeSet<>();
+        set.add("a");
+        set.add("b");
+        traces.add("set", set);
+        traces.end(200);
+
+        List<String> output = new ArrayList<>();
+        traces.toTraces().outputTraces(output::add);
+        assertEquals(8, output.size());
+        assertTrue(output.get(0).endsWith("[start, GET, ip]"));
+        assertTrue(output.get(1).endsWith("[one]"));
+        assertTrue(output.stream().anyMatch(line -> line.endsWith("[two, 2]")));
+        assertTrue(output.stream().anyMatch(line -> line.endsWith("[three, 3, 3.0]")));
+        assertTrue(output.get(4).endsWith("[four, 1, 2, 3]"));
+        assertTrue(output.get(5).endsWith("[five, 1, 2, 3, 4]"));
+        assertTrue(output.get(6).endsWith("[set, 2, a, b]"));
+        assertTrue(output.get(7).endsWith("[response, 200]"));
+    }
+
+    @Test
+    public void testStoresValues() {
+        StringBuilder builder = new StringBuilder("before");
+        RingTraces traces = new RingTraces("values");
+        traces.add("builder", builder);
+        traces.add("many", 1, 2, 3, 4, builder);
+        builder.setLength(0);
+        builder.append("after");
+
+        List<String> output = new ArrayList<>();
+        traces.toTraces().outputTraces(output::add);
+        assertEquals(3, output.size());
+        assertTrue(output.get(1).endsWith("[builder, before]"));
+        assertTrue(output.get(2).endsWith("[many, 1, 2, 3, 4, before]"));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        long first = Long.MIN_VALUE;
+        long second = Long.MIN_VALUE + 1;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            TraceRing ring = TraceRing.get();
+            long i = 0;
+            while (running.get()) {
+                i++;
+                ring.record(i % 2 == 0 ? first : second, 2, i, i, null, null);
+            }
+        });
+        writer.start();
+        try {
+            for (int read = 0; read < 1000; read++) {
+                for (SingleTrace trace : TraceRing.collect(first)) {
+                    Object[] objects = trace.getObjects();
+                    assertEquals(2, objects.length);
+                    assertEquals(objects[0], objects[1]);
+                    assertEquals(0L, (Long) objects[0] % 2);
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void testOtherTracesAreSeparate() {
+        RingTraces first = new RingTraces("first");
+        RingTraces second = new RingTraces("second");
+        first.add("a");
+        second.add("b");
+        List<String> output = new ArrayList<>();
+        second.toTraces().outputTraces(output::add);
+        assertEquals(2, output.size());
+        assertTrue(output.get(1).endsWith("[b]"));
+    }
+}
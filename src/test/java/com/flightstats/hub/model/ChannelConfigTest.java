@@ -187,4 +187,13 @@ public class ChannelConfigTest {
         assertFalse(testZeroBytes.isAllowZeroBytes());
     }
 
+    @Test
+    public void testCodec() {
+        ChannelConfig config = ChannelConfig.builder().name("testCodec").build();
+        assertEquals("DEFLATE", config.getCodec());
+        ChannelConfig updated = ChannelConfig.updateFromJson(config, "{\"codec\":\"lz4\"}");
+        assertEquals("LZ4", updated.getCodec());
+        assertEquals(updated, ChannelConfig.createFromJson(updated.toJson()));
+    }
+
 }
@@ -1,14 +1,22 @@
 package com.flightstats.hub.spoke;
 
+import com.flightstats.hub.dao.ContentCodec;
 import com.flightstats.hub.dao.ContentMarshaller;
 import com.flightstats.hub.model.Content;
 import com.flightstats.hub.model.ContentKey;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class ContentMarshallerTest {
@@ -62,6 +70,76 @@ public class ContentMarshallerTest {
         verify(content, 1024);
     }
 
+    @Test
+    public void testStreamed() throws IOException {
+        Content content = getContent(10 * 1024);
+        byte[] bytes = ContentMarshaller.toBytes(content);
+        Long size = ContentMarshaller.getSize(Arrays.copyOfRange(bytes, bytes.length - 64, bytes.length));
+        assertEquals(10 * 1024, size.longValue());
+        Content cycled = ContentMarshaller.toContent(new ByteArrayInputStream(bytes), content.getContentKey().get(), size);
+        assertTrue(content.equals(cycled));
+        assertEquals(10 * 1024, cycled.getData().length);
+        assertEquals(10 * 1024, cycled.getSize().longValue());
+    }
+
+    @Test
+    public void testMetaData() throws IOException {
+        Content content = getContent(100 * 1024);
+        byte[] bytes = ContentMarshaller.toBytes(content);
+        String metaData = ContentMarshaller.readMetaData(Arrays.copyOfRange(bytes, 0, 1024),
+                Arrays.copyOfRange(bytes, bytes.length - 64, bytes.length));
+        Content meta = ContentMarshaller.toMetadata(metaData, content.getContentKey().get());
+        assertEquals("application/json", meta.getContentType().get());
+        assertEquals(100 * 1024, meta.getSize().longValue());
+        assertEquals(content.getContentKey(), meta.getContentKey());
+        assertNull(ContentMarshaller.readMetaData(new byte[0], new byte[0]));
+    }
+
+    @Test
+    public void testStreamedEmpty() throws IOException {
+        assertNull(ContentMarshaller.toContent(new ByteArrayInputStream(new byte[0]), new ContentKey(), null));
+    }
+
+    @Test
+    public void testCodecs() throws IOException {
+        for (ContentCodec codec : ContentCodec.values()) {
+            Content content = getContent(100 * 1024);
+            content.setCodec(codec);
+            byte[] bytes = ContentMarshaller.toBytes(content);
+            assertEquals(100 * 1024, ContentMarshaller.getSize(bytes).longValue());
+            Content cycled = ContentMarshaller.toContent(bytes, content.getContentKey().get());
+            assertEquals(codec, cycled.getCodec());
+            assertTrue(content.equals(cycled));
+            assertEquals(100 * 1024, cycled.getData().length);
+            Content streamed = ContentMarshaller.toContent(new ByteArrayInputStream(bytes), content.getContentKey().get(), null);
+            assertEquals(100 * 1024, streamed.getData().length);
+        }
+    }
+
+    @Test
+    public void testZipWithoutCodec() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ZipOutputStream zipOut = new ZipOutputStream(baos);
+        zipOut.putNextEntry(new ZipEntry("meta"));
+        zipOut.write("{\"contentType\":\"text/plain\"}".getBytes());
+        zipOut.putNextEntry(new ZipEntry("payload"));
+        zipOut.write("existing".getBytes());
+        zipOut.setComment("8");
+        zipOut.close();
+        Content content = ContentMarshaller.toContent(baos.toByteArray(), new ContentKey());
+        assertEquals(ContentCodec.DEFLATE, content.getCodec());
+        assertEquals("text/plain", content.getContentType().get());
+        assertEquals("existing", new String(content.getData()));
+    }
+
+    @Test
+    public void testCodecNames() {
+        assertEquals(ContentCodec.DEFLATE, ContentCodec.fromName(""));
+        assertEquals(ContentCodec.LZ4, ContentCodec.fromName("lz4"));
+        assertTrue(ContentCodec.isValid("deflate_fast"));
+        assertFalse(ContentCodec.isValid("snappy"));
+    }
+
     private void verify(Content content, int size) throws IOException {
         Content cycled = ContentMarshaller.toContent(ContentMarshaller.toBytes(content), content.getContentKey().get());
         assertTrue(content.equals(cycled));
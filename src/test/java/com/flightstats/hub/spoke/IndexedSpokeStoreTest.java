@@ -0,0 +1,159 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.MinutePath;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.io.Files;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class IndexedSpokeStoreTest {
+    private static final byte[] BYTES = new byte[]{0, 2, 3, 4, 5, 6};
+    private String tempDir;
+    private IndexedSpokeStore spokeStore;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDir().getPath();
+        spokeStore = new IndexedSpokeStore(new FileSpokeStore(tempDir));
+    }
+
+    @Test
+    public void testTimeBuckets() throws Exception {
+        String path1 = "testTimeBuckets/2014/11/18/00/57/24/015/1";
+        String path2 = "testTimeBuckets/2014/11/18/00/57/24/015/2";
+        spokeStore.insert(path1, BYTES);
+        spokeStore.insert(path2, BYTES);
+        spokeStore.insert("testTimeBuckets/2014/11/18/00/57/24/014/1", BYTES);
+        spokeStore.insert("testTimeBuckets/2014/11/18/00/57/23/015/1", BYTES);
+        spokeStore.insert("testTimeBuckets/2014/11/18/00/58/25/015/1", BYTES);
+        spokeStore.insert("testTimeBuckets/2014/11/19/00/00/00/000/1", BYTES);
+
+        List<String> keys = keysInBucket("/testTimeBuckets/2014/11/18/00/57");
+        assertEquals(Arrays.asList("testTimeBuckets/2014/11/18/00/57/23/015/1",
+                "testTimeBuckets/2014/11/18/00/57/24/014/1", path1, path2), keys);
+        assertEquals(3, keysInBucket("testTimeBuckets/2014/11/18/00/57/24").size());
+        assertEquals(5, keysInBucket("testTimeBuckets/2014/11/18/00").size());
+        assertEquals(5, keysInBucket("testTimeBuckets/2014/11/18").size());
+        assertEquals(6, keysInBucket("testTimeBuckets/2014/11").size());
+        assertEquals(6, keysInBucket("testTimeBuckets/2014").size());
+        assertEquals(0, keysInBucket("testTimeBuckets/2015").size());
+    }
+
+    @Test
+    public void testLoadsFromDisk() throws Exception {
+        DateTime time = new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC);
+        FileSpokeStore fileSpokeStore = new FileSpokeStore(tempDir);
+        fileSpokeStore.insert("testLoadsFromDisk/" + new ContentKey(time, "A").toUrl(), BYTES);
+        fileSpokeStore.insert("testLoadsFromDisk/" + new ContentKey(time.plusMinutes(1), "B").toUrl(), BYTES);
+
+        IndexedSpokeStore restarted = new IndexedSpokeStore(new FileSpokeStore(tempDir));
+        restarted.insert("testLoadsFromDisk/" + new ContentKey(time.plusMinutes(2), "C").toUrl(), BYTES);
+        assertEquals(3, split(restarted.readKeysInBucket("testLoadsFromDisk/" + TimeUtil.hours(time))).size());
+        ContentKey limitKey = new ContentKey(time.plusMinutes(2), "C");
+        assertEquals("testLoadsFromDisk/" + new ContentKey(time.plusMinutes(1), "B").toUrl(),
+                restarted.getLatest("testLoadsFromDisk", limitKey.toUrl()));
+    }
+
+    @Test
+    public void testLoadedWriteTimes() throws Exception {
+        DateTime time = new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC);
+        FileSpokeStore fileSpokeStore = new FileSpokeStore(tempDir);
+        fileSpokeStore.insert("testLoadedWriteTimes/" + new ContentKey(time, "A").toUrl(), BYTES);
+        fileSpokeStore.insert("testLoadedWriteTimes/" + new ContentKey(time.plusMinutes(1), "B").toUrl(), BYTES);
+        File oldMinute = new File(tempDir + "/testLoadedWriteTimes/" + new MinutePath(time).toUrl());
+        assertTrue(oldMinute.setLastModified(TimeUtil.now().minusHours(2).getMillis()));
+
+        IndexedSpokeStore restarted = new IndexedSpokeStore(new FileSpokeStore(tempDir));
+        assertEquals(2, split(restarted.readKeysInBucket("testLoadedWriteTimes/" + TimeUtil.hours(time))).size());
+        restarted.enforceTtl("testLoadedWriteTimes", false, TimeUtil.now().minusHours(1));
+        assertEquals(Arrays.asList("testLoadedWriteTimes/" + new ContentKey(time.plusMinutes(1), "B").toUrl()),
+                split(restarted.readKeysInBucket("testLoadedWriteTimes/" + TimeUtil.hours(time))));
+    }
+
+    @Test
+    public void testLatest() {
+        DateTime time = TimeUtil.now().minusMinutes(50);
+        for (int i = 0; i < 10; i++) {
+            time = time.plusMinutes(2);
+            spokeStore.insert("testLatest/" + new ContentKey(time, "A").toUrl(), BYTES);
+            spokeStore.insert("testLatest/" + new ContentKey(time, "B").toUrl(), BYTES);
+        }
+        assertEquals("testLatest/" + new ContentKey(time, "A").toUrl(),
+                spokeStore.getLatest("testLatest", new ContentKey(time, "B").toUrl()));
+        assertEquals("testLatest/" + new ContentKey(time, "B").toUrl(),
+                spokeStore.getLatest("testLatest", new ContentKey(time.plusMillis(1), "A").toUrl()));
+        assertEquals("testLatest/" + new ContentKey(time.minusMinutes(2), "B").toUrl(),
+                spokeStore.getLatest("testLatest", new ContentKey(time, "A").toUrl()));
+        assertNull(spokeStore.getLatest("testLatest", new ContentKey(time.minusMinutes(30), "A").toUrl()));
+    }
+
+    @Test
+    public void testNextOverYears() throws IOException {
+        String name = "testNextOverYears";
+        DateTime time = new DateTime(2012, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            time = time.plusMonths(7);
+            String path = name + "/" + new ContentKey(time, "A").toUrl();
+            spokeStore.insert(path, BYTES);
+            expected.add(path);
+        }
+        assertEquals(expected, getNext(name, new ContentKey(new DateTime(2010, 1, 1, 0, 0, DateTimeZone.UTC), "A").toUrl(), 10));
+        assertEquals(expected.subList(1, 3), getNext(name, new ContentKey(new DateTime(2012, 8, 1, 0, 0, DateTimeZone.UTC), "A").toUrl(), 2));
+    }
+
+    @Test
+    public void testDeletes() throws Exception {
+        DateTime time = new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC);
+        String first = "testDeletes/" + new ContentKey(time, "A").toUrl();
+        String second = "testDeletes/" + new ContentKey(time.plusMinutes(1), "B").toUrl();
+        spokeStore.insert(first, BYTES);
+        spokeStore.insert(second, BYTES);
+        assertTrue(spokeStore.deleteFile(first));
+        assertEquals(Arrays.asList(second), keysInBucket("testDeletes/" + TimeUtil.hours(time)));
+
+        spokeStore.enforceTtl("testDeletes", true, time.plusMinutes(1));
+        assertEquals(0, keysInBucket("testDeletes/" + TimeUtil.hours(time)).size());
+
+        spokeStore.insert(first, BYTES);
+        spokeStore.enforceTtl("testDeletes", false, TimeUtil.now().minusMinutes(1));
+        assertEquals(1, keysInBucket("testDeletes/" + TimeUtil.hours(time)).size());
+        spokeStore.enforceTtl("testDeletes", false, TimeUtil.now());
+        assertEquals(0, keysInBucket("testDeletes/" + TimeUtil.hours(time)).size());
+
+        spokeStore.delete("testDeletes");
+        assertEquals(0, keysInBucket("testDeletes/" + TimeUtil.hours(time)).size());
+    }
+
+    private List<String> keysInBucket(String path) {
+        return split(spokeStore.readKeysInBucket(path));
+    }
+
+    private List<String> getNext(String channel, String startKey, int count) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        spokeStore.getNext(channel, startKey, count, baos);
+        return split(baos.toString());
+    }
+
+    private static List<String> split(String keys) {
+        List<String> list = new ArrayList<>();
+        for (String key : keys.split(",")) {
+            if (!key.isEmpty()) {
+                list.add(key);
+            }
+        }
+        return list;
+    }
+}
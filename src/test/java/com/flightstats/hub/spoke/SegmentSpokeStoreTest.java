@@ -0,0 +1,210 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.dao.ContentKeyUtil;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import com.google.common.io.Files;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.NotFoundException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class SegmentSpokeStoreTest {
+    private static final byte[] BYTES = new byte[]{0, 2, 3, 4, 5, 6};
+    private String tempDir;
+    private SegmentSpokeStore spokeStore;
+
+    @Before
+    public void setUp() throws Exception {
+        tempDir = Files.createTempDir().getPath();
+        spokeStore = new SegmentSpokeStore(tempDir);
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+        String path = "channelWR/" + new ContentKey().toUrl();
+        assertTrue(spokeStore.insert(path, BYTES));
+        assertArrayEquals(BYTES, spokeStore.read(path));
+        assertArrayEquals(new byte[]{5, 6}, spokeStore.readTail(path, 2));
+        assertNull(spokeStore.readTail("channelWR/" + new ContentKey().toUrl(), 2));
+        assertArrayEquals(new byte[]{0, 2}, spokeStore.readHead(path, 2));
+        assertNull(spokeStore.readHead("channelWR/" + new ContentKey().toUrl(), 2));
+        assertTrue(new File(tempDir + "/" + path).getParentFile().getParentFile().getParentFile().isFile());
+    }
+
+    @Test
+    public void testAdjacentPaths() throws Exception {
+        String path1 = "testAdjacentPaths/2014/11/18/00/57/24/015/1";
+        String path2 = "testAdjacentPaths/2014/11/18/00/57/24/015/2";
+        spokeStore.insert(path1, BYTES);
+        spokeStore.insert(path2, BYTES);
+        spokeStore.insert("testAdjacentPaths/2014/11/18/00/57/24/014/1", BYTES);
+        spokeStore.insert("testAdjacentPaths/2014/11/18/00/57/23/015/1", BYTES);
+        spokeStore.insert("testAdjacentPaths/2014/11/18/00/58/25/015/1", BYTES);
+
+        Collection<String> keys = keysInBucket("/testAdjacentPaths/2014/11/18/00/57");
+        assertEquals(4, keys.size());
+        assertTrue(keys.contains(path1));
+        assertTrue(keys.contains(path2));
+
+        assertEquals(3, keysInBucket("/testAdjacentPaths/2014/11/18/00/57/24").size());
+        assertEquals(5, keysInBucket("testAdjacentPaths/2014/11/18").size());
+    }
+
+    @Test
+    public void testLastFile() {
+        DateTime time = new DateTime(2014, 12, 31, 23, 30, 1, 2, DateTimeZone.UTC);
+        for (int i = 0; i < 30; i++) {
+            time = time.plusMinutes(2);
+            spokeStore.insert("testLastFile/" + new ContentKey(time, "A").toUrl(), BYTES);
+            time = time.plusSeconds(1);
+            spokeStore.insert("testLastFile/" + new ContentKey(time, "B").toUrl(), BYTES);
+            time = time.plusMillis(1);
+            spokeStore.insert("testLastFile/" + new ContentKey(time, "C").toUrl(), BYTES);
+        }
+        ContentKey limitKey = new ContentKey(time.minusMinutes(1), "A");
+        assertEquals("testLastFile/2015/01/01/00/28/30/031/C", spokeStore.getLatest("testLastFile", limitKey.toUrl()));
+
+        limitKey = new ContentKey(time, "B");
+        assertEquals("testLastFile/2015/01/01/00/30/31/031/B", spokeStore.getLatest("testLastFile", limitKey.toUrl()));
+    }
+
+    @Test
+    public void testNextN() throws IOException {
+        String name = "testNextN";
+        DateTime startTime = TimeUtil.now().minusMinutes(59);
+        DateTime time = startTime;
+        for (int i = 0; i < 30; i++) {
+            time = time.plusMinutes(2);
+            spokeStore.insert(name + "/" + new ContentKey(time, "A").toUrl(), BYTES);
+            time = time.plusSeconds(1);
+            spokeStore.insert(name + "/" + new ContentKey(time, "B").toUrl(), BYTES);
+            time = time.plusMillis(1);
+            spokeStore.insert(name + "/" + new ContentKey(time, "C").toUrl(), BYTES);
+        }
+        assertEquals(87, getNext(name, new ContentKey(startTime, "A").toUrl(), 90).size());
+        assertEquals(45, getNext(name, new ContentKey(startTime.plusMinutes(30), "A").toUrl(), 45).size());
+    }
+
+    @Test
+    public void testDeleteFile() throws Exception {
+        String path = "testDeleteFile/" + new ContentKey().toUrl();
+        assertTrue(spokeStore.insert(path, BYTES));
+        assertTrue(spokeStore.exists(path));
+        assertTrue(spokeStore.deleteFile(path));
+        assertFalse(spokeStore.exists(path));
+        assertFalse(spokeStore.deleteFile(path));
+        assertEquals(0, keysInBucket("testDeleteFile/" + TimeUtil.minutes(TimeUtil.now())).size());
+        assertNotFound(new SegmentSpokeStore(tempDir), path);
+    }
+
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        DateTime time = new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC);
+        String first = "testIncomplete/" + new ContentKey(time, "A").toUrl();
+        String second = "testIncomplete/" + new ContentKey(time, "B").toUrl();
+        spokeStore.insert(first, BYTES);
+        spokeStore.insert(second, BYTES);
+        File segment = new File(tempDir + "/testIncomplete/" + TimeUtil.minutes(time));
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+
+        SegmentSpokeStore restarted = new SegmentSpokeStore(tempDir);
+        assertArrayEquals(BYTES, restarted.read(first));
+        assertNotFound(restarted, second);
+
+        String third = "testIncomplete/" + new ContentKey(time, "C").toUrl();
+        assertTrue(restarted.insert(third, BYTES));
+        ArrayList<ContentKey> keys = new ArrayList<>();
+        ContentKeyUtil.convertKeyStrings(new SegmentSpokeStore(tempDir).readKeysInBucket("testIncomplete/" + TimeUtil.minutes(time)), keys);
+        assertEquals(2, keys.size());
+    }
+
+    @Test
+    public void testSlowInsertDoesNotBlock() throws Exception {
+        DateTime time = new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC);
+        String first = "testSlowInsert/" + new ContentKey(time, "A").toUrl();
+        String slow = "testSlowInsert/" + new ContentKey(time, "B").toUrl();
+        assertTrue(spokeStore.insert(first, BYTES));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slowInput = new SequenceInputStream(new ByteArrayInputStream(BYTES), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Boolean> inserted = executor.submit(() -> spokeStore.insert(slow, slowInput));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertArrayEquals(BYTES, spokeStore.read(first));
+        assertTrue(spokeStore.insert("testSlowInsert/" + new ContentKey(time, "C").toUrl(), BYTES));
+        assertNotFound(spokeStore, slow);
+        release.countDown();
+        assertTrue(inserted.get(10, TimeUnit.SECONDS));
+        assertArrayEquals(BYTES, spokeStore.read(slow));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTtlDropsSegment() throws Exception {
+        DateTime time = new DateTime(2015, 2, 1, 12, 45, 1, 2, DateTimeZone.UTC);
+        String path = "testTtlDropsSegment/" + new ContentKey(time, "A").toUrl();
+        spokeStore.insert(path, BYTES);
+        assertTrue(new File(tempDir + "/testTtlDropsSegment/" + TimeUtil.minutes(time)).delete());
+        assertNotFound(spokeStore, path);
+        assertEquals(0, keysInBucket("testTtlDropsSegment/" + TimeUtil.hours(time)).size());
+        assertTrue(spokeStore.insert("testTtlDropsSegment/" + new ContentKey(time, "B").toUrl(), BYTES));
+        assertEquals(1, keysInBucket("testTtlDropsSegment/" + TimeUtil.hours(time)).size());
+    }
+
+    private void assertNotFound(SegmentSpokeStore store, String path) {
+        try {
+            store.read(path);
+            fail("expected not found " + path);
+        } catch (NotFoundException e) {
+            //expected
+        }
+    }
+
+    private Collection<String> keysInBucket(String path) {
+        ArrayList<String> keys = new ArrayList<>();
+        for (String key : spokeStore.readKeysInBucket(path).split(",")) {
+            if (!key.isEmpty()) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    private List<String> getNext(String channel, String startKey, int count) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        spokeStore.getNext(channel, startKey, count, baos);
+        return Arrays.asList(baos.toString().split(","));
+    }
+
+}
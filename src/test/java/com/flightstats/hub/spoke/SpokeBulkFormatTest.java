@@ -0,0 +1,84 @@
+package com.flightstats.hub.spoke;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpokeBulkFormatTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] large = new byte[200 * 1024];
+        new Random().nextBytes(large);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpokeBulkFormat.Writer writer = new SpokeBulkFormat.Writer(baos);
+        writer.write("2016/01/01/00/00/00/000/A", output -> output.write("small".getBytes()));
+        writer.write("2016/01/01/00/00/00/000/B", output -> {
+        });
+        writer.write("2016/01/01/00/00/00/000/C", output -> output.write(large));
+        writer.finish();
+
+        InputStream input = new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertTrue(SpokeBulkFormat.isFramed(input));
+        SpokeBulkFormat.Reader reader = new SpokeBulkFormat.Reader(input);
+        assertEquals("2016/01/01/00/00/00/000/A", reader.nextKey());
+        assertEquals("small", new String(readAll(reader.getItemStream())));
+        assertEquals("2016/01/01/00/00/00/000/B", reader.nextKey());
+        assertEquals(0, readAll(reader.getItemStream()).length);
+        assertEquals("2016/01/01/00/00/00/000/C", reader.nextKey());
+        assertArrayEquals(large, readAll(reader.getItemStream()));
+        assertNull(reader.nextKey());
+    }
+
+    @Test
+    public void testSkipsUnreadItems() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpokeBulkFormat.Writer writer = new SpokeBulkFormat.Writer(baos);
+        writer.write("first", output -> output.write(new byte[100 * 1024]));
+        writer.write("second", output -> output.write(2));
+        writer.finish();
+
+        SpokeBulkFormat.Reader reader = new SpokeBulkFormat.Reader(new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals("first", reader.nextKey());
+        assertEquals("second", reader.nextKey());
+        assertEquals(2, reader.getItemStream().read());
+        assertEquals(-1, reader.getItemStream().read());
+        assertNull(reader.nextKey());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testIncompleteBatch() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        SpokeBulkFormat.Writer writer = new SpokeBulkFormat.Writer(baos);
+        writer.write("first", output -> output.write(new byte[100 * 1024]));
+        byte[] bytes = baos.toByteArray();
+
+        SpokeBulkFormat.Reader reader = new SpokeBulkFormat.Reader(new ByteArrayInputStream(bytes, 0, bytes.length - 10));
+        assertEquals("first", reader.nextKey());
+        reader.nextKey();
+    }
+
+    @Test
+    public void testSerializedIsNotFramed() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(baos);
+        stream.writeInt(1);
+        stream.flush();
+        InputStream input = new BufferedInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        assertFalse(SpokeBulkFormat.isFramed(input));
+        assertEquals(1, new ObjectInputStream(input).readInt());
+    }
+
+    private byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,106 @@
+package com.flightstats.hub.spoke;
+
+import com.flightstats.hub.metrics.NoOpMetricsService;
+import com.google.common.io.ByteStreams;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SpokeHttpClientTest {
+
+    private static Server server;
+    private static String hostPort;
+    private static SpokeHttpClient client;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                byte[] body = ByteStreams.toByteArray(request.getInputStream());
+                response.setStatus(request.getMethod().equals("PUT") ? 201 : 200);
+                response.getOutputStream().write((request.getMethod() + " " + target + " " + body.length).getBytes());
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        hostPort = "localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        client = new SpokeHttpClient(new NoOpMetricsService());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testMethods() throws Exception {
+        SpokeHttpClient.SpokeResponse put = client.put(hostPort, "/internal/spoke/payload/a", new byte[]{1, 2, 3}, 5).get(5, TimeUnit.SECONDS);
+        assertEquals(201, put.getStatus());
+        assertEquals("PUT /internal/spoke/payload/a 3", put.getContentAsString());
+
+        SpokeHttpClient.SpokeResponse get = client.get(hostPort, "/internal/spoke/time/a", 5).get(5, TimeUnit.SECONDS);
+        assertEquals(200, get.getStatus());
+        assertEquals("GET /internal/spoke/time/a 0", get.getContentAsString());
+
+        SpokeHttpClient.SpokeResponse delete = client.delete(hostPort, "/internal/spoke/payload/a", 5).get(5, TimeUnit.SECONDS);
+        assertEquals("DELETE /internal/spoke/payload/a 0", delete.getContentAsString());
+    }
+
+    @Test
+    public void testStreams() throws Exception {
+        try (SpokeHttpClient.SpokeStreamResponse get = client.getStream(hostPort, "/internal/spoke/payload/a", 5)) {
+            assertEquals(200, get.getStatus());
+            assertEquals("GET /internal/spoke/payload/a 0", new String(ByteStreams.toByteArray(get.getStream())));
+        }
+        try (SpokeHttpClient.SpokeStreamResponse post = client.postStream(hostPort, "/internal/spoke/payloads/a", "abc", 5)) {
+            assertEquals(200, post.getStatus());
+            assertEquals("POST /internal/spoke/payloads/a 3", new String(ByteStreams.toByteArray(post.getStream())));
+        }
+        try {
+            client.getStream("localhost:1", "/internal/spoke/payload/a", 5);
+            fail("expected failure");
+        } catch (ConnectException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        SpokeFanOutStream output = new SpokeFanOutStream(client, Arrays.asList(hostPort, "localhost:1"), "/internal/spoke/bulkKey/a", 5);
+        for (int i = 0; i < 100; i++) {
+            output.write(new byte[1000]);
+        }
+        output.close();
+        Map<String, CompletableFuture<SpokeHttpClient.SpokeResponse>> responses = output.getResponses();
+        assertEquals("PUT /internal/spoke/bulkKey/a 100000", responses.get(hostPort).get(5, TimeUnit.SECONDS).getContentAsString());
+        assertTrue(responses.get("localhost:1").isCompletedExceptionally());
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        try {
+            client.get("localhost:1", "/internal/spoke/time/a", 5).get(10, TimeUnit.SECONDS);
+            fail("expected failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.dao.ChannelKeyNotifier;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChannelTailTest {
+
+    private final DateTime start = TimeUtil.now().minusMinutes(5).secondOfMinute().roundFloorCopy();
+    private final List<DateTime> queries = new ArrayList<>();
+
+    private ChannelTail createTail() {
+        NotifiedKeys notifiedKeys = new NotifiedKeys(new ChannelKeyNotifier(), "channel");
+        return new ChannelTail("channel", notifiedKeys, time -> {
+            queries.add(time);
+            return Collections.singletonList(new ContentKey(time.plusMillis(100), "hash"));
+        }, 10);
+    }
+
+    @Test
+    public void testSharedSeconds() {
+        ChannelTail tail = createTail();
+        assertEquals(1, tail.getSecond(start.plusMillis(400)).size());
+        assertEquals(1, tail.getSecond(start.plusSeconds(2)).size());
+        assertEquals(3, queries.size());
+        assertEquals(1, tail.getSecond(start).size());
+        assertEquals(1, tail.getSecond(start.plusSeconds(1)).size());
+        assertEquals(3, queries.size());
+    }
+
+    @Test
+    public void testOutsideWindow() {
+        ChannelTail tail = createTail();
+        tail.getSecond(start);
+        tail.getSecond(start.plusSeconds(10));
+        assertNull(tail.getSecond(start));
+        assertEquals(1, tail.getSecond(start.plusSeconds(1)).size());
+        tail.getSecond(start.plusSeconds(30));
+        assertNull(tail.getSecond(start.plusSeconds(20)));
+        assertEquals(12, queries.size());
+    }
+
+    @Test
+    public void testRelease() {
+        ChannelTail tail = createTail();
+        tail.acquire();
+        tail.acquire();
+        assertFalse(tail.release());
+        assertTrue(tail.release());
+    }
+}
@@ -0,0 +1,79 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.dao.ChannelKeyNotifier;
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.util.TimeUtil;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class NotifiedKeysTest {
+
+    private final DateTime start = TimeUtil.now().plusMinutes(1).secondOfMinute().roundFloorCopy();
+
+    @Test
+    public void testNotAvailable() {
+        ChannelKeyNotifier notifier = new ChannelKeyNotifier();
+        NotifiedKeys notifiedKeys = new NotifiedKeys(notifier, "channel");
+        DateTime stable = TimeUtil.stable();
+        assertEquals(stable, notifiedKeys.getStable(stable));
+        assertNull(notifiedKeys.get(start, start.plusSeconds(1)));
+    }
+
+    @Test
+    public void testNotifiedSeconds() {
+        ChannelKeyNotifier notifier = new ChannelKeyNotifier();
+        notifier.complete(System.currentTimeMillis());
+        NotifiedKeys notifiedKeys = new NotifiedKeys(notifier, "Channel");
+        assertNull(notifiedKeys.get(TimeUtil.now().minusMinutes(1), TimeUtil.now()));
+        notifier.notify("channel", Arrays.asList(key(1, 500), key(0, 100), key(2, 0)));
+        notifier.notify("other", Collections.singletonList(key(0, 200)));
+        assertEquals(Collections.singletonList(key(0, 100)), new ArrayList<>(notifiedKeys.get(start, start.plusSeconds(1))));
+        assertEquals(Collections.singletonList(key(1, 500)), new ArrayList<>(notifiedKeys.get(start.plusSeconds(1), start.plusSeconds(2))));
+        assertEquals(0, notifiedKeys.get(start.plusSeconds(3), start.plusSeconds(4)).size());
+        notifiedKeys.close();
+        assertNull(notifiedKeys.get(start.plusSeconds(4), start.plusSeconds(5)));
+    }
+
+    @Test
+    public void testGap() {
+        ChannelKeyNotifier notifier = new ChannelKeyNotifier();
+        notifier.complete(System.currentTimeMillis());
+        NotifiedKeys notifiedKeys = new NotifiedKeys(notifier, "channel");
+        notifier.notify("channel", Collections.singletonList(key(0, 100)));
+        notifier.gap();
+        assertNull(notifiedKeys.get(start, start.plusSeconds(1)));
+        notifier.notify("channel", Collections.singletonList(key(1, 100)));
+        assertEquals(1, notifiedKeys.get(start.plusSeconds(1), start.plusSeconds(2)).size());
+    }
+
+    @Test
+    public void testNotHeard() {
+        ChannelKeyNotifier notifier = new ChannelKeyNotifier();
+        notifier.complete(System.currentTimeMillis(), () -> start.plusSeconds(6).getMillis());
+        NotifiedKeys notifiedKeys = new NotifiedKeys(notifier, "channel");
+        notifier.notify("channel", Arrays.asList(key(0, 100), key(1, 100)));
+        assertEquals(1, notifiedKeys.get(start, start.plusSeconds(1)).size());
+        assertNull(notifiedKeys.get(start.plusSeconds(1), start.plusSeconds(2)));
+    }
+
+    @Test
+    public void testLateKey() {
+        ChannelKeyNotifier notifier = new ChannelKeyNotifier();
+        notifier.complete(System.currentTimeMillis());
+        NotifiedKeys notifiedKeys = new NotifiedKeys(notifier, "channel");
+        notifier.notify("channel", Collections.singletonList(key(1, 100)));
+        assertEquals(1, notifiedKeys.get(start.plusSeconds(1), start.plusSeconds(2)).size());
+        notifier.notify("channel", Collections.singletonList(key(0, 100)));
+        assertNull(notifiedKeys.get(start.plusSeconds(2), start.plusSeconds(3)));
+    }
+
+    private ContentKey key(int seconds, int millis) {
+        return new ContentKey(start.plusSeconds(seconds).plusMillis(millis), "hash");
+    }
+}
@@ -0,0 +1,128 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.model.ContentKey;
+import com.flightstats.hub.model.ContentPath;
+import com.flightstats.hub.model.TimeQuery;
+import com.flightstats.hub.util.TimeUtil;
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class StreamSubscriptionTest {
+
+    private final DateTime start = TimeUtil.now().minusMinutes(5).secondOfMinute().roundFloorCopy();
+    private final List<ContentPath> sent = new ArrayList<>();
+    private final List<Consumer<Throwable>> waiting = new ArrayList<>();
+    private final List<StreamSubscription> closed = new ArrayList<>();
+    private int queries;
+    private boolean sinkClosed;
+
+    private final Function<TimeQuery, Collection<ContentKey>> query = timeQuery -> {
+        queries++;
+        DateTime time = TimeUtil.Unit.SECONDS.round(timeQuery.getStartTime());
+        return Arrays.asList(new ContentKey(time.plusMillis(100), "a"), new ContentKey(time.plusMillis(200), "b"));
+    };
+
+    private StreamSubscription create(ContentPath startingPath, boolean waitForDone, long slowMillis) {
+        StreamSink sink = new StreamSink() {
+            @Override
+            public void send(ContentPath contentPath, Consumer<Throwable> done) {
+                sent.add(contentPath);
+                if (waitForDone) {
+                    waiting.add(done);
+                } else {
+                    done.accept(null);
+                }
+            }
+
+            @Override
+            public void close() {
+                sinkClosed = true;
+            }
+        };
+        return new StreamSubscription("channel", startingPath, false, sink, Runnable::run, 3, slowMillis, closed::add);
+    }
+
+    @Test
+    public void testSendsInOrder() {
+        StreamSubscription subscription = create(new ContentKey(start.plusMillis(100), "a"), false, 60 * 1000);
+        subscription.advance(start.plusSeconds(3), query);
+        assertEquals(2, queries);
+        assertEquals(3, sent.size());
+        assertEquals(new ContentKey(start.plusMillis(200), "b"), sent.get(0));
+        subscription.advance(start.plusSeconds(3), query);
+        assertEquals(3, queries);
+        assertEquals(5, sent.size());
+        assertEquals(new ContentKey(start.plusSeconds(2).plusMillis(200), "b"), sent.get(4));
+        subscription.advance(start.plusSeconds(3), query);
+        assertEquals(3, queries);
+        assertFalse(subscription.isClosed());
+    }
+
+    @Test
+    public void testBufferLimitsQueries() {
+        StreamSubscription subscription = create(new ContentKey(start, "0"), true, 60 * 1000);
+        subscription.advance(start.plusSeconds(10), query);
+        assertEquals(2, queries);
+        assertEquals(1, sent.size());
+        subscription.advance(start.plusSeconds(10), query);
+        assertEquals(2, queries);
+        waiting.get(0).accept(null);
+        assertEquals(2, sent.size());
+        subscription.advance(start.plusSeconds(10), query);
+        assertEquals(3, queries);
+    }
+
+    @Test
+    public void testSlowSubscriberIsClosed() throws InterruptedException {
+        StreamSubscription subscription = create(new ContentKey(start, "0"), true, 10);
+        subscription.advance(start.plusSeconds(10), query);
+        Thread.sleep(20);
+        subscription.advance(start.plusSeconds(10), query);
+        assertTrue(subscription.isClosed());
+        assertTrue(sinkClosed);
+        assertEquals(1, closed.size());
+        waiting.get(0).accept(null);
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void testCloseWithBusyPool() {
+        List<Runnable> queued = new ArrayList<>();
+        StreamSink sink = new StreamSink() {
+            @Override
+            public void send(ContentPath contentPath, Consumer<Throwable> done) {
+                sent.add(contentPath);
+            }
+
+            @Override
+            public void close() {
+                sinkClosed = true;
+            }
+        };
+        StreamSubscription subscription = new StreamSubscription("channel", new ContentKey(start, "0"), false, sink,
+                queued::add, 3, 60 * 1000, closed::add);
+        subscription.advance(start.plusSeconds(10), query);
+        assertEquals(1, queued.size());
+        subscription.close();
+        assertTrue(sinkClosed);
+        assertEquals(1, queued.size());
+    }
+
+    @Test
+    public void testFailedSendCloses() {
+        StreamSubscription subscription = create(new ContentKey(start, "0"), true, 60 * 1000);
+        subscription.advance(start.plusSeconds(10), query);
+        waiting.get(0).accept(new RuntimeException("gone"));
+        assertTrue(subscription.isClosed());
+        assertTrue(sinkClosed);
+    }
+}
@@ -1,5 +1,7 @@
 package com.flightstats.hub.webhook;
 
+import com.flightstats.hub.cluster.LastContentPath;
+import com.flightstats.hub.cluster.LastContentPathCoalescer;
 import com.flightstats.hub.model.ContentKey;
 import com.flightstats.hub.model.ContentPath;
 import com.flightstats.hub.test.Integration;
@@ -22,9 +24,13 @@ public class WebhookContentPathSetTest {
         curator = Integration.startZooKeeper();
     }
 
+    private WebhookContentPathSet create() {
+        return new WebhookContentPathSet(curator, new LastContentPathCoalescer(new LastContentPath(curator)));
+    }
+
     @Test
     public void testLifecycle() throws Exception {
-        groupSet = new WebhookContentPathSet(curator);
+        groupSet = create();
         ContentKey first = new ContentKey();
         ContentKey second = new ContentKey();
         ContentKey third = new ContentKey();
@@ -53,7 +59,7 @@ public class WebhookContentPathSetTest {
 
     @Test
     public void testDelete() throws Exception {
-        groupSet = new WebhookContentPathSet(curator);
+        groupSet = create();
         groupName = "testDelete";
         ContentKey contentKey = new ContentKey();
         addAndCompare(contentKey, 1);
@@ -64,4 +70,22 @@ public class WebhookContentPathSetTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testFlush() throws Exception {
+        groupSet = create();
+        groupName = "testFlush";
+        ContentKey first = new ContentKey();
+        ContentKey second = new ContentKey();
+        addAndCompare(first, 1);
+        addAndCompare(second, 2);
+        assertEquals(0, create().getSet(groupName, first).size());
+        removeAndCompare(first, 1);
+        groupSet.flush();
+        Set<ContentPath> written = create().getSet(groupName, first);
+        assertEquals(1, written.size());
+        assertTrue(written.contains(second));
+        removeAndCompare(second, 0);
+        groupSet.flush(groupName);
+        assertEquals(0, create().getSet(groupName, first).size());
+    }
+}
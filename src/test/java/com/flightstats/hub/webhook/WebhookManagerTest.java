@@ -0,0 +1,107 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.app.HubProperties;
+import com.flightstats.hub.cluster.CuratorCluster;
+import com.flightstats.hub.cluster.LastContentPath;
+import com.flightstats.hub.cluster.WatchManager;
+import com.flightstats.hub.dao.Dao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.*;
+
+public class WebhookManagerTest {
+
+    private final Set<String> servers = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> running = new ConcurrentHashMap<>();
+    private final Map<String, Runnable> listeners = new HashMap<>();
+    private final List<Webhook> webhooks = new ArrayList<>();
+    private Dao<Webhook> webhookDao;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        HubProperties.setProperty("webhook.assignment", "hash");
+        for (int i = 0; i < 30; i++) {
+            webhooks.add(Webhook.builder().name("webhook" + i).build());
+        }
+        webhookDao = mock(Dao.class);
+        when(webhookDao.getAll(true)).thenReturn(webhooks);
+    }
+
+    @After
+    public void tearDown() {
+        HubProperties.setProperty("webhook.assignment", "leaders");
+    }
+
+    @Test
+    public void testMembershipChange() {
+        servers.addAll(Arrays.asList("hub1", "hub2", "hub3"));
+        for (String server : servers) {
+            start(server);
+        }
+        assertRunOnce();
+
+        servers.add("hub4");
+        listeners.values().forEach(Runnable::run);
+        start("hub4");
+        assertRunOnce();
+        assertTrue(running.values().stream().anyMatch(hubs -> hubs.contains("hub4")));
+
+        servers.remove("hub2");
+        listeners.values().forEach(Runnable::run);
+        assertRunOnce();
+        assertTrue(running.values().stream().noneMatch(hubs -> hubs.contains("hub2")));
+    }
+
+    @Test
+    public void testNotInCluster() {
+        servers.add("hub1");
+        start("hub1");
+        start("outside");
+        assertRunOnce();
+        assertTrue(running.values().stream().allMatch(hubs -> hubs.contains("hub1")));
+    }
+
+    private void start(String server) {
+        CuratorCluster cluster = mock(CuratorCluster.class);
+        when(cluster.getAllServers()).thenAnswer(invocation -> new HashSet<>(servers));
+        when(cluster.getHost(true)).thenReturn(server);
+        doAnswer(invocation -> listeners.put(server, (Runnable) invocation.getArguments()[0]))
+                .when(cluster).addServersListener(any(Runnable.class), any(Executor.class));
+        WebhookManager manager = new WebhookManager(mock(WatchManager.class), webhookDao,
+                () -> leader(server), mock(LastContentPath.class), cluster);
+        manager.start();
+    }
+
+    private WebhookLeader leader(String server) {
+        WebhookLeader leader = mock(WebhookLeader.class);
+        Webhook[] started = new Webhook[1];
+        doAnswer(invocation -> {
+            started[0] = (Webhook) invocation.getArguments()[0];
+            running.computeIfAbsent(started[0].getName(), name -> ConcurrentHashMap.newKeySet()).add(server);
+            return null;
+        }).when(leader).tryLeadership(any(Webhook.class));
+        doAnswer(invocation -> {
+            running.get(started[0].getName()).remove(server);
+            return null;
+        }).when(leader).exit(anyBoolean());
+        when(leader.getWebhook()).thenAnswer(invocation -> started[0]);
+        return leader;
+    }
+
+    private void assertRunOnce() {
+        for (Webhook webhook : webhooks) {
+            Set<String> hubs = running.getOrDefault(webhook.getName(), Collections.emptySet());
+            assertEquals(webhook.getName() + " " + hubs, 1, hubs.size());
+        }
+    }
+}
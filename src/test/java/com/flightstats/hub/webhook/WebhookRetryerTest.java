@@ -0,0 +1,142 @@
+package com.flightstats.hub.webhook;
+
+import com.flightstats.hub.cluster.LastContentPathCoalescer;
+import com.flightstats.hub.cluster.Leadership;
+import com.flightstats.hub.dao.ChannelService;
+import com.flightstats.hub.metrics.MetricsService;
+import com.flightstats.hub.metrics.Traces;
+import com.flightstats.hub.model.ChannelConfig;
+import com.flightstats.hub.model.ContentKey;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+public class WebhookRetryerTest {
+
+    private final Webhook webhook = Webhook.builder().name("retryer").channelUrl("http://hub/channel/retryer")
+            .callbackUrl("http://client/retryer").parallelCalls(1).maxWaitMinutes(1)
+            .callbackTimeoutSeconds(1).ttlMinutes(0).build();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+
+    @Mock
+    private ChannelService channelService;
+    @Mock
+    private MetricsService metricsService;
+    @Mock
+    private LastContentPathCoalescer checkpoints;
+    @Mock
+    private WebhookContentPathSet webhookInProcess;
+    @Mock
+    private WebhookError webhookError;
+    @Mock
+    private WebhookClient webhookClient;
+    @Mock
+    private Leadership leadership;
+    @Mock
+    private ScheduledFuture<?> retry;
+    @InjectMocks
+    private WebhookLeader leader = new WebhookLeader();
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(channelService.getCachedChannelConfig(anyString())).thenReturn(ChannelConfig.builder().name("retryer").build());
+        when(leadership.hasLeadership()).thenReturn(true);
+        doAnswer(invocation -> {
+            scheduled.add((Runnable) invocation.getArguments()[0]);
+            delays.add((Long) invocation.getArguments()[1]);
+            return retry;
+        }).when(webhookClient).schedule(any(Runnable.class), anyLong());
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(webhookClient).recordError(any(Runnable.class));
+        leader.setWebhook(webhook);
+        leader.startDeliveries(new ContentKey());
+    }
+
+    @Test
+    public void testWaitMillis() {
+        Webhook webhook = Webhook.builder().maxWaitMinutes(1).build();
+        assertEquals(2000, WebhookRetryer.getWaitMillis(webhook, 1));
+        assertEquals(4000, WebhookRetryer.getWaitMillis(webhook, 2));
+        assertEquals(16000, WebhookRetryer.getWaitMillis(webhook, 4));
+        assertEquals(60000, WebhookRetryer.getWaitMillis(webhook, 6));
+        assertEquals(60000, WebhookRetryer.getWaitMillis(webhook, 1000));
+    }
+
+    @Test
+    public void testRetriesOnTimer() {
+        when(webhookClient.post(anyString(), anyString(), anyInt()))
+                .thenReturn(status(500), failure(), status(200));
+        ContentKey key = new ContentKey();
+        WebhookLeader.Delivery delivery = leader.deliver(key, "{}", new Traces());
+        assertWaiting(delivery, 1);
+        assertEquals(Long.valueOf(2000), delays.get(0));
+        verify(webhookError).add(eq("retryer"), contains("returned a response status of 500"));
+
+        scheduled.get(0).run();
+        assertWaiting(delivery, 2);
+        assertEquals(Long.valueOf(4000), delays.get(1));
+        verify(webhookError).add(eq("retryer"), contains("refused"));
+
+        scheduled.get(1).run();
+        assertTrue(delivery.isFinished());
+        assertEquals(3, delivery.getAttempts());
+        verify(checkpoints).updateIncrease(key, "retryer", WebhookLeader.WEBHOOK_LAST_COMPLETED);
+        verify(webhookInProcess).remove("retryer", key);
+    }
+
+    @Test
+    public void testStopsWithoutLeadership() {
+        when(webhookClient.post(anyString(), anyString(), anyInt())).thenReturn(status(500));
+        when(leadership.hasLeadership()).thenReturn(true, false);
+        WebhookLeader.Delivery delivery = leader.deliver(new ContentKey(), "{}", new Traces());
+        assertTrue(delivery.isFinished());
+        assertFalse(delivery.isWaiting());
+        assertEquals(1, delivery.getAttempts());
+        assertTrue(scheduled.isEmpty());
+        verify(checkpoints, never()).updateIncrease(any(), anyString(), anyString());
+    }
+
+    @Test
+    public void testCancelRetry() {
+        when(webhookClient.post(anyString(), anyString(), anyInt())).thenReturn(status(503));
+        when(retry.cancel(false)).thenReturn(true);
+        WebhookLeader.Delivery delivery = leader.deliver(new ContentKey(), "{}", new Traces());
+        assertWaiting(delivery, 1);
+        delivery.cancelRetry();
+        assertTrue(delivery.isFinished());
+        verify(checkpoints, never()).updateIncrease(any(), anyString(), anyString());
+    }
+
+    private void assertWaiting(WebhookLeader.Delivery delivery, int attempts) {
+        assertTrue(delivery.isWaiting());
+        assertFalse(delivery.isFinished());
+        assertEquals(attempts, delivery.getAttempts());
+        assertEquals(attempts, scheduled.size());
+    }
+
+    private static CompletableFuture<Integer> status(int status) {
+        return CompletableFuture.completedFuture(status);
+    }
+
+    private static CompletableFuture<Integer> failure() {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        future.completeExceptionally(new ConnectException("Connection refused"));
+        return future;
+    }
+}